@@ -14,6 +14,10 @@
  *
  * Who   Date       Description
  * ====  =========  =================================================
+ * WY    18Oct2026  Reuse readers and writers per thread in read() and write()
+ * WY    18Oct2026  Pass FileInputStream to the readers without wrapping it
+ * WY    18Oct2026  Added probe() to read basic image info from the header
+ * WY    18Oct2026  Added read(InputStream, ImageParam) for subsampled reading
  * WY    22Jan2015  Revised read(InputStream) to leave the stream open
  * WY    08Jan2015  Added getReader(PushbackInputStream)
  * WY    22Sep2014  Added read() to detect image type and read image
@@ -28,9 +32,16 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.EnumMap;
+import java.util.Map;
 import com.icafe4j.image.reader.ImageReader;
 import com.icafe4j.image.util.IMGUtils;
 import com.icafe4j.image.writer.ImageWriter;
+import com.icafe4j.io.ByteRangeRandomAccessInputStream;
+import com.icafe4j.io.FileByteRangeSource;
+import com.icafe4j.io.HybridCacheRandomAccessInputStream;
+import com.icafe4j.io.IOUtils;
 import com.icafe4j.io.PeekHeadInputStream;
 import com.icafe4j.io.RandomAccessInputStream;
 
@@ -38,6 +49,69 @@ public final class ImageIO {
 	// Image header magic number length
 	// We may need to bump this to 8 later
 	public static final int IMAGE_MAGIC_NUMBER_LEN = 4; 
+	// Block size and number of cached blocks used to probe local files
+	private static final int PROBE_BLOCK_SIZE = 4096;
+	private static final int PROBE_MAX_CACHED_BLOCKS = 16;
+	
+	// Idle readers and writers kept for reuse by the thread, one per image type
+	private static final ThreadLocal<Map<ImageType, ImageReader>> cachedReaders = new ThreadLocal<Map<ImageType, ImageReader>>() {
+		@Override
+		protected Map<ImageType, ImageReader> initialValue() {
+			return new EnumMap<ImageType, ImageReader>(ImageType.class);
+		}
+	};
+	private static final ThreadLocal<Map<ImageType, ImageWriter>> cachedWriters = new ThreadLocal<Map<ImageType, ImageWriter>>() {
+		@Override
+		protected Map<ImageType, ImageWriter> initialValue() {
+			return new EnumMap<ImageType, ImageWriter>(ImageType.class);
+		}
+	};
+	
+	/**
+	 * Takes the idle ImageReader kept by the current thread for the image type
+	 * or creates a new one. The ImageReader belongs to the caller until it is
+	 * handed back by {@link #releaseReader(ImageType, ImageReader) releaseReader},
+	 * so the same thread may acquire more than one reader for the same image type.
+	 * <p>
+	 * Reusing a reader saves the allocation of its working buffers and decoders
+	 * from image to image.
+	 * 
+	 * @param imgType image type enum defined by {@link ImageType}
+	 * @return a ImageReader for image type imgType or null if not found
+	 */
+	public static ImageReader acquireReader(ImageType imgType) {
+		ImageReader reader = cachedReaders.get().remove(imgType);
+		if(reader == null)
+			reader = getReader(imgType);
+		
+		return reader;
+	}
+	
+	/**
+	 * Takes the idle ImageWriter kept by the current thread for the image type
+	 * or creates a new one. The ImageWriter belongs to the caller until it is
+	 * handed back by {@link #releaseWriter(ImageWriter) releaseWriter}.
+	 * 
+	 * @param imgType image type enum defined by {@link ImageType}
+	 * @return a ImageWriter for image type imgType or null if not found
+	 */
+	public static ImageWriter acquireWriter(ImageType imgType) {
+		ImageWriter writer = cachedWriters.get().remove(imgType);
+		if(writer == null)
+			writer = getWriter(imgType);
+		
+		return writer;
+	}
+	
+	/**
+	 * Drops the idle readers and writers kept by the current thread. Threads
+	 * of a pool which outlive the use of this library should call this to
+	 * release the working buffers.
+	 */
+	public static void clearCachedCodecs() {
+		cachedReaders.remove();
+		cachedWriters.remove();
+	}
 	
 	/**
 	 * ImageReader factory
@@ -91,6 +165,109 @@ public final class ImageIO {
 		return imgType.getWriter();
 	}
 	
+	/**
+	 * Hands back an ImageReader acquired by {@link #acquireReader(ImageType) acquireReader}.
+	 * The reader is reset and kept by the current thread for the next image of
+	 * the same type. It must not be used by the caller afterwards.
+	 * 
+	 * @param imgType image type the reader was acquired for
+	 * @param reader ImageReader to hand back
+	 */
+	public static void releaseReader(ImageType imgType, ImageReader reader) {
+		if(reader == null) return;
+		reader.reset();
+		cachedReaders.get().put(imgType, reader);
+	}
+	
+	/**
+	 * Hands back an ImageWriter acquired by {@link #acquireWriter(ImageType) acquireWriter}.
+	 * The writer is reset and kept by the current thread for the next image of
+	 * the same type. It must not be used by the caller afterwards.
+	 * 
+	 * @param writer ImageWriter to hand back
+	 */
+	public static void releaseWriter(ImageWriter writer) {
+		if(writer == null) return;
+		writer.reset();
+		cachedWriters.get().put(writer.getImageType(), writer);
+	}
+	
+	/**
+	 * Reads the basic image information from the header of the image without
+	 * decoding the image. Only the header structures are read: IHDR for PNG,
+	 * SOFn for JPEG, the logical screen and a skim through the blocks for GIF,
+	 * the IFD chain for TIFF and the file header for BMP, TGA and PCX.
+	 * <p>
+	 * A RandomAccessInputStream or a FileInputStream is left at the position it
+	 * was passed in with, other InputStreams are consumed up to the end of the
+	 * header. The stream is not closed.
+	 * 
+	 * @param is InputStream for the image
+	 * @return ImageInfo for the image or null if the image type is unknown or
+	 *         can't be probed, JPEG 2000 for instance
+	 * @throws IOException
+	 */
+	public static ImageInfo probe(InputStream is) throws IOException {
+		if(is instanceof RandomAccessInputStream)
+			return probe((RandomAccessInputStream)is);
+		// Local files are probed with positional reads of small blocks, the file position is left alone
+		if(is instanceof FileInputStream) {
+			FileChannel channel = ((FileInputStream)is).getChannel();
+			RandomAccessInputStream randIS = new ByteRangeRandomAccessInputStream(new FileByteRangeSource(channel, channel.position()), PROBE_BLOCK_SIZE, PROBE_MAX_CACHED_BLOCKS);
+			try {
+				return probe(randIS);
+			} finally {
+				randIS.shallowClose();
+			}
+		}
+		PeekHeadInputStream peekHeadInputStream = new PeekHeadInputStream(is, IMAGE_MAGIC_NUMBER_LEN);
+		try {
+			ImageType imageType = IMGUtils.guessImageType(peekHeadInputStream);
+			if(imageType == ImageType.TIFF) { // TIFF needs random access to follow the IFD chain
+				RandomAccessInputStream randIS = new HybridCacheRandomAccessInputStream(peekHeadInputStream);
+				try {
+					return ImageProber.probeTIFF(randIS);
+				} finally {
+					randIS.shallowClose();
+				}
+			}
+			return probe(imageType, peekHeadInputStream);
+		} finally {
+			peekHeadInputStream.shallowClose();
+		}
+	}
+	
+	private static ImageInfo probe(RandomAccessInputStream randIS) throws IOException {
+		long streamPointer = randIS.getStreamPointer();
+		ImageType imageType = IMGUtils.guessImageType(randIS);
+		try {
+			if(imageType == ImageType.TIFF)
+				return ImageProber.probeTIFF(randIS);
+			return probe(imageType, randIS);
+		} finally {
+			randIS.seek(streamPointer);
+		}
+	}
+	
+	private static ImageInfo probe(ImageType imageType, InputStream is) throws IOException {
+		switch(imageType) {
+			case PNG:
+				return ImageProber.probePNG(is);
+			case JPG:
+				return ImageProber.probeJPG(is);
+			case GIF:
+				return ImageProber.probeGIF(is);
+			case BMP:
+				return ImageProber.probeBMP(is);
+			case TGA:
+				return ImageProber.probeTGA(is);
+			case PCX:
+				return ImageProber.probePCX(is);
+			default: // Unknown or no prober yet, JPEG 2000 for example
+				return null;
+		}
+	}
+	
 	/**
 	 * @param file input image File
 	 * @return BufferedImage
@@ -114,11 +291,33 @@ public final class ImageIO {
 	 * @throws Exception
 	 */
 	public static BufferedImage read(InputStream is) throws Exception {
+		return read(is, null);
+	}
+	
+	/**
+	 * Read the image or the first frame of the image as a BufferedImage
+	 * from the InputStream for the image with the source subsampling and
+	 * maximum dimension of the ImageParam.
+	 * 
+	 * @param is InputStream for the image
+	 * @param param ImageParam for reading, null for the default
+	 * @return BufferedImage or null
+	 * @throws Exception
+	 */
+	public static BufferedImage read(InputStream is, ImageParam param) throws Exception {
 		ImageType imageType = null;
 		boolean closeStream = false;
 		// 4 byte as image magic number
 		if(is instanceof RandomAccessInputStream) {
 			imageType = IMGUtils.guessImageType((RandomAccessInputStream)is);
+		} else if(is instanceof FileInputStream) {
+			// Rewind the file instead of wrapping it, so readers can map the file directly
+			FileChannel channel = ((FileInputStream)is).getChannel();
+			long position = channel.position();
+			byte[] magicNumber = new byte[IMAGE_MAGIC_NUMBER_LEN];
+			IOUtils.readFully(is, magicNumber);
+			channel.position(position);
+			imageType = IMGUtils.guessImageType(magicNumber);
 		} else {
 			is = new PeekHeadInputStream(is, IMAGE_MAGIC_NUMBER_LEN); 
 			imageType = IMGUtils.guessImageType((PeekHeadInputStream)is);
@@ -126,7 +325,11 @@ public final class ImageIO {
 		}		
 		BufferedImage bi = null;		
 		if(imageType != ImageType.UNKNOWN) {
-			bi = getReader(imageType).read(is);
+			ImageReader reader = acquireReader(imageType);
+			reader.setImageParam(param);
+			bi = reader.read(is);
+			// A reader which failed is not reused
+			releaseReader(imageType, reader);
 		}
 		// Close the PeekHeadInputStream we created internally
 		if(closeStream) ((PeekHeadInputStream)is).shallowClose();		
@@ -148,10 +351,12 @@ public final class ImageIO {
 	}
 	
 	public static void write(BufferedImage img, OutputStream os, ImageType imageType, ImageParam imageParam) throws Exception {
-		ImageWriter imageWriter = getWriter(imageType);
+		ImageWriter imageWriter = acquireWriter(imageType);
 		if(imageWriter != null) {
 			imageWriter.setImageParam(imageParam);
 			imageWriter.write(img, os);
+			// A writer which failed is not reused
+			releaseWriter(imageWriter);
 		}		
 	}
 	
@@ -0,0 +1,116 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image;
+
+/**
+ * Basic image properties as found in the image header, returned by
+ * {@link ImageIO#probe(java.io.InputStream)} without decoding the image.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public final class ImageInfo {
+	/**
+	 * Color types as stored in the image file
+	 */
+	public enum ColorType {
+		GRAY,
+		GRAY_ALPHA,
+		INDEXED,
+		RGB,
+		RGB_ALPHA,
+		CMYK,
+		YCbCr,
+		YCCK,
+		UNKNOWN;
+	}
+
+	private ImageType imageType;
+	private int width;
+	private int height;
+	private int bitsPerSample;
+	private int samplesPerPixel;
+	private ColorType colorType;
+	private int frameCount;
+	private boolean hasICCProfile;
+
+	ImageInfo(ImageType imageType, int width, int height, int bitsPerSample, int samplesPerPixel,
+			ColorType colorType, int frameCount, boolean hasICCProfile) {
+		this.imageType = imageType;
+		this.width = width;
+		this.height = height;
+		this.bitsPerSample = bitsPerSample;
+		this.samplesPerPixel = samplesPerPixel;
+		this.colorType = colorType;
+		this.frameCount = frameCount;
+		this.hasICCProfile = hasICCProfile;
+	}
+
+	/**
+	 * @return number of bits per pixel
+	 */
+	public int getBitsPerPixel() {
+		return bitsPerSample*samplesPerPixel;
+	}
+
+	/**
+	 * @return bit depth of each sample or of the color index for indexed images
+	 */
+	public int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	public ColorType getColorType() {
+		return colorType;
+	}
+
+	/**
+	 * @return number of frames for GIF, number of pages for TIFF and 1 for the other image types
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return height of the image or the first page, or of the logical screen for GIF
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	public ImageType getImageType() {
+		return imageType;
+	}
+
+	public int getSamplesPerPixel() {
+		return samplesPerPixel;
+	}
+
+	/**
+	 * @return width of the image or the first page, or of the logical screen for GIF
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return true if the image embeds an ICC profile, otherwise false
+	 */
+	public boolean hasICCProfile() {
+		return hasICCProfile;
+	}
+
+	public String toString() {
+		return imageType + " " + width + "x" + height + " " + colorType + " " + bitsPerSample + " bits x "
+				+ samplesPerPixel + " samples, " + frameCount + " frame(s)" + (hasICCProfile ? ", ICC profile" : "");
+	}
+}
@@ -14,6 +14,8 @@
  *
  * Who   Date       Description
  * ====  =======    ==================================================
+ * WY    18Oct2026  Added destination image parameter for image readers
+ * WY    18Oct2026  Added source subsampling parameters for image readers
  * WY    06Feb2016  Added quantQuality parameter
  * WY    31Jan2016  Removed ditherThreshold parameter
  * WY    03Sep2015  Added support for different dither type
@@ -58,6 +60,11 @@ public class ImageParam {
     private final byte icc_profile[];
     private final boolean containsThumbnail;    
     private final BufferedImage thumbnails[];
+    // Source subsampling for image readers
+    private final int sourceXSubsampling;
+    private final int sourceYSubsampling;
+    private final int maxDimension;
+    private final BufferedImage destination;
      
     private final ImageOptions imageOptions;
     
@@ -100,6 +107,10 @@ public class ImageParam {
 		containsThumbnail = builder.containsThumbnail;
 		thumbnails = builder.thumbnails;		
 		imageOptions = builder.imageOptions;
+		sourceXSubsampling = builder.sourceXSubsampling;
+		sourceYSubsampling = builder.sourceYSubsampling;
+		maxDimension = builder.maxDimension;
+		destination = builder.destination;
 	}
     
     public boolean containsThumbnail() {
@@ -110,6 +121,13 @@ public class ImageParam {
     	return bitsPerPixel;
     }
     
+    /**
+     * @return the image for image readers to decode into, null if none
+     */
+    public BufferedImage getDestination() {
+    	return destination;
+    }
+    
     public static ImageParamBuilder getBuilder() {
     	return new ImageParamBuilder();
     }
@@ -154,6 +172,21 @@ public class ImageParam {
     	return imageOptions;
     }
     
+    /**
+     * @return maximum width or height of an image read with this ImageParam, 0 if not limited
+     */
+    public int getMaxDimension() {
+    	return maxDimension;
+    }
+    
+    public int getSourceXSubsampling() {
+    	return sourceXSubsampling;
+    }
+    
+    public int getSourceYSubsampling() {
+    	return sourceYSubsampling;
+    }
+    
     public int getImageWidth() {
     	return width;
     }
@@ -220,6 +253,10 @@ public class ImageParam {
 	    private byte icc_profile[];
 	    private boolean containsThumbnail = false;
 	    private BufferedImage thumbnails[];
+	    private int sourceXSubsampling = 1;
+	    private int sourceYSubsampling = 1;
+	    private int maxDimension;
+	    private BufferedImage destination;
 	 	    
 	    // Additional format-specific parameters
 	    private ImageOptions imageOptions;
@@ -255,6 +292,20 @@ public class ImageParam {
 	    	return this;
 	    }
 	    
+	    /**
+	     * Makes image readers decode into the destination image instead of
+	     * allocating a new one when the image read has the same size as the
+	     * destination and can be represented by its type. Readers which can't
+	     * decode into the destination fall back to allocating a new image, so
+	     * callers should compare the image returned with the destination.
+	     * 
+	     * @param destination BufferedImage to reuse, null to always allocate
+	     */
+	    public ImageParamBuilder destination(BufferedImage destination) {
+	    	this.destination = destination;
+	    	return this;
+	    }
+	    
 	    public ImageParamBuilder ditherMatrix(int[][] ditherMatrix) {
 	    	this.ditherMatrix = ditherMatrix;
 	    	return this;
@@ -300,6 +351,20 @@ public class ImageParam {
 			return this;
 		}
 	    
+	    /**
+	     * Makes image readers subsample the source so that neither the width nor
+	     * the height of the image read exceeds maxDimension. The subsampling needed
+	     * is worked out from the image size once the image header has been read.
+	     * 
+	     * @param maxDimension maximum width or height, 0 for no limit
+	     */
+	    public ImageParamBuilder maxDimension(int maxDimension) {
+	    	if(maxDimension < 0)
+	    		throw new IllegalArgumentException("Negative maximum dimension: " + maxDimension);
+	    	this.maxDimension = maxDimension;
+	    	return this;
+	    }
+	    
 		/**
 	     * ImageReader can reset this ImageBuilder to read another image.
 	     */
@@ -323,6 +388,10 @@ public class ImageParam {
 	    	this.containsThumbnail = false;
 	    	this.thumbnails = null;
 	    	this.imageOptions = null;
+	    	this.sourceXSubsampling = 1;
+	    	this.sourceYSubsampling = 1;
+	    	this.maxDimension = 0;
+	    	this.destination = null;
 	    }
 		
 		public ImageParamBuilder rgbColorPalette(int[] rgbColorPalette) {
@@ -330,6 +399,21 @@ public class ImageParam {
 			return this;
 		}
 		
+		/**
+		 * Makes image readers keep only every xStep-th pixel of every yStep-th
+		 * scan line of the source, so the image read is allocated at the reduced size.
+		 * 
+		 * @param xStep horizontal subsampling step, 1 for no subsampling
+		 * @param yStep vertical subsampling step, 1 for no subsampling
+		 */
+		public ImageParamBuilder sourceSubsampling(int xStep, int yStep) {
+			if(xStep < 1 || yStep < 1)
+				throw new IllegalArgumentException("Invalid subsampling step: " + xStep + "x" + yStep);
+			this.sourceXSubsampling = xStep;
+			this.sourceYSubsampling = yStep;
+			return this;
+		}
+		
 		public ImageParamBuilder thumbnails(BufferedImage[] thumbnails) {
 	    	this.thumbnails = thumbnails;
 	    	return this;
@@ -0,0 +1,432 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.icafe4j.image.ImageInfo.ColorType;
+import com.icafe4j.io.IOUtils;
+import com.icafe4j.io.RandomAccessInputStream;
+import com.icafe4j.io.ReadStrategyII;
+import com.icafe4j.io.ReadStrategyMM;
+
+/**
+ * Reads the header structures of the supported image types into an ImageInfo.
+ * Only the bytes needed to find the header fields are read and skipped, no
+ * image data is decoded.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+final class ImageProber {
+	// Guard against circular or broken TIFF IFD chains
+	private static final int MAX_TIFF_PAGES = 65536;
+
+	private ImageProber() {}
+
+	static ImageInfo probeBMP(InputStream is) throws IOException {
+		byte[] header = new byte[14];
+		IOUtils.readFully(is, header);
+		int infoHeaderSize = IOUtils.readInt(is);
+		int width, height, bitsPerPixel;
+		int compression = 0;
+		boolean hasAlpha = false;
+		boolean hasICCProfile = false;
+		if(infoHeaderSize == 12) { // OS/2 BITMAPCOREHEADER
+			width = IOUtils.readUnsignedShort(is);
+			height = IOUtils.readUnsignedShort(is);
+			IOUtils.readUnsignedShort(is); // Planes
+			bitsPerPixel = IOUtils.readUnsignedShort(is);
+		} else {
+			byte[] info = new byte[Math.min(Math.max(infoHeaderSize - 4, 36), 120)];
+			IOUtils.readFully(is, info);
+			width = IOUtils.readInt(info, 0);
+			height = Math.abs(IOUtils.readInt(info, 4)); // Negative for top-down bitmaps
+			bitsPerPixel = IOUtils.readUnsignedShort(info, 10);
+			compression = IOUtils.readInt(info, 12);
+			// BITMAPV3INFOHEADER and later come with the alpha mask
+			if(infoHeaderSize >= 56 && bitsPerPixel == 32)
+				hasAlpha = IOUtils.readInt(info, 48) != 0;
+			// BITMAPV5HEADER with an embedded profile
+			if(infoHeaderSize >= 124)
+				hasICCProfile = IOUtils.readInt(info, 52) == 0x4D424544; // 'MBED'
+		}
+		ColorType colorType = ColorType.RGB;
+		if(bitsPerPixel <= 8)
+			colorType = ColorType.INDEXED;
+		else if(hasAlpha)
+			colorType = ColorType.RGB_ALPHA;
+		// BI_JPEG and BI_PNG bitmaps keep the image type of the embedded image unknown
+		if(compression == 4 || compression == 5)
+			colorType = ColorType.UNKNOWN;
+
+		return bitmapInfo(ImageType.BMP, width, height, bitsPerPixel, colorType, 1, hasICCProfile);
+	}
+
+	static ImageInfo probeGIF(InputStream is) throws IOException {
+		byte[] header = new byte[13];
+		IOUtils.readFully(is, header);
+		int width = IOUtils.readUnsignedShort(header, 6);
+		int height = IOUtils.readUnsignedShort(header, 8);
+		int flags = header[10]&0xff;
+		int bitsPerPixel = 0;
+		if((flags&0x80) == 0x80) { // Global color table
+			bitsPerPixel = (flags&0x07) + 1;
+			skip(is, 3*(1<<bitsPerPixel));
+		}
+		int frameCount = 0;
+		boolean hasICCProfile = false;
+		byte[] descriptor = new byte[9];
+		byte[] identifier = new byte[11];
+		// Skim through the blocks counting the image descriptors
+		for(int introducer = is.read(); introducer != -1 && introducer != 0x3b; introducer = is.read()) {
+			if(introducer == 0x21) { // Extension
+				int label = IOUtils.read(is);
+				if(label == 0xff) { // Application extension
+					int size = IOUtils.read(is);
+					if(size == 11) {
+						IOUtils.readFully(is, identifier);
+						if(new String(identifier, 0, 8, "ISO-8859-1").equals("ICCRGBG1"))
+							hasICCProfile = true;
+					} else
+						skip(is, size);
+				}
+				skipSubBlocks(is);
+			} else if(introducer == 0x2c) { // Image descriptor
+				IOUtils.readFully(is, descriptor);
+				int localFlags = descriptor[8]&0xff;
+				if((localFlags&0x80) == 0x80) { // Local color table
+					int localBits = (localFlags&0x07) + 1;
+					if(frameCount == 0 && bitsPerPixel == 0)
+						bitsPerPixel = localBits;
+					skip(is, 3*(1<<localBits));
+				}
+				IOUtils.read(is); // LZW minimum code size
+				skipSubBlocks(is);
+				frameCount++;
+			} else // Broken file, keep what we have found so far
+				break;
+		}
+
+		return bitmapInfo(ImageType.GIF, width, height, bitsPerPixel, ColorType.INDEXED, frameCount, hasICCProfile);
+	}
+
+	static ImageInfo probeJPG(InputStream is) throws IOException {
+		int precision = 0, width = 0, height = 0, numOfComponents = 0;
+		int adobeTransform = -1;
+		boolean jfif = false;
+		boolean hasICCProfile = false;
+		byte[] componentIDs = null;
+		skip(is, 2); // SOI
+		for(;;) {
+			int marker = IOUtils.read(is);
+			if(marker != 0xff)
+				throw new IOException("Invalid JPEG marker: 0x" + Integer.toHexString(marker));
+			while((marker = IOUtils.read(is)) == 0xff); // Fill bytes
+			// Markers without segment
+			if(marker == 0x01 || marker == 0xd8 || (marker >= 0xd0 && marker <= 0xd7))
+				continue;
+			// Stop at the first scan, all the header segments come before it
+			if(marker == 0xd9 || marker == 0xda)
+				break;
+			int length = IOUtils.readUnsignedShortMM(is) - 2;
+			if(length < 0)
+				throw new IOException("Invalid JPEG segment length: " + length);
+			if(marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) { // SOFn
+				byte[] sof = new byte[length];
+				IOUtils.readFully(is, sof);
+				precision = sof[0]&0xff;
+				height = IOUtils.readUnsignedShortMM(sof, 1);
+				width = IOUtils.readUnsignedShortMM(sof, 3);
+				numOfComponents = sof[5]&0xff;
+				componentIDs = new byte[numOfComponents];
+				for(int i = 0; i < numOfComponents && 6 + 3*i < length; i++)
+					componentIDs[i] = sof[6 + 3*i];
+			} else if(marker == 0xe0 || marker == 0xe2 || marker == 0xee) { // APP0, APP2 and APP14
+				byte[] app = new byte[length];
+				IOUtils.readFully(is, app);
+				if(marker == 0xe0 && startsWith(app, "JFIF"))
+					jfif = true;
+				else if(marker == 0xe2 && startsWith(app, "ICC_PROFILE"))
+					hasICCProfile = true;
+				else if(marker == 0xee && startsWith(app, "Adobe") && length >= 12)
+					adobeTransform = app[11]&0xff;
+			} else
+				skip(is, length);
+		}
+		if(numOfComponents == 0)
+			throw new IOException("No JPEG frame header found");
+		ColorType colorType = ColorType.UNKNOWN;
+		switch(numOfComponents) {
+			case 1:
+				colorType = ColorType.GRAY;
+				break;
+			case 3:
+				if(jfif || adobeTransform == 1)
+					colorType = ColorType.YCbCr;
+				else if(adobeTransform == 0 || (componentIDs[0] == 'R' && componentIDs[1] == 'G' && componentIDs[2] == 'B'))
+					colorType = ColorType.RGB;
+				else
+					colorType = ColorType.YCbCr;
+				break;
+			case 4:
+				colorType = (adobeTransform == 2) ? ColorType.YCCK : ColorType.CMYK;
+				break;
+		}
+
+		return new ImageInfo(ImageType.JPG, width, height, precision, numOfComponents, colorType, 1, hasICCProfile);
+	}
+
+	static ImageInfo probePCX(InputStream is) throws IOException {
+		byte[] header = new byte[128];
+		IOUtils.readFully(is, header);
+		int bitsPerPlane = header[3]&0xff;
+		int width = IOUtils.readUnsignedShort(header, 8) - IOUtils.readUnsignedShort(header, 4) + 1;
+		int height = IOUtils.readUnsignedShort(header, 10) - IOUtils.readUnsignedShort(header, 6) + 1;
+		int numOfPlanes = header[65]&0xff;
+		ColorType colorType = ColorType.INDEXED;
+		if(bitsPerPlane == 8 && numOfPlanes == 3)
+			colorType = ColorType.RGB;
+		else if(bitsPerPlane == 8 && numOfPlanes == 4)
+			colorType = ColorType.RGB_ALPHA;
+		if(colorType == ColorType.INDEXED) // Planes make up the color index
+			return new ImageInfo(ImageType.PCX, width, height, bitsPerPlane*numOfPlanes, 1, colorType, 1, false);
+
+		return new ImageInfo(ImageType.PCX, width, height, bitsPerPlane, numOfPlanes, colorType, 1, false);
+	}
+
+	static ImageInfo probePNG(InputStream is) throws IOException {
+		skip(is, 8); // Signature
+		int length = IOUtils.readIntMM(is);
+		int type = IOUtils.readIntMM(is);
+		if(type != 0x49484452) // IHDR
+			throw new IOException("Missing PNG IHDR chunk");
+		byte[] ihdr = new byte[length];
+		IOUtils.readFully(is, ihdr);
+		skip(is, 4); // CRC
+		int width = IOUtils.readIntMM(ihdr, 0);
+		int height = IOUtils.readIntMM(ihdr, 4);
+		int bitDepth = ihdr[8]&0xff;
+		int pngColorType = ihdr[9]&0xff;
+		boolean hasICCProfile = false;
+		// Look for iCCP among the chunks before the image data
+		for(;;) {
+			length = IOUtils.readIntMM(is);
+			type = IOUtils.readIntMM(is);
+			if(type == 0x49444154 || type == 0x49454e44) // IDAT or IEND
+				break;
+			if(type == 0x69434350) // iCCP
+				hasICCProfile = true;
+			skip(is, length + 4);
+		}
+		switch(pngColorType) {
+			case 0:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 1, ColorType.GRAY, 1, hasICCProfile);
+			case 2:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 3, ColorType.RGB, 1, hasICCProfile);
+			case 3:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 1, ColorType.INDEXED, 1, hasICCProfile);
+			case 4:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 2, ColorType.GRAY_ALPHA, 1, hasICCProfile);
+			case 6:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 4, ColorType.RGB_ALPHA, 1, hasICCProfile);
+			default:
+				return new ImageInfo(ImageType.PNG, width, height, bitDepth, 1, ColorType.UNKNOWN, 1, hasICCProfile);
+		}
+	}
+
+	static ImageInfo probeTGA(InputStream is) throws IOException {
+		byte[] header = new byte[18];
+		IOUtils.readFully(is, header);
+		int tgaImageType = header[2]&0xff;
+		int width = IOUtils.readUnsignedShort(header, 12);
+		int height = IOUtils.readUnsignedShort(header, 14);
+		int bitsPerPixel = header[16]&0xff;
+		int alphaBits = header[17]&0x0f;
+		ColorType colorType = ColorType.UNKNOWN;
+		switch(tgaImageType) {
+			case 1:
+			case 9:
+			case 32:
+			case 33:
+				colorType = ColorType.INDEXED;
+				break;
+			case 2:
+			case 10:
+				colorType = (alphaBits > 0) ? ColorType.RGB_ALPHA : ColorType.RGB;
+				break;
+			case 3:
+			case 11:
+				colorType = (alphaBits > 0) ? ColorType.GRAY_ALPHA : ColorType.GRAY;
+				break;
+		}
+
+		return bitmapInfo(ImageType.TGA, width, height, bitsPerPixel, colorType, 1, false);
+	}
+
+	/**
+	 * Reads the first IFD and follows the IFD chain to count the pages. The
+	 * stream pointer is expected to be at the start of the TIFF header which
+	 * the IFD offsets are relative to.
+	 */
+	static ImageInfo probeTIFF(RandomAccessInputStream randIS) throws IOException {
+		long start = randIS.getStreamPointer();
+		short endian = randIS.readShort();
+		if(endian == IOUtils.BIG_ENDIAN)
+			randIS.setReadStrategy(ReadStrategyMM.getInstance());
+		else if(endian == IOUtils.LITTLE_ENDIAN)
+			randIS.setReadStrategy(ReadStrategyII.getInstance());
+		else
+			throw new IOException("Invalid TIFF byte order");
+		if(randIS.readShort() != 0x2a)
+			throw new IOException("Invalid TIFF identifier");
+		long offset = randIS.readUnsignedInt();
+		if(offset == 0)
+			throw new IOException("TIFF file contains no IFD");
+		int width = 0, height = 0, bitsPerSample = 1, samplesPerPixel = 1;
+		int photometric = -1, extraSamples = 0;
+		boolean hasICCProfile = false;
+		int pageCount = 0;
+		Set<Long> visited = new HashSet<Long>();
+		while(offset != 0 && pageCount < MAX_TIFF_PAGES && visited.add(offset)) {
+			randIS.seek(start + offset);
+			int numOfFields = randIS.readUnsignedShort();
+			if(pageCount == 0) {
+				byte[] fields = new byte[numOfFields*12];
+				randIS.readFully(fields);
+				for(int i = 0; i < fields.length; i += 12) {
+					int tag = readUnsignedShort(endian, fields, i);
+					int type = readUnsignedShort(endian, fields, i + 2);
+					long count = readUnsignedInt(endian, fields, i + 4);
+					// SHORT or LONG value stored in the entry itself
+					int value = (type == 3) ? readUnsignedShort(endian, fields, i + 8) : (int)readUnsignedInt(endian, fields, i + 8);
+					switch(tag) {
+						case 256: // ImageWidth
+							width = value;
+							break;
+						case 257: // ImageLength
+							height = value;
+							break;
+						case 258: // BitsPerSample, all the samples are assumed to share the same depth
+							bitsPerSample = value;
+							if(count > 2) { // Values don't fit in the entry, read the first one
+								long pos = randIS.getStreamPointer();
+								randIS.seek(start + (readUnsignedInt(endian, fields, i + 8)));
+								bitsPerSample = randIS.readUnsignedShort();
+								randIS.seek(pos);
+							}
+							break;
+						case 262: // PhotometricInterpretation
+							photometric = value;
+							break;
+						case 277: // SamplesPerPixel
+							samplesPerPixel = value;
+							break;
+						case 338: // ExtraSamples
+							extraSamples = (int)count;
+							break;
+						case 34675: // ICC Profile
+							hasICCProfile = true;
+							break;
+					}
+				}
+			} else
+				randIS.skipBytes(numOfFields*12);
+			offset = randIS.readUnsignedInt();
+			pageCount++;
+		}
+		ColorType colorType = ColorType.UNKNOWN;
+		switch(photometric) {
+			case 0: // WhiteIsZero
+			case 1: // BlackIsZero
+				colorType = (extraSamples > 0) ? ColorType.GRAY_ALPHA : ColorType.GRAY;
+				break;
+			case 2:
+				colorType = (extraSamples > 0) ? ColorType.RGB_ALPHA : ColorType.RGB;
+				break;
+			case 3:
+				colorType = ColorType.INDEXED;
+				break;
+			case 5:
+				colorType = (samplesPerPixel - extraSamples == 4) ? ColorType.CMYK : ColorType.UNKNOWN;
+				break;
+			case 6:
+				colorType = ColorType.YCbCr;
+				break;
+		}
+		randIS.seek(start);
+
+		return new ImageInfo(ImageType.TIFF, width, height, bitsPerSample, samplesPerPixel, colorType, pageCount, hasICCProfile);
+	}
+
+	// Splits the bits per pixel of the packed pixel formats into samples
+	private static ImageInfo bitmapInfo(ImageType imageType, int width, int height, int bitsPerPixel, ColorType colorType, int frameCount, boolean hasICCProfile) {
+		int samplesPerPixel = 1;
+		int bitsPerSample = bitsPerPixel;
+		switch(colorType) {
+			case RGB:
+				samplesPerPixel = 3;
+				bitsPerSample = (bitsPerPixel == 16) ? 5 : 8;
+				break;
+			case RGB_ALPHA:
+				samplesPerPixel = 4;
+				bitsPerSample = (bitsPerPixel == 16) ? 5 : 8;
+				break;
+			case GRAY_ALPHA:
+				samplesPerPixel = 2;
+				bitsPerSample = bitsPerPixel/2;
+				break;
+			default:
+		}
+
+		return new ImageInfo(imageType, width, height, bitsPerSample, samplesPerPixel, colorType, frameCount, hasICCProfile);
+	}
+
+	private static int readUnsignedShort(short endian, byte[] buf, int index) {
+		return (endian == IOUtils.BIG_ENDIAN) ? IOUtils.readUnsignedShortMM(buf, index) : IOUtils.readUnsignedShort(buf, index);
+	}
+
+	private static long readUnsignedInt(short endian, byte[] buf, int index) {
+		return (endian == IOUtils.BIG_ENDIAN) ? IOUtils.readUnsignedIntMM(buf, index) : IOUtils.readUnsignedInt(buf, index);
+	}
+
+	// Skips without allocating a buffer for the bytes skipped
+	private static void skip(InputStream is, long n) throws IOException {
+		while(n > 0) {
+			long skipped = is.skip(n);
+			if(skipped <= 0) {
+				if(is.read() == -1)
+					throw new EOFException("Unexpected end of image file");
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static void skipSubBlocks(InputStream is) throws IOException {
+		for(int size = IOUtils.read(is); size > 0; size = IOUtils.read(is))
+			skip(is, size);
+	}
+
+	private static boolean startsWith(byte[] data, String prefix) {
+		if(data.length < prefix.length()) return false;
+		for(int i = 0; i < prefix.length(); i++) {
+			if(data[i] != prefix.charAt(i)) return false;
+		}
+
+		return true;
+	}
+}
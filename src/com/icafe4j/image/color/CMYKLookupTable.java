@@ -0,0 +1,145 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ *
+ * Change History - most recent changes go on top of previous changes
+ *
+ * CMYKLookupTable.java
+ *
+ * Who   Date       Description
+ * ====  =======    =================================================
+ * WY    18Oct2026  Initial creation to speed up ICC CMYK to sRGB conversion
+ */
+
+package com.icafe4j.image.color;
+
+import java.awt.Transparency;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import com.icafe4j.image.util.IMGUtils;
+
+/**
+ * Converts 8 bit CMYK samples to sRGB through a lookup table sampled from an
+ * ICC profile. ColorConvertOp needs several hundred nanoseconds per CMYK pixel,
+ * so the profile is only evaluated on a 17x17x17x17 grid and the samples in
+ * between are interpolated, tetrahedral in CMY and linear in K. This is also
+ * what the CMMs do internally with the CLUT of a CMYK profile.
+ * <p>
+ * The samples are ink values with 255 for full ink, the same as a raster of an
+ * ICC_ColorSpace ComponentColorModel.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class CMYKLookupTable {
+	// Number of grid points per channel
+	public static final int GRID_SIZE = 17;
+
+	private static final int DY = 3;
+	private static final int DM = DY*GRID_SIZE;
+	private static final int DC = DM*GRID_SIZE;
+	private static final int DK = DC*GRID_SIZE;
+
+	// Grid cell and the position inside the cell, 0 to 256, for each sample value
+	private static final int[] CELL = new int[256];
+	private static final int[] FRACTION = new int[256];
+
+	static {
+		for(int v = 0; v < 256; v++) {
+			int cell = Math.min(v>>4, GRID_SIZE - 2);
+			int start = gridValue(cell);
+			CELL[v] = cell;
+			FRACTION[v] = ((v - start)<<8)/(gridValue(cell + 1) - start);
+		}
+	}
+
+	private final int[] table = new int[DK*GRID_SIZE];
+
+	/**
+	 * @param profile a four component ICC profile
+	 */
+	public CMYKLookupTable(ICC_Profile profile) {
+		if(profile.getNumComponents() != 4)
+			throw new IllegalArgumentException("Not a CMYK profile: " + profile.getNumComponents() + " components");
+
+		int count = table.length/3;
+		byte[] grid = new byte[count*4];
+		int offset = 0;
+		for(int k = 0; k < GRID_SIZE; k++) {
+			for(int c = 0; c < GRID_SIZE; c++) {
+				for(int m = 0; m < GRID_SIZE; m++) {
+					for(int y = 0; y < GRID_SIZE; y++) {
+						grid[offset++] = (byte)gridValue(c);
+						grid[offset++] = (byte)gridValue(m);
+						grid[offset++] = (byte)gridValue(y);
+						grid[offset++] = (byte)gridValue(k);
+					}
+				}
+			}
+		}
+
+		ColorModel cm = new ComponentColorModel(new ICC_ColorSpace(profile), new int[] {8, 8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(grid, grid.length), count, 1, count*4, 4, new int[] {0, 1, 2, 3}, null);
+		IMGUtils.iccp2rgbRaster(raster, cm).getPixels(0, 0, count, 1, table);
+	}
+
+	private static int gridValue(int index) {
+		return Math.min(index<<4, 255);
+	}
+
+	/**
+	 * Converts pixel interleaved CMYK samples to pixel interleaved RGB samples.
+	 *
+	 * @param cmyk CMYK samples, four bytes per pixel
+	 * @param rgb RGB samples, three bytes per pixel
+	 * @param pixels number of pixels to convert
+	 */
+	public void toRGB(byte[] cmyk, byte[] rgb, int pixels) {
+		int[] t = table;
+		for(int i = 0, in = 0, out = 0; i < pixels; i++, in += 4, out += 3) {
+			int c = cmyk[in]&0xff, m = cmyk[in + 1]&0xff, y = cmyk[in + 2]&0xff, k = cmyk[in + 3]&0xff;
+			int fc = FRACTION[c], fm = FRACTION[m], fy = FRACTION[y], fk = FRACTION[k];
+			int base = CELL[k]*DK + CELL[c]*DC + CELL[m]*DM + CELL[y]*DY;
+			// Weights and offsets of the four vertices of the tetrahedron containing the sample,
+			// the first vertex is the cell origin and the last one is the opposite corner
+			int w0, w1, w2, w3, o1, o2;
+			if(fc >= fm) {
+				if(fm >= fy) { // c >= m >= y
+					w0 = 256 - fc; w1 = fc - fm; w2 = fm - fy; w3 = fy; o1 = DC; o2 = DC + DM;
+				} else if(fc >= fy) { // c >= y > m
+					w0 = 256 - fc; w1 = fc - fy; w2 = fy - fm; w3 = fm; o1 = DC; o2 = DC + DY;
+				} else { // y > c >= m
+					w0 = 256 - fy; w1 = fy - fc; w2 = fc - fm; w3 = fm; o1 = DY; o2 = DC + DY;
+				}
+			} else {
+				if(fc >= fy) { // m > c >= y
+					w0 = 256 - fm; w1 = fm - fc; w2 = fc - fy; w3 = fy; o1 = DM; o2 = DC + DM;
+				} else if(fm >= fy) { // m >= y > c
+					w0 = 256 - fm; w1 = fm - fy; w2 = fy - fc; w3 = fc; o1 = DM; o2 = DM + DY;
+				} else { // y > m > c
+					w0 = 256 - fy; w1 = fy - fm; w2 = fm - fc; w3 = fc; o1 = DY; o2 = DM + DY;
+				}
+			}
+			int o3 = DC + DM + DY;
+			int p0 = base, p1 = base + DK;
+			for(int j = 0; j < 3; j++, p0++, p1++) {
+				int v0 = w0*t[p0] + w1*t[p0 + o1] + w2*t[p0 + o2] + w3*t[p0 + o3];
+				int v1 = w0*t[p1] + w1*t[p1 + o1] + w2*t[p1 + o2] + w3*t[p1 + o3];
+				rgb[out + j] = (byte)(((256 - fk)*v0 + fk*v1 + 32768)>>16);
+			}
+		}
+	}
+}
@@ -29,12 +29,12 @@ public class HuffmanEncoder implements ImageEncoder {
 	private int buf_length;	
 	private int bufIndex;
 	
-	private int[][] DC_EHUFCO = new int[4][];
-	private int[][] DC_EHUFSI = new int[4][];
-	private int[][] AC_EHUFCO = new int[4][];
-	private int[][] AC_EHUFSI = new int[4][];
+	protected int[][] DC_EHUFCO = new int[4][];
+	protected int[][] DC_EHUFSI = new int[4][];
+	protected int[][] AC_EHUFCO = new int[4][];
+	protected int[][] AC_EHUFSI = new int[4][];
 	
-	private int[] PREDICTION = new int[4];
+	protected int[] PREDICTION = new int[4];
 	
 	private boolean extraFlush = true;
 	
@@ -46,7 +46,7 @@ public class HuffmanEncoder implements ImageEncoder {
 		0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff, 0x01ff, 0x03ff, 0x07ff, 0x0fff, 0x1fff
 	};
 	
-	private static final int[] ZIGZAG_TRAVERSE_ORDER = JPEGConsts.getZigzagMatrix();
+	protected static final int[] ZIGZAG_TRAVERSE_ORDER = JPEGConsts.getZigzagMatrix();
 	
 	public HuffmanEncoder(OutputStream os, int buf_length) {
 		this.os = os;
@@ -135,6 +135,40 @@ public class HuffmanEncoder implements ImageEncoder {
 		}
 	}
 	
+	/**
+	 * Counts the DC and AC symbols the block would be encoded with, without writing anything.
+	 * Used by a first pass to generate optimal Huffman tables. Call initialize() before the
+	 * actual encoding pass to reset the DC predictions.
+	 * 
+	 * @param ZZ quantized coefficients of a block in natural order
+	 * @param component_id component index used for DC prediction
+	 * @param DC_freq DC symbol frequencies to update
+	 * @param AC_freq AC symbol frequencies to update
+	 */
+	public void gatherStatistics(int[] ZZ, int component_id, int[] DC_freq, int[] AC_freq) {
+		int temp, k, r = 0;
+		// The DC part
+		DC_freq[CSIZE(ZZ[0] - PREDICTION[component_id])]++;
+		PREDICTION[component_id] = ZZ[0];
+		// The AC coefficients
+		for(k = 1; k < 64; k++) {
+			if ((temp = ZZ[ZIGZAG_TRAVERSE_ORDER[k]]) == 0) {
+				r++;
+			} else {
+				while (r > 15) {
+					AC_freq[0xF0]++;
+					r -= 16;
+				}
+				AC_freq[(r << 4) + CSIZE(temp)]++;
+				r = 0;
+			}
+		}
+		
+		if (r > 0) {
+			AC_freq[0]++;
+		}
+	}
+	
 	public void finish() throws Exception {
 		// Cleanup
 		if(extraFlush) {
@@ -160,12 +194,13 @@ public class HuffmanEncoder implements ImageEncoder {
 	public void initialize() {
 		if(!useCustomTables)
 			createDefaultEncodingTables();
+		Arrays.fill(PREDICTION, 0);
    		empty_bits = 0x08;
    		totalBytes = 0;
    	}
 	
 	// Translate codes into bytes
-    private void send_code_to_buffer(int code, int codeLen)throws Exception {
+    protected void send_code_to_buffer(int code, int codeLen)throws Exception {
     	if(empty_bits == 0) {
     		if (++bufIndex >= buf_length)
 				flush_buf(buf_length);
@@ -223,7 +258,7 @@ public class HuffmanEncoder implements ImageEncoder {
 	}
 	
 	// Mapping SSSS or ZZ_K value to code size
-	private static int CSIZE(int ZZ_K) {
+	protected static int CSIZE(int ZZ_K) {
 		if(ZZ_K == 0)
 			return 0;
 		else if(ZZ_K >= -1 && ZZ_K <= 1)
@@ -39,6 +39,95 @@ public class HuffmanTbl {
 		this.HUFFVAL = HUFFVAL;
 	}
 	
+	/**
+	 * Generates an optimal Huffman table limited to 16 bits code length for the symbol frequencies
+	 * (CCITT Rec. T.81(1993 E) Annex K.2, Page 146, Figures K.1, K.2 and K.3)
+	 * 
+	 * @param freq frequencies of symbols 0 to 255, 0 for symbols never used
+	 * @return a HuffmanTbl with BITS and HUFFVAL set
+	 */
+	public static HuffmanTbl generateOptimalTable(int[] freq) {
+		long FREQ[] = new long[257];
+		int CODESIZE[] = new int[257];
+		int OTHERS[] = new int[257];
+		int bits[] = new int[33];
+		
+		for(int i = 0; i < 256; i++) {
+			FREQ[i] = freq[i];
+			OTHERS[i] = -1;
+		}
+		// Reserve one code point so that no code consists of all 1-bits
+		FREQ[256] = 1;
+		OTHERS[256] = -1;
+		// Figure K.1: find the two least frequent symbols (the larger value wins a tie) and merge them
+		while(true) {
+			int V1 = -1, V2 = -1;
+			for(int i = 0; i < 257; i++) {
+				if(FREQ[i] != 0 && (V1 < 0 || FREQ[i] <= FREQ[V1]))
+					V1 = i;
+			}
+			for(int i = 0; i < 257; i++) {
+				if(FREQ[i] != 0 && i != V1 && (V2 < 0 || FREQ[i] <= FREQ[V2]))
+					V2 = i;
+			}
+			if(V2 < 0) break;
+			FREQ[V1] += FREQ[V2];
+			FREQ[V2] = 0;
+			CODESIZE[V1]++;
+			while(OTHERS[V1] >= 0) {
+				V1 = OTHERS[V1];
+				CODESIZE[V1]++;
+			}
+			OTHERS[V1] = V2;
+			CODESIZE[V2]++;
+			while(OTHERS[V2] >= 0) {
+				V2 = OTHERS[V2];
+				CODESIZE[V2]++;
+			}
+		}
+		// Figure K.2: count the number of codes of each size
+		for(int i = 0; i < 257; i++) {
+			if(CODESIZE[i] != 0) {
+				if(CODESIZE[i] > 32)
+					throw new IllegalStateException("Huffman code size table overflow");
+				bits[CODESIZE[i]]++;
+			}
+		}
+		// Figure K.3: adjust the code lengths so that none is longer than 16 bits
+		for(int i = 32; i > 16; i--) {
+			while(bits[i] > 0) {
+				int j = i - 2;
+				while(bits[j] == 0) j--;
+				bits[i] -= 2;
+				bits[i - 1]++;
+				bits[j + 1] += 2;
+				bits[j]--;
+			}
+		}
+		// Remove the reserved code point from the longest codes
+		int i = 16;
+		while(bits[i] == 0) i--;
+		bits[i]--;
+		
+		byte[] BITS = new byte[16];
+		int numOfCodes = 0;
+		for(i = 1; i <= 16; i++) {
+			BITS[i - 1] = (byte)bits[i];
+			numOfCodes += bits[i];
+		}
+		// Sort the symbols by code size (Figure K.4)
+		byte[] HUFFVAL = new byte[numOfCodes];
+		int k = 0;
+		for(i = 1; i <= 32; i++) {
+			for(int j = 0; j < 256; j++) {
+				if(CODESIZE[j] == i)
+					HUFFVAL[k++] = (byte)j;
+			}
+		}
+		
+		return new HuffmanTbl(BITS, HUFFVAL);
+	}
+	
 	// Generation of table of Huffman codes (CCITT Rec. T.81(1993 E) Annex C, Page 52, Figure C.2) 
 	private void generate_code_table() {
 		int k = 0, code = 0;
@@ -103,6 +192,10 @@ public class HuffmanTbl {
 		order_codes();
 	}
 	
+	public byte[] getBitsTable() {
+		return BITS.clone();
+	}
+	
 	public int[] getCodeTable() {
 		return HUFFCODE.clone();
 	}
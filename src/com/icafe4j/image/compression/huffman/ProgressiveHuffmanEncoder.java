@@ -0,0 +1,239 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image.compression.huffman;
+
+import java.io.OutputStream;
+
+/**
+ * Huffman encoder for the scans of a progressive JPEG (CCITT Rec. T.81(1993 E) Annex G.1.2).
+ * <p>
+ * Progressive AC scans use EOB run symbols not found in the default tables, so
+ * the tables are always generated for each scan: encode the scan once after
+ * calling setStatistics(), then set the encoding tables and encode again.
+ * Call initialize() before each pass and finish() at the end of each scan.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class ProgressiveHuffmanEncoder extends HuffmanEncoder {
+	// Maximum number of buffered correction bits before the EOB run is forced out
+	private static final int MAX_CORR_BITS = 1000;
+
+	private int EOBRUN;
+	private int BE; // Number of correction bits buffered for the EOB run
+	private byte[] correctionBits = new byte[MAX_CORR_BITS];
+	private int[] absValues = new int[64];
+	// The AC component of the current scan whose table codes the EOB runs
+	private int acComponent;
+
+	// Symbol frequencies indexed by component, null unless gathering statistics
+	private int[][] DC_freq;
+	private int[][] AC_freq;
+
+	public ProgressiveHuffmanEncoder(OutputStream os, int buf_length) {
+		super(os, buf_length);
+	}
+
+	// Emit the pending EOB run followed by the correction bits buffered for it
+	private void emitEOBRun() throws Exception {
+		if(EOBRUN > 0) {
+			int temp = EOBRUN;
+			int nbits = 0;
+			while((temp >>= 1) != 0) nbits++;
+			emitSymbol(AC_freq, AC_EHUFCO, AC_EHUFSI, acComponent, nbits << 4);
+			if(nbits != 0)
+				emitBits(EOBRUN, nbits);
+			EOBRUN = 0;
+			emitCorrectionBits(0, BE);
+			BE = 0;
+		}
+	}
+
+	private void emitBits(int code, int codeLen) throws Exception {
+		if(DC_freq == null)
+			send_code_to_buffer(code, codeLen);
+	}
+
+	private void emitCorrectionBits(int offset, int len) throws Exception {
+		if(DC_freq == null) {
+			for(int i = offset; i < offset + len; i++)
+				send_code_to_buffer(correctionBits[i], 1);
+		}
+	}
+
+	private void emitSymbol(int[][] freq, int[][] EHUFCO, int[][] EHUFSI, int component_id, int symbol) throws Exception {
+		if(freq != null)
+			freq[component_id][symbol]++;
+		else
+			send_code_to_buffer(EHUFCO[component_id][symbol], EHUFSI[component_id][symbol]);
+	}
+
+	/**
+	 * Encodes the spectral band Ss to Se of the first AC scan of a block (Figure G.3)
+	 *
+	 * @param ZZ quantized coefficients of a block in natural order
+	 * @param component_id component index
+	 */
+	public void encodeACFirst(int[] ZZ, int component_id, int Ss, int Se, int Al) throws Exception {
+		int temp, temp2, nbits, r = 0;
+		acComponent = component_id;
+
+		for(int k = Ss; k <= Se; k++) {
+			if((temp = ZZ[ZIGZAG_TRAVERSE_ORDER[k]]) == 0) {
+				r++;
+				continue;
+			}
+			// Point transform rounds toward zero for both signs
+			if(temp < 0) {
+				temp = (-temp) >> Al;
+				temp2 = ~temp;
+			} else {
+				temp >>= Al;
+				temp2 = temp;
+			}
+			if(temp == 0) {
+				r++;
+				continue;
+			}
+			emitEOBRun();
+			while(r > 15) {
+				emitSymbol(AC_freq, AC_EHUFCO, AC_EHUFSI, component_id, 0xF0);
+				r -= 16;
+			}
+			nbits = CSIZE(temp);
+			emitSymbol(AC_freq, AC_EHUFCO, AC_EHUFSI, component_id, (r << 4) + nbits);
+			emitBits(temp2, nbits);
+			r = 0;
+		}
+
+		if(r > 0) {
+			if(++EOBRUN == 0x7FFF)
+				emitEOBRun();
+		}
+	}
+
+	/**
+	 * Encodes the spectral band Ss to Se of a refining AC scan of a block (Figure G.7)
+	 *
+	 * @param ZZ quantized coefficients of a block in natural order
+	 * @param component_id component index
+	 */
+	public void encodeACRefine(int[] ZZ, int component_id, int Ss, int Se, int Al) throws Exception {
+		int temp, r = 0, EOB = 0;
+		acComponent = component_id;
+		// Coefficients becoming nonzero in this scan have absolute value 1. Find the last one.
+		for(int k = Ss; k <= Se; k++) {
+			temp = ZZ[ZIGZAG_TRAVERSE_ORDER[k]];
+			if(temp < 0) temp = -temp;
+			temp >>= Al;
+			absValues[k] = temp;
+			if(temp == 1) EOB = k;
+		}
+		// Correction bits of this block are buffered after the ones of the EOB run
+		int BR = 0;
+		int BR_offset = BE;
+
+		for(int k = Ss; k <= Se; k++) {
+			if((temp = absValues[k]) == 0) {
+				r++;
+				continue;
+			}
+			// Emit any required ZRLs, but not if they can be folded into EOB
+			while(r > 15 && k <= EOB) {
+				emitEOBRun();
+				emitSymbol(AC_freq, AC_EHUFCO, AC_EHUFSI, component_id, 0xF0);
+				r -= 16;
+				emitCorrectionBits(BR_offset, BR);
+				BR_offset = 0;
+				BR = 0;
+			}
+			// A coefficient nonzero in a previous scan only needs a correction bit
+			if(temp > 1) {
+				correctionBits[BR_offset + BR++] = (byte)(temp & 1);
+				continue;
+			}
+			emitEOBRun();
+			emitSymbol(AC_freq, AC_EHUFCO, AC_EHUFSI, component_id, (r << 4) + 1);
+			emitBits(ZZ[ZIGZAG_TRAVERSE_ORDER[k]] < 0 ? 0 : 1, 1);
+			emitCorrectionBits(BR_offset, BR);
+			BR_offset = 0;
+			BR = 0;
+			r = 0;
+		}
+
+		if(r > 0 || BR > 0) {
+			EOBRUN++;
+			BE += BR;
+			// Don't let the buffered correction bits overflow
+			if(EOBRUN == 0x7FFF || BE > MAX_CORR_BITS - 64 + 1)
+				emitEOBRun();
+		}
+	}
+
+	/**
+	 * Encodes the DC coefficient of the first DC scan of a block
+	 *
+	 * @param ZZ quantized coefficients of a block in natural order
+	 * @param component_id component index
+	 */
+	public void encodeDCFirst(int[] ZZ, int component_id, int Al) throws Exception {
+		// Arithmetic shift for the point transform of DC
+		int dc = ZZ[0] >> Al;
+		int temp = dc - PREDICTION[component_id];
+		PREDICTION[component_id] = dc;
+		int ssss = CSIZE(temp);
+		if(temp < 0) temp--;
+		emitSymbol(DC_freq, DC_EHUFCO, DC_EHUFSI, component_id, ssss);
+		if(ssss != 0)
+			emitBits(temp, ssss);
+	}
+
+	/**
+	 * Sends the next bit of the DC coefficient of a block in a refining DC scan
+	 *
+	 * @param ZZ quantized coefficients of a block in natural order
+	 */
+	public void encodeDCRefine(int[] ZZ, int Al) throws Exception {
+		emitBits((ZZ[0] >> Al) & 1, 1);
+	}
+
+	/**
+	 * Emits the pending EOB run if any and flushes the scan data
+	 */
+	@Override
+	public void finish() throws Exception {
+		emitEOBRun();
+		if(DC_freq == null)
+			super.finish();
+	}
+
+	/**
+	 * Starts a new pass: resets the DC predictions and the EOB run
+	 */
+	@Override
+	public void initialize() {
+		super.initialize();
+		EOBRUN = 0;
+		BE = 0;
+	}
+
+	/**
+	 * Counts the symbols instead of writing them until set to null
+	 *
+	 * @param DC_freq DC symbol frequencies indexed by component, components sharing a table share the array
+	 * @param AC_freq AC symbol frequencies indexed by component, components sharing a table share the array
+	 */
+	public void setStatistics(int[][] DC_freq, int[][] AC_freq) {
+		this.DC_freq = DC_freq;
+		this.AC_freq = AC_freq;
+	}
+}
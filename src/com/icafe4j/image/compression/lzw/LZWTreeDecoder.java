@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =======    ============================================================
+ * WY    18Oct2026  Added reset() to reuse the decoder for another GIF image
  * WY    14Oct2014  Revised to show specification violation TIFF LZW compression
  *                  which actually falls back to GIF LZW compression completely
  */
@@ -98,6 +99,22 @@ public class LZWTreeDecoder implements ImageDecoder {
 	private static final int MAX_CODE = (1<<12);
 	
 	public LZWTreeDecoder(InputStream is, int min_code_size) {
+		reset(is, min_code_size);
+	}
+	
+	public LZWTreeDecoder(int min_code_size, boolean isTIFF) {
+		this(null, min_code_size);
+		this.isTIFF = isTIFF;
+	}
+	
+	/**
+	 * Resets the decoder to decode another GIF image from the InputStream
+	 * keeping the string table arrays.
+	 * 
+	 * @param is InputStream positioned at the first image data sub-block
+	 * @param min_code_size LZW minimum code size
+	 */
+	public void reset(InputStream is, int min_code_size) {
 		if(min_code_size < 2 || min_code_size > 12)
 			   throw new IllegalArgumentException("invalid min_code_size: " + min_code_size);
 		this.is = is;
@@ -106,15 +123,18 @@ public class LZWTreeDecoder implements ImageDecoder {
 	   	endOfImage = clearCode+1;
 	   	first_code_index = endOfImage+1;
 	   	isCodeBigEndian = true;
+	   	bits_remain = 0;
+	   	bytes_available = 0;
+	   	temp_byte = 0;
+	   	bufIndex = 0;
+	   	oldcode = 0;
+	   	code = 0;
+	   	first_char = 0;
+	   	leftOver = 0;
 	   	// Reset string table
 	   	clearStringTable();
 	}
 	
-	public LZWTreeDecoder(int min_code_size, boolean isTIFF) {
-		this(null, min_code_size);
-		this.isTIFF = isTIFF;
-	}
-	
 	private void clearStringTable() {
 	   	// Reset string table
 	   	codeLen = min_code_size+1;
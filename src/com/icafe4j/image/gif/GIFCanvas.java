@@ -0,0 +1,191 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image.gif;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+/**
+ * Logical screen to composite animated GIF frames upon, one frame after another.
+ * The same ARGB pixel array is reused for all the frames, so the memory used
+ * doesn't grow with the number of frames. The disposal method of a frame is
+ * applied right before the next frame is drawn, which leaves the canvas showing
+ * the animation as it looks when the last frame drawn is displayed.
+ * <p>
+ * One way to go through the composited frames of an animated GIF:
+ * <pre>
+ * {@code
+ * GIFReader reader = new GIFReader();
+ * Iterator<GIFFrame> frames = reader.frameIterator(is);
+ * GIFCanvas canvas = null;
+ * while(frames.hasNext()) {
+ * 	GIFFrame frame = frames.next();
+ * 	if(canvas == null)
+ * 		canvas = new GIFCanvas(reader.getLogicalScreenWidth(), reader.getLogicalScreenHeight());
+ * 	canvas.draw(frame);
+ * 	// Use canvas.getImage() or canvas.getPixels() before drawing the next frame
+ * }
+ * }
+ * </pre>
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class GIFCanvas {
+	private int width;
+	private int height;
+	private BufferedImage image;
+	private int[] pixels;
+	private int[] backup; // Area covered by the last frame for DISPOSAL_RESTORE_TO_PREVIOUS
+	// Disposal pending for the last frame drawn
+	private int disposalMethod = GIFFrame.DISPOSAL_UNSPECIFIED;
+	private int disposalX;
+	private int disposalY;
+	private int disposalWidth;
+	private int disposalHeight;
+
+	public GIFCanvas(int width, int height) {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid canvas size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		this.pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+
+	// Applies the disposal method of the last frame drawn
+	private void dispose() {
+		switch(disposalMethod) {
+			case GIFFrame.DISPOSAL_UNSPECIFIED:
+			case GIFFrame.DISPOSAL_LEAVE_AS_IS:
+				break;
+			case GIFFrame.DISPOSAL_RESTORE_TO_BACKGROUND:
+				for(int y = disposalY, offset = disposalY*width + disposalX; y < disposalY + disposalHeight; y++, offset += width)
+					Arrays.fill(pixels, offset, offset + disposalWidth, 0);
+				break;
+			case GIFFrame.DISPOSAL_RESTORE_TO_PREVIOUS:
+				for(int i = 0, offset = disposalY*width + disposalX; i < disposalHeight; i++, offset += width)
+					System.arraycopy(backup, i*disposalWidth, pixels, offset, disposalWidth);
+				break;
+			default: // To be defined - start over
+				Arrays.fill(pixels, 0);
+		}
+		disposalMethod = GIFFrame.DISPOSAL_UNSPECIFIED;
+	}
+
+	/**
+	 * Applies the disposal method of the previous frame and draws the frame at
+	 * its position upon the canvas. The part of the frame outside of the canvas
+	 * is clipped.
+	 *
+	 * @param frame GIFFrame to draw
+	 */
+	public void draw(GIFFrame frame) {
+		dispose();
+
+		BufferedImage bi = frame.getFrame();
+		int left = frame.getLeftPosition();
+		int top = frame.getTopPosition();
+		int w = Math.min(left + bi.getWidth(), width) - left;
+		int h = Math.min(top + bi.getHeight(), height) - top;
+
+		if(w <= 0 || h <= 0) return;
+
+		if(frame.getDisposalMethod() == GIFFrame.DISPOSAL_RESTORE_TO_PREVIOUS) {
+			if(backup == null || backup.length < w*h)
+				backup = new int[w*h];
+			for(int i = 0, offset = top*width + left; i < h; i++, offset += width)
+				System.arraycopy(pixels, offset, backup, i*w, w);
+		}
+
+		if(bi.getColorModel() instanceof IndexColorModel && bi.getRaster().getNumBands() == 1) {
+			// Indexed frames as created by GIFReader, transparent pixels are skipped
+			IndexColorModel cm = (IndexColorModel)bi.getColorModel();
+			int mapSize = cm.getMapSize();
+			int[] rgbs = new int[mapSize];
+			cm.getRGBs(rgbs);
+			Raster raster = bi.getRaster();
+			int[] row = new int[w];
+			for(int y = 0, offset = top*width + left; y < h; y++, offset += width) {
+				raster.getSamples(0, y, w, 1, 0, row);
+				for(int x = 0; x < w; x++) {
+					int index = row[x];
+					if(index < mapSize && (rgbs[index]>>>24) != 0)
+						pixels[offset + x] = rgbs[index]|0xff000000;
+				}
+			}
+		} else {
+			int[] row = new int[w];
+			for(int y = 0, offset = top*width + left; y < h; y++, offset += width) {
+				bi.getRGB(0, y, w, 1, row, 0, w);
+				for(int x = 0; x < w; x++)
+					pixels[offset + x] = srcOver(row[x], pixels[offset + x]);
+			}
+		}
+
+		disposalMethod = frame.getDisposalMethod();
+		disposalX = left;
+		disposalY = top;
+		disposalWidth = w;
+		disposalHeight = h;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return a TYPE_INT_ARGB BufferedImage backed by the canvas pixels. It changes
+	 *         with each frame drawn.
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the canvas pixels in ARGB format, row by row. The array is reused for all the frames.
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Clears the canvas to start over with a new animation
+	 */
+	public void reset() {
+		Arrays.fill(pixels, 0);
+		disposalMethod = GIFFrame.DISPOSAL_UNSPECIFIED;
+	}
+
+	// Composites a non-premultiplied ARGB source pixel over the destination pixel
+	private static int srcOver(int src, int dst) {
+		int srcAlpha = src>>>24;
+		if(srcAlpha == 0xff) return src;
+		if(srcAlpha == 0) return dst;
+		int dstAlpha = ((dst>>>24)*(0xff - srcAlpha) + 127)/0xff;
+		int alpha = srcAlpha + dstAlpha;
+		int result = alpha<<24;
+		for(int shift = 0; shift < 24; shift += 8) {
+			int color = (((src>>shift)&0xff)*srcAlpha + ((dst>>shift)&0xff)*dstAlpha + (alpha>>1))/alpha;
+			result |= color<<shift;
+		}
+
+		return result;
+	}
+}
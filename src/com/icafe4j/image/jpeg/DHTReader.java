@@ -55,14 +55,16 @@ public class DHTReader implements Reader {
 	public void read() throws IOException {
 		//
 		byte[] data = segment.getData();		
-		int len = segment.getLength();
-		len -= 2;//
+		int len = Math.min(segment.getLength() - 2, data.length);
 		
 		int offset = 0;
 		
 		while (len > 0)
 		{
-			int HT_info = data[offset++];
+			if(len < 17)
+				throw new IOException("DHT segment too short!");
+			
+			int HT_info = data[offset++]&0xff;
 			
 			int HT_class = (HT_info>>4)&0x01;// 0=DC table, 1=AC table
 			int HT_destination_id = (HT_info&0x0f);// Huffman tables number
@@ -77,11 +79,8 @@ public class DHTReader implements Reader {
 				count += (bits[i]&0xff);
 			}
 						
-            if (count > 256)
-			{
-				LOGGER.error("invalid huffman code count!");			
-				return;
-			}
+            if (count > 256 || 17 + count > len)
+				throw new IOException("Invalid Huffman code count: " + count);
             
             offset += 16;
             
@@ -46,8 +46,7 @@ public class DQTReader implements Reader {
 	public void read() throws IOException {
 		//
 		byte[] data = segment.getData();		
-		int len = segment.getLength();
-		len -= 2;//
+		int len = Math.min(segment.getLength() - 2, data.length);
 		
 		int offset = 0;
 		
@@ -55,11 +54,15 @@ public class DQTReader implements Reader {
 		  
 		while(len > 0)
 		{
-			int QT_info = data[offset++];
+			int QT_info = data[offset++]&0xff;
 			len--;
 		    int QT_precision = (QT_info>>4)&0x0f;
 		    int QT_index=(QT_info&0x0f);
+		    if(QT_precision > 1)
+		    	throw new IOException("Invalid quantization table precision: " + QT_precision);
 		    int numOfValues = 64 << QT_precision;
+		    if(numOfValues > len)
+		    	throw new IOException("DQT segment too short!");
 		    
 		    int[] out = new int[64];
 		   
@@ -71,7 +74,7 @@ public class DQTReader implements Reader {
 			    }
 			} else { // 16 bit big-endian for precision value of 1								
 				for (int j = 0; j < 64; j++) {
-					out[j] = (IOUtils.readUnsignedShortMM(data, offset + de_zig_zag_order[j]<<1));	
+					out[j] = (IOUtils.readUnsignedShortMM(data, offset + (de_zig_zag_order[j]<<1)));	
 				}				
 			}
 		   	
@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =======    =====================================================================
+ * WY    18Oct2026  Stop reading metadata at the first SOS
  * WY    06Apr2018  Added extractThumbnails(InputStream)
  * WY    02Mar2017  Added insertMetadata(Collection<Metadata>, InputStream, OutputStream)
  * WY    13Feb2017  Fixed bug with APP1 segment length too small
@@ -1677,7 +1678,7 @@ public class JPEGTweaker {
 		Map<MetadataType, Metadata> metadataMap = new HashMap<MetadataType, Metadata>();
 		Map<String, Thumbnail> thumbnails = new HashMap<String, Thumbnail>();
 		// Need to wrap the input stream with a BufferedInputStream to
-		// speed up reading SOS
+		// speed up reading the segment headers
 		if(!(is instanceof BufferedInputStream))
 			is = new BufferedInputStream(is);
 		
@@ -1773,10 +1774,11 @@ public class JPEGTweaker {
 						readers.add(readSOF(is, emarker));
 						marker = IOUtils.readShortMM(is);
 						break;
-					case SOS:
+					case SOS: // Metadata comes before the image data, no need to read the scans
 						SOFReader reader = readers.get(readers.size() - 1);
-						marker = readSOS(is, reader);
+						readSOS(is, reader);
 						LOGGER.debug("\n{}", sofToString(reader));
+						finished = true;
 						break;
 					case JPG: // JPG and JPGn shouldn't appear in the image.
 					case JPG0:
@@ -1936,55 +1938,14 @@ public class JPEGTweaker {
 		return reader;
 	}	
 	
-	// This method is very slow if not wrapped in some kind of cache stream but it works for multiple
-	// SOSs in case of progressive JPEG
-	private static short readSOS(InputStream is, SOFReader sofReader) throws IOException {
+	// Reads the SOS segment header, the scan data following it are left alone
+	private static void readSOS(InputStream is, SOFReader sofReader) throws IOException {
 		int len = IOUtils.readUnsignedShortMM(is);
 		byte buf[] = new byte[len - 2];
 		IOUtils.readFully(is, buf);
 		
 		Segment segment = new Segment(Marker.SOS, len, buf);
 		new SOSReader(segment, sofReader);
-		
-		// Actual image data follow.
-		int nextByte = 0;
-		short marker = 0;	
-		
-		while((nextByte = IOUtils.read(is)) != -1) {
-			if(nextByte == 0xff) {
-				nextByte = IOUtils.read(is);
-				
-				if (nextByte == -1) {
-					return Marker.EOI.getValue();
-				}								
-				
-				if (nextByte != 0x00) {
-					marker = (short)((0xff<<8)|nextByte);
-					
-					switch (Marker.fromShort(marker)) {										
-						case RST0:  
-						case RST1:
-						case RST2:
-						case RST3:
-						case RST4:
-						case RST5:
-						case RST6:
-						case RST7:
-							continue;
-						default:											
-					}
-					break;
-				}
-			}
-		}
-		
-		if (nextByte == -1) {
-			return Marker.EOI.getValue();
-		}
-
-		if(Marker.fromShort(marker) == Marker.UNKNOWN) return Marker.EOI.getValue();
-
-		return marker;
 	}
 	
 	// Remove APPn segment
@@ -0,0 +1,123 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image.jpeg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One scan of a progressive JPEG scan script: the components included, the spectral
+ * selection Ss to Se and the successive approximation bit positions Ah and Al.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class ProgressiveScan {
+	//
+	private int[] components;
+	private int Ss;
+	private int Se;
+	private int Ah;
+	private int Al;
+
+	/**
+	 * @param components zero based indices of the components in the frame, in frame order
+	 * @param Ss start of spectral selection, 0 for DC scans
+	 * @param Se end of spectral selection, 0 for DC scans
+	 * @param Ah successive approximation bit position high, 0 for the first scan of a band
+	 * @param Al successive approximation bit position low or point transform
+	 */
+	public ProgressiveScan(int[] components, int Ss, int Se, int Ah, int Al) {
+		if(components == null || components.length < 1 || components.length > 4)
+			throw new IllegalArgumentException("A scan must include 1 to 4 components");
+		for(int i = 1; i < components.length; i++) {
+			if(components[i] <= components[i - 1])
+				throw new IllegalArgumentException("Scan components must be in frame order");
+		}
+		if(Ss < 0 || Se > 63 || Ss > Se || (Ss == 0 && Se != 0))
+			throw new IllegalArgumentException("Invalid spectral selection: " + Ss + "-" + Se);
+		if(Ss > 0 && components.length != 1)
+			throw new IllegalArgumentException("AC scans must include only one component");
+		if(Al < 0 || Al > 13 || (Ah != 0 && Ah != Al + 1))
+			throw new IllegalArgumentException("Invalid successive approximation: Ah = " + Ah + ", Al = " + Al);
+		this.components = components.clone();
+		this.Ss = Ss;
+		this.Se = Se;
+		this.Ah = Ah;
+		this.Al = Al;
+	}
+
+	/**
+	 * Creates a scan script like the one used by the IJG library which sends the DC
+	 * and the low frequency AC coefficients of all the components first.
+	 *
+	 * @param numOfComponents number of components in the frame
+	 * @return a list of ProgressiveScan
+	 */
+	public static List<ProgressiveScan> getDefaultScanScript(int numOfComponents) {
+		List<ProgressiveScan> script = new ArrayList<ProgressiveScan>();
+		int[] all = new int[numOfComponents];
+		for(int i = 0; i < numOfComponents; i++)
+			all[i] = i;
+		if(numOfComponents == 3) { // Most likely YCbCr, send the luminance first
+			script.add(new ProgressiveScan(all, 0, 0, 0, 1));
+			script.add(new ProgressiveScan(new int[] {0}, 1, 5, 0, 2));
+			script.add(new ProgressiveScan(new int[] {2}, 1, 63, 0, 1));
+			script.add(new ProgressiveScan(new int[] {1}, 1, 63, 0, 1));
+			script.add(new ProgressiveScan(new int[] {0}, 6, 63, 0, 2));
+			script.add(new ProgressiveScan(new int[] {0}, 1, 63, 2, 1));
+			script.add(new ProgressiveScan(all, 0, 0, 1, 0));
+			script.add(new ProgressiveScan(new int[] {2}, 1, 63, 1, 0));
+			script.add(new ProgressiveScan(new int[] {1}, 1, 63, 1, 0));
+			script.add(new ProgressiveScan(new int[] {0}, 1, 63, 1, 0));
+		} else {
+			script.add(new ProgressiveScan(all, 0, 0, 0, 1));
+			for(int i = 0; i < numOfComponents; i++)
+				script.add(new ProgressiveScan(new int[] {i}, 1, 5, 0, 2));
+			for(int i = 0; i < numOfComponents; i++)
+				script.add(new ProgressiveScan(new int[] {i}, 6, 63, 0, 2));
+			for(int i = 0; i < numOfComponents; i++)
+				script.add(new ProgressiveScan(new int[] {i}, 1, 63, 2, 1));
+			script.add(new ProgressiveScan(all, 0, 0, 1, 0));
+			for(int i = 0; i < numOfComponents; i++)
+				script.add(new ProgressiveScan(new int[] {i}, 1, 63, 1, 0));
+		}
+		return script;
+	}
+
+	public int getAh() {
+		return Ah;
+	}
+
+	public int getAl() {
+		return Al;
+	}
+
+	public int[] getComponents() {
+		return components.clone();
+	}
+
+	public int getSe() {
+		return Se;
+	}
+
+	public int getSs() {
+		return Ss;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Components");
+		for(int component : components)
+			sb.append(" ").append(component);
+		return sb.append(": ").append(Ss).append("-").append(Se).append(", Ah = ").append(Ah).append(", Al = ").append(Al).toString();
+	}
+}
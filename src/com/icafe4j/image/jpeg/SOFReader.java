@@ -75,15 +75,19 @@ public class SOFReader implements Reader {
 	public void read() throws IOException {
 		//
 		byte[] data = segment.getData();
+		if(data.length < 6)
+			throw new IOException("SOF segment too short!");
 		// This is in bits/sample, usually 8, (12 and 16 not supported by most software). 
-		precision = data[0]; // Usually 8, for baseline JPEG
+		precision = data[0]&0xff; // Usually 8, for baseline JPEG
 		// Image frame width and height
 		frameHeight = IOUtils.readUnsignedShortMM(data, 1);
 		frameWidth = IOUtils.readUnsignedShortMM(data, 3);
 		 // Number of components
 		// Usually 1 = grey scaled, 3 = color YCbCr or YIQ, 4 = color CMYK 
         // JFIF uses either 1 component (Y, greyscaled) or 3 components (YCbCr, sometimes called YUV, color).
-		numOfComponents = data[5];
+		numOfComponents = data[5]&0xff;
+		if(data.length < 6 + 3*numOfComponents)
+			throw new IOException("SOF segment too short for " + numOfComponents + " components!");
 		components = new Component[numOfComponents];
 	
 		int offset = 6;
@@ -12,6 +12,8 @@
 package com.icafe4j.image.jpeg;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.icafe4j.util.Reader;
 
@@ -19,6 +21,8 @@ public class SOSReader implements Reader {
 	//
 	private Segment segment;
 	private SOFReader reader;
+	// Frame components included in this scan, in the order of the scan
+	private Component[] components;
 	
 	int Ss, Se, Ah_Al, Ah, Al;
 	
@@ -48,8 +52,15 @@ public class SOSReader implements Reader {
 		byte[] data = segment.getData();		
 		int count = 0;
 		
-		byte numOfComponents = data[count++];
+		if(data.length < 1)
+			throw new IOException("SOS segment too short!");
+		
+		int numOfComponents = data[count++]&0xff;
+		if(data.length < 1 + 2*numOfComponents + 3)
+			throw new IOException("SOS segment too short for " + numOfComponents + " components!");
+		
 		Component[] components = reader.getComponents();		
+		List<Component> scanComponents = new ArrayList<Component>(numOfComponents);
 		
 		for(int i = 0; i < numOfComponents; i++) {
 			byte id = data[count++];
@@ -59,22 +70,61 @@ public class SOSReader implements Reader {
 				if(component.getId() == id) {					
 					component.setACTableNumber((byte)(tbl_no&0x0f));
 					component.setDCTableNumber((byte)((tbl_no>>4)&0x0f));
+					scanComponents.add(component);
 					break;
 				}
 			}
 		}
 		
+		this.components = scanComponents.toArray(new Component[scanComponents.size()]);
+		
 		//Start of spectral or predictor selection
-		Ss = data[count++];
+		Ss = data[count++]&0xff;
 	    //End of spectral selection
-		Se = data[count++];
+		Se = data[count++]&0xff;
 		//Ah: Successive approximation bit position high
 		//Al: Successive approximation bit position low or point transform
-		Ah_Al = data[count++];
+		Ah_Al = data[count++]&0xff;
 	    Ah = (Ah_Al>>4)&0x0f;
 		Al = Ah_Al&0x0f;
 	}
 	
+	/**
+	 * @return the frame components included in this scan, in the order of the scan.
+	 *         The components are shared with the SOFReader.
+	 */
+	public Component[] getComponents() {
+		return components.clone();
+	}
+	
+	/**
+	 * @return successive approximation bit position high
+	 */
+	public int getAh() {
+		return Ah;
+	}
+	
+	/**
+	 * @return successive approximation bit position low or point transform
+	 */
+	public int getAl() {
+		return Al;
+	}
+	
+	/**
+	 * @return end of spectral selection
+	 */
+	public int getSe() {
+		return Se;
+	}
+	
+	/**
+	 * @return start of spectral selection or predictor selection
+	 */
+	public int getSs() {
+		return Ss;
+	}
+	
 	public void setSOFReader(SOFReader reader) {
 		this.reader = reader;
 	}
@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =========  =====================================================================
+ * WY    18Oct2026  Use a RandomAccessInputStream source directly for TIFF metadata and thumbnails
  * WY    07Apr2018  Added extractThumbnail(InputStream) to extract a single thumbnail
  * WY    06Apr2018  Added extractThumbnails(InputStream) to extract an array of thumbnails
  * WY    02Mar2017  Added insertMetadata(Collection<Metadata>, InputStream, OutputStream)
@@ -118,6 +119,10 @@ public abstract class Metadata implements MetadataReader, Iterable<MetadataEntry
 				thumbnails = JPEGTweaker.extractThumbnails(peekHeadInputStream);
 				break;
 			case TIFF:
+				if(is instanceof RandomAccessInputStream) { // No need to cache, read only what we need
+					thumbnails = TIFFTweaker.extractThumbnails((RandomAccessInputStream)is);
+					break;
+				}
 				RandomAccessInputStream randIS = new FileCacheRandomAccessInputStream(peekHeadInputStream);
 				thumbnails = TIFFTweaker.extractThumbnails(randIS);
 				randIS.shallowClose();
@@ -518,6 +523,10 @@ public abstract class Metadata implements MetadataReader, Iterable<MetadataEntry
 				metadataMap = JPEGTweaker.readMetadata(peekHeadInputStream);
 				break;
 			case TIFF:
+				if(is instanceof RandomAccessInputStream) { // No need to cache, read only what we need
+					metadataMap = TIFFTweaker.readMetadata((RandomAccessInputStream)is);
+					break;
+				}
 				RandomAccessInputStream randIS = new FileCacheRandomAccessInputStream(peekHeadInputStream);
 				metadataMap = TIFFTweaker.readMetadata(randIS);
 				randIS.shallowClose();
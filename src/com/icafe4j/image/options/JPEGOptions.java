@@ -11,7 +11,11 @@
 
 package com.icafe4j.image.options;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.icafe4j.image.ImageType;
+import com.icafe4j.image.jpeg.ProgressiveScan;
 import com.icafe4j.image.tiff.TiffFieldEnum.PhotoMetric;
 
 public class JPEGOptions extends ImageOptions {
@@ -26,11 +30,21 @@ public class JPEGOptions extends ImageOptions {
 	private int colorSpace = COLOR_SPACE_YCbCr;
 	private boolean isTiffFlavor;
 	private boolean writeICCProfile;
+	private boolean optimizeHuffman;
+	private boolean isProgressive;
+	private List<ProgressiveScan> scanScript;
+	// Luminance sampling factors, chrominance is always sampled at 1x1
+	private int horizontalSampling = 1;
+	private int verticalSampling = 1;
 	
 	public int getColorSpace() {
 		return colorSpace;
 	}
 	
+	public int getHorizontalSamplingFactor() {
+		return horizontalSampling;
+	}
+	
 	public ImageType getImageType() {
 		return ImageType.JPG;
 	}
@@ -39,14 +53,33 @@ public class JPEGOptions extends ImageOptions {
 		return quality;
 	}
 	
+	/**
+	 * @return the scan script set by setScanScript() or null to use the default one
+	 */
+	public List<ProgressiveScan> getScanScript() {
+		return scanScript;
+	}
+	
+	public int getVerticalSamplingFactor() {
+		return verticalSampling;
+	}
+	
 	public boolean includeTables() {
 		return includeTables;
 	}
 	
+	public boolean isProgressive() {
+		return isProgressive;
+	}
+	
 	public boolean isTiffFlavor() {
 		return isTiffFlavor;
 	}
 	
+	public boolean optimizeHuffman() {
+		return optimizeHuffman;
+	}
+	
 	public boolean writeICCProfile() {
 		return writeICCProfile;
 	}
@@ -59,10 +92,60 @@ public class JPEGOptions extends ImageOptions {
 		this.includeTables = includeTables;
 	}
 	
+	/**
+	 * Generates Huffman tables optimal for the image from a first pass over the
+	 * quantized coefficients instead of using the default tables. This usually
+	 * makes the image smaller at the cost of buffering all the coefficients.
+	 * Ignored if the tables are not included in the image.
+	 * 
+	 * @param optimizeHuffman true to generate optimized Huffman tables
+	 */
+	public void setOptimizeHuffman(boolean optimizeHuffman) {
+		this.optimizeHuffman = optimizeHuffman;
+	}
+	
+	/**
+	 * Writes progressive (SOF2) instead of baseline JPEG. Huffman tables are always
+	 * optimized for each scan. Ignored for TIFF flavor JPEG.
+	 * 
+	 * @param isProgressive true to write progressive JPEG
+	 */
+	public void setProgressive(boolean isProgressive) {
+		this.isProgressive = isProgressive;
+	}
+	
 	public void setQuality(int quality) {
 		this.quality = quality;
 	}
 	
+	/**
+	 * Sets the luminance sampling factors relative to the chrominance components
+	 * which are downsampled accordingly: 2x2 for 4:2:0, 2x1 for 4:2:2 and the
+	 * default 1x1 for no subsampling. Only applies to YCbCr color space and is
+	 * ignored for grayscale images and TIFF flavor JPEG.
+	 * 
+	 * @param horizontal horizontal sampling factor from 1 to 4
+	 * @param vertical vertical sampling factor from 1 to 4
+	 */
+	public void setSamplingFactors(int horizontal, int vertical) {
+		// A MCU may have at most 10 blocks: horizontal*vertical luminance blocks plus one for each chrominance
+		if(horizontal < 1 || horizontal > 4 || vertical < 1 || vertical > 4 || horizontal*vertical > 8)
+			throw new IllegalArgumentException("Invalid sampling factors: " + horizontal + "x" + vertical);
+		this.horizontalSampling = horizontal;
+		this.verticalSampling = vertical;
+	}
+	
+	/**
+	 * Sets the scans of progressive JPEG in the order to write them. The script is
+	 * expected to follow the progression rules of CCITT Rec. T.81 Annex G.1.1.1.1.
+	 * If not set, a script similar to the IJG library default is used.
+	 * 
+	 * @param scanScript list of ProgressiveScan or null for the default script
+	 */
+	public void setScanScript(List<ProgressiveScan> scanScript) {
+		this.scanScript = (scanScript == null) ? null : new ArrayList<ProgressiveScan>(scanScript);
+	}
+	
 	public void setTiffFlavor(boolean isTiffFlavor) {
 		this.isTiffFlavor = isTiffFlavor;
 	}
@@ -31,7 +31,9 @@ import org.slf4j.LoggerFactory;
 
 import com.icafe4j.image.bmp.BmpCompression;
 import com.icafe4j.image.options.BMPOptions;
+import com.icafe4j.io.HybridCacheRandomAccessInputStream;
 import com.icafe4j.io.IOUtils;
+import com.icafe4j.io.RandomAccessInputStream;
 import com.icafe4j.util.ArrayUtils;
 
 /** 
@@ -47,7 +49,7 @@ import com.icafe4j.util.ArrayUtils;
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.1 03/28/2008
  */
-public class BMPReader extends ImageReader {
+public class BMPReader extends ImageReader implements ImageRowReader {
 	private static final int END_OF_LINE = 0;
 	private static final int END_OF_BITMAP = 1;
 	private static final int DELTA = 2;
@@ -58,15 +60,133 @@ public class BMPReader extends ImageReader {
 	
 	BitmapHeader bitmapHeader;
 	
+	// Scan line reading
+	private RandomAccessInputStream rowIS;
+	private boolean ownRowIS;
+	private long rowDataOffset;
+	private int rowsRead;
+	private byte[] rowBuffer;
+	
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(BMPReader.class);
    
     public BufferedImage read(InputStream is) throws Exception {
+    	readBitmapHeader(is);
+    	computeSubsampling(width, height);
+    	// Uncompressed bitmaps are decoded row by row into the destination image if there is one
+    	BufferedImage destination = getDestination((width + xStep - 1)/xStep, (height + yStep - 1)/yStep, false);
+		switch (bitmapHeader.bitCount) {
+			case 1:
+				if(isSubsampling() || destination != null)
+					return readBitmapRows(is, destination);
+				return readIndexColorBitmap(is);
+			case 4:
+			case 8:
+				if(compression == BmpCompression.BI_RLE4.getValue() || compression == BmpCompression.BI_RLE8.getValue())
+					return subsample(readCompressedIndexColorBitmap(is), xStep, yStep);
+				if(isSubsampling() || destination != null)
+					return readBitmapRows(is, destination);
+		        return readIndexColorBitmap(is);				
+			case 16:
+				LOGGER.error("16 bit BMP, decoding not implemented!");
+		   		//read16bitTrueColorBitmap(is);
+                return null;
+			case 24:
+				if(isSubsampling() || destination != null)
+					return readBitmapRows(is, destination);
+				return read24bitTrueColorBitmap(is);
+   			case 32:
+   				if(isSubsampling() || destination != null)
+					return readBitmapRows(is, destination);
+				return read32bitTrueColorBitmap(is);
+			default:
+				LOGGER.error("Unsupported bitmap format!");
+				return null;
+		}
+    }
+    
+    /**
+     * Decodes the next scan lines of an uncompressed 1, 4, 8, 24 or 32 bit BMP.
+     * Bottom-up images are read backwards, one scan line at a time, so non
+     * random access input is cached while reading.
+     */
+    public int nextRows(int[] dst, int maxRows) throws Exception {
+    	if(rowIS == null) {
+    		if(rowBuffer == null)
+    			throw new IllegalStateException("readHeader() must be called before nextRows()");
+    		return -1;
+    	}
+    	if(dst.length < width)
+    		throw new IllegalArgumentException("Destination array can't hold a scan line of " + width + " pixels");
+    	int rows = Math.min(Math.min(maxRows, height - rowsRead), dst.length/width);
+    	
+    	for(int i = 0, offset = 0; i < rows; i++, offset += width) {
+    		int y = rowsRead + i;
+    		int line = (alignment == BMPOptions.ALIGN_BOTTOM_UP)? (height - 1 - y) : y;
+    		rowIS.seek(rowDataOffset + (long)line*bytePerScanLine);
+    		rowIS.readFully(rowBuffer);
+    		decodeRow(rowBuffer, dst, offset, 1);
+    	}
+    	
+    	rowsRead += rows;
+    	
+    	if(rowsRead >= height) closeRowStream();
+    	
+    	return rows;
+    }
+    
+    private void closeRowStream() throws IOException {
+    	if(rowIS != null && ownRowIS)
+    		rowIS.shallowClose();
+    	rowIS = null;
+    }
+    
+    @Override
+    public void reset() {
+    	super.reset();
+    	try {
+    		closeRowStream();
+    	} catch(IOException e) {
+    		LOGGER.error("Error closing the scan line stream", e);
+    	}
+    	rowBuffer = null;
+    }
+    
+    // Converts every step-th pixel of the scan line to ARGB
+    private void decodeRow(byte[] buffer, int[] dst, int offset, int step) {
+    	int numOfColors = (rgbColorPalette == null)? 0 : rgbColorPalette.length;
+    	int index = 0;
+    	
+    	switch(bitsPerPixel) {
+    		case 1:
+    		case 4:
+    		case 8:
+    			int mask = (1<<bitsPerPixel) - 1;
+    			int pixelsPerByte = 8/bitsPerPixel;
+    			for(int x = 0; x < width; x += step) {
+    				int shift = 8 - bitsPerPixel*(x%pixelsPerByte + 1);
+    				index = (buffer[x/pixelsPerByte]>>shift)&mask;
+    				dst[offset++] = (index < numOfColors)? rgbColorPalette[index] : 0xff000000;
+    			}
+    			break;
+    		case 24:
+    			for(int x = 0; x < width; x += step, index += 3*step)
+    				dst[offset++] = (0xff<<24)|((buffer[index+2]&0xff)<<16)|((buffer[index+1]&0xff)<<8)|(buffer[index]&0xff);
+    			break;
+    		case 32:
+    			for(int x = 0; x < width; x += step, index += 4*step)
+    				dst[offset++] = (0xff<<24)|((buffer[index+2]&0xff)<<16)|((buffer[index+1]&0xff)<<8)|(buffer[index]&0xff);
+    			break;
+    	}
+    }
+    
+    private void readBitmapHeader(InputStream is) throws Exception {
         bitmapHeader = new BitmapHeader();
 		bitmapHeader.readHeader(is);
 		width = bitmapHeader.imageWidth;
 		height = bitmapHeader.imageHeight;
 		compression = bitmapHeader.compression;
+		alignment = BMPOptions.ALIGN_BOTTOM_UP;
 		
 		if(height < 0) {
 			alignment = BMPOptions.ALIGN_TOP_DOWN;
@@ -86,26 +206,44 @@ public class BMPReader extends ImageReader {
 			// A different method to do the same thing as above!
 			//bytePerScanLine = (((bitPerWidth+31) & ~31 ) >> 3);
 		}
-		switch (bitmapHeader.bitCount) {
-			case 1:
-				return readIndexColorBitmap(is);
-			case 4:
-			case 8:
-				if(compression == BmpCompression.BI_RLE4.getValue() || compression == BmpCompression.BI_RLE8.getValue())
-					return readCompressedIndexColorBitmap(is);
-		        return readIndexColorBitmap(is);				
-			case 16:
-				LOGGER.error("16 bit BMP, decoding not implemented!");
-		   		//read16bitTrueColorBitmap(is);
-                return null;
-			case 24:
-				return read24bitTrueColorBitmap(is);
-   			case 32:
-				return read32bitTrueColorBitmap(is);
-			default:
-				LOGGER.error("Unsupported bitmap format!");
-				return null;
-		}
+    }
+    
+    public void readHeader(InputStream is) throws Exception {
+    	closeRowStream();
+    	rowBuffer = null;
+    	if(is instanceof RandomAccessInputStream) {
+    		rowIS = (RandomAccessInputStream)is;
+    		ownRowIS = false;
+    	} else {
+    		rowIS = new HybridCacheRandomAccessInputStream(is);
+    		ownRowIS = true;
+    	}
+    	long start = rowIS.getStreamPointer();
+    	
+    	readBitmapHeader(rowIS);
+    	
+    	if(compression == BmpCompression.BI_RLE4.getValue() || compression == BmpCompression.BI_RLE8.getValue()) {
+    		closeRowStream();
+    		throw new UnsupportedOperationException("RLE compressed BMP can not be read by scan lines");
+    	}
+    	
+    	switch(bitsPerPixel) {
+    		case 1:
+    		case 4:
+    		case 8:
+    			readPalette(rowIS);
+    			break;
+    		case 24:
+    		case 32:
+    			break;
+    		default:
+    			closeRowStream();
+    			throw new UnsupportedOperationException("Unsupported bitmap bit depth for reading by scan lines: " + bitsPerPixel);
+    	}
+    	
+    	rowDataOffset = start + bitmapHeader.dataOffSet;
+    	rowBuffer = new byte[bytePerScanLine];
+    	rowsRead = 0;
     }
     
 	private void readPalette(InputStream is) throws Exception {
@@ -252,6 +390,35 @@ public class BMPReader extends ImageReader {
 		return new BufferedImage(cm, raster, false, null);
     }
       
+    // Reads an uncompressed bitmap keeping every xStep-th pixel of every yStep-th scan line
+    // into image, or into a new TYPE_INT_RGB image if image is null
+    private BufferedImage readBitmapRows(InputStream is, BufferedImage image) throws Exception {
+    	if(bitsPerPixel <= 8)
+    		readPalette(is);
+    	else
+    		IOUtils.skipFully(is, bitmapHeader.dataOffSet - 54);
+    	
+    	int subWidth = (width + xStep - 1)/xStep;
+    	int subHeight = (height + yStep - 1)/yStep;
+    	if(image == null)
+    		image = new BufferedImage(subWidth, subHeight, BufferedImage.TYPE_INT_RGB);
+    	int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    	byte[] buffer = new byte[bytePerScanLine];
+    	
+    	for(int i = 0; i < height; i++) {
+    		int y = (alignment == BMPOptions.ALIGN_BOTTOM_UP)? (height - 1 - i) : i;
+    		if(y%yStep == 0) {
+    			IOUtils.readFully(is, buffer);
+    			decodeRow(buffer, pixels, (y/yStep)*subWidth, xStep);
+    		} else
+    			IOUtils.skipFully(is, bytePerScanLine);
+    	}
+    	
+    	is.close();
+    	
+    	return image;
+    }
+    
     private BufferedImage readCompressedIndexColorBitmap(InputStream is) throws Exception {
     	byte pixels[] = null;
       	
@@ -14,6 +14,9 @@
  *
  * Who   Date       Description
  * ====  =========  =========================================================
+ * WY    18Oct2026  Added reset() and reused the LZW decoder
+ * WY    18Oct2026  Added frameIterator() to read frames on demand
+ * WY    18Oct2026  Added source subsampling while decoding frames
  * WY    14Oct2015  Fixed bug with transparent color
  * WY    08Oct2015  Removed frame specific methods
  * WY    08Oct2015  Added getGIFFrames()
@@ -41,7 +44,9 @@ import java.awt.image.WritableRaster;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +90,7 @@ public class GIFReader extends ImageReader {
 	
 	// BufferedImage with the width and height of the logical screen to draw frames upon
 	private BufferedImage baseImage;
+	private LZWTreeDecoder decoder;
 	
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(GIFReader.class);
@@ -94,12 +100,53 @@ public class GIFReader extends ImageReader {
 		byte[] temp_ = new byte[dimension];
 
 		int min_code_size = is.read();// The length of the root
-		LZWTreeDecoder decoder = new LZWTreeDecoder(is, min_code_size);
+		LZWTreeDecoder decoder = getDecoder(is, min_code_size);
 		decoder.decode(temp_, 0, dimension);
 		
 		return temp_;
 	}
    
+	// Decodes the frame scan line by scan line keeping the pixels on the subsampling grid of the logical screen
+	private byte[] decodeLZWSubsampled(InputStream is, boolean interlaced) throws Exception {
+		int x0 = (xStep - image_x%xStep)%xStep;
+		int y0 = (yStep - image_y%yStep)%yStep;
+		// Keep the first column or row of a frame falling in between the grid
+		if(x0 >= width) x0 = 0;
+		if(y0 >= height) y0 = 0;
+		int subWidth = (width - x0 + xStep - 1)/xStep;
+		int subHeight = (height - y0 + yStep - 1)/yStep;
+		byte[] pixels = new byte[subWidth*subHeight];
+		byte[] row = new byte[width];
+		
+		int min_code_size = is.read();// The length of the root
+		LZWTreeDecoder decoder = getDecoder(is, min_code_size);
+		
+		// pass 1: start at row 0, scan every 8 rows
+		// pass 2: start at row 4, scan every 8 rows
+		// pass 3: start at row 2, scan every 4 rows
+		// pass 4: start at row 1, scan every 2 rows
+		int passStart[] = interlaced? new int[] {0, 4, 2, 1} : new int[] {0};
+		int passInc[] = interlaced? new int[] {8, 8, 4, 2} : new int[] {1};
+		
+		label:
+		for(int pass = 0; pass < passStart.length; pass++) {
+			for(int y = passStart[pass]; y < height; y += passInc[pass]) {
+				// Stop at the end of the image data
+				if(decoder.decode(row, 0, width) < width) break label;
+				if(y < y0 || (y - y0)%yStep != 0) continue;
+				for(int x = x0, index = ((y - y0)/yStep)*subWidth; x < width; x += xStep)
+					pixels[index++] = row[x];
+			}
+		}
+		// The frame is now located on the subsampled logical screen
+		image_x = (image_x + x0)/xStep;
+		image_y = (image_y + y0)/yStep;
+		width = subWidth;
+		height = subHeight;
+		
+		return pixels;
+	}
+	
 	private byte[] decodeLZWInterLaced(InputStream is) throws Exception	{
 		int index = 0;
 		int index2 = 0;
@@ -115,7 +162,7 @@ public class GIFReader extends ImageReader {
 		byte[] buf = new byte[dimension];
 		byte[] temp_ = new byte[dimension];
 
-		LZWTreeDecoder decoder = new LZWTreeDecoder(is, min_code_size);
+		LZWTreeDecoder decoder = getDecoder(is, min_code_size);
 		decoder.decode(buf, 0, dimension);
    
 		for (int pass=1;pass<5;pass++)
@@ -138,6 +185,79 @@ public class GIFReader extends ImageReader {
 		return temp_;
 	}
    
+	// Drops the global scope data of the last GIF
+	private void clearGlobalScopeData() {
+		gifHeader = null;
+		globalColorPalette = null;
+		baseImage = null;
+		backgroundColor = new Color(255, 255, 255);
+		logicalScreenWidth = 0;
+		logicalScreenHeight = 0;
+		resetFrameParameters();
+	}
+	
+	/**
+	 * Returns an iterator which reads the frames from the InputStream one at a time,
+	 * as they are requested. The frames are returned as they are stored in the GIF,
+	 * each with its own size and position, and are not kept by the reader. Use a
+	 * {@link com.icafe4j.image.gif.GIFCanvas GIFCanvas} to composite them if needed.
+	 * The logical screen size is available after the first call to hasNext().
+	 * <p>
+	 * A frame which fails to decode makes the iterator throw a RuntimeException.
+	 * The InputStream is not closed by the iterator.
+	 * 
+	 * @param is InputStream for the GIF/Animated GIF
+	 * @return an Iterator of GIFFrame
+	 */
+	public Iterator<GIFFrame> frameIterator(final InputStream is) {
+		clearGlobalScopeData(); // Start over with the global scope data
+		
+		return new Iterator<GIFFrame>() {
+			private GIFFrame nextFrame;
+			private boolean done;
+			
+			public boolean hasNext() {
+				if(nextFrame == null && !done) {
+					try {
+						BufferedImage bi = getFrameAsBufferedImage(is);
+						if(bi == null)
+							done = true;
+						else
+							nextFrame = new GIFFrame(bi, image_x, image_y, delay, disposalMethod, userInputFlag, transparencyFlag, transparent_color);
+					} catch(RuntimeException ex) {
+						throw ex;
+					} catch(Exception ex) {
+						throw new RuntimeException("Failed to read GIF frame", ex);
+					}
+				}
+				
+				return nextFrame != null;
+			}
+			
+			public GIFFrame next() {
+				if(!hasNext()) throw new NoSuchElementException();
+				GIFFrame frame = nextFrame;
+				nextFrame = null;
+				
+				return frame;
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+		};
+	}
+	
+	// The string table of the decoder is reused for all the frames
+	private LZWTreeDecoder getDecoder(InputStream is, int min_code_size) {
+		if(decoder == null)
+			decoder = new LZWTreeDecoder(is, min_code_size);
+		else
+			decoder.reset(is, min_code_size);
+		
+		return decoder;
+	}
+	
 	public Color getBackgroundColor() {
 		return backgroundColor;
 	}
@@ -375,6 +495,9 @@ public class GIFReader extends ImageReader {
 		if (transparencyFlag == GIFFrame.TRANSPARENCY_INDEX_SET && transparent_color < colorsUsed)
 			rgbColorPalette[transparent_color] &= 0x00ffffff;
 			
+		if(isSubsampling())
+			return decodeLZWSubsampled(is, (flags2&0x40) == 0x40);
+			
 		if((flags2&0x40) == 0x40) {
 			LOGGER.info("Interlaced gif image!"); 
 			return decodeLZWInterLaced(is);
@@ -402,6 +525,11 @@ public class GIFReader extends ImageReader {
 		   
 		logicalScreenWidth = gifHeader.screen_width;
 		logicalScreenHeight = gifHeader.screen_height;
+		
+		// Frames are composed on the subsampled logical screen
+		computeSubsampling(logicalScreenWidth, logicalScreenHeight);
+		logicalScreenWidth = (logicalScreenWidth + xStep - 1)/xStep;
+		logicalScreenHeight = (logicalScreenHeight + yStep - 1)/yStep;
 	
 		String signature = new String(gifHeader.signature) + new String(gifHeader.version);
 		LOGGER.info(signature);
@@ -434,6 +562,7 @@ public class GIFReader extends ImageReader {
 	}
     
 	public BufferedImage read(InputStream is) throws Exception {
+		clearGlobalScopeData();
 		frames = new ArrayList<BufferedImage>();
 		gifFrames = new ArrayList<GIFFrame>();
 		BufferedImage bi = null;
@@ -486,6 +615,19 @@ public class GIFReader extends ImageReader {
 		// End of fields reset
 	}
 	
+	/**
+	 * Drops the frames and the global scope data of the last GIF read. The LZW
+	 * decoder is kept for the next GIF.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		clearGlobalScopeData();
+		frames = null;
+		gifFrames = null;
+		if(decoder != null) decoder.reset(null, 2);
+	}
+	
 	private static class GifHeader {
 		private byte  signature[] = new byte[3];
 		private byte  version[] = new byte[3];
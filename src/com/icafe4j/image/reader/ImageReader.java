@@ -14,6 +14,10 @@
  *
  * Who   Date       Description
  * ====  =========  ===============================================================
+ * WY    18Oct2026  Added reset() to reuse readers
+ * WY    18Oct2026  Added getDestination() to decode into a caller-supplied image
+ * WY    18Oct2026  Added setImageParam() and source subsampling support
+ * WY    18Oct2026  Added getWidth() and getHeight()
  * WY    30May2015  Changed getFrames() to return an empty list instead of null
  * WY    02Jan2015  Added getFrames() and getFrameCount() for multiple frame images
  * WY    29May2015  Removed debug field, replace with logging
@@ -22,6 +26,8 @@
 package com.icafe4j.image.reader;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.*;
 import java.util.Collections;
 import java.util.List;
@@ -35,6 +41,8 @@ import com.icafe4j.image.ImageParam;
  * @version 1.1 11/08/2012   
  */
 public abstract class ImageReader {
+	// Working buffers larger than this, in bytes, are dropped by reset()
+	protected static final int MAX_KEPT_BUFFER_SIZE = 4*1024*1024;
 	// Define common variables 
     protected int width;
 	protected int height;
@@ -43,6 +51,84 @@ public abstract class ImageReader {
     protected int rgbColorPalette[];
        
     protected ImageParam param = ImageParam.DEFAULT_IMAGE_PARAM;
+    // Source subsampling steps worked out by computeSubsampling()
+    protected int xStep = 1;
+    protected int yStep = 1;
+    
+    /**
+     * Works out the subsampling steps for an image of the given size from the
+     * source subsampling and the maximum dimension of the ImageParam.
+     */
+    protected void computeSubsampling(int imageWidth, int imageHeight) {
+    	xStep = param.getSourceXSubsampling();
+    	yStep = param.getSourceYSubsampling();
+    	int maxDimension = param.getMaxDimension();
+    	if(maxDimension > 0) {
+    		int step = (Math.max(imageWidth, imageHeight) + maxDimension - 1)/maxDimension;
+    		xStep = Math.max(xStep, step);
+    		yStep = Math.max(yStep, step);
+    	}
+    }
+    
+    protected boolean isSubsampling() {
+    	return xStep > 1 || yStep > 1;
+    }
+    
+    /**
+     * Returns the destination image of the ImageParam if the image read can
+     * be decoded into it: the size must match and the destination must be a
+     * TYPE_INT_ARGB image, or a TYPE_INT_RGB image when the image read has no
+     * alpha channel.
+     * 
+     * @param imageWidth width of the image read, after subsampling
+     * @param imageHeight height of the image read, after subsampling
+     * @param hasAlpha whether or not the image read has an alpha channel
+     * @return the destination image or null if there is none or it is not compatible
+     */
+    protected BufferedImage getDestination(int imageWidth, int imageHeight, boolean hasAlpha) {
+    	BufferedImage destination = param.getDestination();
+    	if(destination == null || destination.getWidth() != imageWidth || destination.getHeight() != imageHeight)
+    		return null;
+    	// Rasters created by getSubimage() don't start at the beginning of the data buffer
+    	if(destination.getRaster().getParent() != null)
+    		return null;
+    	int type = destination.getType();
+    	if(type == BufferedImage.TYPE_INT_ARGB || (type == BufferedImage.TYPE_INT_RGB && !hasAlpha))
+    		return destination;
+    	
+    	return null;
+    }
+    
+    /**
+     * Keeps every xStep-th pixel of every yStep-th scan line of the image. Used
+     * by readers as a fallback for the cases they can't subsample while decoding.
+     */
+    protected static BufferedImage subsample(BufferedImage image, int xStep, int yStep) {
+    	if(image == null || (xStep == 1 && yStep == 1)) return image;
+    	int w = (image.getWidth() + xStep - 1)/xStep;
+    	int h = (image.getHeight() + yStep - 1)/yStep;
+    	Raster src = image.getRaster();
+    	BufferedImage result = null;
+    	try {
+    		WritableRaster dst = src.createCompatibleWritableRaster(w, h);
+    		Object pixel = null;
+    		for(int y = 0, srcY = src.getMinY(); y < h; y++, srcY += yStep) {
+    			for(int x = 0, srcX = src.getMinX(); x < w; x++, srcX += xStep) {
+    				pixel = src.getDataElements(srcX, srcY, pixel);
+    				dst.setDataElements(x, y, pixel);
+    			}
+    		}
+    		result = new BufferedImage(image.getColorModel(), dst, image.isAlphaPremultiplied(), null);
+    	} catch(RuntimeException ex) { // Fall back to ARGB
+    		result = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    		for(int y = 0; y < h; y++) {
+    			for(int x = 0; x < w; x++)
+    				result.setRGB(x, y, image.getRGB(x*xStep, y*yStep));
+    		}
+    	}
+    	
+    	return result;
+    }
     
     public int getFrameCount() {
     	return 0;
@@ -57,9 +143,44 @@ public abstract class ImageReader {
     	return Collections.emptyList();
     }
     
+    public int getHeight() {
+    	return height;
+    }
+    
     public ImageParam getImageParam() {
 		return param;
 	}
+    
+    public int getWidth() {
+    	return width;
+    }
+    
+    /**
+     * Prepares this reader to read another image. The state left by the last
+     * image read, including the ImageParam and the references to the images
+     * read, is dropped while the working buffers up to MAX_KEPT_BUFFER_SIZE
+     * are kept to be reused.
+     * <p>
+     * Subclasses holding per image state override this and call super.reset().
+     */
+    public void reset() {
+    	param = ImageParam.DEFAULT_IMAGE_PARAM;
+    	xStep = 1;
+    	yStep = 1;
+    	width = 0;
+    	height = 0;
+    	bitsPerPixel = 0;
+    	bytesPerScanLine = 0;
+    	rgbColorPalette = null;
+    }
+    
+    /**
+     * Sets the ImageParam for reading. The source subsampling and the maximum
+     * dimension of the ImageParam are honored by the PNG, BMP, TIFF and GIF readers.
+     */
+    public void setImageParam(ImageParam param) {
+    	this.param = (param == null) ? ImageParam.DEFAULT_IMAGE_PARAM : param;
+    }
         
 	// Entry method, to be implemented by specific ImageReader subclass
     public abstract BufferedImage read(InputStream is) throws Exception;
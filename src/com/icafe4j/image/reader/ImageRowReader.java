@@ -0,0 +1,53 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image.reader;
+
+import java.io.InputStream;
+
+/**
+ * Incremental image reading interface for images too large to be held in memory
+ * as a whole. After the header is read, the image is pulled a band of scan lines
+ * at a time from top to bottom and decoded as it is requested, so the memory used
+ * is proportional to the band rather than to the image.
+ * <p>
+ * The InputStream passed to readHeader() is not closed by the reader.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public interface ImageRowReader {
+	/**
+	 * Reads the image header and prepares to decode the scan lines
+	 *
+	 * @param is InputStream to read the image
+	 * @throws Exception
+	 */
+	public void readHeader(InputStream is) throws Exception;
+	/**
+	 * @return image width, available after readHeader()
+	 */
+	public int getWidth();
+	/**
+	 * @return image height, available after readHeader()
+	 */
+	public int getHeight();
+	/**
+	 * Decodes the next scan lines of the image
+	 *
+	 * @param dst array to hold the scan lines in ARGB format, imageWidth pixels each, starting from index 0
+	 * @param maxRows maximum number of scan lines to decode, further limited by the length of dst
+	 * @return number of scan lines decoded or -1 if all the scan lines have been decoded
+	 * @throws IllegalArgumentException if dst can't hold a single scan line
+	 * @throws Exception
+	 */
+	public int nextRows(int[] dst, int maxRows) throws Exception;
+}
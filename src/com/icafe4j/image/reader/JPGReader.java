@@ -5,52 +5,79 @@
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  * Any modifications to this file must keep this entire header intact.
- * 
+ *
  * Change History - most recent changes go on top of previous changes
  *
  * JPGReader.java
  *
  * Who   Date       Description
  * ====  =========  =================================================
+ * WY    18Oct2026  Triangle filter upsampling for chroma subsampled by 2
+ * WY    18Oct2026  Reject corrupt segments, convert CMYK through a lookup table
+ * WY    18Oct2026  Apply embedded ICC profiles to RGB and YCbCr images
+ * WY    18Oct2026  Implemented native baseline and progressive decoding
  * WY    12Jan2016  Cleaned up stale code
  */
-/** 
+/**
   * Decodes and shows images in JPEG format.
   *
-  * Current version is a baseline JFIF compatible one. It supports Adobe
-  * APP14 color transform - YCCK, CMYK, YCCK inverted. Progressive DCT
-  * is not supported!
+  * Supports baseline, extended sequential and progressive Huffman coded 8 bit
+  * JPEG images with any sampling factors and restart markers. Grayscale, YCbCr,
+  * RGB, CMYK and YCCK images are decoded, the color transform is taken from the
+  * Adobe APP14 segment if present. CMYK and YCCK images are converted to sRGB
+  * using the embedded ICC profile or a default CMYK profile.
+  * <p>
+  * Lossless, hierarchical, arithmetic coded and 12 bit JPEG images are not supported.
   *
   * @author Wen Yu, yuwen_66@yahoo.com
   * @version 1.0 04/23/2007
   */
 package com.icafe4j.image.reader;
 
+import java.awt.Transparency;
+import java.awt.color.CMMException;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.icafe4j.image.color.CMYKColorSpace;
+import com.icafe4j.image.color.CMYKLookupTable;
+import com.icafe4j.image.compression.UnsupportedCompressionException;
 import com.icafe4j.image.compression.huffman.HuffmanTbl;
 import com.icafe4j.image.jpeg.DHTReader;
 import com.icafe4j.image.jpeg.DQTReader;
 import com.icafe4j.image.jpeg.HTable;
+import com.icafe4j.image.jpeg.JPEGConsts;
 import com.icafe4j.image.jpeg.Marker;
 import com.icafe4j.image.jpeg.QTable;
 import com.icafe4j.image.jpeg.SOFReader;
 import com.icafe4j.image.jpeg.SOSReader;
 import com.icafe4j.image.jpeg.Segment;
 import com.icafe4j.image.jpeg.Component;
+import com.icafe4j.image.util.DCT;
+import com.icafe4j.image.util.IMGUtils;
 import com.icafe4j.io.IOUtils;
 import com.icafe4j.string.StringUtils;
 import com.icafe4j.util.ArrayUtils;
@@ -59,101 +86,978 @@ public class JPGReader extends ImageReader {
 	//"Adobe" no trailing NULL
 	public static final byte[] ADOBE_ID = {0x41, 0x64, 0x6f, 0x62, 0x65};
 	public static final String ICC_PROFILE_ID = "ICC_PROFILE\0";
+	//"JFIF" with trailing NULL
+	private static final byte[] JFIF_ID = {0x4a, 0x46, 0x49, 0x46, 0x00};
+
+	private static final String pathToCMYKProfile = "/resources/CMYK Profiles/USWebCoatedSWOP.icc";
+	// Lookup table for the default CMYK profile, shared by all the readers
+	private static CMYKLookupTable defaultCMYKTable;
+	// Images smaller than the lookup table grid are converted with ColorConvertOp
+	private static final int MIN_LOOKUP_PIXELS = CMYKLookupTable.GRID_SIZE*CMYKLookupTable.GRID_SIZE*CMYKLookupTable.GRID_SIZE*CMYKLookupTable.GRID_SIZE;
+
+	// Color spaces of the decoded image
+	private static final int COLOR_GRAY = 0;
+	private static final int COLOR_YCbCr = 1;
+	private static final int COLOR_RGB = 2;
+	private static final int COLOR_CMYK = 3;
+	private static final int COLOR_YCCK = 4;
+
+	// Kinds of scans stored into the coefficient buffers
+	private static final int SCAN_SEQUENTIAL = 0;
+	private static final int SCAN_DC_FIRST = 1;
+	private static final int SCAN_DC_REFINE = 2;
+	private static final int SCAN_AC_FIRST = 3;
+	private static final int SCAN_AC_REFINE = 4;
+
+	// Number of bits looked up at once by the Huffman decoder
+	private static final int LOOKAHEAD_BITS = 9;
+
+	// Maps zigzag order to natural order
+	private static final int[] ZIGZAG = JPEGConsts.getZigzagMatrix();
+
+	private static final int[] UNIT_QUANT_TABLE = new int[64];
+
+	// YCbCr to RGB conversion tables, same as the IJG's jdcolor.c
+	private static final int[] Cr_R = new int[256];
+	private static final int[] Cb_B = new int[256];
+	private static final int[] Cr_G = new int[256];
+	private static final int[] Cb_G = new int[256];
+
+	static {
+		Arrays.fill(UNIT_QUANT_TABLE, 1);
+		for(int i = 0, x = -128; i < 256; i++, x++) {
+			Cr_R[i] = (91881*x + 32768)>>16;
+			Cb_B[i] = (116130*x + 32768)>>16;
+			Cr_G[i] = -46802*x;
+			Cb_G[i] = -22554*x + 32768;
+		}
+	}
 
 	private SOFReader sofReader;
-	
+
 	// Tables definition
 	// For JFIF there are normally two quantization tables, but for
 	// other format there can be up to 4 quantization tables!
 	private int quant_tbl[][] = new int[4][];
-	private HuffmanTbl dc_hufftbl[] = new HuffmanTbl[4];
-	private HuffmanTbl ac_hufftbl[] = new HuffmanTbl[4];
-	@SuppressWarnings("unused")
-	private Map<Integer, Component> components = new HashMap<Integer, Component>(4);
-	
+	private HuffmanTable dc_hufftbl[] = new HuffmanTable[4];
+	private HuffmanTable ac_hufftbl[] = new HuffmanTable[4];
+	private int restartInterval;
+	// Adobe APP14 color transform or -1 if there is no Adobe segment
+	private int adobeTransform = -1;
+	private boolean jfif;
+	private ByteArrayOutputStream iccProfile = new ByteArrayOutputStream();
+
+	// Frame
+	private FrameComponent[] frameComponents;
+	private boolean progressive;
+	private int maxH;
+	private int maxV;
+	private int mcusPerLine;
+	private int mcusPerColumn;
+	private int scanCount;
+	// Single scan sequential image decoded into the output MCU row by MCU row
+	private boolean streaming;
+	// Sample buffers of an MCU row kept for the next image
+	private byte[][] planes = new byte[4][];
+
+	// Entropy decoder
+	private JPEGInputStream in = new JPEGInputStream();
+	private int bitBuffer;
+	private int bitCount;
+	// Marker found in the entropy coded data, -1 for end of input
+	private int marker;
+	private int eobrun;
+	private final int[] block = new int[64];
+
+	// Output
+	private int colorSpace;
+	// Sample column for each output pixel of an upsampled scan line
+	private int[] identity;
+	// Embedded RGB profile of a three component image, null if there is none
+	private ICC_ColorSpace rgbColorSpace;
+	private int outWidth;
+	private int outHeight;
+	private BufferedImage image;
+	private int[] intPixels;
+	private byte[] bytePixels;
+
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(JPGReader.class);
-	
-	public BufferedImage read1(InputStream is) throws Exception	{
+
+	@Override
+	public BufferedImage read(InputStream is) throws Exception {
+		clearImageState();
+		in.setInput(is);
+
+		try {
+			return decode();
+		} finally {
+			in.setInput(null);
+			// Don't hold on to the image data once done
+			frameComponents = null;
+			image = null;
+			intPixels = null;
+			bytePixels = null;
+		}
+	}
+
+	private BufferedImage decode() throws IOException {
+		// The very first marker should be the start_of_image marker!
+		if(in.read() != 0xff || in.read() != 0xd8)
+			throw new IOException("Invalid JPEG image, expected SOI marker not found!");
+
 		boolean finished = false;
-		int length = 0;
-		short marker;
-		Marker emarker;
-		
-		ByteArrayOutputStream bo = new ByteArrayOutputStream();
-				
-		// The very first marker should be the start_of_image marker!	
-		if(Marker.fromShort(IOUtils.readShortMM(is)) != Marker.SOI)
-			throw new IllegalArgumentException("Invalid JPEG image, expected SOI marker not found!");
-		
-		marker = IOUtils.readShortMM(is);
-	
-		while (!finished) {
-			if (Marker.fromShort(marker) == Marker.EOI)	{
-				finished = true;
-			} else { // Read markers
-				emarker = Marker.fromShort(marker);
-				switch (emarker) {
-					case JPG: // JPG and JPGn shouldn't appear in the image.
-					case JPG0:
-					case JPG13:
-				    case TEM: // The only stand alone marker besides SOI, EOI, and RSTn. 
-						marker = IOUtils.readShortMM(is);
-						break;
-				    case PADDING:	
-				    	int nextByte = 0;
-				    	while((nextByte = IOUtils.read(is)) == 0xff) {;}
-				    	marker = (short)((0xff<<8)|nextByte);
-				    	break;
-				    case DQT:
-				    	read_DQT(is);
-				    	marker = IOUtils.readShortMM(is);
-						break;
-				    case DHT:
-				    	read_DHT(is);
-				    	marker = IOUtils.readShortMM(is);
-						break;
-				    case SOS:
-				    	readSOS(is, sofReader);
-						marker = IOUtils.readShortMM(is);
-						break;
-				    case SOF0:
-	                case SOF1:
-	                case SOF2:
-	                	readSOF(is, emarker);
-	                	// Read actual image data
-				    case SOF3:
-	                case SOF5:
-	                case SOF6:
-	                case SOF7:
-	                    throw new Exception("Lossless Jpeg is not supported yet");
-	                case SOF9:
-	                case SOF10:
-	                case SOF11:
-	                    throw new Exception("Arithmetic encoded Jpeg is not supported yet");
-				    case APP2:
-				    	// Read ICC_Profile data
-				    	readAPP2(is, bo);
-						marker = IOUtils.readShortMM(is);
-						break;
-				    case APP14:
-				    	// Read APP14 data
-				    	readAPP14(is);
-				    default:
-				    	length = IOUtils.readUnsignedShortMM(is);					
-				    	byte[] buf = new byte[length - 2];					   
-				    	IOUtils.readFully(is, buf);				
-				    	marker = IOUtils.readShortMM(is);
+		int code = nextMarker();
+
+		while(!finished && code >= 0) {
+			Marker emarker = Marker.fromShort((short)(0xff00|code));
+			switch(emarker) {
+				case EOI:
+					finished = true;
+					continue;
+				case SOS:
+					code = readScan();
+					continue;
+				case SOF0:
+				case SOF1:
+				case SOF2:
+					readFrame(emarker);
+					break;
+				case SOF3:
+				case SOF5:
+				case SOF6:
+				case SOF7:
+				case SOF9:
+				case SOF10:
+				case SOF11:
+				case SOF13:
+				case SOF14:
+				case SOF15:
+					throw new UnsupportedCompressionException(emarker.getDescription() + " JPEG is not supported");
+				case DQT:
+					read_DQT(in);
+					break;
+				case DHT:
+					read_DHT(in);
+					break;
+				case DRI:
+					IOUtils.readUnsignedShortMM(in);
+					restartInterval = IOUtils.readUnsignedShortMM(in);
+					break;
+				case APP0:
+					jfif |= readAPP0(in);
+					break;
+				case APP2:
+					// Read ICC_Profile data
+					readAPP2(in, iccProfile);
+					break;
+				case APP14:
+					adobeTransform = readAPP14(in);
+					break;
+				case RST0: // Stand alone markers
+				case RST1:
+				case RST2:
+				case RST3:
+				case RST4:
+				case RST5:
+				case RST6:
+				case RST7:
+				case TEM:
+					break;
+				default:
+					in.skipBytes(readSegmentLength(in) - 2);
+			}
+			code = nextMarker();
+		}
+
+		if(frameComponents == null)
+			throw new IOException("No frame found in the JPEG image!");
+		if(scanCount == 0)
+			throw new IOException("No scan found in the JPEG image!");
+		if(!finished)
+			LOGGER.warn("Premature end of JPEG image, expected EOI marker not found!");
+
+		if(!streaming) outputCoefficients();
+
+		return finishOutput();
+	}
+
+	private void clearImageState() {
+		sofReader = null;
+		Arrays.fill(quant_tbl, null);
+		Arrays.fill(dc_hufftbl, null);
+		Arrays.fill(ac_hufftbl, null);
+		restartInterval = 0;
+		adobeTransform = -1;
+		jfif = false;
+		iccProfile.reset();
+		frameComponents = null;
+		progressive = false;
+		scanCount = 0;
+		streaming = false;
+		bitBuffer = bitCount = marker = eobrun = 0;
+		image = null;
+		rgbColorSpace = null;
+		intPixels = null;
+		bytePixels = null;
+	}
+
+	/**
+	 * Clears the tables and the frame of the last image read while keeping the
+	 * sample buffers up to MAX_KEPT_BUFFER_SIZE for the next image.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		clearImageState();
+		in.setInput(null);
+		for(int i = 0; i < planes.length; i++) {
+			if(planes[i] != null && planes[i].length > MAX_KEPT_BUFFER_SIZE)
+				planes[i] = null;
+		}
+	}
+
+	// Reads up to the next marker, skipping anything else, returns -1 for end of input
+	private int nextMarker() throws IOException {
+		int b;
+		while((b = in.read()) >= 0) {
+			if(b == 0xff) {
+				do {
+					b = in.read();
+				} while(b == 0xff);
+				if(b < 0) break;
+				if(b != 0) return b;
+			}
+		}
+		return -1;
+	}
+
+	private void readFrame(Marker emarker) throws IOException {
+		if(frameComponents != null)
+			throw new IOException("Multiple frames in one JPEG image are not supported!");
+
+		sofReader = readSOF(in, emarker);
+
+		if(sofReader.getPrecision() != 8)
+			throw new UnsupportedOperationException(sofReader.getPrecision() + " bit JPEG is not supported");
+
+		width = sofReader.getFrameWidth();
+		height = sofReader.getFrameHeight();
+
+		if(width <= 0 || height <= 0)
+			throw new IOException("Invalid JPEG image dimension: " + width + "x" + height);
+
+		progressive = (emarker == Marker.SOF2);
+
+		Component[] components = sofReader.getComponents();
+		int numOfComponents = components.length;
+
+		if(numOfComponents != 1 && numOfComponents != 3 && numOfComponents != 4)
+			throw new UnsupportedOperationException("JPEG image with " + numOfComponents + " components is not supported");
+
+		bitsPerPixel = numOfComponents*8;
+		frameComponents = new FrameComponent[numOfComponents];
+		maxH = maxV = 1;
+
+		for(int i = 0; i < numOfComponents; i++) {
+			FrameComponent fc = new FrameComponent(components[i]);
+			if(numOfComponents == 1) { // Single component is never interleaved
+				fc.h = fc.v = 1;
+			} else {
+				fc.h = components[i].getHSampleFactor();
+				fc.v = components[i].getVSampleFactor();
+				if(fc.h < 1 || fc.h > 4 || fc.v < 1 || fc.v > 4)
+					throw new IOException("Invalid JPEG sampling factors: " + fc.h + "x" + fc.v);
+			}
+			maxH = Math.max(maxH, fc.h);
+			maxV = Math.max(maxV, fc.v);
+			frameComponents[i] = fc;
+		}
+
+		mcusPerLine = (width + 8*maxH - 1)/(8*maxH);
+		mcusPerColumn = (height + 8*maxV - 1)/(8*maxV);
+
+		for(int i = 0; i < numOfComponents; i++) {
+			FrameComponent fc = frameComponents[i];
+			fc.blocksPerLine = mcusPerLine*fc.h;
+			fc.blocksPerColumn = mcusPerColumn*fc.v;
+			// Blocks of a non-interleaved scan only cover the component itself
+			fc.blocksWide = ((width*fc.h + maxH - 1)/maxH + 7)/8;
+			fc.blocksHigh = ((height*fc.v + maxV - 1)/maxV + 7)/8;
+			fc.stride = fc.blocksPerLine*8;
+			int planeSize = fc.stride*fc.v*8;
+			if(planes[i] == null || planes[i].length < planeSize)
+				planes[i] = new byte[planeSize];
+			fc.plane = planes[i];
+		}
+	}
+
+	// Reads the scan header and decodes the scan, returns the marker following the scan
+	private int readScan() throws IOException {
+		int len = readSegmentLength(in);
+		byte buf[] = new byte[len - 2];
+		IOUtils.readFully(in, buf);
+
+		if(sofReader == null)
+			throw new IOException("SOS found before SOF!");
+
+		SOSReader reader = new SOSReader(new Segment(Marker.SOS, len, buf), sofReader);
+		Component[] components = reader.getComponents();
+
+		if(components.length == 0)
+			throw new IOException("No frame component found in the scan!");
+
+		FrameComponent[] scan = new FrameComponent[components.length];
+
+		for(int i = 0; i < components.length; i++) {
+			for(FrameComponent fc : frameComponents) {
+				if(fc.component == components[i]) scan[i] = fc;
+			}
+			FrameComponent fc = scan[i];
+			fc.dcTable = dc_hufftbl[components[i].getDCTableNumber()&0x03];
+			fc.acTable = ac_hufftbl[components[i].getACTableNumber()&0x03];
+			// The quantization table is latched when the component first shows up in a scan
+			if(fc.qTable == null) {
+				fc.qTable = quant_tbl[components[i].getQTableNumber()&0x03];
+				if(fc.qTable == null)
+					throw new IOException("Quantization table #" + components[i].getQTableNumber() + " is not defined!");
+			}
+			fc.dcPred = 0;
+		}
+
+		bitBuffer = bitCount = marker = eobrun = 0;
+
+		if(scanCount++ == 0 && !progressive && scan.length == frameComponents.length) {
+			streaming = true;
+			setupOutput();
+			decodeSequential(scan);
+		} else if(streaming) {
+			LOGGER.warn("Ignoring additional scan of a sequential JPEG image");
+		} else {
+			if(frameComponents[0].coefs == null) {
+				for(FrameComponent fc : frameComponents) {
+					long size = (long)fc.blocksPerLine*fc.blocksPerColumn*64;
+					if(size > Integer.MAX_VALUE)
+						throw new IOException("JPEG image too large: " + width + "x" + height);
+					fc.coefs = new short[(int)size];
+				}
+			}
+			decodeScan(scan, reader.getSs(), reader.getSe(), reader.getAh(), reader.getAl());
+		}
+
+		int next = (marker != 0) ? marker : nextMarker();
+
+		marker = bitCount = 0;
+
+		return next;
+	}
+
+	// Decodes a sequential scan with all the components straight into the output
+	private void decodeSequential(FrameComponent[] scan) throws IOException {
+		for(FrameComponent fc : scan) {
+			if(fc.dcTable == null || fc.acTable == null)
+				throw new IOException("Huffman table is not defined!");
+		}
+
+		for(int mcuY = 0, mcu = 0; mcuY < mcusPerColumn; mcuY++) {
+			// MCU rows skipped by subsampling are still entropy decoded but not transformed
+			boolean output = hasOutputRows(mcuY);
+			for(int mcuX = 0; mcuX < mcusPerLine; mcuX++, mcu++) {
+				if(restartInterval > 0 && mcu > 0 && mcu%restartInterval == 0)
+					processRestart(scan);
+				for(FrameComponent fc : scan) {
+					for(int v = 0; v < fc.v; v++) {
+						int offset = (v*fc.stride + mcuX*fc.h)<<3;
+						for(int h = 0; h < fc.h; h++, offset += 8) {
+							decodeBlock(fc, block, fc.qTable);
+							if(output) DCT.inverseDCT(block, fc.plane, offset, fc.stride);
+						}
+					}
+				}
+			}
+			if(output) outputBand(mcuY);
+		}
+	}
+
+	// Decodes a scan into the coefficient buffers
+	private void decodeScan(FrameComponent[] scan, int ss, int se, int ah, int al) throws IOException {
+		int kind = SCAN_SEQUENTIAL;
+
+		if(progressive) {
+			if(se < ss || se > 63 || (ss == 0 && se != 0) || (ss > 0 && scan.length != 1) || ah > 13 || al > 13)
+				throw new IOException("Invalid progressive JPEG scan parameters: Ss = " + ss + ", Se = " + se + ", Ah = " + ah + ", Al = " + al);
+			kind = (ss == 0) ? ((ah == 0) ? SCAN_DC_FIRST : SCAN_DC_REFINE) : ((ah == 0) ? SCAN_AC_FIRST : SCAN_AC_REFINE);
+		}
+
+		for(FrameComponent fc : scan) {
+			if(((kind == SCAN_SEQUENTIAL || kind == SCAN_DC_FIRST) && fc.dcTable == null) ||
+					((kind == SCAN_SEQUENTIAL || kind == SCAN_AC_FIRST || kind == SCAN_AC_REFINE) && fc.acTable == null))
+				throw new IOException("Huffman table is not defined!");
+		}
+
+		if(scan.length == 1) { // Non-interleaved
+			FrameComponent fc = scan[0];
+			for(int by = 0, mcu = 0; by < fc.blocksHigh; by++) {
+				for(int bx = 0; bx < fc.blocksWide; bx++, mcu++) {
+					if(restartInterval > 0 && mcu > 0 && mcu%restartInterval == 0)
+						processRestart(scan);
+					decodeBlock(kind, fc, (by*fc.blocksPerLine + bx)<<6, ss, se, al);
+				}
+			}
+		} else {
+			for(int mcuY = 0, mcu = 0; mcuY < mcusPerColumn; mcuY++) {
+				for(int mcuX = 0; mcuX < mcusPerLine; mcuX++, mcu++) {
+					if(restartInterval > 0 && mcu > 0 && mcu%restartInterval == 0)
+						processRestart(scan);
+					for(FrameComponent fc : scan) {
+						for(int v = 0; v < fc.v; v++) {
+							int offset = ((mcuY*fc.v + v)*fc.blocksPerLine + mcuX*fc.h)<<6;
+							for(int h = 0; h < fc.h; h++, offset += 64)
+								decodeBlock(kind, fc, offset, ss, se, al);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void decodeBlock(int kind, FrameComponent fc, int offset, int ss, int se, int al) throws IOException {
+		short[] coefs = fc.coefs;
+
+		switch(kind) {
+			case SCAN_SEQUENTIAL:
+				decodeBlock(fc, block, UNIT_QUANT_TABLE);
+				for(int i = 0; i < 64; i++)
+					coefs[offset + i] = (short)block[i];
+				break;
+			case SCAN_DC_FIRST: {
+				int s = decodeHuffman(fc.dcTable);
+				if(s != 0) fc.dcPred += receiveExtend(s);
+				coefs[offset] = (short)(fc.dcPred<<al);
+				break;
+			}
+			case SCAN_DC_REFINE:
+				if(readBits(1) != 0) coefs[offset] |= (1<<al);
+				break;
+			case SCAN_AC_FIRST:
+				decodeACFirst(fc, coefs, offset, ss, se, al);
+				break;
+			case SCAN_AC_REFINE:
+				decodeACRefine(fc, coefs, offset, ss, se, al);
+				break;
+			default:
+		}
+	}
+
+	// Decodes a sequential block in natural order, dequantized by the quantization table
+	private void decodeBlock(FrameComponent fc, int[] block, int[] qTable) throws IOException {
+		Arrays.fill(block, 0);
+
+		int s = decodeHuffman(fc.dcTable);
+		if(s != 0) fc.dcPred += receiveExtend(s);
+		block[0] = fc.dcPred*qTable[0];
+
+		HuffmanTable acTable = fc.acTable;
+
+		for(int k = 1; k < 64; k++) {
+			int rs = decodeHuffman(acTable);
+			int r = rs>>4;
+			s = rs&0x0f;
+			if(s == 0) {
+				if(r != 15) break; // EOB
+				k += 15; // ZRL
+				continue;
+			}
+			k += r;
+			if(k > 63) break;
+			int z = ZIGZAG[k];
+			block[z] = receiveExtend(s)*qTable[z];
+		}
+	}
+
+	private void decodeACFirst(FrameComponent fc, short[] coefs, int offset, int ss, int se, int al) throws IOException {
+		if(eobrun > 0) {
+			eobrun--;
+			return;
+		}
+
+		HuffmanTable acTable = fc.acTable;
+
+		for(int k = ss; k <= se; k++) {
+			int rs = decodeHuffman(acTable);
+			int r = rs>>4;
+			int s = rs&0x0f;
+			if(s == 0) {
+				if(r < 15) { // EOBr
+					eobrun = (1<<r) - 1;
+					if(r > 0) eobrun += readBits(r);
+					break;
+				}
+				k += 15; // ZRL
+				continue;
+			}
+			k += r;
+			if(k > 63) break;
+			coefs[offset + ZIGZAG[k]] = (short)(receiveExtend(s)<<al);
+		}
+	}
+
+	// Successive approximation refinement of the AC coefficients as done by the IJG's jdphuff.c
+	private void decodeACRefine(FrameComponent fc, short[] coefs, int offset, int ss, int se, int al) throws IOException {
+		int p1 = 1<<al;
+		int m1 = -1<<al;
+		int k = ss;
+
+		if(eobrun == 0) {
+			HuffmanTable acTable = fc.acTable;
+			for(; k <= se; k++) {
+				int rs = decodeHuffman(acTable);
+				int r = rs>>4;
+				int s = rs&0x0f;
+				int value = 0;
+				if(s != 0) { // s should be 1
+					value = (readBits(1) != 0) ? p1 : m1;
+				} else if(r != 15) { // EOBr, the rest of the band is handled below
+					eobrun = 1<<r;
+					if(r > 0) eobrun += readBits(r);
+					break;
+				}
+				// Skip r zero coefficients, refining the nonzero ones on the way
+				do {
+					int z = offset + ZIGZAG[k];
+					if(coefs[z] != 0) {
+						if(readBits(1) != 0 && (coefs[z]&p1) == 0)
+							coefs[z] += (coefs[z] >= 0) ? p1 : m1;
+					} else {
+						if(--r < 0) break; // Reached the target zero coefficient
+					}
+					k++;
+				} while(k <= se);
+				if(value != 0 && k <= se)
+					coefs[offset + ZIGZAG[k]] = (short)value;
+			}
+		}
+
+		if(eobrun > 0) {
+			// Refine the nonzero coefficients left in the band
+			for(; k <= se; k++) {
+				int z = offset + ZIGZAG[k];
+				if(coefs[z] != 0) {
+					if(readBits(1) != 0 && (coefs[z]&p1) == 0)
+						coefs[z] += (coefs[z] >= 0) ? p1 : m1;
+				}
+			}
+			eobrun--;
+		}
+	}
+
+	private void processRestart(FrameComponent[] scan) throws IOException {
+		// Discard the bits left before the marker
+		bitCount = 0;
+
+		if(marker == 0) marker = nextMarker();
+
+		if(marker >= 0xd0 && marker <= 0xd7) {
+			marker = 0; // Resume decoding
+		} else {
+			// Keep the marker, the rest of the scan is decoded as zeros
+			LOGGER.warn("Expected JPEG restart marker not found!");
+		}
+
+		for(FrameComponent fc : scan)
+			fc.dcPred = 0;
+
+		eobrun = 0;
+	}
+
+	// Fills the bit buffer with at least 25 bits, feeding zeros once a marker is met
+	private void fillBits() throws IOException {
+		while(bitCount <= 24) {
+			int b = 0;
+			if(marker == 0) {
+				b = in.read();
+				if(b == 0xff) {
+					int next = in.read();
+					while(next == 0xff) next = in.read();
+					if(next != 0) { // Not stuffed zero
+						marker = (next < 0) ? -1 : next;
+						b = 0;
+					}
+				} else if(b < 0) {
+					marker = -1;
+					b = 0;
+				}
+			}
+			bitBuffer = (bitBuffer<<8)|b;
+			bitCount += 8;
+		}
+	}
+
+	private int readBits(int n) throws IOException {
+		if(bitCount < n) fillBits();
+		bitCount -= n;
+		return (bitBuffer>>>bitCount)&((1<<n) - 1);
+	}
+
+	// Reads an s bit value and extends its sign (CCITT Rec. T.81(1993 E) Annex F, Figure F.12)
+	private int receiveExtend(int s) throws IOException {
+		if(bitCount < s) fillBits();
+		bitCount -= s;
+		int value = (bitBuffer>>>bitCount)&((1<<s) - 1);
+		return (value < (1<<(s - 1))) ? value - (1<<s) + 1 : value;
+	}
+
+	private int decodeHuffman(HuffmanTable table) throws IOException {
+		if(bitCount < 16) fillBits();
+
+		int entry = table.lookup[(bitBuffer>>>(bitCount - LOOKAHEAD_BITS))&((1<<LOOKAHEAD_BITS) - 1)];
+
+		if(entry != 0) {
+			bitCount -= entry>>8;
+			return entry&0xff;
+		}
+
+		// Codes longer than LOOKAHEAD_BITS
+		for(int l = LOOKAHEAD_BITS + 1; l <= 16; l++) {
+			int code = (bitBuffer>>>(bitCount - l))&((1<<l) - 1);
+			if(code <= table.maxCode[l]) {
+				bitCount -= l;
+				int index = table.valPtr[l] + code - table.minCode[l];
+				return (index >= 0 && index < table.values.length) ? table.values[index] : 0;
+			}
+		}
+
+		// Corrupt data, fake a zero as the safest result
+		bitCount -= 16;
+
+		return 0;
+	}
+
+	private boolean hasOutputRows(int mcuY) {
+		int y0 = mcuY*maxV*8;
+		int y1 = Math.min(y0 + maxV*8, height);
+
+		return ((y0 + yStep - 1)/yStep)*yStep < y1;
+	}
+
+	private void setupOutput() {
+		computeSubsampling(width, height);
+
+		outWidth = (width + xStep - 1)/xStep;
+		outHeight = (height + yStep - 1)/yStep;
+		colorSpace = getColorSpace();
+
+		for(FrameComponent fc : frameComponents) {
+			fc.colIndex = new int[outWidth];
+			for(int x = 0; x < outWidth; x++)
+				fc.colIndex[x] = (x*xStep*fc.h)/maxH;
+			// Components subsampled by 2 are interpolated from the nearest and the next nearest sample
+			fc.line = null;
+			if(maxH == 2*fc.h || maxV == 2*fc.v) {
+				fc.line = new byte[outWidth];
+				fc.neighbor = fc.colIndex;
+				if(maxH == 2*fc.h) {
+					int lastColumn = (width*fc.h + maxH - 1)/maxH - 1;
+					fc.neighbor = new int[outWidth];
+					for(int x = 0; x < outWidth; x++) {
+						int column = fc.colIndex[x] + (((x*xStep)&1) == 0 ? -1 : 1);
+						fc.neighbor[x] = Math.max(0, Math.min(column, lastColumn));
+					}
+				}
+			}
+		}
+		if(identity == null || identity.length < outWidth) {
+			identity = new int[outWidth];
+			for(int x = 0; x < outWidth; x++)
+				identity[x] = x;
+		}
+
+		if(colorSpace == COLOR_CMYK || colorSpace == COLOR_YCCK) {
+			bytePixels = new byte[outWidth*outHeight*4];
+			return;
+		}
+
+		if(colorSpace == COLOR_YCbCr || colorSpace == COLOR_RGB)
+			rgbColorSpace = getRGBColorSpace();
+
+		// Samples in the embedded color space are converted to sRGB by finishOutput()
+		image = (rgbColorSpace == null) ? getDestination(outWidth, outHeight, false) : null;
+
+		if(image == null && colorSpace == COLOR_GRAY) {
+			image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_BYTE_GRAY);
+			bytePixels = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		} else {
+			if(image == null) image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+			intPixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		}
+	}
+
+	private int getColorSpace() {
+		switch(frameComponents.length) {
+			case 1:
+				return COLOR_GRAY;
+			case 3:
+				if(adobeTransform == 0) return COLOR_RGB;
+				if(adobeTransform < 0 && !jfif && frameComponents[0].component.getId() == 'R' &&
+						frameComponents[1].component.getId() == 'G' && frameComponents[2].component.getId() == 'B')
+					return COLOR_RGB;
+				return COLOR_YCbCr;
+			default:
+				return (adobeTransform == 2) ? COLOR_YCCK : COLOR_CMYK;
+		}
+	}
+
+	// Transforms the coefficients MCU row by MCU row into the output
+	private void outputCoefficients() {
+		setupOutput();
+
+		for(int mcuY = 0; mcuY < mcusPerColumn; mcuY++) {
+			if(!hasOutputRows(mcuY)) continue;
+			for(FrameComponent fc : frameComponents) {
+				// A component missing from all the scans comes out as mid gray
+				int[] qTable = (fc.qTable == null) ? UNIT_QUANT_TABLE : fc.qTable;
+				short[] coefs = fc.coefs;
+				for(int v = 0; v < fc.v; v++) {
+					int offset = ((mcuY*fc.v + v)*fc.blocksPerLine)<<6;
+					for(int bx = 0; bx < fc.blocksPerLine; bx++, offset += 64) {
+						for(int i = 0; i < 64; i++)
+							block[i] = coefs[offset + i]*qTable[i];
+						DCT.inverseDCT(block, fc.plane, (v*fc.stride + bx)<<3, fc.stride);
+					}
+				}
+			}
+			outputBand(mcuY);
+		}
+	}
+
+	// Upsamples and color converts the scan lines of an MCU row kept by the subsampling
+	private void outputBand(int mcuY) {
+		int y0 = mcuY*maxV*8;
+		int y1 = Math.min(y0 + maxV*8, height);
+		int numOfComponents = frameComponents.length;
+		// Samples, row offset and sample column for each output pixel of each component
+		byte[][] samples = new byte[numOfComponents][];
+		int[] rowOffsets = new int[numOfComponents];
+		int[][] columns = new int[numOfComponents][];
+
+		for(int y = ((y0 + yStep - 1)/yStep)*yStep; y < y1; y += yStep) {
+			for(int i = 0; i < numOfComponents; i++) {
+				FrameComponent fc = frameComponents[i];
+				int row = (y*fc.v)/maxV - mcuY*fc.v*8;
+				if(fc.line == null) {
+					samples[i] = fc.plane;
+					rowOffsets[i] = row*fc.stride;
+					columns[i] = fc.colIndex;
+				} else {
+					int neighborRow = row;
+					if(maxV == 2*fc.v) {
+						// Interpolation stays within the rows of the component in this MCU row
+						int lastRow = Math.min(fc.v*8, (height*fc.v + maxV - 1)/maxV - mcuY*fc.v*8) - 1;
+						neighborRow = Math.max(0, Math.min(row + ((y&1) == 0 ? -1 : 1), lastRow));
+					}
+					upsample(fc, row*fc.stride, neighborRow*fc.stride);
+					samples[i] = fc.line;
+					rowOffsets[i] = 0;
+					columns[i] = identity;
+				}
+			}
+			int outOffset = (y/yStep)*outWidth;
+			switch(colorSpace) {
+				case COLOR_GRAY: {
+					byte[] p = samples[0];
+					int[] c = columns[0];
+					int row = rowOffsets[0];
+					if(intPixels != null) {
+						for(int x = 0; x < outWidth; x++) {
+							int gray = p[row + c[x]]&0xff;
+							intPixels[outOffset + x] = 0xff000000|(gray<<16)|(gray<<8)|gray;
+						}
+					} else {
+						for(int x = 0; x < outWidth; x++)
+							bytePixels[outOffset + x] = p[row + c[x]];
+					}
+					break;
+				}
+				case COLOR_YCbCr:
+				case COLOR_RGB: {
+					byte[] p0 = samples[0], p1 = samples[1], p2 = samples[2];
+					int[] c0 = columns[0], c1 = columns[1], c2 = columns[2];
+					int row0 = rowOffsets[0], row1 = rowOffsets[1], row2 = rowOffsets[2];
+					if(colorSpace == COLOR_RGB) {
+						for(int x = 0; x < outWidth; x++)
+							intPixels[outOffset + x] = 0xff000000|((p0[row0 + c0[x]]&0xff)<<16)|((p1[row1 + c1[x]]&0xff)<<8)|(p2[row2 + c2[x]]&0xff);
+					} else {
+						for(int x = 0; x < outWidth; x++) {
+							int yy = p0[row0 + c0[x]]&0xff;
+							int cb = p1[row1 + c1[x]]&0xff;
+							int cr = p2[row2 + c2[x]]&0xff;
+							int r = clamp(yy + Cr_R[cr]);
+							int g = clamp(yy + ((Cb_G[cb] + Cr_G[cr])>>16));
+							int b = clamp(yy + Cb_B[cb]);
+							intPixels[outOffset + x] = 0xff000000|(r<<16)|(g<<8)|b;
+						}
+					}
+					break;
+				}
+				default: { // CMYK or YCCK, stored as ink values with 255 for full ink
+					byte[] p0 = samples[0], p1 = samples[1], p2 = samples[2], p3 = samples[3];
+					int[] c0 = columns[0], c1 = columns[1], c2 = columns[2], c3 = columns[3];
+					int row0 = rowOffsets[0], row1 = rowOffsets[1], row2 = rowOffsets[2], row3 = rowOffsets[3];
+					for(int x = 0, offset = outOffset*4; x < outWidth; x++, offset += 4) {
+						int s0 = p0[row0 + c0[x]]&0xff;
+						int s1 = p1[row1 + c1[x]]&0xff;
+						int s2 = p2[row2 + c2[x]]&0xff;
+						int s3 = p3[row3 + c3[x]]&0xff;
+						if(colorSpace == COLOR_YCCK) {
+							// YCC converts to inverted Adobe CMY which is inverted once more to get ink values
+							bytePixels[offset] = (byte)clamp(s0 + Cr_R[s2]);
+							bytePixels[offset + 1] = (byte)clamp(s0 + ((Cb_G[s1] + Cr_G[s2])>>16));
+							bytePixels[offset + 2] = (byte)clamp(s0 + Cb_B[s1]);
+							bytePixels[offset + 3] = (byte)(0xff - s3);
+						} else { // CMYK is stored inverted, Adobe style, with or without the Adobe segment
+							bytePixels[offset] = (byte)(0xff - s0);
+							bytePixels[offset + 1] = (byte)(0xff - s1);
+							bytePixels[offset + 2] = (byte)(0xff - s2);
+							bytePixels[offset + 3] = (byte)(0xff - s3);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// Triangle filter upsampling by 2 as libjpeg's fancy upsampling: 3/4 of the nearest
+	// sample and 1/4 of the next nearest one in each direction subsampled by 2
+	private static void upsample(FrameComponent fc, int row, int neighborRow) {
+		byte[] p = fc.plane, line = fc.line;
+		int[] c = fc.colIndex, n = fc.neighbor;
+		for(int x = 0; x < line.length; x++) {
+			int near = 3*(p[row + c[x]]&0xff) + (p[neighborRow + c[x]]&0xff);
+			int far = 3*(p[row + n[x]]&0xff) + (p[neighborRow + n[x]]&0xff);
+			line[x] = (byte)((3*near + far + 8)>>4);
+		}
+	}
+
+	private static int clamp(int value) {
+		return (value < 0) ? 0 : ((value > 255) ? 255 : value);
+	}
+
+	// Converts CMYK and YCCK images and images with an embedded RGB profile to sRGB
+	private BufferedImage finishOutput() {
+		if(rgbColorSpace != null) {
+			ColorModel cm = new DirectColorModel(rgbColorSpace, 24, 0xff0000, 0x00ff00, 0x0000ff, 0, false, DataBuffer.TYPE_INT);
+			BufferedImage rgbImage = getDestination(outWidth, outHeight, false);
+			if(rgbImage == null) rgbImage = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+			try {
+				return new ColorConvertOp(null).filter(new BufferedImage(cm, image.getRaster(), false, null), rgbImage);
+			} catch(CMMException ex) {
+				LOGGER.warn("Embedded ICC profile can't be used, ignored", ex);
+				return image;
+			}
+		}
+
+		if(colorSpace != COLOR_CMYK && colorSpace != COLOR_YCCK)
+			return image;
+
+		ICC_Profile profile = getEmbeddedCMYKProfile();
+		ColorModel rgbModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] {8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+		if(profile != null) {
+			try {
+				if(outWidth*outHeight < MIN_LOOKUP_PIXELS) {
+					ColorModel cm = new ComponentColorModel(new ICC_ColorSpace(profile), new int[] {8, 8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+					DataBuffer db = new DataBufferByte(bytePixels, bytePixels.length);
+					WritableRaster raster = Raster.createInterleavedRaster(db, outWidth, outHeight, outWidth*4, 4, new int[] {0, 1, 2, 3}, null);
+					return new BufferedImage(rgbModel, IMGUtils.iccp2rgbRaster(raster, cm), false, null);
 				}
-			}				
+				return toRGBImage(new CMYKLookupTable(profile), rgbModel);
+			} catch(CMMException ex) {
+				LOGGER.warn("Embedded ICC profile can't be used, using the default one", ex);
+			}
 		}
-		
+
+		CMYKLookupTable table = getDefaultCMYKTable();
+		if(table != null)
+			return toRGBImage(table, rgbModel);
+
+		ColorModel cm = new ComponentColorModel(CMYKColorSpace.getInstance(), new int[] {8, 8, 8, 8}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+		DataBuffer db = new DataBufferByte(bytePixels, bytePixels.length);
+
+		return new BufferedImage(cm, Raster.createInterleavedRaster(db, outWidth, outHeight, outWidth*4, 4, new int[] {0, 1, 2, 3}, null), false, null);
+	}
+
+	private BufferedImage toRGBImage(CMYKLookupTable table, ColorModel rgbModel) {
+		byte[] rgb = new byte[outWidth*outHeight*3];
+		table.toRGB(bytePixels, rgb, outWidth*outHeight);
+		DataBuffer db = new DataBufferByte(rgb, rgb.length);
+
+		return new BufferedImage(rgbModel, Raster.createInterleavedRaster(db, outWidth, outHeight, outWidth*3, 3, new int[] {0, 1, 2}, null), false, null);
+	}
+
+	private ICC_ColorSpace getRGBColorSpace() {
+		if(iccProfile.size() > 0) {
+			try {
+				ICC_Profile profile = ICC_Profile.getInstance(iccProfile.toByteArray());
+				if(profile.getColorSpaceType() == ColorSpace.TYPE_RGB) return new ICC_ColorSpace(profile);
+				LOGGER.warn("Embedded ICC profile is not an RGB profile, ignored");
+			} catch(IllegalArgumentException ex) {
+				LOGGER.warn("Invalid embedded ICC profile, ignored", ex);
+			}
+		}
+
 		return null;
-   	}
-	
+	}
+
+	private ICC_Profile getEmbeddedCMYKProfile() {
+		if(iccProfile.size() > 0) {
+			try {
+				ICC_Profile profile = ICC_Profile.getInstance(iccProfile.toByteArray());
+				if(profile.getNumComponents() == 4) return profile;
+				LOGGER.warn("Embedded ICC profile is not a CMYK profile, using the default one");
+			} catch(IllegalArgumentException ex) {
+				LOGGER.warn("Invalid embedded ICC profile, using the default one", ex);
+			}
+		}
+
+		return null;
+	}
+
+	private static synchronized CMYKLookupTable getDefaultCMYKTable() {
+		if(defaultCMYKTable == null) {
+			try {
+				defaultCMYKTable = new CMYKLookupTable(IMGUtils.getICCProfile(pathToCMYKProfile));
+			} catch(Exception ex) {
+				LOGGER.error("Failed loading the default CMYK profile", ex);
+			}
+		}
+
+		return defaultCMYKTable;
+	}
+
+	// Reads the length of a marker segment, which includes the two length bytes
+	private static int readSegmentLength(InputStream is) throws IOException {
+		int length = IOUtils.readUnsignedShortMM(is);
+		if(length < 2)
+			throw new IOException("Invalid JPEG segment length: " + length);
+
+		return length;
+	}
+
+	private static boolean readAPP0(InputStream is) throws IOException {
+		int length = readSegmentLength(is);
+		byte[] data = new byte[length - 2];
+		IOUtils.readFully(is, data);
+
+		return data.length >= JFIF_ID.length && Arrays.equals(ArrayUtils.subArray(data, 0, JFIF_ID.length), JFIF_ID);
+	}
+
 	private static void readAPP2(InputStream is, OutputStream os) throws IOException {
 		byte[] icc_profile_buf = new byte[12];
-		int length = IOUtils.readUnsignedShortMM(is);
+		int length = readSegmentLength(is);
+		if(length < 16) {
+			IOUtils.skipFully(is, length - 2);
+			return;
+		}
 		IOUtils.readFully(is, icc_profile_buf);
 		// ICC_PROFILE segment.
 		if (Arrays.equals(icc_profile_buf, ICC_PROFILE_ID.getBytes())) {
@@ -164,173 +1068,178 @@ public class JPGReader extends ImageReader {
   			IOUtils.skipFully(is, length - 14);
   		}
 	}
-	
-	private static void readAPP14(InputStream is) throws IOException {	
-		String[] app14Info = {"DCTEncodeVersion: ", "APP14Flags0: ", "APP14Flags1: ", "ColorTransform: "};		
+
+	// Returns the Adobe color transform or -1 if this is not an Adobe segment
+	private static int readAPP14(InputStream is) throws IOException {
+		String[] app14Info = {"DCTEncodeVersion: ", "APP14Flags0: ", "APP14Flags1: ", "ColorTransform: "};
 		int expectedLen = 14; // Expected length of this segment is 14.
-		int length = IOUtils.readUnsignedShortMM(is);
-		if (length >= expectedLen) { 
-			byte[] data = new byte[length - 2];
-			IOUtils.readFully(is, data, 0, length - 2);
+		int length = readSegmentLength(is);
+		byte[] data = new byte[length - 2];
+		IOUtils.readFully(is, data, 0, length - 2);
+		if (length >= expectedLen) {
 			byte[] buf = ArrayUtils.subArray(data, 0, 5);
-			
+
 			if(Arrays.equals(buf, ADOBE_ID)) {
 				for (int i = 0, j = 5; i < 3; i++, j += 2) {
-					LOGGER.info("{}{}", app14Info[i], StringUtils.shortToHexStringMM(IOUtils.readShortMM(data, j)));
+					LOGGER.debug("{}{}", app14Info[i], StringUtils.shortToHexStringMM(IOUtils.readShortMM(data, j)));
 				}
-				LOGGER.info("{}{}", app14Info[3], (((data[11]&0xff) == 0)? "Unknown (RGB or CMYK)":
+				LOGGER.debug("{}{}", app14Info[3], (((data[11]&0xff) == 0)? "Unknown (RGB or CMYK)":
 					((data[11]&0xff) == 1)? "YCbCr":"YCCK" ));
+
+				return data[11]&0xff;
 			}
 		}
+
+		return -1;
 	}
-	   
+
 	private void read_DQT(InputStream is)throws IOException {
 		// Define quantization table segment
-		int len = IOUtils.readUnsignedShortMM(is);
+		int len = readSegmentLength(is);
         byte buf[] = new byte[len - 2];
         IOUtils.readFully(is, buf);
-        
-    	DQTReader reader = new DQTReader(new Segment(Marker.DQT, len, buf));    	
+
+    	DQTReader reader = new DQTReader(new Segment(Marker.DQT, len, buf));
     	List<QTable> qTables = reader.getTables();
-    	
+
     	for(QTable table : qTables) {
 			int destination_id = table.getID();
-			quant_tbl[destination_id] = table.getData();
+			quant_tbl[destination_id&0x03] = table.getData();
 		}
-    	
+
     	LOGGER.debug("\n{}", qTablesToString(qTables));
 	}
-	
+
 	private static String qTablesToString(List<QTable> qTables) {
 		StringBuilder qtTables = new StringBuilder();
-				
+
 		qtTables.append("Quantization table information =>:\n");
-		
+
 		int count = 0;
-		
+
 		for(QTable table : qTables) {
 			int QT_precision = table.getPrecision();
 			int[] qTable = table.getData();
 			qtTables.append("precision of QT is " + QT_precision + "\n");
 			qtTables.append("Quantization table #" + table.getID() + ":\n");
-			
+
 		   	if(QT_precision == 0) {
 				for (int j = 0; j < 64; j++) {
 					if (j != 0 && j%8 == 0) {
 						qtTables.append("\n");
 					}
-					qtTables.append(qTable[j] + " ");			
+					qtTables.append(qTable[j] + " ");
 			    }
 			} else { // 16 bit big-endian
-								
+
 				for (int j = 0; j < 64; j++) {
 					if (j != 0 && j%8 == 0) {
 						qtTables.append("\n");
 					}
-					qtTables.append(qTable[j] + " ");	
-				}				
+					qtTables.append(qTable[j] + " ");
+				}
 			}
-		   	
+
 		   	count++;
-		
+
 			qtTables.append("\n");
 			qtTables.append("***************************\n");
 		}
-		
+
 		qtTables.append("Total number of Quantation tables: " + count + "\n");
 		qtTables.append("End of quantization table information\n");
-		
-		return qtTables.toString();		
+
+		return qtTables.toString();
 	}
-		
+
 	// Process define Huffman table
 	private void read_DHT(InputStream is) throws IOException {
 		// Define Huffman table segment
-		int len = IOUtils.readUnsignedShortMM(is);
+		int len = readSegmentLength(is);
         byte buf[] = new byte[len - 2];
         IOUtils.readFully(is, buf);
-        
+
     	DHTReader reader = new DHTReader(new Segment(Marker.DHT, len, buf));
-		
+
 		List<HTable> dcTables = reader.getDCTables();
 		List<HTable> acTables = reader.getACTables();
-		
+
 		for(HTable table : dcTables)
-			dc_hufftbl[table.getID()] = new HuffmanTbl(table.getBits(), table.getValues());
-			
+			dc_hufftbl[table.getID()&0x03] = new HuffmanTable(table.getBits(), table.getValues());
+
 		for(HTable table : acTables)
-			ac_hufftbl[table.getID()] = new HuffmanTbl(table.getBits(), table.getValues());
-		
+			ac_hufftbl[table.getID()&0x03] = new HuffmanTable(table.getBits(), table.getValues());
+
 		LOGGER.debug("\n{}", hTablesToString(dcTables));
 		LOGGER.debug("\n{}", hTablesToString(acTables));
-	}	
+	}
 
 	private static String hTablesToString(List<HTable> hTables) {
 		final String[] HT_class_table = {"DC Component", "AC Component"};
-		
+
 		StringBuilder hufTable = new StringBuilder();
-		
+
 		hufTable.append("Huffman table information =>:\n");
-		
+
 		for(HTable table : hTables)	{
 			hufTable.append("Class: " + table.getClazz() + " (" + HT_class_table[table.getClazz()] + ")\n");
 			hufTable.append("Huffman table #: " + table.getID() + "\n");
-			
+
 			byte[] bits = table.getBits();
 			byte[] values = table.getValues();
-			
+
 		    int count = 0;
-			
+
 			for (int i = 0; i < bits.length; i++) {
 				count += (bits[i]&0xff);
 			}
-			
+
             hufTable.append("Number of codes: " + count + "\n");
-			
+
             if (count > 256)
-            	throw new RuntimeException("Invalid huffman code count: " + count);			
-	        
+            	throw new RuntimeException("Invalid huffman code count: " + count);
+
             int j = 0;
-            
+
 			for (int i = 0; i < 16; i++) {
-			
+
 				hufTable.append("Codes of length " + (i+1) + " (" + (bits[i]&0xff) +  " total): [ ");
-				
+
 				for (int k = 0; k < (bits[i]&0xff); k++) {
 					hufTable.append((values[j++]&0xff) + " ");
 				}
-				
+
 				hufTable.append("]\n");
 			}
-			
+
 			hufTable.append("<= End of Huffman table information>>\n");
 		}
-		
+
 		return hufTable.toString();
 	}
-	
-	private SOFReader readSOF(InputStream is, Marker marker) throws IOException {		
-		int len = IOUtils.readUnsignedShortMM(is);
+
+	private SOFReader readSOF(InputStream is, Marker marker) throws IOException {
+		int len = readSegmentLength(is);
 		byte buf[] = new byte[len - 2];
 		IOUtils.readFully(is, buf);
-		
-		Segment segment = new Segment(marker, len, buf);		
+
+		Segment segment = new Segment(marker, len, buf);
 		SOFReader reader = new SOFReader(segment);
-		
-		LOGGER.debug("\n", sofToString(reader));
-		
+
+		LOGGER.debug("\n{}", sofToString(reader));
+
 		return reader;
 	}
-	
+
 	private static String sofToString(SOFReader reader) {
-		StringBuilder sof = new StringBuilder();		
+		StringBuilder sof = new StringBuilder();
 		sof.append("SOF information =>\n");
 		sof.append("Precision: " + reader.getPrecision() + "\n");
 		sof.append("Image height: " + reader.getFrameHeight() +"\n");
 		sof.append("Image width: " + reader.getFrameWidth() + "\n");
 		sof.append("# of Components: " + reader.getNumOfComponents() + "\n");
-		sof.append("(1 = grey scaled, 3 = color YCbCr or YIQ, 4 = color CMYK)\n");		
-		    
+		sof.append("(1 = grey scaled, 3 = color YCbCr or YIQ, 4 = color CMYK)\n");
+
 		for(Component component : reader.getComponents()) {
 			sof.append("\n");
 			sof.append("Component ID: " + component.getId() + "\n");
@@ -340,62 +1249,136 @@ public class JPGReader extends ImageReader {
 			sof.append("DC table number: " + component.getDCTableNumber() + "\n");
 			sof.append("AC table number: " + component.getACTableNumber() + "\n");
 		}
-		
+
 		sof.append("<= End of SOF information");
-		
+
 		return sof.toString();
 	}
-	
-	private short readSOS(InputStream is, SOFReader sofReader) throws IOException {
-		int len = IOUtils.readUnsignedShortMM(is);
-		byte buf[] = new byte[len - 2];
-		IOUtils.readFully(is, buf);
-		
-		Segment segment = new Segment(Marker.SOS, len, buf);
-		new SOSReader(segment, sofReader);
-		
-		// Actual image data follow.
-		int nextByte = 0;
-		short marker = 0;	
-		
-		while((nextByte = IOUtils.read(is)) != -1) {
-			if(nextByte == 0xff) {
-				nextByte = IOUtils.read(is);
-				
-				if (nextByte == -1) {
-					throw new IOException("Premature end of SOS segment!");					
-				}								
-				
-				if (nextByte != 0x00) {
-					marker = (short)((0xff<<8)|nextByte);
-					
-					switch (Marker.fromShort(marker)) {										
-						case RST0:  
-						case RST1:
-						case RST2:
-						case RST3:
-						case RST4:
-						case RST5:
-						case RST6:
-						case RST7:
-							continue;
-						default:											
-					}
-					break;
+
+	// Decoding state of a frame component
+	private static final class FrameComponent {
+		private final Component component;
+		private int h;
+		private int v;
+		private int blocksPerLine;
+		private int blocksPerColumn;
+		// Number of blocks covered by a non-interleaved scan
+		private int blocksWide;
+		private int blocksHigh;
+		private int[] qTable;
+		private HuffmanTable dcTable;
+		private HuffmanTable acTable;
+		private int dcPred;
+		// Quantized coefficients in natural order for progressive and multiple scan images
+		private short[] coefs;
+		// Samples of the current MCU row
+		private byte[] plane;
+		private int stride;
+		// Sample column for each output pixel
+		private int[] colIndex;
+		// Next nearest sample column for each output pixel and the upsampled scan line, if interpolated
+		private int[] neighbor;
+		private byte[] line;
+
+		private FrameComponent(Component component) {
+			this.component = component;
+		}
+	}
+
+	/**
+	 * Huffman decoding table with a lookup table for the codes up to
+	 * LOOKAHEAD_BITS long, built from the tables of HuffmanTbl.
+	 */
+	private static final class HuffmanTable {
+		// (code length<<8)|value indexed by the next LOOKAHEAD_BITS bits, 0 for longer codes
+		private final int[] lookup = new int[1<<LOOKAHEAD_BITS];
+		// Indexed by code length
+		private final int[] maxCode = new int[17];
+		private final int[] minCode = new int[17];
+		private final int[] valPtr = new int[17];
+		private final int[] values;
+
+		private HuffmanTable(byte[] bits, byte[] huffval) throws IOException {
+			int count = 0;
+
+			for(int i = 0; i < 16; i++)
+				count += (bits[i]&0xff);
+
+			if(count == 0 || count > 256 || count > huffval.length)
+				throw new IOException("Invalid Huffman table code count: " + count);
+
+			HuffmanTbl tbl = new HuffmanTbl(bits, huffval);
+			tbl.generateDecoderTables();
+
+			int[] maxCodes = tbl.getMaxCodeTable();
+			int[] minCodes = tbl.getMinCodeTable();
+			int[] valPtrs = tbl.getValPTRTable();
+
+			values = new int[count];
+
+			for(int i = 0; i < count; i++)
+				values[i] = huffval[i]&0xff;
+
+			for(int l = 1; l <= 16; l++) {
+				maxCode[l] = maxCodes[l - 1];
+				if(maxCode[l] < 0) continue;
+				minCode[l] = minCodes[l - 1];
+				valPtr[l] = valPtrs[l - 1];
+				if(l > LOOKAHEAD_BITS) continue;
+				int shift = LOOKAHEAD_BITS - l;
+				for(int code = minCode[l]; code <= maxCode[l]; code++) {
+					int first = code<<shift;
+					int last = first + (1<<shift);
+					if(last > lookup.length) break; // Invalid code
+					Arrays.fill(lookup, first, last, (l<<8)|values[valPtr[l] + code - minCode[l]]);
 				}
 			}
 		}
-		
-		if (nextByte == -1) {
-			throw new IOException("Premature end of SOS segment!");
+	}
+
+	// Unsynchronized buffered input, the buffer is kept for the next image
+	private static final class JPEGInputStream extends InputStream {
+		private final byte[] buf = new byte[8192];
+		private int pos;
+		private int limit;
+		private InputStream is;
+
+		private void setInput(InputStream is) {
+			this.is = is;
+			pos = limit = 0;
 		}
 
-		return marker;
-	}
-	   
-	@Override
-	public BufferedImage read(InputStream is) throws Exception {
-		return javax.imageio.ImageIO.read(is);
-		//return read1(is);
+		private boolean fill() throws IOException {
+			int count = 0;
+			while(count == 0) count = is.read(buf, 0, buf.length);
+			pos = 0;
+			limit = Math.max(count, 0);
+			return count > 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(pos >= limit && !fill()) return -1;
+			return buf[pos++]&0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			if(pos >= limit && !fill()) return -1;
+			int count = Math.min(len, limit - pos);
+			System.arraycopy(buf, pos, b, off, count);
+			pos += count;
+			return count;
+		}
+
+		private void skipBytes(int n) throws IOException {
+			while(n > 0) {
+				if(pos >= limit && !fill()) throw new EOFException();
+				int count = Math.min(n, limit - pos);
+				pos += count;
+				n -= count;
+			}
+		}
 	}
-}
\ No newline at end of file
+}
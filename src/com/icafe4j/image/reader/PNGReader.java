@@ -14,6 +14,10 @@
  *
  * Who   Date       Description
  * ====  =========  ===================================================
+ * WY    18Oct2026  Added reset() and reused the scan line buffer and the Inflater
+ * WY    18Oct2026  Added decoding into a caller-supplied destination image
+ * WY    18Oct2026  Added source subsampling while decoding
+ * WY    18Oct2026  Implemented ImageRowReader for non-interlaced images
  * WY    18Nov2015  Bug fix to fully skip the chunk if not interested
  * WY    25Dec2014  Added iCCP chunk support for RGB images 
  */
@@ -29,11 +33,14 @@ import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.*;
+import java.util.Arrays;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import org.slf4j.Logger;
@@ -58,7 +65,7 @@ import com.icafe4j.util.ArrayUtils;
  * @author Wen Yu, yuwen_66@yahoo.com 
  * @version 1.1 03/02/2012
  */
-public class PNGReader extends ImageReader {  
+public class PNGReader extends ImageReader implements ImageRowReader {  
      /* PNG signature constant */
      public static final long SIGNATURE = 0x89504E470D0A1A0AL;
      
@@ -141,7 +148,59 @@ public class PNGReader extends ImageReader {
 	 private byte renderingIntent = -1; // Comes from sRGB chunk	 
 	 private boolean hasICCP = false; // Comes from iCCP chunk
 	 private byte[] icc_profile;
+	 
+	 // Scan line reading
+	 private InputStream rowIS;
+	 private byte[] rowBuffer; // Previous scan line followed by current scan line
+	 private Inflater rowInflater;
+	 private int rowBytes;
+	 private int rowBytesPerPixel;
+	 private int rowsRead;
+	 private long rowTransparentKey = -1L;
+	 private boolean rowGamma;
 	
+	 /**
+	  * Reads the concatenated data of consecutive IDAT chunks, stopping at the first
+	  * non-IDAT chunk
+	  */
+	 private static class IDATInputStream extends InputStream {
+		 private InputStream is;
+		 private int remaining;
+		 private boolean done;
+		 
+		 IDATInputStream(InputStream is, int data_len) {
+			 this.is = is;
+			 this.remaining = data_len;
+		 }
+		 
+		 public int read() throws IOException {
+			 byte[] b = new byte[1];
+			 int nbytes = read(b, 0, 1);
+			 
+			 return (nbytes < 0)? -1 : (b[0]&0xff);
+		 }
+		 
+		 public int read(byte[] b, int off, int len) throws IOException {
+			 if(len == 0) return 0;
+			 while(remaining == 0) {
+				 if(done) return -1;
+				 IOUtils.readUnsignedIntMM(is);// CRC
+				 int data_len = IOUtils.readIntMM(is);
+				 if(IOUtils.readIntMM(is) != ChunkType.IDAT.getValue()) {
+					 done = true;
+					 return -1;
+				 }
+				 remaining = data_len;
+			 }
+			 int nbytes = is.read(b, off, Math.min(len, remaining));
+			 if(nbytes < 0)
+				 throw new EOFException("Unexpected end of IDAT chunk");
+			 remaining -= nbytes;
+			 
+			 return nbytes;
+		 }
+	 }
+	 
 	 private void adjust_grayscale_PLTE(int[] palette) {
 		 LOGGER.info("Transparent grayscale image!");
 		 palette[alpha[1]&0xff] = (palette[alpha[1]&0xff]&0x00FFFFFF);	
@@ -1263,6 +1322,7 @@ public class PNGReader extends ImageReader {
 	 }		
 	 
 	 public BufferedImage read(InputStream is) throws Exception {
+		 clearChunkState();
 		 // Local variables for reading chunks
 		 int data_len = 0;
          int chunk_type = 0;
@@ -1350,6 +1410,23 @@ public class PNGReader extends ImageReader {
 		  LOGGER.info("image interlace method: {} - {}", interlace_method, PNGDescriptor.getInterlaceTypeDescription(interlace_method));
 		  LOGGER.info("--- END PNG IMAGE INFO ---");
 		  // End of dumping
+		  
+		  computeSubsampling(width, height);
+		  
+		  BufferedImage destination = null;
+		  if(interlace_method == NON_INTERLACED) // Transparency from tRNS is checked once the chunk is read
+			  destination = getDestination((width + xStep - 1)/xStep, (height + yStep - 1)/yStep,
+					  color_format == ColorType.GRAY_SCALE_WITH_ALPHA.getValue() || color_format == ColorType.TRUE_COLOR_WITH_ALPHA.getValue());
+		  
+		  if((isSubsampling() || destination != null) && interlace_method == NON_INTERLACED) {
+			  // Decode by scan lines into the destination, keeping only the subsampled pixels
+			  startRows(is);
+			  BufferedImage image = readRows(destination);
+			  closeRowStream();
+			  is.close();
+			  
+			  return image;
+		  }
 
 		  while (true) {
 			  data_len = IOUtils.readIntMM(is);
@@ -1406,10 +1483,162 @@ public class PNGReader extends ImageReader {
 		  }
 	  
 		  is.close();
-
-		  return process_IDAT(compr_data.toByteArray());
+		  
+		  // Interlaced images are subsampled after decoding
+		  return subsample(process_IDAT(compr_data.toByteArray()), xStep, yStep);
      }
 	 
+	 // Drops what has been read from the ancillary chunks of the last image
+	 private void clearChunkState() {
+		 alpha = null;
+		 gammaTable = null;
+		 gammaUShortTable = null;
+		 gamma = 0.45455f;
+		 hasGamma = false;
+		 renderingIntent = -1;
+		 hasICCP = false;
+		 icc_profile = null;
+		 rgbColorPalette = null;
+	 }
+	 
+	 private void closeRowStream() throws IOException {
+		 if(rowIS != null)
+			 rowIS.close(); // Doesn't close the underlying image stream
+		 rowIS = null;
+	 }
+	 
+	 // Converts every step-th pixel of one defiltered scan line starting at offset to ARGB
+	 private void decodeRow(byte[] buffer, int offset, int[] dst, int dstOffset, int step) {
+		 int index = offset;
+		 int alphaValue = 0xff;
+		 
+		 switch (ColorType.fromInt(color_format)) {
+		   case GRAY_SCALE:
+			   for(int x = 0; x < width; x += step) {
+				   int sample = 0;
+				   int gray = 0;
+				   index = offset + x*rowBytesPerPixel;
+				   if(bitsPerPixel == 16) {
+					   gray = buffer[index]&0xff;
+					   sample = (gray<<8)|(buffer[index + 1]&0xff);
+				   } else if(bitsPerPixel == 8) {
+					   gray = sample = buffer[index]&0xff;
+				   } else {
+					   int pixelsPerByte = 8/bitsPerPixel;
+					   int mask = (1<<bitsPerPixel) - 1;
+					   sample = (buffer[offset + x/pixelsPerByte]>>(8 - bitsPerPixel*(x%pixelsPerByte + 1)))&mask;
+					   gray = sample*255/mask;
+				   }
+				   alphaValue = (sample == rowTransparentKey)? 0 : 0xff;
+				   if(rowGamma) gray = gammaTable[gray]&0xff;
+				   dst[dstOffset++] = (alphaValue<<24)|(gray<<16)|(gray<<8)|gray;
+			   }
+			   break;
+		   case GRAY_SCALE_WITH_ALPHA:
+			   int grayStep = bitsPerPixel>>>3;
+			   for(int x = 0; x < width; x += step) {
+				   index = offset + x*rowBytesPerPixel;
+				   int gray = buffer[index]&0xff;
+				   alphaValue = buffer[index + grayStep]&0xff;
+				   if(rowGamma) gray = gammaTable[gray]&0xff;
+				   dst[dstOffset++] = (alphaValue<<24)|(gray<<16)|(gray<<8)|gray;
+			   }
+			   break;
+		   case TRUE_COLOR:
+		   case TRUE_COLOR_WITH_ALPHA:
+			   boolean fullAlpha = (color_format == ColorType.TRUE_COLOR_WITH_ALPHA.getValue());
+			   int sampleStep = bitsPerPixel>>>3;
+			   for(int x = 0; x < width; x += step) {
+				   index = offset + x*rowBytesPerPixel;
+				   int red = buffer[index]&0xff;
+				   int green = buffer[index + sampleStep]&0xff;
+				   int blue = buffer[index + 2*sampleStep]&0xff;
+				   if(fullAlpha) {
+					   alphaValue = buffer[index + 3*sampleStep]&0xff;
+				   } else if(rowTransparentKey != -1L) {
+					   long key = 0L;
+					   if(sampleStep == 2) {
+						   key = ((long)((red<<8)|(buffer[index + 1]&0xff))<<32)|((long)((green<<8)|(buffer[index + 3]&0xff))<<16)|((blue<<8)|(buffer[index + 5]&0xff));
+					   } else
+						   key = ((long)red<<32)|(green<<16)|blue;
+					   alphaValue = (key == rowTransparentKey)? 0 : 0xff;
+				   }
+				   if(rowGamma) {
+					   red = gammaTable[red]&0xff;
+					   green = gammaTable[green]&0xff;
+					   blue = gammaTable[blue]&0xff;
+				   }
+				   dst[dstOffset++] = (alphaValue<<24)|(red<<16)|(green<<8)|blue;
+			   }
+			   break;
+		   case INDEX_COLOR:
+			   int pixelsPerByte = 8/bitsPerPixel;
+			   int mask = (1<<bitsPerPixel) - 1;
+			   for(int x = 0; x < width; x += step) {
+				   int colorIndex = (buffer[offset + x/pixelsPerByte]>>(8 - bitsPerPixel*(x%pixelsPerByte + 1)))&mask;
+				   dst[dstOffset++] = (colorIndex < rgbColorPalette.length)? rgbColorPalette[colorIndex] : 0xff000000;
+			   }
+			   break;
+		   default:
+			   break;
+		 }
+	 }
+	 
+	 // Reads and defilters the next scan line into the second half of rowBuffer
+	 private void defilterNextRow() throws IOException {
+		 // Keep the current scan line as the previous one. It is all zero for the first row
+		 // which makes it behave like the first row
+		 System.arraycopy(rowBuffer, rowBytes, rowBuffer, 0, rowBytes);
+		 int filter_type = rowIS.read();
+		 if(filter_type < 0)
+			 throw new EOFException("Unexpected end of PNG image data");
+		 IOUtils.readFully(rowIS, rowBuffer, rowBytes, rowBytes);
+		 switch (filter_type) {
+	  		case Filter.NONE:
+	  			break;
+	  		case Filter.SUB:
+	  			Filter.defilter_sub(rowBytesPerPixel, rowBytes, rowBuffer, rowBytes);
+	  			break;
+	  		case Filter.UP:
+	  			Filter.defilter_up(rowBytes, rowBuffer, rowBytes);
+	  			break;
+	  		case Filter.AVERAGE:
+	  			Filter.defilter_average(rowBytesPerPixel, rowBytes, rowBuffer, rowBytes);
+	  			break;
+	  		case Filter.PAETH:
+	  			Filter.defilter_paeth(rowBytesPerPixel, rowBytes, rowBuffer, rowBytes);
+	  			break;
+	  		default:
+	  			break;
+		 }
+	 }
+	 
+	 /**
+	  * Decodes the next scan lines. Gamma correction is applied the same way as read()
+	  * but embedded ICC profiles are not, so the samples are returned as sRGB.
+	  */
+	 public int nextRows(int[] dst, int maxRows) throws Exception {
+		 if(rowIS == null) {
+			 if(rowBytes == 0)
+				 throw new IllegalStateException("readHeader() must be called before nextRows()");
+			 return -1;
+		 }
+		 if(dst.length < width)
+			 throw new IllegalArgumentException("Destination array can't hold a scan line of " + width + " pixels");
+		 int rows = Math.min(Math.min(maxRows, height - rowsRead), dst.length/width);
+		 
+		 for(int i = 0, dstOffset = 0; i < rows; i++, dstOffset += width) {
+			 defilterNextRow();
+			 decodeRow(rowBuffer, rowBytes, dst, dstOffset, 1);
+		 }
+		 
+		 rowsRead += rows;
+		 
+		 if(rowsRead >= height) closeRowStream();
+		 
+		 return rows;
+	 }
+	 
 	 private void read_GAMMA(InputStream is, int data_len) throws Exception {
 		 if(data_len != 4){
 			 LOGGER.error("Invalid Gamma data length: {}", data_len);
@@ -1424,6 +1653,193 @@ public class PNGReader extends ImageReader {
 		 IOUtils.readUnsignedIntMM(is);// CRC
 	 }
 	 
+	 /**
+	  * Reads the chunks up to the first IDAT chunk. Only non-interlaced images can be
+	  * read by scan lines.
+	  */
+	 public void readHeader(InputStream is) throws Exception {
+		 if(IOUtils.readLongMM(is) != SIGNATURE)
+			 throw new IOException("NOT A PNG IMAGE");
+		 if(!read_IHDR(is))
+			 throw new IOException("NOT A VALID PNG IMAGE");
+		 if(interlace_method == ADAM7)
+			 throw new UnsupportedOperationException("Interlaced PNG can not be read by scan lines");
+		 
+		 startRows(is);
+	 }
+	 
+	 // Reads the chunks following IHDR up to the first IDAT chunk and sets up the scan line stream
+	 private void startRows(InputStream is) throws Exception {
+		 closeRowStream();
+		 clearChunkState();
+		 rowBytes = 0;
+		 
+		 int data_len = 0;
+		 int chunk_type = 0;
+		 
+		 while(true) {
+			 data_len = IOUtils.readIntMM(is);
+			 chunk_type = IOUtils.readIntMM(is);
+			 
+			 if(chunk_type == ChunkType.IDAT.getValue())
+				 break;
+			 if(chunk_type == ChunkType.IEND.getValue())
+				 throw new IOException("No IDAT chunk found");
+			 
+			 switch (ChunkType.fromInt(chunk_type)) {
+			  	case TRNS:
+			  		alpha = new byte[data_len];
+			  		IOUtils.readFully(is, alpha);
+			  		IOUtils.readUnsignedIntMM(is);// CRC
+			  		break;
+			  	case GAMA:
+			  		read_GAMMA(is, data_len);
+			  		break;
+			  	case SRGB:
+			  		read_SRGB(is, data_len);
+			  		break;
+			  	case PLTE:
+			  		rgbColorPalette = new int[data_len/3];
+			  		read_PLTE(is, data_len);
+			  		break;
+			  	case ICCP:
+			  		hasICCP = true;
+			  		icc_profile = readICCProfile(is, data_len);
+			  		IOUtils.readUnsignedIntMM(is);
+			  		break;
+			  	default:
+			  		IOUtils.skipFully(is, data_len);
+			  		IOUtils.readUnsignedIntMM(is);// CRC
+			  		break;
+			 }
+		 }
+		 
+		 int channels = 1;
+		 
+		 switch (ColorType.fromInt(color_format)) {
+		 	case GRAY_SCALE:
+		 		break;
+		 	case GRAY_SCALE_WITH_ALPHA:
+		 		channels = 2;
+		 		break;
+		 	case TRUE_COLOR:
+		 		channels = 3;
+		 		break;
+		 	case TRUE_COLOR_WITH_ALPHA:
+		 		channels = 4;
+		 		break;
+		 	case INDEX_COLOR:
+		 		if(rgbColorPalette == null)
+		 			throw new IOException("Missing PLTE chunk for indexed color image");
+		 		if(alpha != null) adjust_PLTE();
+		 		break;
+		 	default:
+		 		throw new IOException("Unknown PNG color type: " + color_format);
+		 }
+		 
+		 rowTransparentKey = -1L;
+		 
+		 if(alpha != null) {
+			 if(color_format == ColorType.GRAY_SCALE.getValue() && alpha.length >= 2)
+				 rowTransparentKey = ((alpha[0]&0xff)<<8)|(alpha[1]&0xff);
+			 else if(color_format == ColorType.TRUE_COLOR.getValue() && alpha.length >= 6) {
+				 if(bitsPerPixel == 16)
+					 rowTransparentKey = ((long)IOUtils.readUnsignedShortMM(alpha, 0)<<32)|((long)IOUtils.readUnsignedShortMM(alpha, 2)<<16)|IOUtils.readUnsignedShortMM(alpha, 4);
+				 else
+					 rowTransparentKey = ((long)(alpha[1]&0xff)<<32)|((alpha[3]&0xff)<<16)|(alpha[5]&0xff);
+			 }
+		 }
+		 
+		 rowGamma = hasGamma && renderingIntent == -1 && !hasICCP;
+		 
+		 if(rowGamma) {
+			 if(gammaTable == null) createGammaTable(gamma, displayExponent); // 16 bit samples are reduced to 8 bits
+			 if(color_format == ColorType.INDEX_COLOR.getValue()) correctGamma(rgbColorPalette);
+		 }
+		 
+		 int bitsPerRowPixel = bitsPerPixel*channels;
+		 rowBytes = (int)(((long)width*bitsPerRowPixel + 7)>>>3);
+		 rowBytesPerPixel = Math.max(1, bitsPerRowPixel>>>3);
+		 if(rowBuffer == null || rowBuffer.length < rowBytes<<1)
+			 rowBuffer = new byte[rowBytes<<1];
+		 else
+			 Arrays.fill(rowBuffer, 0, rowBytes<<1, (byte)0);
+		 rowsRead = 0;
+		 if(rowInflater == null)
+			 rowInflater = new Inflater();
+		 else
+			 rowInflater.reset();
+		 // Wrap an InflaterInputStream with a bufferedInputStream to speed up reading
+		 rowIS = new BufferedInputStream(new InflaterInputStream(new IDATInputStream(is, data_len), rowInflater));
+	 }
+	 
+	 /**
+	  * Closes the scan line stream and drops the state of the last image. The scan
+	  * line buffer up to MAX_KEPT_BUFFER_SIZE and the Inflater are kept for the
+	  * next image.
+	  */
+	 @Override
+	 public void reset() {
+		 super.reset();
+		 try {
+			 closeRowStream();
+		 } catch(IOException e) {
+			 LOGGER.error("Error closing the scan line stream", e);
+		 }
+		 clearChunkState();
+		 rowBytes = 0;
+		 if(rowBuffer != null && rowBuffer.length > MAX_KEPT_BUFFER_SIZE)
+			 rowBuffer = null;
+	 }
+	 
+	 // Decodes the scan lines keeping every xStep-th pixel of every yStep-th scan line
+	 private BufferedImage readRows(BufferedImage destination) throws Exception {
+		 int subWidth = (width + xStep - 1)/xStep;
+		 int subHeight = (height + yStep - 1)/yStep;
+		 boolean hasAlpha = (alpha != null || color_format == ColorType.GRAY_SCALE_WITH_ALPHA.getValue()
+				 || color_format == ColorType.TRUE_COLOR_WITH_ALPHA.getValue());
+		 boolean applyICCP = hasICCP && (color_format == ColorType.TRUE_COLOR.getValue() || color_format == ColorType.TRUE_COLOR_WITH_ALPHA.getValue());
+		 // The destination can't take the alpha from tRNS or the pixels before color conversion
+		 if(destination != null && (applyICCP || (hasAlpha && destination.getType() != BufferedImage.TYPE_INT_ARGB)))
+			 destination = null;
+		 BufferedImage image = destination;
+		 if(image == null)
+			 image = new BufferedImage(subWidth, subHeight, hasAlpha? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		 int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		 
+		 for(int y = 0, dstOffset = 0; y < height; y++) {
+			 // Every scan line has to be defiltered as the filters refer to the previous one
+			 defilterNextRow();
+			 if(y%yStep == 0) {
+				 decodeRow(rowBuffer, rowBytes, pixels, dstOffset, xStep);
+				 dstOffset += subWidth;
+			 }
+		 }
+		 
+		 rowsRead = height;
+		 
+		 if(!applyICCP)
+			 return image;
+		 
+		 // Apply the embedded ICC profile the same way as process_IDAT()
+		 int numOfBands = hasAlpha? 4 : 3;
+		 byte[] bpixels = new byte[pixels.length*numOfBands];
+		 for(int i = 0, index = 0; i < pixels.length; i++) {
+			 bpixels[index++] = (byte)(pixels[i]>>16);
+			 bpixels[index++] = (byte)(pixels[i]>>8);
+			 bpixels[index++] = (byte)pixels[i];
+			 if(hasAlpha) bpixels[index++] = (byte)(pixels[i]>>24);
+		 }
+		 int[] off = hasAlpha? new int[] {0, 1, 2, 3} : new int[] {0, 1, 2};
+		 int trans = hasAlpha? Transparency.TRANSLUCENT : Transparency.OPAQUE;
+		 WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(bpixels, bpixels.length), subWidth, subHeight, subWidth*numOfBands, numOfBands, off, null);
+		 ColorModel cm = new ComponentColorModel(new ICC_ColorSpace(ICC_Profile.getInstance(icc_profile)), hasAlpha, false, trans, DataBuffer.TYPE_BYTE);
+		 raster = IMGUtils.iccp2rgbRaster(raster, cm);
+		 cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), hasAlpha, false, trans, DataBuffer.TYPE_BYTE);
+		 
+		 return new BufferedImage(cm, raster, false, null);
+	 }
+	 
 	 private void read_IDAT(InputStream is, int data_len, ByteArrayOutputStream compr_data) throws Exception {
  		 byte[] buf = new byte[data_len];
 		 IOUtils.readFully(is,buf,0,data_len);
@@ -161,6 +161,13 @@ public class TGAReader extends ImageReader {
  	   	return new BufferedImage(cm, raster, false, null);
 	}
    	
+	@Override
+	public void reset() {
+		super.reset();
+		tgaHeader = null;
+		pix = null; // Backs the last image read
+	}
+	
 	private void read_BW_Tga(InputStream is) throws Exception {
 		bitsPerPixel = 1;
 		LOGGER.info("Uncompressed Black and White Tga image!");
@@ -14,6 +14,14 @@
  *
  * Who   Date       Description
  * ====  =======    ============================================================
+ * WY    18Oct2026  Added reset() and reused the LZW and deflate decoders
+ * WY    18Oct2026  Added decoding into a caller-supplied destination image
+ * WY    18Oct2026  Added open(), readPage() and getPages() for on demand page decoding
+ * WY    18Oct2026  Added source subsampling for stripped images
+ * WY    18Oct2026  Added read(InputStream, int, Rectangle) for region of interest decoding
+ * WY    18Oct2026  Implemented ImageRowReader for stripped images
+ * WY    18Oct2026  Cache non-file input in memory until it grows too large
+ * WY    18Oct2026  Read FileInputStream through memory mapped stream
  * WY    03Jan2018  Fix issue with fillOrder 2
  * WY    07Dec2017  Added support for CCITTRLE compression
  * WY    28Nov2017  Added gray-scale alpha support
@@ -41,6 +49,7 @@
 
 package com.icafe4j.image.reader;
 
+import java.awt.Rectangle;
 import java.awt.Transparency;
 import java.awt.color.ColorSpace;
 import java.awt.color.ICC_ColorSpace;
@@ -59,13 +68,17 @@ import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
+import java.awt.image.RasterFormatException;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,13 +109,15 @@ import com.icafe4j.image.tiff.TiffFieldEnum.PhotoMetric;
 import com.icafe4j.image.tiff.TiffTag;
 import com.icafe4j.image.tiff.UndefinedField;
 import com.icafe4j.image.util.IMGUtils;
-import com.icafe4j.io.FileCacheRandomAccessInputStream;
+import com.icafe4j.io.FileMapRandomAccessInputStream;
+import com.icafe4j.io.HybridCacheRandomAccessInputStream;
 import com.icafe4j.io.IOUtils;
 import com.icafe4j.io.RandomAccessInputStream;
 import com.icafe4j.io.ReadStrategyII;
 import com.icafe4j.io.ReadStrategyMM;
 import com.icafe4j.string.StringUtils;
 import com.icafe4j.util.ArrayUtils;
+import com.icafe4j.util.LRUCache;
 
 /** 
  * Decodes and shows TIFF images. 
@@ -110,11 +125,24 @@ import com.icafe4j.util.ArrayUtils;
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.0 03/09/2012  
  */
-public class TIFFReader extends ImageReader {
+public class TIFFReader extends ImageReader implements ImageRowReader {
 	private RandomAccessInputStream randIS = null;
 	protected List<IFD> ifds;
 	private List<BufferedImage> frames;
 	private int endian = IOUtils.BIG_ENDIAN;
+	// Scan line reading
+	private StripRowDecoder rowDecoder;
+	// Strip buffers kept from page to page and from image to image
+	private byte[] stripBuffer;
+	private byte[] compressedStripBuffer;
+	// Decoders kept from strip to strip and from image to image, reset by setInput()
+	private LZWTreeDecoder lzwDecoder;
+	private DeflateDecoder deflateDecoder;
+	// On demand page reading
+	private int nextIFDOffset; // Offset of the first IFD not read yet, 0 at the end of the IFD chain
+	private boolean pagesOpen;
+	private int pageCacheSize;
+	private Map<Integer, BufferedImage> pageCache;
 	private static final int[] redMask =   {0x00, 0x04, 0x30, 0x1c0, 0xf00};
 	private static final int[] greenMask = {0x00, 0x02, 0x0c, 0x038, 0x0f0};
 	private static final int[] blueMask =  {0x00, 0x01, 0x03, 0x007, 0x00f};	
@@ -147,11 +175,32 @@ public class TIFFReader extends ImageReader {
 			EIGHT_BIT_COLOR_PALETTE_WHITE_IS_ZERO[255 - i] = 0xFF000000|(i<<16)|(i<<8)|(i&0xff);
 	}
 	
-	private static final int bufLen = 40960; // 40K read buffer
 	
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(TIFFReader.class);		
 	
+	private void closeRowStream() throws IOException {
+		if(rowDecoder != null && randIS != null)
+			randIS.shallowClose();
+	}
+	
+	// Copies the region out so the result doesn't hold on to the rest of the decoded pixels
+	private static BufferedImage crop(BufferedImage image, int x, int y, int width, int height) {
+		if(image == null) return null;
+		if(x == 0 && y == 0 && width == image.getWidth() && height == image.getHeight())
+			return image;
+		Raster region = image.getRaster().createChild(x, y, width, height, 0, 0, null);
+		WritableRaster raster = null;
+		try {
+			raster = region.createCompatibleWritableRaster(width, height);
+		} catch(RasterFormatException ex) { // Sample models with unused bands can't be compacted
+			return image.getSubimage(x, y, width, height);
+		}
+		raster.setRect(region);
+		
+		return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+	}
+	
 	protected BufferedImage decode(IFD ifd) throws Exception {
 		// Grab some of the TIFF fields we are interested in
 		TiffField<?> f_tileWidth = ifd.getField(TiffTag.TILE_WIDTH);
@@ -161,6 +210,113 @@ public class TIFFReader extends ImageReader {
 		return decodeStrippedTiff(ifd);
 	}
 	
+	/**
+	 * Decodes the part of a page inside the region of interest. Only the strips
+	 * or tiles which intersect the region are read and decompressed: a sub IFD
+	 * holding just those strips or tiles is decoded and then cropped to the region.
+	 */
+	private BufferedImage decode(IFD ifd, Rectangle roi) throws Exception {
+		int imageWidth = ifd.getField(TiffTag.IMAGE_WIDTH).getDataAsLong()[0];
+		int imageHeight = ifd.getField(TiffTag.IMAGE_LENGTH).getDataAsLong()[0];
+		Rectangle region = roi.intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+		if(region.isEmpty())
+			throw new IllegalArgumentException("Region of interest " + roi + " is outside of the image");
+		
+		TiffField<?> f_tileWidth = ifd.getField(TiffTag.TILE_WIDTH);
+		TiffField<?> f_tileLength = ifd.getField(TiffTag.TILE_LENGTH);
+		boolean tiled = (f_tileWidth != null && f_tileLength != null);
+		
+		TiffTag offsetTag = tiled? TiffTag.TILE_OFFSETS : TiffTag.STRIP_OFFSETS;
+		TiffTag byteCountTag = tiled? TiffTag.TILE_BYTE_COUNTS : TiffTag.STRIP_BYTE_COUNTS;
+		if(tiled && ifd.getField(offsetTag) == null) { // Some tiled images use strip tags
+			offsetTag = TiffTag.STRIP_OFFSETS;
+			byteCountTag = TiffTag.STRIP_BYTE_COUNTS;
+		}
+		TiffField<?> f_offsets = ifd.getField(offsetTag);
+		TiffField<?> f_byteCounts = ifd.getField(byteCountTag);
+		if(f_offsets == null) throw new RuntimeException("Missing required field " + offsetTag);
+		// Nothing to skip if there is only one strip or tile
+		if(f_byteCounts == null) return crop(decode(ifd), region.x, region.y, region.width, region.height);
+		
+		int[] offsets = f_offsets.getDataAsLong();
+		int[] byteCounts = f_byteCounts.getDataAsLong();
+		// Unit is tile or strip, a strip being a tile as wide as the image
+		int unitWidth = imageWidth;
+		int unitLength = imageHeight;
+		
+		if(tiled) {
+			unitWidth = f_tileWidth.getDataAsLong()[0];
+			unitLength = f_tileLength.getDataAsLong()[0];
+		} else {
+			TiffField<?> f_rowsPerStrip = ifd.getField(TiffTag.ROWS_PER_STRIP);
+			if(f_rowsPerStrip != null) unitLength = f_rowsPerStrip.getDataAsLong()[0];
+			if(unitLength <= 0 || unitLength > imageHeight) unitLength = imageHeight;
+			// YCbCr strips hold whole rows of data units
+			TiffField<?> f_photoMetric = ifd.getField(TiffTag.PHOTOMETRIC_INTERPRETATION);
+			if(f_photoMetric != null && f_photoMetric.getDataAsLong()[0] == PhotoMetric.YCbCr.getValue()) {
+				TiffField<?> f_YCbCrSubSampling = ifd.getField(TiffTag.YCbCr_SUB_SAMPLING);
+				int verticalSampleFactor = (f_YCbCrSubSampling == null)? 2 : f_YCbCrSubSampling.getDataAsLong()[1];
+				unitLength = ((unitLength + verticalSampleFactor - 1)/verticalSampleFactor)*verticalSampleFactor;
+			}
+		}
+		
+		int unitsAcross = (imageWidth + unitWidth - 1)/unitWidth;
+		int unitsDown = (imageHeight + unitLength - 1)/unitLength;
+		int unitsPerPlane = unitsAcross*unitsDown;
+		
+		if(offsets.length < unitsPerPlane || byteCounts.length < offsets.length) {
+			LOGGER.warn("Inconsistent strip or tile layout, decoding the whole page");
+			return crop(decode(ifd), region.x, region.y, region.width, region.height);
+		}
+		
+		int planes = offsets.length/unitsPerPlane; // More than one for PlanarConfiguration 2
+		int firstColumn = region.x/unitWidth;
+		int lastColumn = (region.x + region.width - 1)/unitWidth;
+		int firstRow = region.y/unitLength;
+		int lastRow = (region.y + region.height - 1)/unitLength;
+		
+		int[] subOffsets = new int[planes*(lastColumn - firstColumn + 1)*(lastRow - firstRow + 1)];
+		int[] subByteCounts = new int[subOffsets.length];
+		
+		for(int plane = 0, index = 0; plane < planes; plane++) {
+			for(int row = firstRow; row <= lastRow; row++) {
+				for(int column = firstColumn; column <= lastColumn; column++, index++) {
+					int unit = plane*unitsPerPlane + row*unitsAcross + column;
+					subOffsets[index] = offsets[unit];
+					subByteCounts[index] = byteCounts[unit];
+				}
+			}
+		}
+		
+		int x0 = firstColumn*unitWidth;
+		int y0 = firstRow*unitLength;
+		
+		IFD subIFD = new IFD();
+		subIFD.addFields(ifd.getFields());
+		subIFD.addField(new LongField(TiffTag.IMAGE_WIDTH.getValue(), new int[] {Math.min(imageWidth - x0, (lastColumn - firstColumn + 1)*unitWidth)}));
+		subIFD.addField(new LongField(TiffTag.IMAGE_LENGTH.getValue(), new int[] {Math.min(imageHeight - y0, (lastRow - firstRow + 1)*unitLength)}));
+		subIFD.addField(new LongField(offsetTag.getValue(), subOffsets));
+		subIFD.addField(new LongField(byteCountTag.getValue(), subByteCounts));
+		
+		LOGGER.info("Decoding {} of {} strips or tiles for region {}", subOffsets.length, offsets.length, region);
+		
+		return crop(decode(subIFD), region.x - x0, region.y - y0, region.width, region.height);
+	}
+	
+	private DeflateDecoder getDeflateDecoder() {
+		if(deflateDecoder == null)
+			deflateDecoder = new DeflateDecoder();
+		
+		return deflateDecoder;
+	}
+	
+	private LZWTreeDecoder getLZWDecoder() {
+		if(lzwDecoder == null)
+			lzwDecoder = new LZWTreeDecoder(8, true);
+		
+		return lzwDecoder;
+	}
+	
 	private BufferedImage decodeStrippedTiff(IFD ifd) throws Exception {
 		// Grab some of the TIFF fields we are interested in
 		TiffField<?> f_compression = ifd.getField(TiffTag.COMPRESSION);
@@ -292,11 +448,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					case PACKBITS:
 						for(int i = 0; i < stripByteCounts.length; i++) {
@@ -357,11 +513,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					default:
 						break;
@@ -531,7 +687,7 @@ public class TIFFReader extends ImageReader {
 									randIS.readFully(temp);
 								}
 								temp2 = new byte[stripBytes[i]];
-								decoder = new LZWTreeDecoder(8, true);
+								decoder = getLZWDecoder();
 								decoder.setInput(temp);
 								int numOfBytes = decoder.decode(temp2, 0, temp2.length);	
 								
@@ -681,11 +837,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					default:
 				}				
@@ -919,11 +1075,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					case PACKBITS:
 						for(int i = 0; i < stripByteCounts.length; i++) {
@@ -1140,12 +1296,14 @@ public class TIFFReader extends ImageReader {
 				switch(compression) {
 					case NONE:
 						for(int i = 0; i < tileByteCounts.length; i++) {
-							byte[] temp = new byte[tileByteCounts[i]];
 							randIS.seek(tileOffsets[i]);
-							randIS.readFully(temp);
 							if(bitsPerSample == 16) {
-								raster.setDataElements(xoff, yoff, tileWidth, tileLength, ArrayUtils.toShortArray(temp, endian == IOUtils.BIG_ENDIAN));
+								short[] stemp = new short[tileByteCounts[i]/2];
+								randIS.readShorts(stemp, 0, stemp.length);
+								raster.setDataElements(xoff, yoff, tileWidth, tileLength, stemp);
 							} else {
+								byte[] temp = new byte[tileByteCounts[i]];
+								randIS.readFully(temp);
 								DataBuffer tileDataBuffer = new DataBufferByte(temp, temp.length);
 								WritableRaster tileRaster = Raster.createPackedRaster(tileDataBuffer, tileWidth, tileLength, bitsPerSample, null);
 								raster.setDataElements(xoff, yoff, tileRaster);
@@ -1160,11 +1318,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					default:
 				}
@@ -1241,34 +1399,43 @@ public class TIFFReader extends ImageReader {
 					case NONE:
 						if(planaryConfiguration == 1) {
 							for(int i = 0; i < tileByteCounts.length; i++) {
-								byte[] temp = new byte[tileByteCounts[i]];
 								randIS.seek(tileOffsets[i]);
-								randIS.readFully(temp);
-								if(floatSample) {
-									Object tempArray = null;
-									if(bitsPerSample == 64)
-										tempArray = ArrayUtils.toDoubleArray(temp, endian == IOUtils.BIG_ENDIAN);
-									else if(bitsPerSample == 32) {
-										tempArray = ArrayUtils.toFloatArray(temp, endian == IOUtils.BIG_ENDIAN);
-									} else if(bitsPerSample == 24) {
-									    tempArray =	ArrayUtils.to24BitFloatArray(temp, endian == IOUtils.BIG_ENDIAN);
-									} else if(bitsPerSample == 16)
-										tempArray = ArrayUtils.to16BitFloatArray(temp, endian == IOUtils.BIG_ENDIAN);
-									else
-										throw new UnsupportedOperationException("Unsupported bit depth: " + bitsPerSample);
-									raster.setDataElements(xoff, yoff, tileWidth, tileLength, tempArray);	
+								// Samples which map to a primitive type are read directly in the right byte order
+								if(floatSample && bitsPerSample == 64) {
+									double[] dtemp = new double[tileByteCounts[i]/8];
+									randIS.readDoubles(dtemp, 0, dtemp.length);
+									raster.setDataElements(xoff, yoff, tileWidth, tileLength, dtemp);
+								} else if(floatSample && bitsPerSample == 32) {
+									float[] ftemp = new float[tileByteCounts[i]/4];
+									randIS.readFloats(ftemp, 0, ftemp.length);
+									raster.setDataElements(xoff, yoff, tileWidth, tileLength, ftemp);
+								} else if(!floatSample && bitsPerSample == 16) {
+									short[] stemp = new short[tileByteCounts[i]/2];
+									randIS.readShorts(stemp, 0, stemp.length);
+									raster.setDataElements(xoff, yoff, tileWidth, tileLength, stemp);
 								} else {
-									if(bitsPerSample < 8) {
-										raster.setDataElements(xoff, yoff, tileWidth, tileLength, ArrayUtils.toNBits(bitsPerSample*samplesPerPixel, temp, tileWidth, true));
-									} else if(bitsPerSample == 8) {
-										raster.setDataElements(xoff, yoff, tileWidth, tileLength, temp);									
-									} else if(bitsPerSample % 8 == 0) {
-										Object tempArray = ArrayUtils.toNBits(bitsPerSample, temp, samplesPerPixel*tileWidth, endian == IOUtils.BIG_ENDIAN);
-										raster.setDataElements(xoff, yoff, tileWidth, tileLength, tempArray);									
+									byte[] temp = new byte[tileByteCounts[i]];
+									randIS.readFully(temp);
+									Object tempArray = null;
+									if(floatSample) {
+										if(bitsPerSample == 24) {
+										    tempArray =	ArrayUtils.to24BitFloatArray(temp, endian == IOUtils.BIG_ENDIAN);
+										} else if(bitsPerSample == 16)
+											tempArray = ArrayUtils.to16BitFloatArray(temp, endian == IOUtils.BIG_ENDIAN);
+										else
+											throw new UnsupportedOperationException("Unsupported bit depth: " + bitsPerSample);
 									} else {
-										Object tempArray = ArrayUtils.toNBits(bitsPerSample, temp, samplesPerPixel*tileWidth, true);
-										raster.setDataElements(xoff, yoff, tileWidth, tileLength, tempArray);
+										if(bitsPerSample < 8) {
+											tempArray = ArrayUtils.toNBits(bitsPerSample*samplesPerPixel, temp, tileWidth, true);
+										} else if(bitsPerSample == 8) {
+											tempArray = temp;
+										} else if(bitsPerSample % 8 == 0) {
+											tempArray = ArrayUtils.toNBits(bitsPerSample, temp, samplesPerPixel*tileWidth, endian == IOUtils.BIG_ENDIAN);
+										} else {
+											tempArray = ArrayUtils.toNBits(bitsPerSample, temp, samplesPerPixel*tileWidth, true);
+										}
 									}
+									raster.setDataElements(xoff, yoff, tileWidth, tileLength, tempArray);
 								}
 								xoff += tileWidth;
 								tileCounter++;
@@ -1380,11 +1547,11 @@ public class TIFFReader extends ImageReader {
 						}
 						break;
 					case LZW:
-						decoder = new LZWTreeDecoder(8, true);
+						decoder = getLZWDecoder();
 						break;
 					case DEFLATE:
 					case DEFLATE_ADOBE:
-						decoder = new DeflateDecoder();
+						decoder = getDeflateDecoder();
 						break;
 					default:
 				}
@@ -1421,6 +1588,274 @@ public class TIFFReader extends ImageReader {
 		return null;
 	}
 	 
+	/**
+	 * Decodes a stripped image one strip at a time and serves the scan lines from
+	 * the current strip. Strips without any scan line requested are never decoded,
+	 * which makes it also usable for subsampling. Only chunky (PlanarConfiguration 1) images with NONE, LZW,
+	 * DEFLATE or PACKBITS compression are supported.
+	 */
+	private class StripRowDecoder {
+		private int imageWidth;
+		private int imageHeight;
+		private int rowsPerStrip;
+		private int bitsPerSample;
+		private int samplesPerPixel;
+		private int predictor;
+		private int fillOrder;
+		private boolean isAssociatedAlpha;
+		private TiffFieldEnum.PhotoMetric photoMetric;
+		private TiffFieldEnum.Compression compression;
+		private ImageDecoder decoder;
+		private int[] stripOffsets;
+		private int[] stripByteCounts;
+		private int[] palette;
+		private int bytesPerRow;
+		private byte[] strip;
+		private int currentStrip = -1;
+		private int rowsRead;
+		
+		StripRowDecoder(IFD ifd) throws Exception {
+			if(ifd.getField(TiffTag.TILE_WIDTH) != null && ifd.getField(TiffTag.TILE_LENGTH) != null)
+				throw new UnsupportedOperationException("Tiled TIFF can not be read by scan lines");
+			TiffField<?> f_stripOffsets = ifd.getField(TiffTag.STRIP_OFFSETS);
+			if(f_stripOffsets == null) throw new RuntimeException("Missing required field stripOffsets");
+			stripOffsets = f_stripOffsets.getDataAsLong();
+			TiffField<?> f_stripByteCounts = ifd.getField(TiffTag.STRIP_BYTE_COUNTS);
+			if(f_stripByteCounts == null) {
+				if(stripOffsets.length == 1) {
+					stripByteCounts = new int[]{0};
+				} else throw new RuntimeException("Missing required field stripByteCounts");
+			} else
+				stripByteCounts = f_stripByteCounts.getDataAsLong();
+			imageWidth = ifd.getField(TiffTag.IMAGE_WIDTH).getDataAsLong()[0];
+			imageHeight = ifd.getField(TiffTag.IMAGE_LENGTH).getDataAsLong()[0];
+			rowsPerStrip = imageHeight;
+			TiffField<?> f_rowsPerStrip = ifd.getField(TiffTag.ROWS_PER_STRIP);
+			if(f_rowsPerStrip != null)
+				rowsPerStrip = Math.min(f_rowsPerStrip.getDataAsLong()[0]&0x7fffffff, imageHeight);
+			TiffField<?> f_compression = ifd.getField(TiffTag.COMPRESSION);
+			compression = TiffFieldEnum.Compression.fromValue((f_compression == null)? 1 : f_compression.getDataAsLong()[0]);
+			TiffField<?> f_photoMetric = ifd.getField(TiffTag.PHOTOMETRIC_INTERPRETATION);
+			photoMetric = TiffFieldEnum.PhotoMetric.fromValue((f_photoMetric == null)? PhotoMetric.WHITE_IS_ZERO.getValue() : f_photoMetric.getDataAsLong()[0]);
+			TiffField<?> f_bitsPerSample = ifd.getField(TiffTag.BITS_PER_SAMPLE);
+			bitsPerSample = (f_bitsPerSample == null)? 1 : f_bitsPerSample.getDataAsLong()[0];
+			TiffField<?> f_samplesPerPixel = ifd.getField(TiffTag.SAMPLES_PER_PIXEL);
+			samplesPerPixel = (f_samplesPerPixel == null)? 1 : f_samplesPerPixel.getDataAsLong()[0];
+			TiffField<?> f_predictor = ifd.getField(TiffTag.PREDICTOR);
+			if(f_predictor != null) predictor = f_predictor.getDataAsLong()[0];
+			TiffField<?> f_fillOrder = ifd.getField(TiffTag.FILL_ORDER);
+			fillOrder = (f_fillOrder == null)? 1 : f_fillOrder.getDataAsLong()[0];
+			TiffField<?> f_extraSamples = ifd.getField(TiffTag.EXTRA_SAMPLES);
+			if(f_extraSamples != null) isAssociatedAlpha = (f_extraSamples.getDataAsLong()[0] == 1);
+			TiffField<?> f_planaryConfiguration = ifd.getField(TiffTag.PLANAR_CONFIGURATTION);
+			if(f_planaryConfiguration != null && f_planaryConfiguration.getDataAsLong()[0] != 1)
+				throw new UnsupportedOperationException("Planar TIFF can not be read by scan lines");
+			TiffField<?> f_sampleFormat = ifd.getField(TiffTag.SAMPLE_FORMAT);
+			if(f_sampleFormat != null && f_sampleFormat.getDataAsLong()[0] == 3)
+				throw new UnsupportedOperationException("Floating point TIFF can not be read by scan lines");
+			
+			switch(photoMetric) {
+				case WHITE_IS_ZERO:
+				case BLACK_IS_ZERO:
+					if(samplesPerPixel > 2 || (samplesPerPixel == 2 && bitsPerSample < 8) || (bitsPerSample != 1 && bitsPerSample != 2 && bitsPerSample != 4 && bitsPerSample != 8 && bitsPerSample != 16))
+						throw new UnsupportedOperationException("Unsupported gray-scale TIFF for reading by scan lines: " + bitsPerSample + " bits, " + samplesPerPixel + " samples");
+					break;
+				case PALETTE_COLOR:
+					if(samplesPerPixel != 1 || (bitsPerSample != 1 && bitsPerSample != 2 && bitsPerSample != 4 && bitsPerSample != 8))
+						throw new UnsupportedOperationException("Unsupported palette TIFF for reading by scan lines: " + bitsPerSample + " bits, " + samplesPerPixel + " samples");
+					short[] colorMap = (short[])ifd.getField(TiffTag.COLORMAP).getData();
+					int numOfColors = (1<<bitsPerSample);
+					int numOfColors2 = (numOfColors<<1);
+					palette = new int[colorMap.length/3];
+					for(int i = 0; i < palette.length; i++)
+						palette[i] = 0xff000000|((colorMap[i]&0xff00)<<8)|((colorMap[i+numOfColors]&0xff00))|((colorMap[i+numOfColors2]&0xff00)>>8);
+					break;
+				case RGB:
+					if(samplesPerPixel < 3 || (bitsPerSample != 8 && bitsPerSample != 16))
+						throw new UnsupportedOperationException("Unsupported RGB TIFF for reading by scan lines: " + bitsPerSample + " bits, " + samplesPerPixel + " samples");
+					break;
+				default:
+					throw new UnsupportedOperationException("Unsupported photometric interpretation for reading by scan lines: " + photoMetric);
+			}
+			
+			switch(compression) {
+				case NONE:
+				case PACKBITS:
+					break;
+				case LZW:
+					decoder = getLZWDecoder();
+					break;
+				case DEFLATE:
+				case DEFLATE_ADOBE:
+					decoder = getDeflateDecoder();
+					break;
+				default:
+					throw new UnsupportedCompressionException("Unsupported compression for reading by scan lines: " + compression.getDescription());
+			}
+			
+			if(predictor == 2 && bitsPerSample != 8)
+				throw new UnsupportedOperationException("Horizontal predictor is only supported for 8 bits samples when reading by scan lines");
+			
+			bytesPerRow = (int)(((long)imageWidth*bitsPerSample*samplesPerPixel + 7)>>>3);
+			if((long)bytesPerRow*rowsPerStrip > Integer.MAX_VALUE)
+				throw new UnsupportedOperationException("Strip too large to be read by scan lines");
+			if(stripBuffer == null || stripBuffer.length < bytesPerRow*rowsPerStrip)
+				stripBuffer = new byte[bytesPerRow*rowsPerStrip];
+			strip = stripBuffer;
+		}
+		
+		int nextRows(int[] dst, int maxRows) throws Exception {
+			int rows = Math.min(Math.min(maxRows, imageHeight - rowsRead), dst.length/imageWidth);
+			
+			for(int i = 0, dstOffset = 0; i < rows; i++, dstOffset += imageWidth)
+				decodeRow(rowsRead + i, dst, dstOffset, 1);
+			
+			rowsRead += rows;
+			
+			return rows;
+		}
+		
+		boolean hasAlpha() {
+			return (photoMetric == PhotoMetric.RGB)? (samplesPerPixel == 4) : (photoMetric != PhotoMetric.PALETTE_COLOR && samplesPerPixel == 2);
+		}
+		
+		// Decodes every xStep-th pixel of every yStep-th scan line into image, or into a new image if image is null
+		BufferedImage readSubsampled(int xStep, int yStep, BufferedImage image) throws Exception {
+			int subWidth = (imageWidth + xStep - 1)/xStep;
+			int subHeight = (imageHeight + yStep - 1)/yStep;
+			if(image == null)
+				image = new BufferedImage(subWidth, subHeight, hasAlpha()? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			
+			for(int y = 0, dstOffset = 0; y < subHeight; y++, dstOffset += subWidth)
+				decodeRow(y*yStep, pixels, dstOffset, xStep);
+			
+			rowsRead = imageHeight;
+			
+			return image;
+		}
+		
+		boolean isDone() {
+			return rowsRead >= imageHeight;
+		}
+		
+		// Converts every step-th pixel of scan line y to ARGB, reading its strip if necessary
+		private void decodeRow(int y, int[] dst, int dstOffset, int step) throws Exception {
+			int stripIndex = y/rowsPerStrip;
+			if(stripIndex != currentStrip) readStrip(stripIndex);
+			int offset = (y - stripIndex*rowsPerStrip)*bytesPerRow;
+			int index = offset;
+			
+			switch(photoMetric) {
+				case WHITE_IS_ZERO:
+				case BLACK_IS_ZERO:
+					boolean whiteIsZero = (photoMetric == PhotoMetric.WHITE_IS_ZERO);
+					int mask = (bitsPerSample >= 8)? 0xff : (1<<bitsPerSample) - 1;
+					// The high byte of 16 bits samples depends on the byte order
+					int high = (bitsPerSample == 16 && endian == IOUtils.LITTLE_ENDIAN)? 1 : 0;
+					int bytesPerSample = bitsPerSample>>>3;
+					for(int x = 0; x < imageWidth; x += step) {
+						int gray = 0;
+						int alpha = 0xff;
+						if(bitsPerSample < 8) {
+							int pixelsPerByte = 8/bitsPerSample;
+							gray = ((strip[offset + x/pixelsPerByte]>>(8 - bitsPerSample*(x%pixelsPerByte + 1)))&mask)*255/mask;
+						} else {
+							index = offset + x*bytesPerSample*samplesPerPixel;
+							gray = strip[index + high]&0xff;
+							if(samplesPerPixel == 2)
+								alpha = strip[index + bytesPerSample + high]&0xff;
+						}
+						if(whiteIsZero) gray = 0xff - gray;
+						if(isAssociatedAlpha) gray = unpremultiply(gray, alpha);
+						dst[dstOffset++] = (alpha<<24)|(gray<<16)|(gray<<8)|gray;
+					}
+					break;
+				case PALETTE_COLOR:
+					int pixelsPerByte = 8/bitsPerSample;
+					int indexMask = (1<<bitsPerSample) - 1;
+					for(int x = 0; x < imageWidth; x += step) {
+						int colorIndex = (strip[offset + x/pixelsPerByte]>>(8 - bitsPerSample*(x%pixelsPerByte + 1)))&indexMask;
+						dst[dstOffset++] = (colorIndex < palette.length)? palette[colorIndex] : 0xff000000;
+					}
+					break;
+				case RGB:
+					int sampleStep = bitsPerSample>>>3;
+					int highByte = (sampleStep == 2 && endian == IOUtils.LITTLE_ENDIAN)? 1 : 0;
+					int bytesPerPixel = sampleStep*samplesPerPixel;
+					for(int x = 0; x < imageWidth; x += step, index += bytesPerPixel*step) {
+						int red = strip[index + highByte]&0xff;
+						int green = strip[index + sampleStep + highByte]&0xff;
+						int blue = strip[index + 2*sampleStep + highByte]&0xff;
+						int alpha = 0xff;
+						if(samplesPerPixel == 4) {
+							alpha = strip[index + 3*sampleStep + highByte]&0xff;
+							if(isAssociatedAlpha) {
+								red = unpremultiply(red, alpha);
+								green = unpremultiply(green, alpha);
+								blue = unpremultiply(blue, alpha);
+							}
+						}
+						dst[dstOffset++] = (alpha<<24)|(red<<16)|(green<<8)|blue;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		
+		private void readStrip(int stripIndex) throws Exception {
+			if(stripIndex >= stripOffsets.length)
+				throw new EOFException("Missing strip " + stripIndex);
+			int rowsInStrip = Math.min(rowsPerStrip, imageHeight - stripIndex*rowsPerStrip);
+			int bytes2Read = rowsInStrip*bytesPerRow;
+			
+			switch(compression) {
+				case NONE:
+					randIS.seek(stripOffsets[stripIndex]);
+					randIS.readFully(strip, 0, bytes2Read);
+					// Deals with LSB2MSB fill order (rare and erroneous)
+					if(fillOrder == 2) ArrayUtils.reverseBits(strip);
+					break;
+				case PACKBITS:
+					unpackStrip(strip, 0, bytes2Read, stripOffsets[stripIndex], stripByteCounts[stripIndex]);
+					break;
+				default:
+					byte[] temp = null;
+					int len = stripByteCounts[stripIndex];
+					randIS.seek(stripOffsets[stripIndex]);
+					if(len == 0 || fillOrder == 2) {
+						temp = (len == 0)? IOUtils.readFully(randIS, 4096) : new byte[len];
+						if(len != 0) randIS.readFully(temp);
+						len = temp.length;
+						// Deals with LSB2MSB fill order (rare and erroneous)
+						if(fillOrder == 2) ArrayUtils.reverseBits(temp);
+					} else {
+						if(compressedStripBuffer == null || compressedStripBuffer.length < len)
+							compressedStripBuffer = new byte[len];
+						randIS.readFully(compressedStripBuffer, 0, len);
+						temp = compressedStripBuffer;
+					}
+					decoder.setInput(temp, 0, len);
+					decoder.decode(strip, 0, bytes2Read);
+			}
+			
+			if(predictor == 2) { // Horizontal differencing, 8 bits samples only
+				for(int i = 0, offset = 0; i < rowsInStrip; i++, offset += bytesPerRow) {
+					for(int j = offset + samplesPerPixel, end = offset + bytesPerRow; j < end; j++)
+						strip[j] += strip[j - samplesPerPixel];
+				}
+			}
+			
+			currentStrip = stripIndex;
+		}
+		
+		private int unpremultiply(int value, int alpha) {
+			if(alpha == 0) return 0;
+			return Math.min(0xff, (value*0xff + (alpha>>1))/alpha);
+		}
+	}
+	
 	public int getFrameCount() {
 		if(frames != null) // We have already read the image
 			return frames.size();
@@ -1441,6 +1876,30 @@ public class TIFFReader extends ImageReader {
 		return Collections.emptyList();
     }
     
+	/**
+	 * Decodes the next scan lines of the first page
+	 */
+	public int nextRows(int[] dst, int maxRows) throws Exception {
+		if(rowDecoder == null)
+			throw new IllegalStateException("readHeader() must be called before nextRows()");
+		if(rowDecoder.isDone()) {
+			closeRowStream();
+			return -1;
+		}
+		if(dst.length < width)
+			throw new IllegalArgumentException("Destination array can't hold a scan line of " + width + " pixels");
+		int rows = rowDecoder.nextRows(dst, maxRows);
+		
+		if(rowDecoder.isDone()) closeRowStream();
+		
+		return rows;
+	}
+	
+	/**
+	 * Decodes all the pages and keeps them as frames. Use {@link #open(InputStream) open}
+	 * with {@link #readPage(int) readPage} or {@link #getPages() getPages} to decode the
+	 * pages on demand instead.
+	 */
     public BufferedImage read(InputStream is) throws Exception {
 		
 		if(!readIFDs(is)) return null;
@@ -1451,7 +1910,8 @@ public class TIFFReader extends ImageReader {
 		
 		for(IFD page : ifds) {
 			try {
-				frame = decode(page);
+				// Only the page returned goes into the destination image
+				frame = decodePage(page, frames.isEmpty());
 			} catch(Exception ex) {
 				ex.printStackTrace();
 				continue;
@@ -1466,7 +1926,244 @@ public class TIFFReader extends ImageReader {
 		return null;
 	}
 	
-	private boolean readHeader(RandomAccessInputStream randIS) throws IOException {
+	// Decodes the page with the subsampling required by the ImageParam, into the
+	// destination image of the ImageParam if toDestination is true and it fits
+	private BufferedImage decodePage(IFD ifd, boolean toDestination) throws Exception {
+		TiffField<?> f_imageWidth = ifd.getField(TiffTag.IMAGE_WIDTH);
+		TiffField<?> f_imageHeight = ifd.getField(TiffTag.IMAGE_LENGTH);
+		if(f_imageWidth == null || f_imageHeight == null)
+			return decode(ifd);
+		computeSubsampling(f_imageWidth.getDataAsLong()[0], f_imageHeight.getDataAsLong()[0]);
+		toDestination = toDestination && param.getDestination() != null;
+		if(!isSubsampling() && !toDestination)
+			return decode(ifd);
+		
+		StripRowDecoder decoder = null;
+		// Fall back to subsampling the fully decoded page for what can't be decoded by scan lines
+		try {
+			decoder = new StripRowDecoder(ifd);
+		} catch(UnsupportedOperationException ex) {
+			return subsample(decode(ifd), xStep, yStep);
+		} catch(UnsupportedCompressionException ex) {
+			return subsample(decode(ifd), xStep, yStep);
+		}
+		
+		BufferedImage destination = null;
+		if(toDestination)
+			destination = getDestination((decoder.imageWidth + xStep - 1)/xStep, (decoder.imageHeight + yStep - 1)/yStep, decoder.hasAlpha());
+		if(!isSubsampling() && destination == null)
+			return decode(ifd);
+		
+		return decoder.readSubsampled(xStep, yStep, destination);
+	}
+	
+	/**
+	 * Closes the input opened by {@link #open(InputStream) open}. The InputStream
+	 * passed to open is not closed.
+	 */
+	public void close() throws IOException {
+		if(pagesOpen) randIS.shallowClose();
+		pagesOpen = false;
+		pageCache = null;
+	}
+	
+	/**
+	 * Closes the input and drops the IFDs and the pages of the last TIFF. The
+	 * decoders and the strip buffers up to MAX_KEPT_BUFFER_SIZE are kept for the
+	 * next TIFF.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		try {
+			closeRowStream();
+			close();
+		} catch(IOException e) {
+			LOGGER.error("Error closing the TIFF input", e);
+		}
+		rowDecoder = null;
+		randIS = null;
+		ifds = null;
+		frames = null;
+		nextIFDOffset = 0;
+		if(stripBuffer != null && stripBuffer.length > MAX_KEPT_BUFFER_SIZE)
+			stripBuffer = null;
+		if(compressedStripBuffer != null && compressedStripBuffer.length > MAX_KEPT_BUFFER_SIZE)
+			compressedStripBuffer = null;
+	}
+	
+	/**
+	 * Returns the number of pages of the TIFF opened by {@link #open(InputStream) open}.
+	 * The IFDs not read yet are read, but none of the pages is decoded.
+	 */
+	public int getPageCount() {
+		ensureOpen();
+		while(readNextIFD());
+		
+		return ifds.size();
+	}
+	
+	/**
+	 * Returns the pages of the TIFF opened by {@link #open(InputStream) open}.
+	 * Each page is decoded when the iterator gets to it and is not kept by the
+	 * reader unless a page cache is set by {@link #setPageCacheSize(int) setPageCacheSize}.
+	 * A page which fails to decode makes the iterator throw a RuntimeException.
+	 */
+	public Iterable<BufferedImage> getPages() {
+		ensureOpen();
+		
+		return new Iterable<BufferedImage>() {
+			public Iterator<BufferedImage> iterator() {
+				return new Iterator<BufferedImage>() {
+					private int cursor;
+					
+					public boolean hasNext() {
+						return hasPage(cursor);
+					}
+					
+					public BufferedImage next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						try {
+							return readPage(cursor++);
+						} catch(RuntimeException ex) {
+							throw ex;
+						} catch(Exception ex) {
+							throw new RuntimeException("Failed to decode page " + (cursor - 1), ex);
+						}
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Checks if the TIFF opened by {@link #open(InputStream) open} has the page,
+	 * reading the IFDs up to it if necessary.
+	 */
+	protected boolean hasPage(int index) {
+		ensureOpen();
+		while(index >= ifds.size() && readNextIFD());
+		
+		return index >= 0 && index < ifds.size();
+	}
+	
+	/**
+	 * Opens a TIFF for reading its pages on demand with {@link #readPage(int) readPage}
+	 * or {@link #getPages() getPages}. Only the TIFF header is read here, the IFDs
+	 * are read as the pages are requested. The input is read until {@link #close() close}
+	 * is called.
+	 * 
+	 * @param is InputStream for the TIFF image
+	 * @return true if the input is a valid TIFF, otherwise false
+	 * @throws Exception
+	 */
+	public boolean open(InputStream is) throws Exception {
+		close();
+		if(!openTIFF(is)) {
+			randIS.shallowClose();
+			return false;
+		}
+		pagesOpen = true;
+		if(pageCacheSize > 0)
+			pageCache = new LRUCache<Integer, BufferedImage>(pageCacheSize, false);
+		
+		return true;
+	}
+	
+	/**
+	 * Decodes a page of the TIFF opened by {@link #open(InputStream) open}
+	 * 
+	 * @param index zero based index of the page
+	 * @return the page as a BufferedImage
+	 * @throws Exception
+	 */
+	public BufferedImage readPage(int index) throws Exception {
+		if(!hasPage(index))
+			throw new IllegalArgumentException("Page index " + index + " out of bounds");
+		BufferedImage page = (pageCache == null)? null : pageCache.get(index);
+		if(page == null) {
+			page = decodePage(ifds.get(index), true);
+			// The destination image is overwritten by the next page read into it
+			if(pageCache != null && page != null && page != param.getDestination())
+				pageCache.put(index, page);
+		}
+		
+		return page;
+	}
+	
+	/**
+	 * Sets the maximum number of decoded pages kept by the reader for
+	 * {@link #readPage(int) readPage}, the least recently used pages are dropped
+	 * first. The default is 0 which keeps no page. Takes effect on the next
+	 * {@link #open(InputStream) open}.
+	 */
+	public void setPageCacheSize(int pageCacheSize) {
+		if(pageCacheSize < 0)
+			throw new IllegalArgumentException("Negative page cache size: " + pageCacheSize);
+		this.pageCacheSize = pageCacheSize;
+	}
+	
+	private void ensureOpen() {
+		if(!pagesOpen)
+			throw new IllegalStateException("open() must be called before reading pages");
+	}
+	
+	/**
+	 * Reads a rectangular region of a page. Only the strips or tiles which
+	 * intersect the region are read and decompressed, so a small region of a
+	 * large page can be read without decoding the whole page.
+	 * 
+	 * @param is InputStream for the TIFF image
+	 * @param page zero based index of the page to read
+	 * @param roi region of interest in page coordinates, clipped to the page bounds
+	 * @return the region as a BufferedImage or null if the input is not a valid TIFF
+	 * @throws Exception
+	 */
+	public BufferedImage read(InputStream is, int page, Rectangle roi) throws Exception {
+		if(!readIFDs(is)) {
+			randIS.shallowClose();
+			return null;
+		}
+		
+		try {
+			if(page < 0 || page >= ifds.size())
+				throw new IllegalArgumentException("Page index " + page + " out of bounds");
+			return decode(ifds.get(page), roi);
+		} finally {
+			randIS.shallowClose();
+		}
+	}
+	
+	/**
+	 * Reads the IFDs and prepares to read the first page by scan lines.
+	 * Only stripped pages can be read this way.
+	 */
+	public void readHeader(InputStream is) throws Exception {
+		closeRowStream();
+		rowDecoder = null;
+		
+		if(!readIFDs(is)) {
+			randIS.shallowClose();
+			throw new IOException("NOT A VALID TIFF IMAGE");
+		}
+		if(ifds.isEmpty()) {
+			randIS.shallowClose();
+			throw new IOException("No IFD found");
+		}
+		
+		try {
+			rowDecoder = new StripRowDecoder(ifds.get(0));
+		} catch(Exception ex) {
+			randIS.shallowClose();
+			throw ex;
+		}
+		
+		width = rowDecoder.imageWidth;
+		height = rowDecoder.imageHeight;
+		bitsPerPixel = rowDecoder.bitsPerSample*rowDecoder.samplesPerPixel;
+	}
+	
+	private boolean readTIFFHeader(RandomAccessInputStream randIS) throws IOException {
 		// First 2 bytes determine the byte order of the file
 		endian = randIS.readShort();
 		
@@ -1569,11 +2266,8 @@ public class TIFFReader extends ImageReader {
 						randIS.seek(offset);
 						int toOffset = randIS.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++){
-							randIS.seek(toOffset);
-							sdata[j] = randIS.readShort();
-							toOffset += 2;
-						}
+						randIS.seek(toOffset);
+						randIS.readShorts(sdata, 0, field_length);
 					}	
 					tiffIFD.addField(new ShortField(tag, sdata));
 					LOGGER.info("TiffField value: {}", StringUtils.shortArrayToString(sdata, 0, 10, true));
@@ -1588,11 +2282,8 @@ public class TIFFReader extends ImageReader {
 						randIS.seek(offset);
 						int toOffset = randIS.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++){
-							randIS.seek(toOffset);
-							ldata[j] = randIS.readInt();
-							toOffset += 4;
-						}
+						randIS.seek(toOffset);
+						randIS.readInts(ldata, 0, field_length);
 					}	
 					LOGGER.info("TiffField value: {}", StringUtils.longArrayToString(ldata, 0, 10, true));
 					tiffIFD.addField(new LongField(tag, ldata));
@@ -1603,14 +2294,8 @@ public class TIFFReader extends ImageReader {
 					randIS.seek(offset);
 					int toOffset = randIS.readInt();
 					offset += 4;					
-					for (int j=0;j<len; j+=2) {
-						randIS.seek(toOffset);
-						ldata[j] = randIS.readInt();
-						toOffset += 4;
-						randIS.seek(toOffset);
-						ldata[j+1] = randIS.readInt();
-						toOffset += 4;
-					}	
+					randIS.seek(toOffset);
+					randIS.readInts(ldata, 0, len);	
 					tiffIFD.addField(new RationalField(tag, ldata));
 					LOGGER.info("TiffField value: {}", StringUtils.rationalArrayToString(ldata, true));
 					break;
@@ -1624,11 +2309,8 @@ public class TIFFReader extends ImageReader {
 						randIS.seek(offset);
 						toOffset = randIS.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++) {
-							randIS.seek(toOffset);
-							fdata[j] = randIS.readFloat();
-							toOffset += 4;
-						}
+						randIS.seek(toOffset);
+						randIS.readFloats(fdata, 0, field_length);
 					}
 					tiffIFD.addField(new FloatField(tag, fdata));
 					LOGGER.info("TiffField value: {}", Arrays.toString(fdata));			
@@ -1638,11 +2320,8 @@ public class TIFFReader extends ImageReader {
 					randIS.seek(offset);
 					toOffset = randIS.readInt();
 					offset += 4;
-					for (int j=0;j<field_length; j++) {
-						randIS.seek(toOffset);
-						ddata[j] = randIS.readDouble();
-						toOffset += 8;
-					}
+					randIS.seek(toOffset);
+					randIS.readDoubles(ddata, 0, field_length);
 					tiffIFD.addField(new DoubleField(tag, ddata));
 					LOGGER.info("Field value: {}", Arrays.toString(ddata));						
 					break;
@@ -1658,27 +2337,45 @@ public class TIFFReader extends ImageReader {
 	}
 	
 	protected boolean readIFDs(InputStream is) throws Exception {
-		// Wrap the input stream with RandomInputStream
-		randIS = new FileCacheRandomAccessInputStream(is, bufLen);
-		if(!readHeader(randIS)) return false;
-		
-		ifds = new ArrayList<IFD>();
+		if(!openTIFF(is)) return false;
 		
-		int offset = randIS.readInt();
-		int ifd = 0;
+		while(readNextIFD());
 		
-		while (offset != 0)	{
-			try {
-				offset = readIFD(ifd++, offset);
-			} catch(Exception ex) {
-				ex.printStackTrace();
-				break;
-			}
+		return true;
+	}
+	
+	// Reads the next IFD of the IFD chain, returns false at the end of the chain
+	private boolean readNextIFD() {
+		if(nextIFDOffset == 0) return false;
+		try {
+			nextIFDOffset = readIFD(ifds.size(), nextIFDOffset);
+		} catch(Exception ex) {
+			ex.printStackTrace();
+			nextIFDOffset = 0;
+			return false;
 		}
 		
 		return true;
 	}
 	
+	// Reads the TIFF header leaving the IFDs to readNextIFD()
+	private boolean openTIFF(InputStream is) throws Exception {
+		// Release the input left open by open()
+		close();
+		// Wrap the input stream with RandomInputStream. Local files are mapped
+		// directly instead of being copied into a temporary cache file.
+		if(is instanceof FileInputStream)
+			randIS = new FileMapRandomAccessInputStream((FileInputStream)is);
+		else
+			randIS = new HybridCacheRandomAccessInputStream(is);
+		if(!readTIFFHeader(randIS)) return false;
+		
+		ifds = new ArrayList<IFD>();
+		nextIFDOffset = randIS.readInt();
+		
+		return true;
+	}
+	
 	// De-predictor for PLANARY_CONFIGURATION value 1
 	private static byte[] applyDePredictor(int numOfSamples, byte[] input, int imageWidth, int imageHeight) {
 		for(int i = 0, inc = numOfSamples*imageWidth, maxVal = inc - numOfSamples, minVal = numOfSamples; i <= imageHeight - 1; maxVal += inc, minVal += inc, i++) {
@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =========  ====================================================
+ * WY    18Oct2026  Read IFDs and decode pages on demand
  * WY    28May2018  Initial creation
  */
 
@@ -26,13 +27,21 @@ import com.icafe4j.image.reader.TIFFReader;
 //Helper class to read TIFF pages one at a time
 public class PageReader extends TIFFReader {	
 	private int cursor;
+	private boolean done;
 	
 	public BufferedImage getNextPage(InputStream is) throws Exception {
-		// One time reading of all the IFDs into a list
-		if(ifds == null) readIFDs(is);
+		if(done) return null;
+		// One time reading of the TIFF header, the IFDs are read as the pages are requested
+		if(ifds == null && !open(is)) {
+			done = true;
+			return null;
+		}
 		
-		if(cursor < ifds.size())
-			return decode(ifds.get(cursor++));
+		if(hasPage(cursor))
+			return readPage(cursor++);
+		
+		close();
+		done = true;
 		
 		return null;
 	}
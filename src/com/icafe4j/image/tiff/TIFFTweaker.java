@@ -14,6 +14,8 @@
  *
  * Who   Date       Description
  * ====  =========  ===================================================================
+ * WY    18Oct2026  Copy strip and tile data with RandomAccessInputStream.transferTo()
+ * WY    18Oct2026  Read input files through FileMapRandomAccessInputStream
  * WY    09Aug2018  Add prepareForWrite(RandomAccessOutputStream, ByteOrder)
  * WY    09Aug2018  Add ByteOrder support to writeMultipageTIFF
  * WY    06Apr2018  Added extractThumbnails(RandomAccessInputStream)
@@ -462,12 +464,9 @@ public class TIFFTweaker {
 		
 			// Copy image data from offset
 			for(int i = 0; i < off.length; i++) {
-				rin.seek(off[i]);
-				byte[] buf = new byte[counts[i]];
-				rin.readFully(buf);
-				rout.write(buf);
+				rin.transferTo(off[i]&0xffffffffL, counts[i], rout);
 				temp[i] = offset;
-				offset += buf.length;
+				offset += counts[i];
 			}
 						
 			if(ifd.getField(TiffTag.STRIP_BYTE_COUNTS) != null)
@@ -488,11 +487,8 @@ public class TIFFTweaker {
 			TiffField<?> jpegIFByteCount = ifd.removeField(TiffTag.JPEG_INTERCHANGE_FORMAT_LENGTH);			
 			try {
 				if(jpegIFByteCount != null) {
-					rin.seek(jpegIFOffset.getDataAsLong()[0]);
-					byte[] bytes2Read = new byte[jpegIFByteCount.getDataAsLong()[0]];
-					rin.readFully(bytes2Read);
 					rout.seek(offset);
-					rout.write(bytes2Read);
+					rin.transferTo(jpegIFOffset.getDataAsLong()[0]&0xffffffffL, jpegIFByteCount.getDataAsLong()[0], rout);
 					ifd.addField(jpegIFByteCount);
 				} else {
 					long startOffset = rout.getStreamPointer();
@@ -1684,8 +1680,8 @@ public class TIFFTweaker {
 		FileInputStream fin2 = new FileInputStream(toBeInserted);
 		FileOutputStream fout = new FileOutputStream(output);
 		// Wrap the FileInputStream and FileOutputStream in the RandomAccessInputStream and RandomAccessOutputStream 
-		RandomAccessInputStream rin1 = new FileCacheRandomAccessInputStream(fin1);
-		RandomAccessInputStream rin2 = new FileCacheRandomAccessInputStream(fin2);		
+		RandomAccessInputStream rin1 = new FileMapRandomAccessInputStream(fin1);
+		RandomAccessInputStream rin2 = new FileMapRandomAccessInputStream(fin2);		
 		RandomAccessOutputStream rout = new FileCacheRandomAccessOutputStream(fout);
 		// Delegate the task
 		insertTiffImage(rin1, rin2, pageNumber, rout);
@@ -1846,12 +1842,9 @@ public class TIFFTweaker {
 								break;
 							default: // Fall back to simple copy, at least won't break the whole output image
 								for(int l = 0; l < off.length; l++) {
-									toBeInserted.seek(off[l]);
-									byte[] buf = new byte[counts[l]];
-									toBeInserted.readFully(buf);
-									output.write(buf);
+									toBeInserted.transferTo(off[l]&0xffffffffL, counts[l], output);
 									temp[l] = offset;
-									offset += buf.length;
+									offset += counts[l];
 								}
 								break;
 						}
@@ -2114,12 +2107,9 @@ public class TIFFTweaker {
 										break;
 									default: // Fall back to simple copy, at least won't break the whole merged image
 										for(int l = 0; l < off.length; l++) {
-											image2.seek(off[l]);
-											byte[] buf = new byte[counts[l]];
-											image2.readFully(buf);
-											merged.write(buf);
+											image2.transferTo(off[l]&0xffffffffL, counts[l], merged);
 											temp[l] = offset;
-											offset += buf.length;
+											offset += counts[l];
 										}
 										break;								
 								}
@@ -2250,7 +2240,7 @@ public class TIFFTweaker {
 	public static void mergeTiffImages(RandomAccessOutputStream merged, File... images) throws IOException {
 		if(images != null && images.length > 1) {
 			FileInputStream fis1 = new FileInputStream(images[0]);
-			RandomAccessInputStream image1 = new FileCacheRandomAccessInputStream(fis1);
+			RandomAccessInputStream image1 = new FileMapRandomAccessInputStream(fis1);
 			List<IFD> ifds1 = new ArrayList<IFD>();
 			int offset1 = copyHeader(image1, merged);
 			// Read IFDs for the first image
@@ -2266,7 +2256,7 @@ public class TIFFTweaker {
 			for(int i = 1; i < images.length; i++) {
 				List<IFD> ifds2 = new ArrayList<IFD>();
 				FileInputStream fis2 = new FileInputStream(images[i]);
-				RandomAccessInputStream image2 = new FileCacheRandomAccessInputStream(fis2); 
+				RandomAccessInputStream image2 = new FileMapRandomAccessInputStream(fis2); 
 				readIFDs(ifds2, image2);
 				for(int j = 0; j < ifds2.size(); j++) {
 					ifds2.get(j).removeField(TiffTag.PAGE_NUMBER);
@@ -2594,11 +2584,8 @@ public class TIFFTweaker {
 						rin.seek(offset);
 						int toOffset = rin.readInt();
 						offset += 4;
-						for (int j = 0; j  <field_length; j++) {
-							rin.seek(toOffset);
-							sdata[j] = rin.readShort();
-							toOffset += 2;
-						}
+						rin.seek(toOffset);
+						rin.readShorts(sdata, 0, field_length);
 					}
 					TiffField<short[]> shortField = new ShortField(tag, sdata);
 					tiffIFD.addField(shortField);
@@ -2613,11 +2600,8 @@ public class TIFFTweaker {
 						rin.seek(offset);
 						int toOffset = rin.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++){
-							rin.seek(toOffset);
-							ldata[j] = rin.readInt();
-							toOffset += 4;
-						}
+						rin.seek(toOffset);
+						rin.readInts(ldata, 0, field_length);
 					}
 					TiffField<int[]> longField = new LongField(tag, ldata);
 					tiffIFD.addField(longField);
@@ -2664,11 +2648,8 @@ public class TIFFTweaker {
 						rin.seek(offset);
 						int toOffset = rin.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++) {
-							rin.seek(toOffset);
-							fdata[j] = rin.readFloat();
-							toOffset += 4;
-						}
+						rin.seek(toOffset);
+						rin.readFloats(fdata, 0, field_length);
 					}
 					TiffField<float[]> floatField = new FloatField(tag, fdata);
 					tiffIFD.addField(floatField);
@@ -2679,11 +2660,8 @@ public class TIFFTweaker {
 					rin.seek(offset);
 					int toOffset = rin.readInt();
 					offset += 4;
-					for (int j=0;j<field_length; j++) {
-						rin.seek(toOffset);
-						ddata[j] = rin.readDouble();
-						toOffset += 8;
-					}
+					rin.seek(toOffset);
+					rin.readDoubles(ddata, 0, field_length);
 					TiffField<double[]> doubleField = new DoubleField(tag, ddata);
 					tiffIFD.addField(doubleField);
 					
@@ -2695,14 +2673,8 @@ public class TIFFTweaker {
 					rin.seek(offset);
 					toOffset = rin.readInt();
 					offset += 4;					
-					for (int j=0;j<len; j+=2){
-						rin.seek(toOffset);
-						ldata[j] = rin.readInt();
-						toOffset += 4;
-						rin.seek(toOffset);
-						ldata[j+1] = rin.readInt();
-						toOffset += 4;
-					}
+					rin.seek(toOffset);
+					rin.readInts(ldata, 0, len);
 					TiffField<int[]> rationalField = null;
 					if(ftype == FieldType.SRATIONAL) {
 						rationalField = new SRationalField(tag, ldata);
@@ -2722,11 +2694,8 @@ public class TIFFTweaker {
 						rin.seek(offset);
 						toOffset = rin.readInt();
 						offset += 4;
-						for (int j=0;j<field_length; j++) {
-							rin.seek(toOffset);
-							ldata[j] = rin.readInt();
-							toOffset += 4;
-						}
+						rin.seek(toOffset);
+						rin.readInts(ldata, 0, field_length);
 					}
 					TiffField<int[]> ifdField = new IFDField(tag, ldata);
 					tiffIFD.addField(ifdField);
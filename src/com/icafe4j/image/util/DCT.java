@@ -14,6 +14,8 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Added in place forwardDCT() for flat blocks
+ * WY    18Oct2026  Added integer inverseDCT() for the JPEG decoder
  * WY    25Mar2014  Combined DCT and IDCT.
  */
 
@@ -54,6 +56,22 @@ public class DCT {
 		}
 	}
 	
+	// Integer IDCT constants, FIX(x) = (int)(x*(1<<CONST_BITS) + 0.5)
+	private static final int CONST_BITS = 13;
+	private static final int PASS1_BITS = 2;
+	private static final int FIX_0_298631336 = 2446;
+	private static final int FIX_0_390180644 = 3196;
+	private static final int FIX_0_541196100 = 4433;
+	private static final int FIX_0_765366865 = 6270;
+	private static final int FIX_0_899976223 = 7373;
+	private static final int FIX_1_175875602 = 9633;
+	private static final int FIX_1_501321110 = 12299;
+	private static final int FIX_1_847759065 = 15137;
+	private static final int FIX_1_961570560 = 16069;
+	private static final int FIX_2_053119869 = 16819;
+	private static final int FIX_2_562915447 = 20995;
+	private static final int FIX_3_072711026 = 25172;
+	
 	private DCT() { }
 
     /*
@@ -149,6 +167,114 @@ public class DCT {
         return input;
     }
     
+	/**
+	 * In place forward DCT of a flat 8x8 block, the same AAN algorithm as
+	 * forwardDCT(float[][]) but without the final scaling. The output is to be
+	 * multiplied by the scale factors from {@link #getScaleFactors()}.
+	 * 
+	 * @param block 64 level shifted samples in row major order
+	 */
+	public static void forwardDCT(float[] block) {
+		float tmp0, tmp1, tmp2, tmp3, tmp4, tmp5, tmp6, tmp7;
+		float tmp10, tmp11, tmp12, tmp13;
+		float z1, z2, z3, z4, z5, z11, z13;
+		// Transform rows
+		for(int i = 0; i < 64; i += 8) {
+			tmp0 = block[i] + block[i + 7];
+			tmp7 = block[i] - block[i + 7];
+			tmp1 = block[i + 1] + block[i + 6];
+			tmp6 = block[i + 1] - block[i + 6];
+			tmp2 = block[i + 2] + block[i + 5];
+			tmp5 = block[i + 2] - block[i + 5];
+			tmp3 = block[i + 3] + block[i + 4];
+			tmp4 = block[i + 3] - block[i + 4];
+			
+			tmp10 = tmp0 + tmp3;
+			tmp13 = tmp0 - tmp3;
+			tmp11 = tmp1 + tmp2;
+			tmp12 = tmp1 - tmp2;
+			
+			block[i] = tmp10 + tmp11;
+			block[i + 4] = tmp10 - tmp11;
+			
+			z1 = (tmp12 + tmp13)*0.707106781f;
+			block[i + 2] = tmp13 + z1;
+			block[i + 6] = tmp13 - z1;
+			
+			tmp10 = tmp4 + tmp5;
+			tmp11 = tmp5 + tmp6;
+			tmp12 = tmp6 + tmp7;
+			
+			z5 = (tmp10 - tmp12)*0.382683433f;
+			z2 = 0.541196100f*tmp10 + z5;
+			z4 = 1.306562965f*tmp12 + z5;
+			z3 = tmp11*0.707106781f;
+			
+			z11 = tmp7 + z3;
+			z13 = tmp7 - z3;
+			
+			block[i + 5] = z13 + z2;
+			block[i + 3] = z13 - z2;
+			block[i + 1] = z11 + z4;
+			block[i + 7] = z11 - z4;
+		}
+		// Transform columns
+		for(int i = 0; i < 8; i++) {
+			tmp0 = block[i] + block[i + 56];
+			tmp7 = block[i] - block[i + 56];
+			tmp1 = block[i + 8] + block[i + 48];
+			tmp6 = block[i + 8] - block[i + 48];
+			tmp2 = block[i + 16] + block[i + 40];
+			tmp5 = block[i + 16] - block[i + 40];
+			tmp3 = block[i + 24] + block[i + 32];
+			tmp4 = block[i + 24] - block[i + 32];
+			
+			tmp10 = tmp0 + tmp3;
+			tmp13 = tmp0 - tmp3;
+			tmp11 = tmp1 + tmp2;
+			tmp12 = tmp1 - tmp2;
+			
+			block[i] = tmp10 + tmp11;
+			block[i + 32] = tmp10 - tmp11;
+			
+			z1 = (tmp12 + tmp13)*0.707106781f;
+			block[i + 16] = tmp13 + z1;
+			block[i + 48] = tmp13 - z1;
+			
+			tmp10 = tmp4 + tmp5;
+			tmp11 = tmp5 + tmp6;
+			tmp12 = tmp6 + tmp7;
+			
+			z5 = (tmp10 - tmp12)*0.382683433f;
+			z2 = 0.541196100f*tmp10 + z5;
+			z4 = 1.306562965f*tmp12 + z5;
+			z3 = tmp11*0.707106781f;
+			
+			z11 = tmp7 + z3;
+			z13 = tmp7 - z3;
+			
+			block[i + 40] = z13 + z2;
+			block[i + 24] = z13 - z2;
+			block[i + 8] = z11 + z4;
+			block[i + 56] = z11 - z4;
+		}
+	}
+	
+	/**
+	 * Scale factors for the output of forwardDCT(float[]), the same ones used
+	 * by forwardDCT(float[][]).
+	 * 
+	 * @return scale factors in natural order
+	 */
+	public static float[] getScaleFactors() {
+		float[] scaleFactors = new float[64];
+		
+		for(int i = 0; i < 8; i++)
+			System.arraycopy(MULTIPLIER[i], 0, scaleFactors, i*8, 8);
+		
+		return scaleFactors;
+	}
+	
     public static float[][] inverseDCT(float input[][])	{
 		for (int i=0 ; i<8 ; i++) {
 			inverseDCT_col(input, i*8);
@@ -258,4 +384,138 @@ public class DCT {
 		input[offset][3] = (temp3 + tmp4)*MULTIPLIER[offset][3]; 
 		input[offset][4] = (temp3 - tmp4)*MULTIPLIER[offset][4];
 	}
+
+	/**
+	 * Integer inverse DCT of a dequantized 8x8 block with level shift and clamping,
+	 * the same accurate scaled integer algorithm (LL&M) as the IJG's jidctint.c.
+	 * <p>
+	 * Columns are transformed in place, so the content of the block is destroyed.
+	 * 
+	 * @param block 64 dequantized DCT coefficients in natural (row major) order
+	 * @param output array to hold the 8x8 samples
+	 * @param offset offset of the top left sample in the output array
+	 * @param stride distance between two sample rows in the output array
+	 */
+	public static void inverseDCT(int[] block, byte[] output, int offset, int stride) {
+		int tmp0, tmp1, tmp2, tmp3, tmp10, tmp11, tmp12, tmp13;
+		int z1, z2, z3, z4, z5;
+		
+		// Pass 1: process columns, results are scaled up by (1<<PASS1_BITS)
+		for(int col = 0; col < 8; col++) {
+			if(block[col + 8] == 0 && block[col + 16] == 0 && block[col + 24] == 0 && block[col + 32] == 0 &&
+					block[col + 40] == 0 && block[col + 48] == 0 && block[col + 56] == 0) {
+				// AC terms all zero, the column is constant
+				int dcval = block[col]<<PASS1_BITS;
+				block[col] = block[col + 8] = block[col + 16] = block[col + 24] = dcval;
+				block[col + 32] = block[col + 40] = block[col + 48] = block[col + 56] = dcval;
+				continue;
+			}
+			// Even part
+			z2 = block[col + 16];
+			z3 = block[col + 48];
+			z1 = (z2 + z3)*FIX_0_541196100;
+			tmp2 = z1 - z3*FIX_1_847759065;
+			tmp3 = z1 + z2*FIX_0_765366865;
+			z2 = block[col];
+			z3 = block[col + 32];
+			tmp0 = (z2 + z3)<<CONST_BITS;
+			tmp1 = (z2 - z3)<<CONST_BITS;
+			tmp10 = tmp0 + tmp3;
+			tmp13 = tmp0 - tmp3;
+			tmp11 = tmp1 + tmp2;
+			tmp12 = tmp1 - tmp2;
+			// Odd part
+			tmp0 = block[col + 56];
+			tmp1 = block[col + 40];
+			tmp2 = block[col + 24];
+			tmp3 = block[col + 8];
+			z1 = tmp0 + tmp3;
+			z2 = tmp1 + tmp2;
+			z3 = tmp0 + tmp2;
+			z4 = tmp1 + tmp3;
+			z5 = (z3 + z4)*FIX_1_175875602;
+			tmp0 *= FIX_0_298631336;
+			tmp1 *= FIX_2_053119869;
+			tmp2 *= FIX_3_072711026;
+			tmp3 *= FIX_1_501321110;
+			z1 *= -FIX_0_899976223;
+			z2 *= -FIX_2_562915447;
+			z3 = z3*(-FIX_1_961570560) + z5;
+			z4 = z4*(-FIX_0_390180644) + z5;
+			tmp0 += z1 + z3;
+			tmp1 += z2 + z4;
+			tmp2 += z2 + z3;
+			tmp3 += z1 + z4;
+			
+			final int shift = CONST_BITS - PASS1_BITS;
+			final int round = 1<<(shift - 1);
+			block[col] = (tmp10 + tmp3 + round)>>shift;
+			block[col + 56] = (tmp10 - tmp3 + round)>>shift;
+			block[col + 8] = (tmp11 + tmp2 + round)>>shift;
+			block[col + 48] = (tmp11 - tmp2 + round)>>shift;
+			block[col + 16] = (tmp12 + tmp1 + round)>>shift;
+			block[col + 40] = (tmp12 - tmp1 + round)>>shift;
+			block[col + 24] = (tmp13 + tmp0 + round)>>shift;
+			block[col + 32] = (tmp13 - tmp0 + round)>>shift;
+		}
+		
+		// Pass 2: process rows, remove the PASS1_BITS and the factor of 8 and level shift
+		final int shift = CONST_BITS + PASS1_BITS + 3;
+		final int round = (1<<(shift - 1)) + (128<<shift);
+		for(int row = 0; row < 64; row += 8, offset += stride) {
+			if(block[row + 1] == 0 && block[row + 2] == 0 && block[row + 3] == 0 && block[row + 4] == 0 &&
+					block[row + 5] == 0 && block[row + 6] == 0 && block[row + 7] == 0) {
+				byte dcval = clamp((block[row] + (1<<(PASS1_BITS + 2)) + (128<<(PASS1_BITS + 3)))>>(PASS1_BITS + 3));
+				for(int i = offset; i < offset + 8; i++) output[i] = dcval;
+				continue;
+			}
+			// Even part
+			z2 = block[row + 2];
+			z3 = block[row + 6];
+			z1 = (z2 + z3)*FIX_0_541196100;
+			tmp2 = z1 - z3*FIX_1_847759065;
+			tmp3 = z1 + z2*FIX_0_765366865;
+			tmp0 = (block[row] + block[row + 4])<<CONST_BITS;
+			tmp1 = (block[row] - block[row + 4])<<CONST_BITS;
+			tmp10 = tmp0 + tmp3;
+			tmp13 = tmp0 - tmp3;
+			tmp11 = tmp1 + tmp2;
+			tmp12 = tmp1 - tmp2;
+			// Odd part
+			tmp0 = block[row + 7];
+			tmp1 = block[row + 5];
+			tmp2 = block[row + 3];
+			tmp3 = block[row + 1];
+			z1 = tmp0 + tmp3;
+			z2 = tmp1 + tmp2;
+			z3 = tmp0 + tmp2;
+			z4 = tmp1 + tmp3;
+			z5 = (z3 + z4)*FIX_1_175875602;
+			tmp0 *= FIX_0_298631336;
+			tmp1 *= FIX_2_053119869;
+			tmp2 *= FIX_3_072711026;
+			tmp3 *= FIX_1_501321110;
+			z1 *= -FIX_0_899976223;
+			z2 *= -FIX_2_562915447;
+			z3 = z3*(-FIX_1_961570560) + z5;
+			z4 = z4*(-FIX_0_390180644) + z5;
+			tmp0 += z1 + z3;
+			tmp1 += z2 + z4;
+			tmp2 += z2 + z3;
+			tmp3 += z1 + z4;
+			
+			output[offset] = clamp((tmp10 + tmp3 + round)>>shift);
+			output[offset + 7] = clamp((tmp10 - tmp3 + round)>>shift);
+			output[offset + 1] = clamp((tmp11 + tmp2 + round)>>shift);
+			output[offset + 6] = clamp((tmp11 - tmp2 + round)>>shift);
+			output[offset + 2] = clamp((tmp12 + tmp1 + round)>>shift);
+			output[offset + 5] = clamp((tmp12 - tmp1 + round)>>shift);
+			output[offset + 3] = clamp((tmp13 + tmp0 + round)>>shift);
+			output[offset + 4] = clamp((tmp13 - tmp0 + round)>>shift);
+		}
+	}
+	
+	private static byte clamp(int value) {
+		return (byte)((value < 0) ? 0 : ((value > 255) ? 255 : value));
+	}
 }
\ No newline at end of file
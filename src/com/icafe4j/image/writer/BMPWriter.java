@@ -28,7 +28,7 @@ import com.icafe4j.image.util.IMGUtils;
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.0 06/20/2007
  */
-public class BMPWriter extends ImageWriter {
+public class BMPWriter extends ImageWriter implements ImageRowWriter {
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(BMPWriter.class);
 	
@@ -178,6 +178,12 @@ public class BMPWriter extends ImageWriter {
 	//private static int BI_BITFIELDS = 3;
   
 	private BitmapHeader bitmapHeader;
+	// Scan line writing state
+	private OutputStream rowOS;
+	private int rowWidth;
+	private int rowHeight;
+	private int rowsWritten;
+	private byte[] rowBuffer;
 	
 	public BMPWriter() {}
 	
@@ -185,6 +191,68 @@ public class BMPWriter extends ImageWriter {
 		super(param);
 	}
 
+	/**
+	 * Starts writing a top-down 24 bits bitmap. Indexed color images are written
+	 * as 24 bits too since the palette is not known until the whole image is seen.
+	 */
+	public void begin(int imageWidth, int imageHeight, ImageParam param, OutputStream os) throws Exception {
+		if(imageWidth <= 0 || imageHeight <= 0)
+			throw new IllegalArgumentException("Invalid image size: " + imageWidth + "x" + imageHeight);
+		if(param != null)
+			setImageParam(param);
+		if(getImageParam().getColorType() == ImageColorType.INDEXED)
+			LOGGER.warn("#Warning: indexed color is not supported when writing by scan lines, saving as 24 bits bitmap instead!");
+		
+		int npad = 4 - ((imageWidth*3)%4);
+		
+		if (npad == 4)
+			npad = 0;
+		
+		int bytePerScanLine = imageWidth*3 + npad;
+		long imageSize = (long)bytePerScanLine*imageHeight;
+		
+		if(imageSize + 0x36 > 0xffffffffL)
+			throw new IllegalArgumentException("Image is too large for BMP format: " + imageWidth + "x" + imageHeight);
+		
+		bitmapHeader = new BitmapHeader();
+		// Set header parameters
+		bitmapHeader.imageWidth = imageWidth;
+		bitmapHeader.imageHeight = -imageHeight; // Negative height for top-down bitmap
+		bitmapHeader.bitCount = 0x18;// 24 bits
+		bitmapHeader.compression = 0x00; // No compression
+		bitmapHeader.imageSize = (int)imageSize;
+		bitmapHeader.fileSize += bitmapHeader.imageSize;
+		bitmapHeader.colorsUsed = 0x00;     
+		bitmapHeader.colorsImportant = 0x00;
+		// Write bitmap image header
+		bitmapHeader.writeHeader(os);
+		
+		rowOS = os;
+		rowWidth = imageWidth;
+		rowHeight = imageHeight;
+		rowsWritten = 0;
+		rowBuffer = new byte[bytePerScanLine];
+	}
+	
+	public void end() throws Exception {
+		if(rowOS == null)
+			throw new IllegalStateException("begin() has not been called");
+		if(rowsWritten != rowHeight)
+			throw new IllegalStateException("Only " + rowsWritten + " of " + rowHeight + " scan lines have been written");
+		
+		rowOS.close();
+		rowOS = null;
+		rowBuffer = null;
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		bitmapHeader = null;
+		rowOS = null; // Unfinished scan line writing is abandoned
+		rowBuffer = null;
+	}
+	
 	@Override
 	public ImageType getImageType() {
 		return ImageType.BMP;
@@ -310,4 +378,25 @@ public class BMPWriter extends ImageWriter {
 		}
 		os.close();
 	}
-} 
+	
+	public void writeRows(int[] rows, int count) throws Exception {
+		if(rowOS == null)
+			throw new IllegalStateException("begin() has not been called");
+		if(count < 0 || rowsWritten + count > rowHeight)
+			throw new IllegalArgumentException("Invalid number of scan lines: " + count);
+		if(rows.length < (long)count*rowWidth)
+			throw new IllegalArgumentException("Not enough pixels for " + count + " scan lines");
+		
+		for(int i = 0, index = 0; i < count; i++) {
+			for(int j = 0, nindex = 0; j < rowWidth; j++) {
+				rowBuffer[nindex++] = (byte)(rows[index]&0xff);
+				rowBuffer[nindex++] = (byte)((rows[index]>>8)&0xff);
+				rowBuffer[nindex++] = (byte)((rows[index++]>>16)&0xff);
+			}
+			
+			rowOS.write(rowBuffer, 0, rowBuffer.length);
+		}
+		
+		rowsWritten += count;
+	}
+}
@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =======    ==========================================================
+ * WY    18Oct2026  Added reset() to reuse the writer
  * WY    14Oct2015  Bug fix for transparent frame
  * WY    05Oct2015  Revised writeFrame() to crop images outside logical screen
  * WY    18Aug2015  Added support to use ImageParam to control dither
@@ -280,6 +281,23 @@ public class GIFWriter extends ImageWriter {
 		empty_bits = -temp;
 	}
     
+    /**
+     * Drops the animation state left by the last GIF. The LZW string table
+     * arrays are kept for the next GIF.
+     */
+    @Override
+    public void reset() {
+    	super.reset();
+    	firstFrame = true;
+    	animated = false;
+    	loopCount = 0;
+    	logicalScreenWidth = 0;
+    	logicalScreenHeight = 0;
+    	bufIndex = 0;
+    	empty_bits = 0x08;
+    	Arrays.fill(bytes_buf, (byte)0x00);
+    }
+    
     public void setLoopCount(int loopCount) {
     	this.loopCount = loopCount;
     }
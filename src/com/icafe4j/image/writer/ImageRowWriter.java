@@ -0,0 +1,56 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.image.writer;
+
+import java.io.OutputStream;
+
+import com.icafe4j.image.ImageParam;
+
+/**
+ * Incremental image writing interface for images too large to be held in memory
+ * as a whole. The image is handed over a band of scan lines at a time from top to
+ * bottom and encoded as it comes in, so the memory used is proportional to the
+ * band rather than to the image.
+ * <p>
+ * Color types which need to see the whole image before writing anything, e.g.
+ * indexed color which requires a global palette, are written as full color
+ * images instead.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public interface ImageRowWriter {
+	/**
+	 * Starts writing a new image
+	 *
+	 * @param imageWidth image width
+	 * @param imageHeight image height
+	 * @param param ImageParam for this image, null to keep the writer's current ImageParam
+	 * @param os OutputStream to write the image
+	 * @throws Exception
+	 */
+	public void begin(int imageWidth, int imageHeight, ImageParam param, OutputStream os) throws Exception;
+	/**
+	 * Writes the next count scan lines of the image
+	 *
+	 * @param rows scan lines in ARGB format, imageWidth pixels each, starting from index 0
+	 * @param count number of scan lines to write
+	 * @throws Exception
+	 */
+	public void writeRows(int[] rows, int count) throws Exception;
+	/**
+	 * Finishes the image after all the scan lines have been written
+	 *
+	 * @throws Exception
+	 */
+	public void end() throws Exception;
+}
@@ -13,6 +13,7 @@ package com.icafe4j.image.writer;
 
 import java.io.*;
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.image.*;
 
 import com.icafe4j.image.ImageParam;
@@ -28,6 +29,9 @@ import com.icafe4j.image.util.IMGUtils;
  * @version 1.2 08/01/2013
  */
 public abstract class ImageWriter {
+	// Working buffers larger than this, in bytes, are dropped by reset()
+	protected static final int MAX_KEPT_BUFFER_SIZE = 4*1024*1024;
+	
 	private ImageParam imageParam = ImageParam.DEFAULT_IMAGE_PARAM;
 	
 	protected ImageWriter() {}
@@ -69,23 +73,122 @@ public abstract class ImageWriter {
 	    return pixels;
 	}
 	
+	/**
+	 * Checks if the raster holds one 8 or 16 bit gray-scale sample per pixel
+	 */
+	protected static boolean isGrayScale(Raster raster, ColorModel cm) {
+		if(!(cm instanceof ComponentColorModel) || cm.getColorSpace().getType() != ColorSpace.TYPE_GRAY)
+			return false;
+		if(cm.hasAlpha() || raster.getNumBands() != 1)
+			return false;
+		
+		int transferType = raster.getTransferType();
+		
+		return (transferType == DataBuffer.TYPE_BYTE && cm.getComponentSize(0) == 8)
+				|| (transferType == DataBuffer.TYPE_USHORT && cm.getComponentSize(0) == 16);
+	}
+	
+	/**
+	 * Checks if the raster holds 8 bit sRGB samples, plus a non-premultiplied
+	 * alpha sample if hasAlpha is true
+	 */
+	protected static boolean isRGB(Raster raster, ColorModel cm, boolean hasAlpha) {
+		if(!(cm instanceof ComponentColorModel) || !cm.getColorSpace().isCS_sRGB())
+			return false;
+		if(cm.hasAlpha() != hasAlpha || cm.isAlphaPremultiplied())
+			return false;
+		if(raster.getTransferType() != DataBuffer.TYPE_BYTE || raster.getNumBands() != cm.getNumComponents())
+			return false;
+		
+		for(int i = 0; i < cm.getNumComponents(); i++) {
+			if(cm.getComponentSize(i) != 8) return false;
+		}
+		
+		return true;
+	}
+	
 	public ImageParam getImageParam() {
 		return imageParam;
 	}
 	
 	public abstract ImageType getImageType();
 	
+	/**
+	 * Prepares this writer to write another image. The ImageParam and the state
+	 * left by the last image written are dropped while the working buffers up
+	 * to MAX_KEPT_BUFFER_SIZE are kept to be reused.
+	 * <p>
+	 * Subclasses holding per image state override this and call super.reset().
+	 */
+	public void reset() {
+		imageParam = ImageParam.DEFAULT_IMAGE_PARAM;
+	}
+	
 	public void setImageParam(ImageParam imageParam) {
 		this.imageParam = imageParam;
 	}
 	
 	public void write(Image img, OutputStream os) throws Exception {
+		if(img instanceof BufferedImage) {
+			BufferedImage bi = (BufferedImage)img;
+			if(!imageParam.isTransparent() && writeRaster(bi.getRaster(), bi.getColorModel(), os))
+				return;
+		}
+		
 		int imageWidth = img.getWidth(null);
 		int imageHeight = img.getHeight(null);
 		
 		write(getPixels(img, imageWidth, imageHeight), imageWidth, imageHeight, os);
 	}
 	
+	/**
+	 * Writes the image held by a Raster and its ColorModel.
+	 * <p>
+	 * Writers which can consume the raster samples directly, e.g. an 8 bit gray-scale
+	 * raster written as a gray-scale image, do so without expanding the raster into an
+	 * ARGB int array. Otherwise the raster is converted to ARGB and written as usual.
+	 * 
+	 * @param raster input Raster
+	 * @param cm ColorModel compatible with the raster
+	 * @param os OutputSteam to write the image
+	 * @throws Exception
+	 */
+	public void write(Raster raster, ColorModel cm, OutputStream os) throws Exception {
+		if(!imageParam.isTransparent() && writeRaster(raster, cm, os))
+			return;
+		
+		WritableRaster wr = null;
+		
+		if(raster instanceof WritableRaster) {
+			wr = ((WritableRaster)raster).createWritableTranslatedChild(0, 0);
+		} else {
+			wr = raster.createCompatibleWritableRaster();
+			wr.setRect(-raster.getMinX(), -raster.getMinY(), raster);
+		}
+		
+		BufferedImage img = new BufferedImage(cm, wr, cm.isAlphaPremultiplied(), null);
+		
+		write(getPixels(img, wr.getWidth(), wr.getHeight()), wr.getWidth(), wr.getHeight(), os);
+	}
+	
+	/**
+	 * Writes the raster samples directly if this writer supports the raster layout
+	 * and the current ImageParam settings. Subclasses override this to skip the ARGB
+	 * conversion for the rasters they understand. The default implementation writes
+	 * nothing and returns false.
+	 * <p>
+	 * This method is not called when the ImageParam has a transparent color.
+	 * 
+	 * @param raster input Raster
+	 * @param cm ColorModel compatible with the raster
+	 * @param os OutputSteam to write the image
+	 * @return true if the image was written, false if nothing was written
+	 * @throws Exception
+	 */
+	protected boolean writeRaster(Raster raster, ColorModel cm, OutputStream os) throws Exception {
+		return false;
+	}
+	
 	/**
 	 * The actual image writing method to be implemented by any specific ImageWriter subclass
 	 * 
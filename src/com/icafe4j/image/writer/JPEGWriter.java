@@ -14,6 +14,11 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Added progressive JPEG with configurable scan script
+ * WY    18Oct2026  Added optimized Huffman tables from a first statistics pass
+ * WY    18Oct2026  Added chroma subsampling for YCbCr color space
+ * WY    18Oct2026  Encode from reusable flat buffers without per block allocation
+ * WY    18Oct2026  Added reset() and restore the default options for each image
  * WY    08Nov2015  Write Adobe APP14 segment for RGB color space
  * WY    21Jun2015  Removed copyright notice from generated JPEG images
  * WY    13Aug2014  Added support for YCCK JPEG image
@@ -33,14 +38,18 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import com.icafe4j.image.ImageColorType;
 import com.icafe4j.image.ImageParam;
 import com.icafe4j.image.ImageType;
 import com.icafe4j.image.compression.huffman.HuffmanEncoder;
+import com.icafe4j.image.compression.huffman.HuffmanTbl;
+import com.icafe4j.image.compression.huffman.ProgressiveHuffmanEncoder;
 import com.icafe4j.image.jpeg.HTable;
 import com.icafe4j.image.jpeg.JPEGConsts;
 import com.icafe4j.image.jpeg.Marker;
+import com.icafe4j.image.jpeg.ProgressiveScan;
 import com.icafe4j.image.jpeg.QTable;
 import com.icafe4j.image.jpeg.Segment;
 import com.icafe4j.image.options.ImageOptions;
@@ -56,10 +65,6 @@ import com.icafe4j.io.IOUtils;
  * @version 1.0 12/02/2013
  */
 public class JPEGWriter extends ImageWriter { 
-	// The image width and height after image expansion 
-  	private int newHeight;
-	private int newWidth; 
-	
 	private ImageParam imageParam;
     private JPEGOptions jpegOptions;
     
@@ -67,6 +72,8 @@ public class JPEGWriter extends ImageWriter {
     private int numOfQTables = 2; // Default number of quantization tables
     private int numOfHTables = 2; // Default number of Huffman tables for each class
     private int[] qTableSelector = new int[] {0, 1, 1, 1}; // q table selectors for different components
+    private int[] hSampling = new int[] {1, 1, 1, 1}; // Horizontal sampling factors for different components
+    private int[] vSampling = new int[] {1, 1, 1, 1}; // Vertical sampling factors for different components
     
     private int[][] quant_table = new int[2][];
     private byte[][][] huffman_bits = new byte[2][2][]; // AC, DC
@@ -81,8 +88,19 @@ public class JPEGWriter extends ImageWriter {
 	private ICC_ColorSpace cmykColorSpace;
 	private boolean writeICCProfile;
 	private boolean isTiffFlavor;
+	private boolean optimizeHuffman;
+	private boolean isProgressive;
+	// Number of MCUs in a row and a column of the image
+	private int mcusPerLine;
+	private int mcusPerColumn;
 		
     private static final String comment = "Created by ICAFE - https://github.com/dragon66/icafe";
+    
+    // Buffers kept from image to image
+    private float[][] strips = new float[4][]; // Level shifted samples of an MCU row, one flat strip per component
+    private float[] dctBlock = new float[64];
+    private int[] quantBlock = new int[64];
+    private short[][] coefficients = new short[4][]; // Quantized blocks of the whole image for multiple passes
 		   
 	public JPEGWriter() {}
 	
@@ -90,42 +108,6 @@ public class JPEGWriter extends ImageWriter {
 		super(param);
 	}
    	
-	// Expand array to make image width and height a multiple of 8
-	private float[][] expandArray(float[][] component, int width, int height) {
-		int xpadding = width%8;
-		int ypadding = height%8;
-		newWidth = width + ((xpadding == 0)?0:(8-xpadding));
-		newHeight = height + ((ypadding == 0)?0:(8-ypadding));
-		
-		if(newWidth > width || newHeight > height) {
-			float[][] temp = new float[newHeight][newWidth];			
-			// Expand width first
-			for(int i = 0; i < height; i++) {
-				System.arraycopy(component[i], 0, temp[i], 0, width);
-				Arrays.fill(temp[i], width, newWidth, component[i][width - 1]);
-			}
-			// Expand height
-			for(int k = height; k < newHeight; k++) {
-				System.arraycopy(temp[height - 1], 0, temp[k], 0, newWidth);
-			}
-					
-			return temp;
-		}
-		
-		return component;		
-	}
-	
-	private float[][] getDCTBlock(float[][] component, int x, int y) {
-		//
-		float[][] block = new float[8][8];
-		
-		for(int i = x, index = 0; i < 8 + x; i++, index++) {
-			System.arraycopy(component[i], y, block[index], 0, 8);
-		}
-		
-		return block;
-	}
-	
 	public byte[] getCMYK_ICC_Profile() {
 		if(cmykColorSpace != null)
 			return cmykColorSpace.getProfile().getData();
@@ -137,8 +119,44 @@ public class JPEGWriter extends ImageWriter {
 		return ImageType.JPG;
 	}
 	
+	/**
+	 * Restores the default options and drops the working buffers larger than
+	 * MAX_KEPT_BUFFER_SIZE. The CMYK color space is kept once loaded.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		resetImageState();
+		// The coefficients cover the whole image, only keep small buffers
+		for(int i = 0; i < 4; i++) {
+			if(strips[i] != null && strips[i].length*4L > MAX_KEPT_BUFFER_SIZE)
+				strips[i] = null;
+			if(coefficients[i] != null && coefficients[i].length*2L > MAX_KEPT_BUFFER_SIZE)
+				coefficients[i] = null;
+		}
+	}
+	
+	// Restore the defaults which may have been changed by the options of the last image
+	private void resetImageState() {
+		imageParam = null;
+		jpegOptions = null;
+		numOfComponents = 3;
+		numOfQTables = 2;
+		numOfHTables = 2;
+		quality = 100;
+		includeTables = true;
+		grayScale = false;
+		colorSpace = JPEGOptions.COLOR_SPACE_YCbCr;
+		writeICCProfile = false;
+		isTiffFlavor = false;
+		optimizeHuffman = false;
+		isProgressive = false;
+		hSampling[0] = vSampling[0] = 1;
+	}
+	
 	// TODO: may need more changes to work with CMYK or RGB, and perhaps YCCK color space
 	private void processImageMeta() throws Exception {
+		resetImageState();
 		// Grab the ImageParam
 		imageParam = getImageParam();
 		grayScale = imageParam.getColorType() == ImageColorType.GRAY_SCALE;
@@ -151,6 +169,9 @@ public class JPEGWriter extends ImageWriter {
 			colorSpace = jpegOptions.getColorSpace();
 			isTiffFlavor = jpegOptions.isTiffFlavor();
 			writeICCProfile = jpegOptions.writeICCProfile();
+			// Tables written separately by writeDefaultJPEGTables() can't be optimized for the image
+			optimizeHuffman = jpegOptions.optimizeHuffman() && includeTables;
+			isProgressive = jpegOptions.isProgressive() && !isTiffFlavor;
 		}
 		if(colorSpace == JPEGOptions.COLOR_SPACE_CMYK || colorSpace == JPEGOptions.COLOR_SPACE_YCCK) {
 			numOfComponents = 4;
@@ -163,27 +184,15 @@ public class JPEGWriter extends ImageWriter {
 			numOfQTables = 1;
 			numOfHTables = 1;
 		}
+		// Subsample chrominance if requested. TIFF flavor always goes with 1x1 YCbCrSubSampling
+		if(jpegOptions != null && colorSpace == JPEGOptions.COLOR_SPACE_YCbCr && !grayScale && !isTiffFlavor) {
+			hSampling[0] = jpegOptions.getHorizontalSamplingFactor();
+			vSampling[0] = jpegOptions.getVerticalSamplingFactor();
+		}
 		// Set tables (Could be custom ones)
 		setDefaultTables(quality);	
 	}
 	
-	// Convert RGB to separate R, G, B with level shift (minus 128)
-	private void RGB2RGB(int[] rgb, float[][] r, float[][] g, float[][] b, int imageWidth, int imageHeight) throws Exception {
-		// TODO: Add down-sampling
-		int red,green,blue, index = 0;
-	
-		for(int i = 0; i < imageHeight; i++) {
-			for(int j = 0; j < imageWidth; j++) {
-				red = ((rgb[index] >> 16) & 0xff);
-				green = ((rgb[index] >> 8) & 0xff);
-				blue = (rgb[index++] & 0xff);
-				r[i][j] = red - 128.0f;
-				g[i][j] = green - 128.0f;
-				b[i][j] = blue - 128.0f;
-			}
-		}
-	}
-	
 	// TODO: find a way to use different tables if CMYK or RGB color space is used
 	// May need to change HuffmanEncoder accordingly.
 	private void setDefaultTables(int quality) {
@@ -202,7 +211,16 @@ public class JPEGWriter extends ImageWriter {
 	
 	protected void write(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {	
 		// Read ImageParam and set parameters
-		processImageMeta();	
+		processImageMeta();
+		// Progressive scans are written from the quantized coefficients of the whole image
+		if(isProgressive)
+			transformImage(pixels, imageWidth, imageHeight, null);
+		HuffmanEncoder encoder = new HuffmanEncoder(os, 4096);
+		// The tables have to be ready before DHT is written
+		if(optimizeHuffman && !isProgressive) {
+			transformImage(pixels, imageWidth, imageHeight, null);
+			optimizeHuffmanTables(encoder);
+		}
 		// Start of image marker
 		writeSOI(os);
 		if(colorSpace == JPEGOptions.COLOR_SPACE_YCbCr)			
@@ -221,18 +239,27 @@ public class JPEGWriter extends ImageWriter {
         if(includeTables) {	     	   
 			// Write DQT
 			writeDQT(os);
-			// Write DHT
-			writeDHT(os);
+			// Write DHT. Progressive JPEG writes its own tables before each scan
+			if(!isProgressive)
+				writeDHT(os);
+        }
+        if(isProgressive) {
+        	writeSOF(os, Marker.SOF2, imageWidth, imageHeight);
+        	writeProgressiveScans(os, imageWidth, imageHeight);
+        	writeEOI(os);
+        	return;
         }
         // Write SOF0
-        writeSOF0(os, imageWidth, imageHeight);	
+        writeSOF(os, Marker.SOF0, imageWidth, imageHeight);	
         // Write SOS
         writeSOS(os);
         // Write actual image stream
-       	if(grayScale)		
-			writeGrayScale(IMGUtils.rgb2grayscale(pixels, imageWidth, imageHeight), os, imageWidth, imageHeight);
-		else
-			writeFullColor(pixels, os, imageWidth, imageHeight);   
+        encoder.initialize();
+        if(optimizeHuffman)
+        	encodeCoefficients(encoder, null, null);
+        else
+        	transformImage(pixels, imageWidth, imageHeight, encoder);
+        encoder.finish();
        	// Write EOI marker
         writeEOI(os);        
     }
@@ -354,34 +381,6 @@ public class JPEGWriter extends ImageWriter {
 		os.write(EOI);
 	}
 	
-	private void writeGrayScale(float[][] pixels, OutputStream os, int imageWidth, int imageHeight) throws Exception {
-		// Expand image if needed
-		pixels = expandArray(pixels, imageWidth, imageHeight);
-		
-		// DCT transform and Huffman encoding
-		HuffmanEncoder encoder = new HuffmanEncoder(os, 4096);
-		// If we are going to use custom encoder tables, call encoder.setEncodingTables() here before
-		// calling encoder.initialize() which will skip the default encoding tables generation
-		encoder.initialize();
-		
-		for(int i = 0; i < newHeight; i+=8) {
-			for(int j = 0; j < newWidth; j+=8) {
-			    float[][] block = getDCTBlock(pixels, i, j);
-				// DCT transform
-				block = DCT.forwardDCT(block);
-				int[] unzigzagBlock = new int[64];
-				// Natural order block and quantization
-				for(int k = 0, index = 0; k < 8; k++) {
-					for(int l = 0; l < 8; l++, index++) 
-						unzigzagBlock[index] = (int)block[k][l]/quant_table[0][index];
-				}				
-				encoder.encode(unzigzagBlock, 0);								
-			}
-		}
-		
-		encoder.finish();
-	}
-	
 	private void writeICCProfile(OutputStream os) throws Exception {
 		ICC_Profile icc_profile = cmykColorSpace.getProfile();
 		writeICCProfile(os, icc_profile.getData());
@@ -411,58 +410,220 @@ public class JPEGWriter extends ImageWriter {
 		}
 	}
 	
-	// Write actual image data
-	private void writeFullColor(int[] pixels, OutputStream os, int imageWidth, int imageHeight) throws Exception {
-		// Create arrays according to number of color components
-		float[][][] c = new float[numOfComponents][imageHeight][imageWidth];		
+	// Entropy code the quantized blocks kept in coefficients in MCU order. Statistics are gathered
+	// into the frequency tables indexed by Huffman table instead if DC_freq and AC_freq are not null.
+	private void encodeCoefficients(HuffmanEncoder encoder, int[][] DC_freq, int[][] AC_freq) throws Exception {
+		for(int my = 0; my < mcusPerColumn; my++) {
+			for(int mx = 0; mx < mcusPerLine; mx++) {
+				for(int k = 0; k < numOfComponents; k++) {
+					short[] blocks = coefficients[k];
+					int blocksPerLine = mcusPerLine*hSampling[k];
+					for(int v = 0; v < vSampling[k]; v++) {
+						for(int h = 0; h < hSampling[k]; h++) {
+							int offset = ((my*vSampling[k] + v)*blocksPerLine + mx*hSampling[k] + h)*64;
+							for(int i = 0; i < 64; i++)
+								quantBlock[i] = blocks[offset + i];
+							if(DC_freq != null)
+								encoder.gatherStatistics(quantBlock, k, DC_freq[qTableSelector[k]], AC_freq[qTableSelector[k]]);
+							else
+								encoder.encode(quantBlock, k);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	// Replace the default Huffman tables with the ones generated from the statistics of the buffered coefficients
+	private void optimizeHuffmanTables(HuffmanEncoder encoder) throws Exception {
+		int[][] DC_freq = new int[numOfHTables][256];
+		int[][] AC_freq = new int[numOfHTables][256];
+		encodeCoefficients(encoder, DC_freq, AC_freq);
+		int[][][] EHUFCO = new int[2][numOfHTables][]; // DC, AC
+		int[][][] EHUFSI = new int[2][numOfHTables][];
+		for(int i = 0; i < numOfHTables; i++) {
+			for(int clazz = 0; clazz < 2; clazz++) {
+				HuffmanTbl huffTbl = HuffmanTbl.generateOptimalTable(clazz == 0 ? DC_freq[i] : AC_freq[i]);
+				huffman_bits[clazz][i] = huffTbl.getBitsTable();
+				huffman_values[clazz][i] = huffTbl.getValueTable();
+				huffTbl.generateEncoderTables();
+				EHUFCO[clazz][i] = huffTbl.getEncoderCodeTable();
+				EHUFSI[clazz][i] = huffTbl.getEncoderSizeTable();
+			}
+		}
+		// Encoder tables are indexed by component
+		int[][] DC_EHUFCO = new int[4][], DC_EHUFSI = new int[4][];
+		int[][] AC_EHUFCO = new int[4][], AC_EHUFSI = new int[4][];
+		for(int k = 0; k < numOfComponents; k++) {
+			DC_EHUFCO[k] = EHUFCO[0][qTableSelector[k]];
+			DC_EHUFSI[k] = EHUFSI[0][qTableSelector[k]];
+			AC_EHUFCO[k] = EHUFCO[1][qTableSelector[k]];
+			AC_EHUFSI[k] = EHUFSI[1][qTableSelector[k]];
+		}
+		encoder.setEncodingTables(DC_EHUFCO, DC_EHUFSI, AC_EHUFCO, AC_EHUFSI);
+	}
+	
+	// Color convert, DCT transform and quantize the image MCU row by MCU row. Each quantized block
+	// is entropy coded right away or, if encoder is null, kept in coefficients for later passes.
+	private void transformImage(int[] pixels, int imageWidth, int imageHeight, HuffmanEncoder encoder) throws Exception {
+		byte[] cmyk = null;
 		// Determine the color space to use
-		if(colorSpace == JPEGOptions.COLOR_SPACE_YCbCr) {
-			// RGB to YCbCr transform
-			IMGUtils.RGB2YCbCr(pixels, c[0], c[1], c[2], imageWidth, imageHeight);
-		} else if(colorSpace == JPEGOptions.COLOR_SPACE_RGB) {
-			// RGB to separate R, G, B transform with level shifting
-			RGB2RGB(pixels, c[0], c[1], c[2], imageWidth, imageHeight);
-		} else if(colorSpace == JPEGOptions.COLOR_SPACE_CMYK) {
-			if(!isTiffFlavor) // All the software tends to believe JPEG CMYK is inverted!
-				IMGUtils.RGB2CMYK_Inverted(cmykColorSpace, pixels, c[0], c[1], c[2], c[3], imageWidth, imageHeight);
-			else
-				IMGUtils.RGB2CMYK(cmykColorSpace, pixels, c[0], c[1], c[2], c[3], imageWidth, imageHeight);
-		} else if(colorSpace == JPEGOptions.COLOR_SPACE_YCCK) {
-			if(!isTiffFlavor) // All the software tends to believe JPEG YCCK is inverted!
-				IMGUtils.RGB2YCCK_Inverted(cmykColorSpace, pixels, c[0], c[1], c[2], c[3], imageWidth, imageHeight);
-			else
+		if(colorSpace == JPEGOptions.COLOR_SPACE_CMYK || colorSpace == JPEGOptions.COLOR_SPACE_YCCK) {
+			if(colorSpace == JPEGOptions.COLOR_SPACE_YCCK && isTiffFlavor)
 				throw new UnsupportedOperationException("YCCK JPEG is not supported in TIFF!");
-		} else {
+			cmyk = IMGUtils.RGB2CMYK(cmykColorSpace, pixels, imageWidth, imageHeight, false);
+		} else if(colorSpace != JPEGOptions.COLOR_SPACE_YCbCr && colorSpace != JPEGOptions.COLOR_SPACE_RGB) {
 			throw new IllegalArgumentException("Unsupported color space type: " + colorSpace);
-		}		
-		// Expand image if needed
+		}
+		int mcuWidth = hSampling[0]*8;
+		int mcuHeight = vSampling[0]*8;
+		// Image width expanded to a multiple of MCU width
+		int stride = (imageWidth + mcuWidth - 1)/mcuWidth*mcuWidth;
+		for(int i = 0; i < numOfComponents; i++) {
+			if(strips[i] == null || strips[i].length < stride*mcuHeight)
+				strips[i] = new float[stride*mcuHeight];
+		}
+		// Strip width for each component after downsampling
+		int[] strides = new int[numOfComponents];
 		for(int i = 0; i < numOfComponents; i++)
-			c[i] = expandArray(c[i], imageWidth, imageHeight);
-		// DCT transform and Huffman encoding
-		HuffmanEncoder encoder = new HuffmanEncoder(os, 4096);
-		// If we are going to use custom encoder tables, call encoder.setEncodingTables() here before
-		// calling encoder.prepare() which will skip the default encoding tables generation
-		encoder.initialize();
-		
-		for(int i = 0; i < newHeight; i+=8) {
-			for(int j = 0; j < newWidth; j+=8) {
-			   for(int k = 0; k < numOfComponents; k++) {
-				   int[] q = quant_table[qTableSelector[k]];
-				   float[][] block = getDCTBlock(c[k], i, j);
-				   // DCT transform
-				   block = DCT.forwardDCT(block);
-				   int[] unzigzagBlock = new int[64];
-				   // Natural order block and quantization
-				   for(int l = 0, index = 0; l < 8; l++) {
-					   for(int m = 0; m < 8; m++, index++) 
-						   unzigzagBlock[index] = (int)block[l][m]/q[index];
-				   }				
-				   encoder.encode(unzigzagBlock, k);
-			   }		
+			strides[i] = stride*hSampling[i]/hSampling[0];
+		mcusPerLine = stride/mcuWidth;
+		mcusPerColumn = (imageHeight + mcuHeight - 1)/mcuHeight;
+		if(encoder == null) {
+			for(int i = 0; i < numOfComponents; i++) {
+				int size = mcusPerLine*hSampling[i]*mcusPerColumn*vSampling[i]*64;
+				if(coefficients[i] == null || coefficients[i].length < size)
+					coefficients[i] = new short[size];
 			}
 		}
+		float[] scaleFactors = DCT.getScaleFactors();
+		boolean subsampled = false;
+		for(int k = 1; k < numOfComponents; k++)
+			subsampled |= (hSampling[k] != hSampling[0] || vSampling[k] != vSampling[0]);
 		
-		encoder.finish();
+		for(int y = 0, my = 0; y < imageHeight; y += mcuHeight, my++) {
+			fillStrips(pixels, cmyk, imageWidth, imageHeight, y, stride, mcuHeight);
+			for(int k = 1; k < numOfComponents; k++) {
+				if(hSampling[k] != hSampling[0] || vSampling[k] != vSampling[0])
+					downsample(strips[k], stride, mcuHeight, hSampling[0], vSampling[0]);
+			}
+			// Interleaved MCUs: hSampling*vSampling blocks of each component in raster order
+			for(int x = 0, mx = 0; x < stride; x += mcuWidth, mx++) {
+				for(int k = 0; k < numOfComponents; k++) {
+					float[] strip = strips[k];
+					int componentStride = strides[k];
+					int[] q = quant_table[qTableSelector[k]];
+					short[] blocks = coefficients[k];
+					int blocksPerLine = mcusPerLine*hSampling[k];
+					for(int v = 0; v < vSampling[k]; v++) {
+						for(int h = 0; h < hSampling[k]; h++) {
+							int offset = v*8*componentStride + x*hSampling[k]/hSampling[0] + h*8;
+							for(int i = 0; i < 64; i += 8, offset += componentStride)
+								System.arraycopy(strip, offset, dctBlock, i, 8);
+							DCT.forwardDCT(dctBlock);
+							// Natural order block and quantization. Full resolution output is truncated before
+							// dividing to keep the output of the jagged array version. Subsampled output rounds
+							// to the nearest step: the chroma blocks of small images are mostly flat padding and
+							// the truncation dead zone takes a whole step off their few nonzero coefficients.
+							if(subsampled) {
+								for(int i = 0; i < 64; i++)
+									quantBlock[i] = Math.round(dctBlock[i]*scaleFactors[i]/q[i]);
+							} else {
+								for(int i = 0; i < 64; i++)
+									quantBlock[i] = (int)(dctBlock[i]*scaleFactors[i])/q[i];
+							}
+							if(encoder != null) {
+								encoder.encode(quantBlock, k);
+							} else {
+								offset = ((my*vSampling[k] + v)*blocksPerLine + mx*hSampling[k] + h)*64;
+								for(int i = 0; i < 64; i++)
+									blocks[offset + i] = (short)quantBlock[i];
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	// Box filter a full resolution strip down by the sampling factors, in place with the new stride of stride/h.
+	// Each output sample is written at or before the samples it is averaged from, so no input is overwritten too early.
+	private static void downsample(float[] strip, int stride, int rows, int h, int v) {
+		int newStride = stride/h;
+		float scale = 1.0f/(h*v);
+		for(int row = 0, out = 0; row < rows/v; row++) {
+			for(int col = 0; col < newStride; col++, out++) {
+				float sum = 0.0f;
+				for(int i = 0, in = row*v*stride + col*h; i < v; i++, in += stride) {
+					for(int j = 0; j < h; j++)
+						sum += strip[in + j];
+				}
+				strip[out] = sum*scale;
+			}
+		}
+	}
+	
+	// Convert rows starting from y0 to level shifted samples, padding to the width and height multiple of MCU size
+	private void fillStrips(int[] pixels, byte[] cmyk, int imageWidth, int imageHeight, int y0, int stride, int rows) {
+		for(int row = 0, offset = 0; row < rows; row++, offset += stride) {
+			if(y0 + row >= imageHeight) { // Repeat the last row
+				for(int k = 0; k < numOfComponents; k++)
+					System.arraycopy(strips[k], offset - stride, strips[k], offset, stride);
+				continue;
+			}
+			int index = (y0 + row)*imageWidth;
+			if(grayScale) {
+				float[] gray = strips[0];
+				for(int j = 0; j < imageWidth; j++, index++) {
+					int rgb = pixels[index];
+					// Luma method (level shift included)
+					gray[offset + j] = (float)(((rgb>>16)&0xff)*0.2126 + ((rgb>>8)&0xff)*0.7152 + (rgb&0xff)*0.0722 - 128.0);
+				}
+			} else if(colorSpace == JPEGOptions.COLOR_SPACE_YCbCr) {
+				float[] Y = strips[0], Cb = strips[1], Cr = strips[2];
+				for(int j = offset; j < offset + imageWidth; j++, index++) {
+					int red = (pixels[index]>>16)&0xff;
+					int green = (pixels[index]>>8)&0xff;
+					int blue = pixels[index]&0xff;
+					Y[j] = (0.299f*red + 0.587f*green + 0.114f*blue) - 128.0f;
+					Cb[j] = - 0.1687f*red - 0.3313f*green + 0.5f*blue;
+					Cr[j] = 0.5f*red - 0.4187f*green - 0.0813f*blue;
+				}
+			} else if(colorSpace == JPEGOptions.COLOR_SPACE_RGB) {
+				float[] R = strips[0], G = strips[1], B = strips[2];
+				for(int j = offset; j < offset + imageWidth; j++, index++) {
+					R[j] = ((pixels[index]>>16)&0xff) - 128.0f;
+					G[j] = ((pixels[index]>>8)&0xff) - 128.0f;
+					B[j] = (pixels[index]&0xff) - 128.0f;
+				}
+			} else if(colorSpace == JPEGOptions.COLOR_SPACE_CMYK) {
+				float[] C = strips[0], M = strips[1], Y = strips[2], K = strips[3];
+				// All the software tends to believe JPEG CMYK is inverted!
+				float sign = isTiffFlavor ? 1.0f : -1.0f;
+				index <<= 2;
+				for(int j = offset; j < offset + imageWidth; j++) {
+					C[j] = sign*((cmyk[index++]&0xff) - 128.0f);
+					M[j] = sign*((cmyk[index++]&0xff) - 128.0f);
+					Y[j] = sign*((cmyk[index++]&0xff) - 128.0f);
+					K[j] = sign*((cmyk[index++]&0xff) - 128.0f);
+				}
+			} else { // Inverted YCCK
+				float[] Y = strips[0], Cb = strips[1], Cr = strips[2], K = strips[3];
+				index <<= 2;
+				for(int j = offset; j < offset + imageWidth; j++) {
+					float c = 255.0f - (cmyk[index++]&0xff); // Red
+					float m = 255.0f - (cmyk[index++]&0xff); // Green
+					float y = 255.0f - (cmyk[index++]&0xff); // Blue
+					Y[j] = 128.0f - (c*0.299f + m*0.587f + y*0.114f);
+					Cb[j] = 0.16874f*c + 0.33126f*m - 0.5f*y;
+					Cr[j] = - 0.5f*c + 0.41869f*m + 0.08131f*y;
+					K[j] = 128.0f - (cmyk[index++]&0xff);
+				}
+			}
+			// Repeat the last column
+			for(int k = 0; k < numOfComponents; k++)
+				Arrays.fill(strips[k], offset + imageWidth, offset + stride, strips[k][offset + imageWidth - 1]);
+		}
 	}
 	
 	private void writeJFIF(OutputStream os) throws Exception {
@@ -523,13 +684,111 @@ public class JPEGWriter extends ImageWriter {
 		writeEOI(os);		
 	}
 	
-	private void writeSOF0(OutputStream os, int imageWidth, int imageHeight) throws Exception {
-		// SOF0 segment
+	// Write the scans of the script one by one, each preceded by the Huffman tables optimized for it
+	private void writeProgressiveScans(OutputStream os, int imageWidth, int imageHeight) throws Exception {
+		List<ProgressiveScan> scanScript = jpegOptions.getScanScript();
+		if(scanScript == null)
+			scanScript = ProgressiveScan.getDefaultScanScript(numOfComponents);
+		ProgressiveHuffmanEncoder encoder = new ProgressiveHuffmanEncoder(os, 4096);
+		
+		for(ProgressiveScan scan : scanScript) {
+			int[] components = scan.getComponents();
+			if(components[components.length - 1] >= numOfComponents)
+				throw new IllegalArgumentException("Scan component out of range: " + scan);
+			// DC refinement bits are sent as is, others need Huffman tables
+			if(scan.getSs() != 0 || scan.getAh() == 0) {
+				int clazz = (scan.getSs() == 0) ? HTable.DC_CLAZZ : HTable.AC_CLAZZ;
+				// Components sharing a table share the frequencies
+				int[][] freqByTable = new int[numOfHTables][];
+				int[][] freq = new int[4][];
+				for(int k : components) {
+					int table = qTableSelector[k];
+					if(freqByTable[table] == null)
+						freqByTable[table] = new int[256];
+					freq[k] = freqByTable[table];
+				}
+				encoder.setStatistics(freq, freq);
+				encoder.initialize();
+				encodeScan(encoder, scan, imageWidth, imageHeight);
+				encoder.finish();
+				encoder.setStatistics(null, null);
+				int[][] EHUFCO = new int[4][], EHUFSI = new int[4][];
+				int[][] codeByTable = new int[numOfHTables][], sizeByTable = new int[numOfHTables][];
+				for(int i = 0; i < numOfHTables; i++) {
+					if(freqByTable[i] == null) continue;
+					HuffmanTbl huffTbl = HuffmanTbl.generateOptimalTable(freqByTable[i]);
+					writeDHT(new HTable(clazz, i, huffTbl.getBitsTable(), huffTbl.getValueTable()), os);
+					huffTbl.generateEncoderTables();
+					codeByTable[i] = huffTbl.getEncoderCodeTable();
+					sizeByTable[i] = huffTbl.getEncoderSizeTable();
+				}
+				for(int k : components) {
+					EHUFCO[k] = codeByTable[qTableSelector[k]];
+					EHUFSI[k] = sizeByTable[qTableSelector[k]];
+				}
+				// Only one class of tables is used by a scan
+				encoder.setEncodingTables(EHUFCO, EHUFSI, EHUFCO, EHUFSI);
+			}
+			writeSOS(os, components, scan.getSs(), scan.getSe(), scan.getAh(), scan.getAl());
+			encoder.initialize();
+			encodeScan(encoder, scan, imageWidth, imageHeight);
+			encoder.finish();
+		}
+	}
+	
+	// Entropy code the buffered coefficients for a progressive scan. Scans of more than one
+	// component are interleaved by MCU, a single component scan goes over the blocks of that
+	// component only, not including the blocks padding the MCUs.
+	private void encodeScan(ProgressiveHuffmanEncoder encoder, ProgressiveScan scan, int imageWidth, int imageHeight) throws Exception {
+		int[] components = scan.getComponents();
+		if(components.length > 1) {
+			for(int my = 0; my < mcusPerColumn; my++) {
+				for(int mx = 0; mx < mcusPerLine; mx++) {
+					for(int k : components) {
+						int blocksPerLine = mcusPerLine*hSampling[k];
+						for(int v = 0; v < vSampling[k]; v++) {
+							for(int h = 0; h < hSampling[k]; h++)
+								encodeBlock(encoder, scan, k, ((my*vSampling[k] + v)*blocksPerLine + mx*hSampling[k] + h)*64);
+						}
+					}
+				}
+			}
+		} else {
+			int k = components[0];
+			int blocksPerLine = mcusPerLine*hSampling[k];
+			// Component dimensions in blocks
+			int width = ((imageWidth*hSampling[k] + hSampling[0] - 1)/hSampling[0] + 7)/8;
+			int height = ((imageHeight*vSampling[k] + vSampling[0] - 1)/vSampling[0] + 7)/8;
+			for(int by = 0; by < height; by++) {
+				for(int bx = 0; bx < width; bx++)
+					encodeBlock(encoder, scan, k, (by*blocksPerLine + bx)*64);
+			}
+		}
+	}
+	
+	private void encodeBlock(ProgressiveHuffmanEncoder encoder, ProgressiveScan scan, int k, int offset) throws Exception {
+		short[] blocks = coefficients[k];
+		for(int i = 0; i < 64; i++)
+			quantBlock[i] = blocks[offset + i];
+		if(scan.getSs() == 0) {
+			if(scan.getAh() == 0)
+				encoder.encodeDCFirst(quantBlock, k, scan.getAl());
+			else
+				encoder.encodeDCRefine(quantBlock, scan.getAl());
+		} else if(scan.getAh() == 0) {
+			encoder.encodeACFirst(quantBlock, k, scan.getSs(), scan.getSe(), scan.getAl());
+		} else {
+			encoder.encodeACRefine(quantBlock, k, scan.getSs(), scan.getSe(), scan.getAl());
+		}
+	}
+	
+	private void writeSOF(OutputStream os, Marker marker, int imageWidth, int imageHeight) throws Exception {
+		// SOF0 or SOF2 segment
 		int length = 8 + 3*numOfComponents;
 		byte SOF[] = new byte[length + 2];
-	    // Marker: 0xffc0
+	    // Marker: 0xffc0 or 0xffc2
 		SOF[0] = (byte) 0xFF;
-		SOF[1] = (byte) 0xC0;
+		SOF[1] = (byte) marker.getValue();
 		// Write length
 		SOF[2] = (byte) (length >> 8);
 		SOF[3] = (byte) length;
@@ -547,7 +806,7 @@ public class JPEGWriter extends ImageWriter {
 		
 		for(int i = 0; i < numOfComponents; i++) {
 			SOF[offset++] = (byte) (i+1);
-			SOF[offset++] = (byte) ((1 << 4) + 1);
+			SOF[offset++] = (byte) ((hSampling[i] << 4) + vSampling[i]);
 			SOF[offset++] = (byte) qTableSelector[i];
 		}
 		
@@ -561,26 +820,33 @@ public class JPEGWriter extends ImageWriter {
 	}
 	
 	private void writeSOS(OutputStream os) throws Exception {
+		int[] components = new int[numOfComponents];
+		for(int i = 0; i < numOfComponents; i++)
+			components[i] = i;
+		writeSOS(os, components, 0, 63, 0, 0);
+	}
+	
+	private void writeSOS(OutputStream os, int[] components, int Ss, int Se, int Ah, int Al) throws Exception {
 		//
-		int length = 6 + 2*numOfComponents;		
+		int length = 6 + 2*components.length;		
 		byte SOS[] = new byte[length + 2];
 		
 		SOS[0] = (byte) 0xFF;
 		SOS[1] = (byte) 0xDA;
 		SOS[2] = (byte) (length >> 8);
 		SOS[3] = (byte) length;
-		SOS[4] = (byte) numOfComponents;
+		SOS[4] = (byte) components.length;
 		
 		int offset = 5;
 		
-		for(int i = 0; i < numOfComponents; i++) {
+		for(int i : components) {
 			SOS[offset++] = (byte) (i+1);
 			SOS[offset++] = (byte) ((qTableSelector[i] << 4) + qTableSelector[i]);
 		}
 		
-        SOS[offset++] = (byte) 0;
-        SOS[offset++] = (byte) 63;
-        SOS[offset++] = (byte) 0;
+        SOS[offset++] = (byte) Ss;
+        SOS[offset++] = (byte) Se;
+        SOS[offset++] = (byte) ((Ah << 4) + Al);
         
         os.write(SOS);
 	}
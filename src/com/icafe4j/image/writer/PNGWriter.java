@@ -14,12 +14,19 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Added public reset() to reuse the writer
+ * WY    18Oct2026  Added writeRaster() to write rasters without ARGB conversion
  * WY    21Jun2015  Removed copyright notice from generated PNG images
  * WY    01Mar2014  Added apply_adamptive_filter method
  */
 
 package com.icafe4j.image.writer;
 
+import java.awt.Transparency;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +34,9 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.TimeZone;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.icafe4j.image.ImageColorType;
 import com.icafe4j.image.ImageParam;
 import com.icafe4j.image.ImageType;
@@ -55,7 +65,7 @@ import com.icafe4j.util.ArrayUtils;
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.0 04/29/2013
  */
-public class PNGWriter extends ImageWriter {
+public class PNGWriter extends ImageWriter implements ImageRowWriter {
 	// Parameters to control compression
 	boolean isApplyAdaptiveFilter = false;	
 	int filterType = Filter.NONE;		
@@ -63,6 +73,23 @@ public class PNGWriter extends ImageWriter {
 	ImageParam imageParam;
 	// A collection of chunks representing the PNG image.
 	private List<Chunk> chunks = new ArrayList<Chunk>(10);
+	// Scan line writing state
+	private OutputStream rowOS;
+	private int rowWidth;
+	private int rowHeight;
+	private int rowsWritten;
+	private boolean rowGrayScale;
+	private boolean rowAlpha;
+	private int rowBytesPerPixel;
+	// Previous raw scan line needed by the filters
+	private byte[] prevRow;
+	private IDATBuilder rowBuilder;
+	// Number of uncompressed bytes given to rowBuilder since the last IDAT chunk
+	private int rowPending;
+	private static final int ROW_BUFFER_SIZE = 64*1024;
+	
+	// Obtain a logger instance
+	private static final Logger LOGGER = LoggerFactory.getLogger(PNGWriter.class);
 	
 	/** PNG signature constant */
     private static final long SIGNATURE = 0x89504E470D0A1A0AL;
@@ -196,23 +223,112 @@ public class PNGWriter extends ImageWriter {
 		chunks.add(timeBuilder.build());		
 	}
 	
+	/**
+	 * Starts writing an 8 bit RGB or gray-scale image with or without alpha. Indexed
+	 * color images are written as RGB since the palette is not known until the whole
+	 * image is seen.
+	 */
+	public void begin(int imageWidth, int imageHeight, ImageParam param, OutputStream os) throws Exception {
+		if(imageWidth <= 0 || imageHeight <= 0)
+			throw new IllegalArgumentException("Invalid image size: " + imageWidth + "x" + imageHeight);
+		if(param != null)
+			setImageParam(param);
+		
+		startImage(os);
+		
+		rowGrayScale = (imageParam.getColorType() == ImageColorType.GRAY_SCALE);
+		rowAlpha = imageParam.hasAlpha();
+		
+		if(imageParam.getColorType() == ImageColorType.INDEXED)
+			LOGGER.warn("#Warning: indexed color is not supported when writing by scan lines, saving as RGB instead!");
+		
+		IHDRBuilder hdrBuilder = new IHDRBuilder().width(imageWidth).height(imageHeight).bitDepth(8).
+				compressionMethod(0).filterMethod(0).interlaceMethod(0);
+		
+		if(rowGrayScale) {
+			hdrBuilder.colorType(rowAlpha?ColorType.GRAY_SCALE_WITH_ALPHA:ColorType.GRAY_SCALE);
+			rowBytesPerPixel = (rowAlpha?2:1);
+		} else {
+			// Same as writeRGB, PAETH is the default filter for RGB image
+			if(filterType == Filter.NONE) filterType = Filter.PAETH;
+			hdrBuilder.colorType(rowAlpha?ColorType.TRUE_COLOR_WITH_ALPHA:ColorType.TRUE_COLOR);
+			rowBytesPerPixel = (rowAlpha?4:3);
+		}
+		
+		chunks.add(hdrBuilder.build());
+		
+		if(!rowAlpha && imageParam.isTransparent()) {
+			int transparentColor = imageParam.getTransparentColor();
+			byte[] alpha = null;
+			if(rowGrayScale) {
+				TRNSBuilder tBuilder = new TRNSBuilder(0);
+				byte trans_color = (byte)(((transparentColor>>16)&0xff)*0.2126 + ((transparentColor>>8)&0xff)*0.7152 + (transparentColor&0xff)*0.0722);
+				alpha = new byte[] {0, trans_color};
+				chunks.add(tBuilder.alpha(alpha).build());
+			} else {
+				TRNSBuilder tBuilder = new TRNSBuilder(2);
+				alpha = new byte[] {0, (byte)(transparentColor>>>16), 0, (byte)(transparentColor>>>8), 0, (byte)(transparentColor>>>0)};
+				chunks.add(tBuilder.alpha(alpha).build());
+			}
+		}
+		
+		PNGTweaker.serializeChunks(chunks, os);
+		
+		rowOS = os;
+		rowWidth = imageWidth;
+		rowHeight = imageHeight;
+		rowsWritten = 0;
+		rowPending = 0;
+		// The line before the first one is taken as all zeros
+		prevRow = new byte[imageWidth*rowBytesPerPixel];
+		rowBuilder = new IDATBuilder(compressionLevel);
+	}
+	
+	public void end() throws Exception {
+		if(rowOS == null)
+			throw new IllegalStateException("begin() has not been called");
+		if(rowsWritten != rowHeight)
+			throw new IllegalStateException("Only " + rowsWritten + " of " + rowHeight + " scan lines have been written");
+		
+		// This should be called for the last chunk to make sure we get all the input data compressed
+		rowBuilder.setFinish(true);
+		
+		Chunk chunk = rowBuilder.build();
+		
+		if(chunk.getData().length > 0) 
+			chunk.write(rowOS);
+		
+		new IENDBuilder().build().write(rowOS);
+		
+		rowOS = null;
+		rowBuilder = null;
+		prevRow = null;
+	}
+	
 	@Override
 	public ImageType getImageType() {
 		return ImageType.PNG;
 	}
 	
+	@Override
+	public void reset() {
+		super.reset();
+		resetImageState();
+	}
+	
 	// Reset writer to write another image
-	private void reset() {
+	private void resetImageState() {
 		chunks.clear();
 		isApplyAdaptiveFilter = false;	
 		filterType = Filter.NONE;		
 		compressionLevel = 4;	
 	}
 	
-	protected void write(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {	
+	// Write the signature and get ready for the image chunks
+	private void startImage(OutputStream os) throws Exception {
 		IOUtils.writeLongMM(os, SIGNATURE);
 		
-		reset(); // Reset writer in case we are going to write multiple images
+		resetImageState(); // Reset writer in case we are going to write multiple images
 		
 		addTextChunks(chunks);
 		addTimeChunk(chunks);
@@ -226,6 +342,10 @@ public class PNGWriter extends ImageWriter {
 			filterType = pngOptions.getFilterType();
 			compressionLevel = pngOptions.getCompressionLevel();
 		}
+	}
+	
+	protected void write(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {	
+		startImage(os);
 		
 		boolean noAlpha = !imageParam.hasAlpha();
 		// Determine type of image to write
@@ -247,6 +367,110 @@ public class PNGWriter extends ImageWriter {
 		new IENDBuilder().build().write(os);
     }
 	
+	/**
+	 * Writes 8 bit sRGB, 8 or 16 bit gray-scale and 8 bit or less IndexColorModel
+	 * rasters without going through the ARGB pixels.
+	 */
+	@Override
+	protected boolean writeRaster(Raster raster, ColorModel cm, OutputStream os) throws Exception {
+		ImageParam param = getImageParam();
+		ImageColorType colorType = param.getColorType();
+		
+		if(colorType == ImageColorType.INDEXED) {
+			if(!(cm instanceof IndexColorModel) || raster.getTransferType() != DataBuffer.TYPE_BYTE || cm.getPixelSize() > 8)
+				return false;
+		} else if(colorType == ImageColorType.GRAY_SCALE) {
+			if(param.hasAlpha() || !isGrayScale(raster, cm))
+				return false;
+		} else if(!isRGB(raster, cm, param.hasAlpha()))
+			return false;
+		
+		int imageWidth = raster.getWidth();
+		int imageHeight = raster.getHeight();
+		// One element per sample, or one element per pixel for packed rasters
+		Object samples = raster.getDataElements(raster.getMinX(), raster.getMinY(), imageWidth, imageHeight, null);
+		
+		startImage(os);
+		
+		if(colorType == ImageColorType.INDEXED) {
+			writeIndexed((byte[])samples, (IndexColorModel)cm, imageWidth, imageHeight, os);
+		} else if(colorType == ImageColorType.GRAY_SCALE) {
+			if(samples instanceof short[])
+				writeGrayScale16((short[])samples, imageWidth, imageHeight, os);
+			else
+				writeGrayScale((byte[])samples, imageWidth, imageHeight, false, os);
+		} else {
+			writeRGB((byte[])samples, imageWidth, imageHeight, os);
+		}
+		
+		new IENDBuilder().build().write(os);
+		
+		return true;
+	}
+	
+	public void writeRows(int[] rows, int count) throws Exception {
+		if(rowOS == null)
+			throw new IllegalStateException("begin() has not been called");
+		if(count < 0 || rowsWritten + count > rowHeight)
+			throw new IllegalArgumentException("Invalid number of scan lines: " + count);
+		if(rows.length < (long)count*rowWidth)
+			throw new IllegalArgumentException("Not enough pixels for " + count + " scan lines");
+		
+		if(count == 0) return;
+		
+		int bytesPerScanLine = prevRow.length;
+		int numOfPixels = count*rowWidth;
+		// Previous scan line followed by the new ones, so the filters can look one line up
+		byte[] bytePixels = new byte[bytesPerScanLine + count*bytesPerScanLine];
+		
+		System.arraycopy(prevRow, 0, bytePixels, 0, bytesPerScanLine);
+		
+		int j = bytesPerScanLine;
+		
+		if(rowGrayScale) {
+			for(int i = 0; i < numOfPixels; i++) {
+				bytePixels[j++] = (byte)(((rows[i]>>16)&0xff)*0.2126 + ((rows[i]>>8)&0xff)*0.7152 + (rows[i]&0xff)*0.0722);
+				if(rowAlpha) bytePixels[j++] = (byte)((rows[i]>>24)&0xff);
+			}
+		} else {
+			for(int i = 0; i < numOfPixels; i++) {
+				bytePixels[j++] = (byte)((rows[i]>>16)&0xff);
+				bytePixels[j++] = (byte)((rows[i]>>8)&0xff);
+				bytePixels[j++] = (byte)(rows[i]&0xff);
+				if(rowAlpha) bytePixels[j++] = (byte)((rows[i]>>24)&0xff);
+			}
+		}
+		// Keep the last raw scan line for the next call
+		System.arraycopy(bytePixels, bytePixels.length - bytesPerScanLine, prevRow, 0, bytesPerScanLine);
+		
+		int[] filter_type = new int[count + 1];
+		Arrays.fill(filter_type, filterType);
+		
+		if(isApplyAdaptiveFilter) {
+			apply_adaptive_filter(filter_type, bytePixels, count + 1, rowBytesPerPixel, bytesPerScanLine);
+		} else if(filterType != Filter.NONE) {
+			apply_filter(filter_type, bytePixels, count + 1, rowBytesPerPixel, bytesPerScanLine);
+		}
+		
+		byte[] buffer = new byte[bytesPerScanLine + 1];
+		// Skip the previous scan line
+		for (int i = 1, offset = bytesPerScanLine; i <= count; i++, offset += bytesPerScanLine) {
+			buffer[0] = (byte)filter_type[i];
+			System.arraycopy(bytePixels, offset, buffer, 1, bytesPerScanLine);
+			rowBuilder.data(buffer);
+		}
+		
+		rowsWritten += count;
+		rowPending += count*bytesPerScanLine;
+		// Avoid lots of tiny IDAT chunks when only a few scan lines are written each time
+		if(rowPending > ROW_BUFFER_SIZE) {
+			Chunk chunk = rowBuilder.build();
+			if(chunk.getData().length > 0)
+				chunk.write(rowOS);
+			rowPending = 0;
+		}
+	}
+	
 	private void writeGrayScale(byte[] pixels, int imageWidth, int imageHeight, boolean hasAlpha, OutputStream os) throws Exception {
 		// The rule of thumb is don't use any filter for gray-scale image but in some cases, PAETH or adaptive filter does much better
 		// Add IHDR chunk
@@ -313,12 +537,46 @@ public class PNGWriter extends ImageWriter {
 			}
 		}
 		
+		// How many bytes to buffer before creating an IDAT chunk
+		int bufferLen = bytesPerPixel * imageWidth * imageHeight / 5; // We are expecting 5 IDAT chunks
+		
+		writeIDAT(pixels, filter_type, imageHeight, bytesPerScanLine, bufferLen, os);
+	}
+	
+	// Write 16 bit gray-scale samples without alpha
+	private void writeGrayScale16(short[] samples, int imageWidth, int imageHeight, OutputStream os) throws Exception {
+		chunks.add(new IHDRBuilder().width(imageWidth).height(imageHeight).bitDepth(16).colorType(ColorType.GRAY_SCALE)
+				.compressionMethod(0).filterMethod(0).interlaceMethod(0).build());
+		
+		PNGTweaker.serializeChunks(chunks, os);
+		
+		int bytesPerScanLine = imageWidth*2;
+		// PNG stores 16 bit samples in network byte order
+		byte[] bytePixels = new byte[imageHeight * bytesPerScanLine];
+		
+		for(int i = 0, j = 0; i < samples.length; i++) {
+			bytePixels[j++] = (byte)(samples[i]>>8);
+			bytePixels[j++] = (byte)samples[i];
+		}
+		
+		int[] filter_type = new int[imageHeight];
+		Arrays.fill(filter_type, filterType);
+		
+		if(isApplyAdaptiveFilter) {
+			apply_adaptive_filter(filter_type, bytePixels, imageHeight, 2, bytesPerScanLine);
+		} else if(filterType != Filter.NONE) {
+			apply_filter(filter_type, bytePixels, imageHeight, 2, bytesPerScanLine);
+		}
+		
+		writeIDAT(bytePixels, filter_type, imageHeight, bytesPerScanLine, bytePixels.length / 5, os);
+	}
+	
+	// Compress the filtered scan lines into IDAT chunks of roughly bufferLen bytes each
+	private void writeIDAT(byte[] pixels, int[] filter_type, int imageHeight, int bytesPerScanLine, int bufferLen, OutputStream os) throws Exception {
 		byte[] buffer = new byte[bytesPerScanLine + 1];
 		
 		IDATBuilder builder = new IDATBuilder(compressionLevel);
 		
-		// How many bytes to buffer before creating an IDAT chunk
-		int bufferLen = bytesPerPixel * imageWidth * imageHeight / 5; // We are expecting 5 IDAT chunks
 		int counter = 0;
 		
 		for (int i = 0, j = 0; i < imageHeight; i++, j += bytesPerScanLine) {
@@ -349,10 +607,7 @@ public class PNGWriter extends ImageWriter {
 	
 	private void writeIndexed(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {
 		ImageParam param = getImageParam();
-		// The rule of thumb is never apply any filter to index color image
-		int[] filter_type = new int[imageHeight];
-		int bytesPerScanLine = imageWidth * 1;
-		byte[] bytePixels = new byte[imageHeight * bytesPerScanLine];
+		byte[] bytePixels = new byte[imageHeight * imageWidth];
 
 		int bitsPerPixel = 8;
 		
@@ -386,8 +641,6 @@ public class PNGWriter extends ImageWriter {
 			default:
 		}
 		
-		bytesPerScanLine = getBytesPerScanLine(bitsPerPixel, imageWidth, false);
-
 		// Add IHDR chunk
 		chunks.add(new IHDRBuilder().width(imageWidth).height(imageHeight).bitDepth(bitsPerPixel)
 				.colorType(ColorType.INDEX_COLOR).compressionMethod(0).filterMethod(0).interlaceMethod(0).build());
@@ -423,6 +676,60 @@ public class PNGWriter extends ImageWriter {
 			chunks.add(tBuilder.alpha(alpha).build());
 		}
 		
+		writeIndexedData(bytePixels, bitsPerPixel, imageWidth, imageHeight, os);
+	}
+	
+	// Write 8 bit or less indexes together with the palette taken from the IndexColorModel
+	private void writeIndexed(byte[] bytePixels, IndexColorModel icm, int imageWidth, int imageHeight, OutputStream os) throws Exception {
+		int bitsPerPixel = icm.getPixelSize();
+		
+		switch(bitsPerPixel) {
+			case 3:
+				bitsPerPixel = 4;
+				break;
+			case 5:
+			case 6:
+			case 7:
+				bitsPerPixel = 8;
+				break;
+			default:
+		}
+		
+		// Add IHDR chunk
+		chunks.add(new IHDRBuilder().width(imageWidth).height(imageHeight).bitDepth(bitsPerPixel)
+				.colorType(ColorType.INDEX_COLOR).compressionMethod(0).filterMethod(0).interlaceMethod(0).build());
+		
+		// PNG palette may have fewer entries than the bit depth allows
+		int numOfColors = Math.min(icm.getMapSize(), 1<<bitsPerPixel);
+		
+		byte[] redMap = new byte[numOfColors];
+		byte[] greenMap = new byte[numOfColors];
+		byte[] blueMap = new byte[numOfColors];
+		
+		icm.getReds(redMap);
+		icm.getGreens(greenMap);
+		icm.getBlues(blueMap);
+		
+		PLTEBuilder pBuilder = new PLTEBuilder();
+		pBuilder.redMap(redMap).greenMap(greenMap).blueMap(blueMap);
+		
+		chunks.add(pBuilder.build());
+		
+		if(icm.getTransparency() != Transparency.OPAQUE) {
+			byte[] alpha = new byte[numOfColors];
+			icm.getAlphas(alpha);
+			chunks.add(new TRNSBuilder(3).alpha(alpha).build());
+		}
+		
+		writeIndexedData(bytePixels, bitsPerPixel, imageWidth, imageHeight, os);
+	}
+	
+	// Write the chunks collected so far followed by the unpacked color indexes
+	private void writeIndexedData(byte[] bytePixels, int bitsPerPixel, int imageWidth, int imageHeight, OutputStream os) throws Exception {
+		// The rule of thumb is never apply any filter to index color image
+		int[] filter_type = new int[imageHeight];
+		int bytesPerScanLine = getBytesPerScanLine(bitsPerPixel, imageWidth, false);
+		
 		PNGTweaker.serializeChunks(chunks, os);
 		
 		Arrays.fill(filter_type, filterType);
@@ -433,47 +740,44 @@ public class PNGWriter extends ImageWriter {
 			} else if(filterType != Filter.NONE) {
 				apply_filter(filter_type, bytePixels, imageHeight, 1, bytesPerScanLine);
 			}
-		}		
-		
-		byte[] buffer = new byte[bytesPerScanLine + 1];
+		}
 		
-		IDATBuilder builder = new IDATBuilder(compressionLevel);
+		// Pack bytePixels according to bitsPerPixel value
+		if(bitsPerPixel != 8)
+			bytePixels = ArrayUtils.packByteArray(bytePixels, imageWidth, 0, bitsPerPixel, imageWidth*imageHeight);
 		
 		// How many bytes to buffer before creating an IDAT chunk
 		int bufferLen = imageWidth * imageHeight / 5; // We are expecting 5 IDAT chunks
-		int counter = 0;
+		
+		writeIDAT(bytePixels, filter_type, imageHeight, bytesPerScanLine, bufferLen, os);
+	}
 	
-		// Pack bytePixels according to bitsPerPixel value
-		if(bitsPerPixel != 8)
-			bytePixels = ArrayUtils.packByteArray(bytePixels, imageWidth, 0, bitsPerPixel, imageWidth*imageHeight);
+	private void writeRGB(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {
+		boolean noAlpha = !imageParam.hasAlpha();
+		int bytesPerPixel = (noAlpha)?3:4;
+		int imageSize = imageWidth * imageHeight;
+		byte[] bytePixels = new byte[imageSize * bytesPerPixel];
 		
-		for (int i = 0, j = 0; i < imageHeight; i++, j += bytesPerScanLine) {
-			buffer = new byte[bytesPerScanLine + 1];
-			buffer[0] = (byte)filter_type[i];
-			System.arraycopy(bytePixels, j, buffer, 1, bytesPerScanLine);
-			builder.data(buffer);
-			
-			counter += bytesPerScanLine;
-			
-			if(counter > bufferLen) {
-				Chunk chunk = builder.build();
-				if(chunk.getData().length > 0) {
-					chunk.write(os);
-				}
-				counter = 0;
+		if(noAlpha) {
+			for (int i = 0, j = 0; i < imageSize; i++) {
+				bytePixels[j++] =  (byte) ((pixels[i] >> 16) & 0xff);
+				bytePixels[j++] =  (byte) ((pixels[i] >>  8) & 0xff);
+				bytePixels[j++] =  (byte) ((pixels[i]) & 0xff);
+			}
+		} else {
+			for (int i = 0, j = 0; i < imageSize; i++) {
+				bytePixels[j++] =  (byte) ((pixels[i] >> 16) & 0xff);
+				bytePixels[j++] =  (byte) ((pixels[i] >>  8) & 0xff);
+				bytePixels[j++] =  (byte) ((pixels[i]) & 0xff);
+				bytePixels[j++] =  (byte) ((pixels[i] >> 24) & 0xff);
 			}
 		}
 		
-		// This should be called for the last chunk to make sure we get all the input data compressed
-		builder.setFinish(true);
-		
-		Chunk chunk = builder.build();
-		
-		if(chunk.getData().length > 0) 
-			chunk.write(os);
+		writeRGB(bytePixels, imageWidth, imageHeight, os);
 	}
 	
-	private void writeRGB(int[] pixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {
+	// Write interleaved RGB or RGBA bytes depending on whether or not the ImageParam has alpha
+	private void writeRGB(byte[] bytePixels, int imageWidth, int imageHeight, OutputStream os) throws Exception {
 		// The rule of thumb is always use PAETH filter which, in most cases, is as good as adaptive filter and much faster
 		boolean noAlpha = !imageParam.hasAlpha();
 		// Add IHDR chunk
@@ -488,28 +792,11 @@ public class PNGWriter extends ImageWriter {
 		int[] filter_type = new int[imageHeight];
 		int bytesPerPixel = (noAlpha)?3:4;
 		int bytesPerScanLine = imageWidth*bytesPerPixel;
-		int imageSize = imageWidth * imageHeight;
-		byte[] bytePixels = new byte[imageHeight * bytesPerScanLine];
 
 		if(filterType == Filter.NONE) filterType = Filter.PAETH;
 		
 		Arrays.fill(filter_type, filterType);
 		
-		if(noAlpha) {
-			for (int i = 0, j = 0; i < imageSize; i++) {
-				bytePixels[j++] =  (byte) ((pixels[i] >> 16) & 0xff);
-				bytePixels[j++] =  (byte) ((pixels[i] >>  8) & 0xff);
-				bytePixels[j++] =  (byte) ((pixels[i]) & 0xff);
-			}
-		} else {
-			for (int i = 0, j = 0; i < imageSize; i++) {
-				bytePixels[j++] =  (byte) ((pixels[i] >> 16) & 0xff);
-				bytePixels[j++] =  (byte) ((pixels[i] >>  8) & 0xff);
-				bytePixels[j++] =  (byte) ((pixels[i]) & 0xff);
-				bytePixels[j++] =  (byte) ((pixels[i] >> 24) & 0xff);
-			}
-		}
-		
 		if(noAlpha && imageParam.isTransparent()) {
 			// Add Transparent chunk
 			TRNSBuilder tBuilder = new TRNSBuilder(2);
@@ -529,39 +816,9 @@ public class PNGWriter extends ImageWriter {
 			apply_filter(filter_type, bytePixels, imageHeight, bytesPerPixel, bytesPerScanLine);
 		}
 		
-		byte[] buffer = new byte[bytesPerScanLine + 1];
-		
-		// Now build the data
-		IDATBuilder builder = new IDATBuilder(compressionLevel);
-		
 		// How many bytes to buffer before creating an IDAT chunk
 		int bufferLen = bytesPerPixel * imageWidth * imageHeight / 5; // We are expecting 5 IDAT chunks
-		int counter = 0;
 		
-		for (int i = 0, j = 0; i < imageHeight; i++, j += bytesPerScanLine) {
-			buffer = new byte[bytesPerScanLine + 1];
-			buffer[0] = (byte)filter_type[i];
-			System.arraycopy(bytePixels, j, buffer, 1, bytesPerScanLine);
-			builder.data(buffer);
-			
-			counter += bytesPerScanLine;
-			
-			if(counter > bufferLen) {
-				Chunk chunk = builder.build();
-				if(chunk.getData().length > 0) {
-					chunk.write(os);
-				}
-				counter = 0;
-			}
-		}
-		
-		// This should be called for the last chunk to make sure we get all the input data compressed
-		builder.setFinish(true);
-		
-		Chunk chunk = builder.build();
-		
-		if(chunk.getData().length > 0) 
-			chunk.write(os);
-		// End of IDAT builder
+		writeIDAT(bytePixels, filter_type, imageHeight, bytesPerScanLine, bufferLen, os);
 	}
-}
\ No newline at end of file
+}
@@ -14,6 +14,11 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Keep strip offsets as long and reject images over 2GB
+ * WY    18Oct2026  Added reset() to reuse the writer
+ * WY    18Oct2026  Added ImageRowWriter implementation to write strip by strip
+ * WY    18Oct2026  Added writeRaster() to write rasters without ARGB conversion
+ * WY    18Oct2026  Cache output in memory until it grows too large
  * WY    06Dec2017  Remove unnecessary T4Options for G3/1D and G4/2D
  * WY    23Nov2017  Fix bug with gray-scale image byte packing
  * WY    22Oct2017  Added compression type check
@@ -34,6 +39,9 @@ package com.icafe4j.image.writer;
 
 import java.awt.color.ICC_ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -74,7 +82,7 @@ import com.icafe4j.image.tiff.UndefinedField;
 import com.icafe4j.image.tiff.TiffFieldEnum.*;
 import com.icafe4j.image.util.IMGUtils;
 import com.icafe4j.io.ByteOrder;
-import com.icafe4j.io.FileCacheRandomAccessOutputStream;
+import com.icafe4j.io.HybridCacheRandomAccessOutputStream;
 import com.icafe4j.io.IOUtils;
 import com.icafe4j.io.RandomAccessOutputStream;
 import com.icafe4j.io.WriteStrategyII;
@@ -89,20 +97,38 @@ import com.icafe4j.util.Updatable;
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.0 11/16/2013
  */
-public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
+public class TIFFWriter extends ImageWriter implements ImageRowWriter, Updatable<Integer> {
 	private static final String pathToCMYKProfile = "/resources/CMYK Profiles/USWebCoatedSWOP.icc";
 	// Offset to write image data
-	private int stripOffset;
+	private long stripOffset;
 	private IFD ifd;
 	
 	private TIFFOptions tiffOptions;
 	private ICC_ColorSpace cmykColorSpace;
 		
 	// Lists to hold strip offset and strip bytes count
-	private List<Integer> stripOffsets = new ArrayList<Integer>();	
+	private List<Long> stripOffsets = new ArrayList<Long>();	
 	private List<Integer> stripByteCounts = new ArrayList<Integer>();	
 	private RandomAccessOutputStream randomOS;
 	
+	// Scan line writing state
+	private boolean writingRows;
+	private int rowWidth;
+	private int rowHeight;
+	private int rowsWritten;
+	private boolean rowGrayScale;
+	private boolean rowAlpha;
+	private boolean rowPredictor;
+	private PhotoMetric rowPhotoMetric;
+	private Compression rowCompression;
+	private int rowsPerStrip;
+	private int samplesPerPixel;
+	// Scan lines of the current strip in ARGB format
+	private int[] stripPixels;
+	private int stripRows;
+	// Approximate uncompressed strip size when writing by scan lines
+	private static final int STRIP_SIZE = 64*1024;
+	
 	// Obtain a logger instance
 	private static final Logger LOGGER = LoggerFactory.getLogger(TIFFWriter.class);
 	
@@ -125,6 +151,28 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		return input;
 	}
 	
+	// Convert ARGB pixels to interleaved RGB or RGBA samples
+	private static byte[] rgb2samples(int[] pixels, boolean hasAlpha) {
+		byte[] samples = new byte[(hasAlpha?4:3)*pixels.length];
+		
+		if(!hasAlpha) {
+			for(int index = 0, i = 0; i < pixels.length; i++) {
+				samples[index++] = (byte)((pixels[i]>>16)&0xff);
+				samples[index++] = (byte)((pixels[i]>>8)&0xff);
+				samples[index++] = (byte)(pixels[i]&0xff);
+			}
+		} else {
+			for(int index = 0, i = 0; i < pixels.length; i++) {
+				samples[index++] = (byte)((pixels[i]>>16)&0xff);
+				samples[index++] = (byte)((pixels[i]>>8)&0xff);
+				samples[index++] = (byte)(pixels[i]&0xff);
+				samples[index++] = (byte)((pixels[i]>>24)&0xff);
+			}
+		}
+		
+		return samples;
+	}
+	
 	// RGB images seems to work better with predictor but not indexed images
 	// Predictor for RGB and gray-scale PLANARY_CONFIGURATION value 2 and gray-scale PLANARY_CONFIGURATION value 1 without alpha
 	private static byte[] applyPredictor2(byte[] input, int imageWidth, int imageHeight) {
@@ -138,6 +186,102 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		return input;
 	}
 	
+	/**
+	 * Starts writing a single page TIFF image strip by strip. Only RGB, CMYK and
+	 * 8 bit gray-scale images with or without alpha and LZW, DEFLATE or PACKBITS
+	 * compression are supported. Indexed color and bi-level images are written as
+	 * RGB since the palette is not known until the whole image is seen.
+	 * <p>
+	 * The whole image must fit in 2GB, see {@link #MAX_OFFSET}.
+	 */
+	public void begin(int imageWidth, int imageHeight, ImageParam param, OutputStream os) throws Exception {
+		if(imageWidth <= 0 || imageHeight <= 0)
+			throw new IllegalArgumentException("Invalid image size: " + imageWidth + "x" + imageHeight);
+		if(param != null)
+			setImageParam(param);
+		
+		param = getImageParam();
+		ImageColorType colorType = param.getColorType();
+		Compression compression = Compression.PACKBITS;
+		boolean applyPredictor = true;
+		PhotoMetric photoMetric = PhotoMetric.RGB;
+		
+		ImageOptions options = param.getImageOptions();
+		
+		if(options instanceof TIFFOptions) {
+			compression = ((TIFFOptions)options).getTiffCompression();
+			applyPredictor = ((TIFFOptions)options).isApplyPredictor();
+			if(((TIFFOptions)options).getPhotoMetric() != PhotoMetric.UNKNOWN)
+				photoMetric = ((TIFFOptions)options).getPhotoMetric();
+		}
+		
+		switch(compression) {
+			case LZW:
+			case DEFLATE:
+			case DEFLATE_ADOBE:
+				break;
+			case PACKBITS:
+				// Same as writeTrueColor and writeGrayScale, no predictor for PACKBITS
+				applyPredictor = false;
+				break;
+			default:
+				throw new UnsupportedCompressionException("Writing by scan lines only supports the following compression types: " +
+						EnumSet.of(Compression.LZW, Compression.DEFLATE, Compression.DEFLATE_ADOBE, Compression.PACKBITS));
+		}
+		
+		if(colorType == ImageColorType.INDEXED || colorType == ImageColorType.BILEVEL)
+			LOGGER.warn("#Warning: {} is not supported when writing by scan lines, saving as RGB instead!", colorType);
+		
+		rowGrayScale = (colorType == ImageColorType.GRAY_SCALE);
+		
+		if(rowGrayScale)
+			photoMetric = PhotoMetric.BLACK_IS_ZERO;
+		else if(photoMetric != PhotoMetric.RGB && photoMetric != PhotoMetric.SEPARATED)
+			throw new UnsupportedOperationException("Unsupported TiffPhotoMetric: " + photoMetric);
+		
+		startImage(imageWidth, imageHeight, os);
+		
+		rowAlpha = param.hasAlpha();
+		int numOfSamples = (rowGrayScale?1:(photoMetric == PhotoMetric.SEPARATED?4:3));
+		samplesPerPixel = (rowAlpha?(numOfSamples+1):numOfSamples);
+		
+		ifd.addField(new ShortField(TiffTag.PHOTOMETRIC_INTERPRETATION.getValue(), new short[]{(short)photoMetric.getValue()}));
+		ifd.addField(new ShortField(TiffTag.SAMPLES_PER_PIXEL.getValue(), new short[]{(short)samplesPerPixel}));
+		short[] bitsPerSample = new short[samplesPerPixel];
+		Arrays.fill(bitsPerSample, (short)8);
+		ifd.addField(new ShortField(TiffTag.BITS_PER_SAMPLE.getValue(), bitsPerSample));
+		ifd.addField(new ShortField(TiffTag.PLANAR_CONFIGURATTION.getValue(), new short[]{(short)PlanarConfiguration.CONTIGUOUS.getValue()}));
+		
+		if(rowAlpha)
+			ifd.addField(new ShortField(TiffTag.EXTRA_SAMPLES.getValue(), new short[]{2}));
+		if(applyPredictor)
+			ifd.addField(new ShortField(TiffTag.PREDICTOR.getValue(), new short[]{2}));
+		
+		if(photoMetric == PhotoMetric.SEPARATED) {
+			if(cmykColorSpace == null)
+				cmykColorSpace = IMGUtils.getICCColorSpace(pathToCMYKProfile);
+			if(options instanceof TIFFOptions && ((TIFFOptions)options).writeICCProfile()) {
+				// Add ICC_Profile field
+				byte[] icc_profile = cmykColorSpace.getProfile().getData();
+				if(icc_profile != null) {
+					ifd.addField(new UndefinedField(TiffTag.ICC_PROFILE.getValue(), icc_profile));
+				}
+			}
+		}
+		
+		rowWidth = imageWidth;
+		rowHeight = imageHeight;
+		rowsWritten = 0;
+		rowPredictor = applyPredictor;
+		rowPhotoMetric = photoMetric;
+		rowCompression = compression;
+		// ROWS_PER_STRIP is written as a SHORT field
+		rowsPerStrip = Math.min(Math.min(imageHeight, Short.MAX_VALUE), Math.max(1, STRIP_SIZE/(samplesPerPixel*imageWidth)));
+		stripPixels = new int[rowsPerStrip*imageWidth];
+		stripRows = 0;
+		writingRows = true;
+	}
+	
 	private void ccittCompress(byte[] input, int imageWidth, int imageHeight, ImageEncoder encoder) throws Exception {
 		encoder.initialize();
 		encoder.encode(input, 0, imageWidth*imageHeight);
@@ -232,6 +376,28 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		ifd.addField(tiffField);
 	}
 	
+	/**
+	 * Writes the last strip, the IFD and the TIFF header. All the scan lines
+	 * passed to begin() must have been written.
+	 */
+	public void end() throws Exception {
+		if(!writingRows)
+			throw new IllegalStateException("begin() has not been called");
+		if(rowsWritten != rowHeight)
+			throw new IllegalStateException("Only " + rowsWritten + " of " + rowHeight + " scan lines have been written");
+		
+		if(stripRows > 0)
+			writeStrip();
+		// compressSample() sets ROWS_PER_STRIP to the size of the last strip which may be a short one
+		if(rowCompression != Compression.PACKBITS)
+			ifd.addField(new ShortField(TiffTag.ROWS_PER_STRIP.getValue(), new short[]{(short)rowsPerStrip}));
+		
+		finishImage();
+		
+		writingRows = false;
+		stripPixels = null;
+	}
+	
 	/**
 	 * Copy the internal IFD
 	 * <p>
@@ -406,6 +572,21 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		ifd.addField(tiffField);
 	}
 	
+	/**
+	 * Drops the options, the IFD and any unfinished scan line writing left by
+	 * the last image. The CMYK color space is kept once loaded.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		tiffOptions = null;
+		ifd = null;
+		randomOS = null;
+		writingRows = false;
+		stripPixels = null;
+		reset(0);
+	}
+	
 	// Reset the writer to start write new page
 	private void reset(int offset) {
 		stripOffset = offset;
@@ -418,29 +599,33 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 	 * length for multiple strip TIFF images.
 	 * 
 	 * @param stripLen compressed strip length for the current strip
-	 * @throws IOException
+	 * @throws IllegalStateException if the strip ends beyond the 2GB limit
 	 */
 	public void update(Integer stripLen) {
+		// IFD and TiffField work with int offsets, so stay within the signed range
+		if(stripOffset + stripLen > MAX_OFFSET)
+			throw new IllegalStateException("TIFF image exceeds the 2GB limit");
 		stripByteCounts.add(stripLen);
 		stripOffsets.add(stripOffset);
 		stripOffset += stripLen;
 	}
 	
-	/**
-	 * Write a self-contained single page TIFF image
-	 */
-	@Override
-	protected void write(int[] pixels, int imageWidth, int imageHeight,
-			OutputStream os) throws Exception {
+	// Strip offsets as LONG field values
+	private int[] getStripOffsets() {
+		int[] offsets = new int[stripOffsets.size()];
+		for(int i = 0; i < offsets.length; i++)
+			offsets[i] = stripOffsets.get(i).intValue();
+		return offsets;
+	}
+	
+	// Write the TIFF header and start the IFD for a self-contained single page TIFF image
+	private void startImage(int imageWidth, int imageHeight, OutputStream os) throws Exception {
 		// Set image parameters
-		ImageParam param = getImageParam();
-		ImageOptions options = param.getImageOptions();
+		ImageOptions options = getImageParam().getImageOptions();
 		
-		if(options instanceof TIFFOptions) {
-			tiffOptions = (TIFFOptions)options;
-		}
+		tiffOptions = (options instanceof TIFFOptions)? (TIFFOptions)options : null;
 		// Wrap OutputStream with a RandomAccessOutputStream	
-		randomOS = new FileCacheRandomAccessOutputStream(os);
+		randomOS = new HybridCacheRandomAccessOutputStream(os);
 		
 		ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
 		
@@ -470,11 +655,12 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		reset(FIRST_WRITE_OFFSET);
 		
 		randomOS.seek(stripOffset);
-		// Write image data
-		writePageData(param, pixels, imageWidth, imageHeight);		
-		
+	}
+	
+	// Finish the IFD and write the whole image to the actual stream
+	private void finishImage() throws Exception {
 		// We have done with the strips, now add a new STRIP_OFFSETS field.
-		tiffField = new LongField(TiffTag.STRIP_OFFSETS.getValue(), CollectionUtils.integerListToIntArray(stripOffsets));
+		TiffField<?> tiffField = new LongField(TiffTag.STRIP_OFFSETS.getValue(), getStripOffsets());
 		ifd.addField(tiffField);
 		// and a new STRIP_BYTE_COUNTS field as well
 		tiffField = new LongField(TiffTag.STRIP_BYTE_COUNTS.getValue(), CollectionUtils.integerListToIntArray(stripByteCounts));
@@ -501,15 +687,78 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 				
 		randomOS.seek(OFFSET_TO_WRITE_FIRST_IFD_OFFSET);
 		// Write IFD offset
-		randomOS.writeInt(stripOffset);
+		randomOS.writeInt((int)stripOffset);
 		// Write IFD
-		ifd.write(randomOS, stripOffset);
+		ifd.write(randomOS, (int)stripOffset);
 		// Write to actual stream
 		randomOS.seek(STREAM_HEAD);
 		randomOS.writeToStream(randomOS.getLength());
 		randomOS.close();
 	}
 	
+	/**
+	 * Write a self-contained single page TIFF image
+	 */
+	@Override
+	protected void write(int[] pixels, int imageWidth, int imageHeight,
+			OutputStream os) throws Exception {
+		startImage(imageWidth, imageHeight, os);
+		// Write image data
+		writePageData(getImageParam(), pixels, imageWidth, imageHeight);		
+		
+		finishImage();
+	}
+	
+	/**
+	 * Writes 8 bit gray-scale and 8 bit RGB rasters as a self-contained single page
+	 * TIFF image without going through the ARGB pixels. JPEG compression and CMYK
+	 * output still take the ARGB path.
+	 */
+	@Override
+	protected boolean writeRaster(Raster raster, ColorModel cm, OutputStream os) throws Exception {
+		ImageParam param = getImageParam();
+		ImageOptions options = param.getImageOptions();
+		Compression compression = Compression.PACKBITS;
+		PhotoMetric photoMetric = PhotoMetric.UNKNOWN;
+		
+		if(options instanceof TIFFOptions) {
+			compression = ((TIFFOptions)options).getTiffCompression();
+			photoMetric = ((TIFFOptions)options).getPhotoMetric();
+		}
+		
+		if(compression == Compression.JPG)
+			return false;
+		
+		boolean grayscale = false;
+		
+		if(param.getColorType() == ImageColorType.GRAY_SCALE) {
+			if(param.hasAlpha() || !isGrayScale(raster, cm) || raster.getTransferType() != DataBuffer.TYPE_BYTE)
+				return false;
+			grayscale = true;
+		} else if(param.getColorType() == ImageColorType.INDEXED || param.getColorType() == ImageColorType.BILEVEL) {
+			return false;
+		} else if(photoMetric != PhotoMetric.UNKNOWN && photoMetric != PhotoMetric.RGB) {
+			return false;
+		} else if(!isRGB(raster, cm, param.hasAlpha())) {
+			return false;
+		}
+		
+		int imageWidth = raster.getWidth();
+		int imageHeight = raster.getHeight();
+		byte[] samples = (byte[])raster.getDataElements(raster.getMinX(), raster.getMinY(), imageWidth, imageHeight, null);
+		
+		startImage(imageWidth, imageHeight, os);
+		
+		if(grayscale)
+			writeGrayScale(samples, imageWidth, imageHeight, compression, false);
+		else
+			writeTrueColor(null, samples, imageWidth, imageHeight, compression);
+		
+		finishImage();
+		
+		return true;
+	}
+	
 	private void writeBilevel(byte[] pixels, int imageWidth, int imageHeight, Compression compression) throws Exception {
 		// Check Compression type
 		EnumSet<Compression> supportedCompressionTypes = Compression.forBilevel();
@@ -684,7 +933,7 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 						writeGrayScale(IMGUtils.rgb2grayscale(pixels), imageWidth, imageHeight, compression, false);
 					}
 				} else {
-					writeTrueColor(pixels, imageWidth, imageHeight, compression);
+					writeTrueColor(pixels, null, imageWidth, imageHeight, compression);
 				}
 			}
 		}
@@ -831,15 +1080,13 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		ImageParam param = getImageParam();
 		ImageOptions options = param.getImageOptions();
 		
-		if(options instanceof TIFFOptions) {
-			tiffOptions = (TIFFOptions)options;
-		}
+		tiffOptions = (options instanceof TIFFOptions)? (TIFFOptions)options : null;
 		//
 		// Write image data
 		writePageData(param, pixels, imageWidth, imageHeight);
 		 
 		// We have done with the strips, now add a new STRIP_OFFSETS field.
-		tiffField = new LongField(TiffTag.STRIP_OFFSETS.getValue(), CollectionUtils.integerListToIntArray(stripOffsets));
+		tiffField = new LongField(TiffTag.STRIP_OFFSETS.getValue(), getStripOffsets());
 		ifd.addField(tiffField);
 		// and a new STRIP_BYTE_COUNTS field as well
 		tiffField = new LongField(TiffTag.STRIP_BYTE_COUNTS.getValue(), CollectionUtils.integerListToIntArray(stripByteCounts));
@@ -864,10 +1111,55 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		ifd.addField(new ShortField(TiffTag.RESOLUTION_UNIT.getValue(), new short[]{(short)resolutionUnit}));
 		
 		// Write IFD
-		return ifd.write(randomOS, stripOffset);
+		return ifd.write(randomOS, (int)stripOffset);
 	}
 	
-	private void writeTrueColor(int[] pixels, int imageWidth, int imageHeight, Compression compression) throws Exception {
+	public void writeRows(int[] rows, int count) throws Exception {
+		if(!writingRows)
+			throw new IllegalStateException("begin() has not been called");
+		if(count < 0 || rowsWritten + count > rowHeight)
+			throw new IllegalArgumentException("Invalid number of scan lines: " + count);
+		if(rows.length < (long)count*rowWidth)
+			throw new IllegalArgumentException("Not enough pixels for " + count + " scan lines");
+		
+		for(int i = 0, offset = 0; i < count; i++, offset += rowWidth) {
+			System.arraycopy(rows, offset, stripPixels, stripRows*rowWidth, rowWidth);
+			if(++stripRows == rowsPerStrip)
+				writeStrip();
+		}
+		
+		rowsWritten += count;
+	}
+	
+	// Compress the scan lines buffered so far as a new strip
+	private void writeStrip() throws Exception {
+		int[] pixels = stripPixels;
+		
+		if(stripRows < rowsPerStrip)
+			pixels = Arrays.copyOf(stripPixels, stripRows*rowWidth);
+		
+		byte[] samples = null;
+		
+		if(rowGrayScale)
+			samples = rowAlpha?IMGUtils.rgb2grayscaleA(pixels):IMGUtils.rgb2grayscale(pixels);
+		else if(rowPhotoMetric == PhotoMetric.SEPARATED)
+			samples = IMGUtils.RGB2CMYK(cmykColorSpace, pixels, rowWidth, stripRows, rowAlpha);
+		else
+			samples = rgb2samples(pixels, rowAlpha);
+		
+		if(rowPredictor)
+			applyPredictor(samplesPerPixel, samples, rowWidth, stripRows);
+		
+		compressSample(samples, samplesPerPixel*rowWidth, stripRows, rowCompression, 1024);
+		
+		stripRows = 0;
+		// The IFD goes after the strips and IFD.write() takes an int offset
+		if(randomOS.getStreamPointer() > MAX_OFFSET)
+			throw new IOException("TIFF image exceeds the 2GB limit");
+	}
+	
+	// Either pixels in ARGB format or rgbSamples in RGB(A) order should be supplied
+	private void writeTrueColor(int[] pixels, byte[] rgbSamples, int imageWidth, int imageHeight, Compression compression) throws Exception {
 		// Check compression type
 		EnumSet<Compression> supportedCompressionTypes = Compression.forTrueColor();
 		
@@ -911,23 +1203,11 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 		if(hasAlpha)
 			ifd.addField(new ShortField(TiffTag.EXTRA_SAMPLES.getValue(), new short[]{2}));
 						
-		byte[] samples = new byte[samplesPerPixel*pixels.length];
+		byte[] samples = rgbSamples;
 		
 		if(photoMetric == PhotoMetric.RGB) {
-			if(!hasAlpha) {
-				for(int index = 0, i = 0; i < pixels.length; i++) {
-					samples[index++] = (byte)((pixels[i]>>16)&0xff);
-					samples[index++] = (byte)((pixels[i]>>8)&0xff);
-					samples[index++] = (byte)(pixels[i]&0xff);
-				}
-			} else {
-				for(int index = 0, i = 0; i < pixels.length; i++) {
-					samples[index++] = (byte)((pixels[i]>>16)&0xff);
-					samples[index++] = (byte)((pixels[i]>>8)&0xff);
-					samples[index++] = (byte)(pixels[i]&0xff);
-					samples[index++] = (byte)((pixels[i]>>24)&0xff);
-				}
-			}
+			if(samples == null)
+				samples = rgb2samples(pixels, hasAlpha);
 		} else if (photoMetric == PhotoMetric.SEPARATED) {
 			if(cmykColorSpace == null)
 				cmykColorSpace = IMGUtils.getICCColorSpace(pathToCMYKProfile);
@@ -980,4 +1260,6 @@ public class TIFFWriter extends ImageWriter implements Updatable<Integer> {
 	public static final int OFFSET_TO_WRITE_FIRST_IFD_OFFSET = 0x04;
 	public static final int FIRST_WRITE_OFFSET = 0x08;
 	public static final int STREAM_HEAD = 0x00;
+	// Largest offset the IFD can be written at
+	public static final long MAX_OFFSET = Integer.MAX_VALUE;
 }
\ No newline at end of file
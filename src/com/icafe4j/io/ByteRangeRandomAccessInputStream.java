@@ -0,0 +1,230 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implements a random access input stream on top of a ByteRangeSource so that
+ * only the parts of an image which are actually touched are fetched. This is
+ * what we want for reading metadata or thumbnails of images kept in remote
+ * storage.
+ * <p>
+ * The source is fetched in aligned blocks which are kept in a bounded LRU
+ * cache. A read which misses several adjacent blocks fetches all of them
+ * with a single request.
+ * <p>
+ * Positional reads through readFully(long, ...) may be issued from multiple
+ * threads.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class ByteRangeRandomAccessInputStream extends RandomAccessInputStream {
+	private static final int DEFAULT_BLOCK_SIZE = 8*1024;
+	private static final int DEFAULT_MAX_CACHED_BLOCKS = 128;
+	// Upper limit of a single coalesced request
+	private static final int MAX_REQUEST_SIZE = 1024*1024;
+
+	private ByteRangeSource source;
+	private int blockSize;
+	private Map<Long, byte[]> blocks;
+	// Length of the source, -1 until known
+	private long length;
+	private long pointer;
+	// The block the stream pointer is in
+	private byte[] block;
+	private long blockStart;
+
+	public ByteRangeRandomAccessInputStream(ByteRangeSource source) throws IOException {
+		this(source, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS);
+	}
+
+	/**
+	 * @param source the ByteRangeSource to fetch bytes from
+	 * @param blockSize size of a cached block, the unit in which the source is fetched
+	 * @param maxCachedBlocks maximum number of blocks to keep in memory
+	 */
+	public ByteRangeRandomAccessInputStream(ByteRangeSource source, int blockSize, final int maxCachedBlocks) throws IOException {
+		super(null);
+		if(source == null)
+			throw new NullPointerException("source is null");
+		if(blockSize <= 0 || maxCachedBlocks <= 0)
+			throw new IllegalArgumentException("Invalid block size or number of cached blocks");
+		this.source = source;
+		this.blockSize = blockSize;
+		this.length = source.length();
+		this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return size() > maxCachedBlocks;
+			}
+		};
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		release();
+		source.close();
+		source = null;
+	}
+
+	/**
+	 * Fetches block first and as many of the missing blocks following it up to
+	 * block last as a single request allows. Returns the fetched bytes which
+	 * start at block first.
+	 */
+	private byte[] fetch(long first, long last) throws IOException {
+		if(length >= 0)
+			last = Math.min(last, (length - 1)/blockSize);
+		int maxBlocks = Math.max(1, MAX_REQUEST_SIZE/blockSize);
+		int count = 1;
+		while(first + count <= last && count < maxBlocks && !blocks.containsKey(first + count))
+			count++;
+		long pos = first*blockSize;
+		byte[] data = source.read(pos, count*blockSize);
+		if(data.length < count*blockSize)
+			length = pos + data.length;
+		if(count == 1 && data.length > 0) {
+			blocks.put(first, data);
+		} else {
+			for(int i = 0, start = 0; start < data.length; i++, start += blockSize)
+				blocks.put(first + i, Arrays.copyOfRange(data, start, Math.min(data.length, start + blockSize)));
+		}
+
+		return data;
+	}
+
+	public long getStreamPointer() {
+		return pointer;
+	}
+
+	public int read() throws IOException {
+		ensureOpen();
+		long offset = pointer - blockStart;
+		if(block == null || offset < 0 || offset >= block.length) {
+			long index = pointer/blockSize;
+			byte[] buf = null;
+			synchronized(this) {
+				if(length >= 0 && pointer >= length)
+					return -1;
+				buf = blocks.get(index);
+				if(buf == null)
+					buf = fetch(index, index);
+			}
+			offset = pointer - index*blockSize;
+			if(offset >= buf.length)
+				return -1;
+			block = buf;
+			blockStart = index*blockSize;
+		}
+		pointer++;
+
+		return block[(int)offset] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(b == null)
+			throw new NullPointerException();
+		if(off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if(len == 0)
+			return 0;
+		int nbytes = read(pointer, b, off, len);
+		if(nbytes > 0) pointer += nbytes;
+
+		return nbytes;
+	}
+
+	/**
+	 * Reads up to len bytes starting from pos into b, returns -1 if pos is
+	 * at or beyond the end of the source.
+	 */
+	private synchronized int read(long pos, byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while(len > 0) {
+			if(length >= 0 && pos >= length)
+				break;
+			long index = pos/blockSize;
+			int offset = (int)(pos - index*blockSize);
+			byte[] data = blocks.get(index);
+			if(data == null)
+				data = fetch(index, (pos + len - 1)/blockSize);
+			int nbytes = Math.min(len, data.length - offset);
+			if(nbytes <= 0)
+				break;
+			System.arraycopy(data, offset, b, off, nbytes);
+			pos += nbytes;
+			off += nbytes;
+			len -= nbytes;
+			total += nbytes;
+		}
+
+		return (total > 0) ? total : -1;
+	}
+
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		checkPositionalRead(pos, b, off, len);
+		int n = 0;
+		while(n < len) {
+			int count = read(pos + n, b, off + n, len - n);
+			if(count < 0)
+				throw new EOFException();
+			n += count;
+		}
+	}
+
+	private void release() {
+		synchronized(this) {
+			blocks.clear();
+		}
+		block = null;
+		closed = true;
+	}
+
+	public void seek(long loc) throws IOException {
+		ensureOpen();
+		if(loc < 0L)
+			throw new IOException("Negative seek position.");
+
+		pointer = loc;
+	}
+
+	/**
+	 * Releases the cached blocks but keeps the ByteRangeSource open
+	 */
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		release();
+		source = null;
+	}
+
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if(n <= 0)
+			return 0L;
+		long skipped = n;
+		synchronized(this) {
+			if(length >= 0)
+				skipped = Math.max(0L, Math.min(n, length - pointer));
+		}
+		pointer += skipped;
+
+		return skipped;
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of bytes which can be fetched by range, such as a file in an object
+ * store accessed with HTTP range requests.
+ *
+ * @see ByteRangeRandomAccessInputStream
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public interface ByteRangeSource extends Closeable {
+	/**
+	 * Returns the total number of bytes of the source or -1 if unknown
+	 */
+	public long length() throws IOException;
+	/**
+	 * Fetches up to len bytes starting at offset. The returned array is shorter
+	 * than len only if the end of the source is reached.
+	 */
+	public byte[] read(long offset, int len) throws IOException;
+}
@@ -12,7 +12,7 @@ public class File2RandomInputStreamAdaptor extends RandomInputStreamAdaptor<File
 
 	public RandomAccessInputStream next() {
 		try {
-			return new FileCacheRandomAccessInputStream(new FileInputStream(input[index++]));
+			return new FileMapRandomAccessInputStream(new FileInputStream(input[index++]));
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to create RandomAccessInputStream from input file");
 		}
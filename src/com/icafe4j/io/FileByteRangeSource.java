@@ -0,0 +1,92 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * ByteRangeSource backed by a local file. Mostly useful as a stand-in for a
+ * remote source and to find out which ranges of a file a given operation touches.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class FileByteRangeSource implements ByteRangeSource {
+	private RandomAccessFile file;
+	private FileChannel channel;
+	// Position in the channel where the source starts
+	private long start;
+	// Number of ranges and bytes fetched so far
+	private long requests;
+	private long bytesFetched;
+
+	public FileByteRangeSource(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+	}
+
+	public FileByteRangeSource(String file) throws IOException {
+		this(new File(file));
+	}
+
+	/**
+	 * Reads through positional reads on an open channel, leaving the position
+	 * of the channel alone. The channel is not closed by {@link #close()}.
+	 *
+	 * @param channel FileChannel to read from
+	 * @param start position in the channel where the source starts
+	 */
+	public FileByteRangeSource(FileChannel channel, long start) {
+		if(start < 0)
+			throw new IllegalArgumentException("Invalid start position: " + start);
+		this.channel = channel;
+		this.start = start;
+	}
+
+	public void close() throws IOException {
+		if(file != null) file.close();
+	}
+
+	public synchronized long getBytesFetched() {
+		return bytesFetched;
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public long length() throws IOException {
+		return Math.max(channel.size() - start, 0);
+	}
+
+	public byte[] read(long offset, int len) throws IOException {
+		if(offset < 0 || len < 0)
+			throw new IndexOutOfBoundsException();
+		byte[] buf = new byte[len];
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		while(bb.hasRemaining()) {
+			if(channel.read(bb, start + offset + bb.position()) < 0)
+				break;
+		}
+		synchronized(this) {
+			requests++;
+			bytesFetched += bb.position();
+		}
+
+		return (bb.position() < len) ? Arrays.copyOf(buf, bb.position()) : buf;
+	}
+}
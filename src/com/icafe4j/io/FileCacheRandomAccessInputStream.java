@@ -5,52 +5,95 @@
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  * Any modifications to this file must keep this entire header intact.
+ *
+ * Change History - most recent changes go on top of previous changes
+ *
+ * FileCacheRandomAccessInputStream.java
+ *
+ * Who   Date       Description
+ * ====  =======    =================================================
+ * WY    18Oct2026  Fill the tail page as far as the source allows on each read
+ * WY    18Oct2026  Added optional background read ahead
+ * WY    18Oct2026  Serve reads from a bounded LRU of in-memory pages
  */
 
 package com.icafe4j.io;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Implements a file cached random access input stream to ease the 
+ * Implements a file cached random access input stream to ease the
  * decoding of some types of images such as TIFF which may need random
- * access to the underlying stream. 
+ * access to the underlying stream.
  * <p>
  * Based on com.sun.media.jai.codec.FileCacheSeekableStream.
+ * <p>
+ * The cached data is organized in fixed-size pages. Data read from the source
+ * is collected in memory and written to the cache file one full page at a time.
+ * A bounded number of the most recently used pages are kept in memory, so most
+ * reads never touch the cache file at all. The cache file itself is grown in
+ * large extents instead of being extended on every write.
+ * <p>
+ * Positional reads through readFully(long, ...) may be issued from multiple
+ * threads: all page bookkeeping is synchronized and the stream pointer is
+ * neither used nor changed by them.
  *
  * @author Wen Yu, yuwen_66@yahoo.com
- * @version 1.0 02/09/2014 
- */ 
+ * @version 1.0 02/09/2014
+ */
 public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
 
+	private static final int DEFAULT_PAGE_SIZE = 64*1024;
+	private static final int DEFAULT_MAX_CACHED_PAGES = 64;
+	// The cache file is grown by at least this many bytes at a time
+	private static final int EXTENT_SIZE = 1024*1024;
+
 	/** The cache File. */
     private File cacheFile;
 
     /** The cache as a RandomAcessFile. */
     private RandomAccessFile cache;
 
-    /** The length of the read buffer. */
-    private int bufLen;
+    private FileChannel channel;
 
-    /** The read buffer. */
-    private byte[] buf;
+    /** The size of a cache page. */
+    private int pageSize;
+
+    /** Most recently used full pages, keyed by page index. */
+    private Map<Long, byte[]> pages;
+
+    /** The page currently being filled from the source, not yet in the cache file. */
+    private byte[] tail;
+
+    /** Current size of the cache file, always ahead of the data written to it. */
+    private long allocated = 0;
 
     /** Number of bytes in the cache. */
-    private long length = 0;
+    private volatile long length = 0;
 
     /** Next byte to be read. */
     private long pointer = 0;
 
+    /** The page the stream pointer is in, together with its start position and valid length. */
+    private byte[] page;
+    private long pageStart = 0;
+    private int pageLength = 0;
+
     /** True if we've encountered the end of the source stream. */
     private boolean foundEOF = false;
 
     /**
-     * Constructs a <code>MemoryCacheRandomAccessInputStream</code>
+     * Constructs a <code>FileCacheRandomAccessInputStream</code>
      * that takes its source data from a regular <code>InputStream</code>.
      * Seeking backwards is supported by means of an file cache.
      *
@@ -58,16 +101,47 @@ public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
      * attempt to create the cache file fails for any reason.
      */
     public FileCacheRandomAccessInputStream(InputStream stream) throws IOException {
-       this(stream, 4096); // 4k default buffer length
+       this(stream, DEFAULT_PAGE_SIZE); // 64k default page size
     }
-    
+
     public FileCacheRandomAccessInputStream(InputStream src, int bufLen) throws IOException {
+    	this(src, bufLen, DEFAULT_MAX_CACHED_PAGES);
+    }
+
+    /**
+     * @param src the source InputStream
+     * @param pageSize the size of a cache page in bytes
+     * @param maxCachedPages the maximum number of full pages to keep in memory
+     */
+    public FileCacheRandomAccessInputStream(InputStream src, int pageSize, final int maxCachedPages) throws IOException {
     	super(src);
-        this.bufLen = bufLen;
-        buf = new byte[bufLen];
+    	if(pageSize <= 0 || maxCachedPages < 0)
+    		throw new IllegalArgumentException("Invalid page size or number of cached pages");
+        this.pageSize = pageSize;
+        this.tail = new byte[pageSize];
+        this.pages = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return size() > maxCachedPages;
+			}
+        };
     	this.cacheFile = File.createTempFile("cafe-FCRAIS-", ".tmp");
         cacheFile.deleteOnExit();
         this.cache = new RandomAccessFile(cacheFile, "rw");
+        this.channel = cache.getChannel();
+    }
+
+    /**
+     * @param src the source InputStream
+     * @param pageSize the size of a cache page in bytes
+     * @param maxCachedPages the maximum number of full pages to keep in memory
+     * @param readAhead if true, the source is read ahead on a background thread
+     *        which is stopped by shallowClose() or close()
+     * @see ReadAheadInputStream
+     */
+    public FileCacheRandomAccessInputStream(InputStream src, int pageSize, int maxCachedPages, boolean readAhead) throws IOException {
+    	this(readAhead ? new ReadAheadInputStream(src) : src, pageSize, maxCachedPages);
     }
 
     /**
@@ -75,37 +149,101 @@ public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
      * or the end of the source is reached.  The return value
      * is equal to the smaller of <code>pos</code> and the
      * length of the source file.
+     * <p>
+     * Each read from the source asks for the rest of the tail page, so reading
+     * the stream byte by byte doesn't turn into one source read per byte.
      */
     private long readUntil(long pos) throws IOException {
         // We've already got enough data cached
-        if (pos < length) {
+        if (pos <= length) {
             return pos;
         }
-        // pos >= length but length isn't getting any bigger, so return it
+        return fillCache(pos);
+    }
+
+    private synchronized long fillCache(long pos) throws IOException {
+        // Another thread may have cached the data in the meantime
+        if (pos <= length) {
+            return pos;
+        }
+        // pos > length but length isn't getting any bigger, so return it
         if (foundEOF) {
             return length;
         }
 
-        long len = pos - length;
-        cache.seek(length);
-        while (len > 0) {
-            // Copy a buffer's worth of data from the source to the cache
-            // bufLen will always fit into an int so this is safe
-            int nbytes = src.read(buf, 0, (int)Math.min(len, bufLen));
+        while (length < pos) {
+            // A single read returns what the source has at hand, it doesn't wait for the whole page
+            int offset = (int)(length % pageSize);
+            int nbytes = src.read(tail, offset, pageSize - offset);
             if (nbytes == -1) {
                 foundEOF = true;
                 return length;
             }
-
-            cache.setLength(cache.length() + nbytes);
-            cache.write(buf, 0, nbytes);
-            len -= nbytes;
             length += nbytes;
+            if (offset + nbytes == pageSize) {
+            	flushTail();
+            }
         }
 
         return pos;
     }
 
+    /**
+     * Writes the full tail page to the cache file and moves it to the memory cache
+     */
+    private void flushTail() throws IOException {
+    	long filePos = length - pageSize;
+    	if (filePos + pageSize > allocated) {
+    		allocated = Math.max(allocated + EXTENT_SIZE, filePos + pageSize);
+    		cache.setLength(allocated);
+    	}
+    	ByteBuffer bb = ByteBuffer.wrap(tail);
+    	while (bb.hasRemaining()) {
+    		channel.write(bb, filePos + bb.position());
+    	}
+    	pages.put(filePos/pageSize, tail);
+    	tail = new byte[pageSize];
+    }
+
+    /**
+     * Returns the page with the given index which must contain cached data.
+     */
+    private synchronized byte[] getPage(long index) throws IOException {
+    	if (index == length/pageSize) {
+    		return tail;
+    	}
+    	byte[] buf = pages.get(index);
+    	if (buf == null) {
+    		// Full pages are always in the cache file
+    		buf = new byte[pageSize];
+    		ByteBuffer bb = ByteBuffer.wrap(buf);
+    		long filePos = index*pageSize;
+    		while (bb.hasRemaining()) {
+    			if (channel.read(bb, filePos + bb.position()) == -1) {
+    				throw new EOFException();
+    			}
+    		}
+    		pages.put(index, buf);
+    	}
+    	return buf;
+    }
+
+    /**
+     * Makes the page containing the stream pointer the current page.
+     * Returns false if the pointer is at or beyond the end of the stream.
+     */
+    private boolean loadPage() throws IOException {
+    	if (readUntil(pointer + 1) <= pointer) {
+    		return false;
+    	}
+    	long available = length;
+    	long index = pointer/pageSize;
+    	page = getPage(index);
+    	pageStart = index*pageSize;
+    	pageLength = (int)Math.min(pageSize, available - pageStart);
+    	return true;
+    }
+
     /**
      * Returns the current offset in this stream.
      *
@@ -136,13 +274,15 @@ public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
 
     public int read() throws IOException {
     	ensureOpen();
-        long next = pointer + 1;
-        long pos = readUntil(next);
-        if (pos >= next) {
-            cache.seek(pointer++);
-            return cache.read();
-        }
-        return -1;    
+    	long offset = pointer - pageStart;
+    	if (page == null || offset < 0 || offset >= pageLength) {
+    		if (!loadPage()) {
+    			return -1;
+    		}
+    		offset = pointer - pageStart;
+    	}
+    	pointer++;
+    	return page[(int)offset] & 0xff;
     }
 
     public int read(byte[] b, int off, int len) throws IOException {
@@ -162,14 +302,46 @@ public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
         // len will always fit into an int so this is safe
         len = (int)Math.min(len, pos - pointer);
         if (len > 0) {
-            cache.seek(pointer);
-            cache.readFully(b, off, len);
+            copyCache(pointer, b, off, len);
             pointer += len;
             return len;
-        }	        
+        }
         return -1;
     }
 
+    /**
+     * Copies len bytes of cached data starting from pos into b
+     */
+    private void copyCache(long pos, byte[] b, int off, int len) throws IOException {
+    	while (len > 0) {
+        	long index = pos/pageSize;
+        	int offset = (int)(pos - index*pageSize);
+        	int nbytes = Math.min(len, pageSize - offset);
+        	System.arraycopy(getPage(index), offset, b, off, nbytes);
+        	pos += nbytes;
+        	off += nbytes;
+        	len -= nbytes;
+        }
+    }
+
+    public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+        checkPositionalRead(pos, b, off, len);
+        if (readUntil(pos + len) < pos + len) {
+            throw new EOFException();
+        }
+        copyCache(pos, b, off, len);
+    }
+
+    private void releaseCache() throws IOException {
+    	cache.close();
+        cacheFile.delete();
+        synchronized(this) {
+        	pages.clear();
+        }
+        page = null;
+        tail = null;
+    }
+
     /**
      * Closes this stream and releases any system resources
      * associated with the stream.
@@ -178,18 +350,19 @@ public class FileCacheRandomAccessInputStream extends RandomAccessInputStream {
      */
     public void close() throws IOException {
     	if(closed) return;
-        cache.close();
-        cacheFile.delete();
+    	releaseCache();
         src.close();
         src = null;
         closed = true;
     }
-    
+
     public void shallowClose() throws IOException {
     	if(closed) return;
-        cache.close();
-        cacheFile.delete();
+    	releaseCache();
+    	if (src instanceof ReadAheadInputStream) {
+    		((ReadAheadInputStream)src).stop();
+    	}
         src = null;
         closed = true;
     }
-}
\ No newline at end of file
+}
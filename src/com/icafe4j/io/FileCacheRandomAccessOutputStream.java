@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Added transferFrom() for channel to channel copy
  * WY    07Apr2015  Removed flush() along with super flush()
  * WY    06Apr2015  Added empty flush() to control flush timing
  */
@@ -24,6 +25,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 public class FileCacheRandomAccessOutputStream extends RandomAccessOutputStream {
 
@@ -116,6 +118,20 @@ public class FileCacheRandomAccessOutputStream extends RandomAccessOutputStream
         pointer = pos;
     }
 
+	@Override
+	protected boolean transferFrom(FileChannel src, long position, long count) throws IOException {
+		ensureOpen();
+		if (pointer < 0 || count < 0)
+			throw new IndexOutOfBoundsException();
+		cache.seek(pointer);
+		transfer(src, position, count, cache.getChannel());
+		pointer += count;
+		if (pointer > length) {
+			length = pointer;
+		}
+		return true;
+	}
+
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
 		ensureOpen();
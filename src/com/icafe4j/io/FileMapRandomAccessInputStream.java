@@ -0,0 +1,195 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implements a memory mapped random access input stream on top of a local
+ * file. Unlike FileCacheRandomAccessInputStream, no temporary copy of the
+ * source is made: bytes are read directly from the OS page cache through a
+ * read-only MappedByteBuffer.
+ * <p>
+ * Since a single MappedByteBuffer can only address up to Integer.MAX_VALUE bytes,
+ * the file is mapped through a sliding window which is re-mapped whenever the
+ * stream pointer moves outside of it. Files smaller than the window size are
+ * mapped only once.
+ * <p>
+ * The stream starts at the current position of the FileInputStream's channel,
+ * so bytes already consumed from the source are not visible, the same as with
+ * the other RandomAccessInputStream implementations.
+ * <p>
+ * Positional reads through readFully(long, ...) bypass the mapped window and use
+ * the channel's positional read instead, so they can be issued concurrently from
+ * multiple threads.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class FileMapRandomAccessInputStream extends RandomAccessInputStream {
+	// 1G default window size
+	private static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+	private FileChannel channel;
+	/** Channel position corresponding to stream position 0 */
+	private long base;
+	/** Number of bytes available to this stream */
+	private long length;
+	private int windowSize;
+	private MappedByteBuffer window;
+	/** Stream position of the first byte in the current window */
+	private long windowStart;
+	private long pointer;
+
+	public FileMapRandomAccessInputStream(FileInputStream src) throws IOException {
+		this(src, DEFAULT_WINDOW_SIZE);
+	}
+
+	public FileMapRandomAccessInputStream(FileInputStream src, int windowSize) throws IOException {
+		super(src);
+		if(windowSize <= 1)
+			throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		this.windowSize = windowSize;
+		this.channel = src.getChannel();
+		this.base = channel.position();
+		this.length = Math.max(0L, channel.size() - base);
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		window = null;
+		channel = null;
+		src.close();
+		src = null;
+		closed = true;
+	}
+
+	FileChannel getChannel() {
+		return channel;
+	}
+
+	long getChannelPosition(long pos) {
+		return base + pos;
+	}
+
+	/**
+	 * Returns the total number of bytes which can be read from this stream
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public long getStreamPointer() {
+		return pointer;
+	}
+
+	/**
+	 * Makes sure the current window covers position pos which must be less than length.
+	 * The window is aligned to half of the window size so that sequential reads which
+	 * cross a window boundary don't cause the same region to be re-mapped repeatedly.
+	 */
+	private void mapWindow(long pos) throws IOException {
+		if(window != null && pos >= windowStart && pos < windowStart + window.limit())
+			return;
+		int half = windowSize >>> 1;
+		windowStart = (pos/half)*half;
+		long size = Math.min(windowSize, length - windowStart);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, base + windowStart, size);
+	}
+
+	public int read() throws IOException {
+		ensureOpen();
+		if(pointer >= length)
+			return -1;
+		mapWindow(pointer);
+		return window.get((int)(pointer++ - windowStart)) & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(b == null)
+			throw new NullPointerException();
+		if(off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if(len == 0)
+			return 0;
+		if(pointer >= length)
+			return -1;
+
+		int total = (int)Math.min(len, length - pointer);
+		int remaining = total;
+
+		while(remaining > 0) {
+			mapWindow(pointer);
+			int index = (int)(pointer - windowStart);
+			int nbytes = Math.min(remaining, window.limit() - index);
+			window.position(index);
+			window.get(b, off, nbytes);
+			pointer += nbytes;
+			off += nbytes;
+			remaining -= nbytes;
+		}
+
+		return total;
+	}
+
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		checkPositionalRead(pos, b, off, len);
+		readFully(pos, ByteBuffer.wrap(b, off, len));
+	}
+
+	public void readFully(long pos, ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if(pos < 0L)
+			throw new IOException("Negative read position.");
+		if(pos + dst.remaining() > length)
+			throw new EOFException();
+		while(dst.hasRemaining()) {
+			int nbytes = channel.read(dst, base + pos);
+			if(nbytes < 0)
+				throw new EOFException();
+			pos += nbytes;
+		}
+	}
+
+	public void seek(long loc) throws IOException {
+		ensureOpen();
+		if (loc < 0L)
+			throw new IOException("Negative seek position.");
+
+		pointer = loc;
+	}
+
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		// Mapped regions are released once the buffer is garbage collected
+		window = null;
+		channel = null;
+		src = null;
+		closed = true;
+	}
+
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if(n <= 0 || pointer >= length)
+			return 0L;
+		long skipped = Math.min(n, length - pointer);
+		pointer += skipped;
+
+		return skipped;
+	}
+}
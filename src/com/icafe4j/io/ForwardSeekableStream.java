@@ -41,6 +41,17 @@ public class ForwardSeekableStream extends SeekableStream {
         this.src = src;
     }
 
+    /**
+     * Constructs a <code>ForwardSeekableStream</code> which optionally
+     * reads ahead of the consumer on a background thread. The read ahead
+     * is stopped when this stream is closed.
+     *
+     * @see ReadAheadInputStream
+     */
+    public ForwardSeekableStream(InputStream src, boolean readAhead) {
+        this(readAhead ? new ReadAheadInputStream(src) : src);
+    }
+
     /** Forwards the request to the real <code>InputStream</code>. */
     public final int read() throws IOException {
         int result = src.read();
@@ -0,0 +1,243 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements a random access input stream which caches the source in memory
+ * until a configurable threshold is reached and then transparently spills
+ * over to a FileCacheRandomAccessInputStream.
+ * <p>
+ * This combines the speed of MemoryCacheRandomAccessInputStream for small images
+ * with the bounded memory usage of FileCacheRandomAccessInputStream for large
+ * ones without knowing the size of the input beforehand.
+ * <p>
+ * Unlike MemoryCacheRandomAccessInputStream, never reads more bytes from the
+ * source than requested, so the source stays usable after this stream is closed
+ * with shallowClose().
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class HybridCacheRandomAccessInputStream extends RandomAccessInputStream {
+	// 8M default memory threshold
+	private static final int DEFAULT_MAX_MEMORY = 8*1024*1024;
+	private static final int BUFFER_SHIFT = 12;
+	private static final int BUFFER_SIZE = 1 << BUFFER_SHIFT;
+	private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+	private int maxMemory;
+	private long pointer;
+	// Memory tier
+	private volatile List<byte[]> cache;
+	private volatile int length;
+	private boolean foundEOS;
+	// File tier, non-null once we have spilled over
+	private volatile FileCacheRandomAccessInputStream fileCache;
+
+	public HybridCacheRandomAccessInputStream(InputStream src) {
+		this(src, DEFAULT_MAX_MEMORY);
+	}
+
+	/**
+	 * @param src the source InputStream
+	 * @param maxMemory maximum number of bytes to cache in memory before spilling to a file
+	 */
+	public HybridCacheRandomAccessInputStream(InputStream src, int maxMemory) {
+		super(src);
+		if(maxMemory < 0)
+			throw new IllegalArgumentException("Negative memory threshold: " + maxMemory);
+		this.maxMemory = maxMemory;
+		this.cache = new ArrayList<byte[]>(10);
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		if(fileCache != null)
+			fileCache.close(); // Also closes src
+		else
+			src.close();
+		release();
+	}
+
+	public long getStreamPointer() {
+		return pointer;
+	}
+
+	/**
+	 * Returns true if the cached data has been moved to a file.
+	 */
+	public boolean isFileCached() {
+		return fileCache != null;
+	}
+
+	public int read() throws IOException {
+		ensureOpen();
+		List<byte[]> pages = cache;
+		long l = pointer + 1L;
+		if(pages != null && (l <= length || readUntil(l) >= l)) {
+			byte[] buf = pages.get((int)(pointer >> BUFFER_SHIFT));
+			return buf[(int)(pointer++ & BUFFER_MASK)] & 0xff;
+		}
+		if(fileCache == null)
+			return -1;
+		fileCache.seek(pointer);
+		int value = fileCache.read();
+		if(value >= 0) pointer++;
+
+		return value;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(b == null)
+			throw new NullPointerException();
+		if(off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if(len == 0)
+			return 0;
+		List<byte[]> pages = cache;
+		if(pages != null) {
+			long l = readUntil(pointer + len);
+			if(l > pointer) {
+				len = (int)Math.min(len, l - pointer);
+				copyCache(pages, (int)pointer, b, off, len);
+				pointer += len;
+				return len;
+			}
+		}
+		if(fileCache == null)
+			return -1;
+		fileCache.seek(pointer);
+		int nbytes = fileCache.read(b, off, len);
+		if(nbytes > 0) pointer += nbytes;
+
+		return nbytes;
+	}
+
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		checkPositionalRead(pos, b, off, len);
+		List<byte[]> pages = cache;
+		if(pages != null) {
+			long l = readUntil(pos + len);
+			if(l >= pos + len) {
+				copyCache(pages, (int)pos, b, off, len);
+				return;
+			}
+		}
+		if(fileCache == null)
+			throw new EOFException();
+		fileCache.readFully(pos, b, off, len);
+	}
+
+	/**
+	 * Ensures at least pos bytes are in the memory cache unless the end of the
+	 * source is reached or we have to spill over to the file cache. Returns the
+	 * smaller of pos and the length of the memory cache.
+	 * <p>
+	 * The memory cache is dropped once we have spilled over but callers may
+	 * still use the bytes below the returned length from a reference to the
+	 * cache obtained before calling this method.
+	 */
+	private synchronized long readUntil(long pos) throws IOException {
+		if(pos <= length)
+			return pos;
+		if(foundEOS || cache == null)
+			return length;
+		if(pos > maxMemory) {
+			spill();
+			return length;
+		}
+		while(length < pos) {
+			int offset = length & BUFFER_MASK;
+			if(offset == 0)
+				cache.add(new byte[BUFFER_SIZE]);
+			byte[] buf = cache.get(length >> BUFFER_SHIFT);
+			int nbytes = src.read(buf, offset, (int)Math.min(pos - length, BUFFER_SIZE - offset));
+			if(nbytes == -1) {
+				foundEOS = true;
+				return length;
+			}
+			length += nbytes;
+		}
+
+		return pos;
+	}
+
+	private void release() {
+		cache = null;
+		fileCache = null;
+		src = null;
+		closed = true;
+	}
+
+	public void seek(long loc) throws IOException {
+		ensureOpen();
+		if (loc < 0L)
+			throw new IOException("Negative seek position.");
+
+		pointer = loc;
+	}
+
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		if(fileCache != null)
+			fileCache.shallowClose();
+		release();
+	}
+
+	/**
+	 * Switches to the file cache. The memory cache is replayed to the file cache
+	 * before the rest of the source and released once it has been consumed.
+	 */
+	private void spill() throws IOException {
+		final List<byte[]> pages = cache;
+		final int cached = length;
+		InputStream memory = new InputStream() {
+			private int position;
+
+			public int read() throws IOException {
+				if(position >= cached) return -1;
+				byte[] buf = pages.get(position >> BUFFER_SHIFT);
+				return buf[position++ & BUFFER_MASK] & 0xff;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(position >= cached) return -1;
+				len = Math.min(len, cached - position);
+				copyCache(pages, position, b, off, len);
+				position += len;
+				return len;
+			}
+		};
+		fileCache = new FileCacheRandomAccessInputStream(new SequenceInputStream(memory, src));
+		cache = null;
+	}
+
+	private static void copyCache(List<byte[]> pages, int pos, byte[] b, int off, int len) {
+		while(len > 0) {
+			byte[] buf = pages.get(pos >> BUFFER_SHIFT);
+			int offset = pos & BUFFER_MASK;
+			int nbytes = Math.min(len, BUFFER_SIZE - offset);
+			System.arraycopy(buf, offset, b, off, nbytes);
+			pos += nbytes;
+			off += nbytes;
+			len -= nbytes;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements a random access output stream which caches the written data in
+ * memory until a configurable threshold is reached and then transparently
+ * spills over to a temporary file.
+ * <p>
+ * This combines the speed of MemoryCacheRandomAccessOutputStream for small
+ * images with the bounded memory usage of FileCacheRandomAccessOutputStream
+ * for large ones without knowing the output size beforehand.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class HybridCacheRandomAccessOutputStream extends RandomAccessOutputStream {
+	// 8M default memory threshold
+	private static final int DEFAULT_MAX_MEMORY = 8*1024*1024;
+	private static final int BUFFER_SHIFT = 12;
+	private static final int BUFFER_SIZE = 1 << BUFFER_SHIFT;
+	private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+	private int maxMemory;
+	private long pointer = 0L;
+	// The largest position ever written to the cache.
+	private long length = 0L;
+	private long flushPos = 0L;
+	// Memory tier
+	private List<byte[]> cache;
+	private long cacheStart = 0L;
+	// File tier, non-null once we have spilled over
+	private File cacheFile;
+	private RandomAccessFile fileCache;
+
+	public HybridCacheRandomAccessOutputStream(OutputStream dist) {
+		this(dist, DEFAULT_MAX_MEMORY);
+	}
+
+	/**
+	 * @param dist the destination OutputStream
+	 * @param maxMemory maximum number of bytes to cache in memory before spilling to a file
+	 */
+	public HybridCacheRandomAccessOutputStream(OutputStream dist, int maxMemory) {
+		super(dist);
+		if(maxMemory < 0)
+			throw new IllegalArgumentException("Negative memory threshold: " + maxMemory);
+		this.maxMemory = maxMemory;
+		this.cache = new ArrayList<byte[]>(10);
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		super.close();
+		release();
+		dist.close();
+		dist = null;
+		closed = true;
+	}
+
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		super.close();
+		release();
+		dist = null;
+		closed = true;
+	}
+
+	public void disposeBefore(long pos) throws IOException {
+		ensureOpen();
+		long index = pos >> BUFFER_SHIFT;
+
+		if (index < cacheStart) {
+			throw new IndexOutOfBoundsException("pos already disposed");
+		}
+
+		if(fileCache == null) {
+			long numBlocks = Math.min(index - cacheStart, cache.size());
+
+			for (long i = 0; i < numBlocks; i++) {
+				cache.remove(0);
+			}
+		}
+
+		this.cacheStart = index;
+	}
+
+	private void expandCache(long pos) throws IOException {
+		long currIndex = cacheStart + cache.size() - 1;
+		long toIndex = pos >> BUFFER_SHIFT;
+		long numNewBuffers = toIndex - currIndex;
+		// Fill the cache with blocks to the position required for writing.
+		for (long i = 0; i < numNewBuffers; i++) {
+			try {
+				cache.add(new byte[BUFFER_SIZE]);
+			} catch (OutOfMemoryError e) {
+				throw new IOException("No memory left for cache!");
+			}
+		}
+	}
+
+	/**
+	 * Returns true if keeping the blocks up to pos in memory would go over the threshold.
+	 * Only the blocks from cacheStart on are counted as the disposed ones are gone.
+	 */
+	private boolean exceedsMemory(long pos) {
+		return ((pos >> BUFFER_SHIFT) - cacheStart + 1)*BUFFER_SIZE > maxMemory;
+	}
+
+	private byte[] getCacheBlock(long blockNum) throws IOException {
+		long blockOffset = blockNum - cacheStart;
+		if (blockOffset > Integer.MAX_VALUE) {
+			throw new IOException("Cache addressing limit exceeded!");
+		}
+		return cache.get((int)blockOffset);
+	}
+
+	public long getFlushPos() {
+		return flushPos;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getStreamPointer() {
+		return pointer;
+	}
+
+	/**
+	 * Returns true if the cached data has been moved to a file.
+	 */
+	public boolean isFileCached() {
+		return fileCache != null;
+	}
+
+	private void release() throws IOException {
+		cache = null;
+		if(fileCache != null) {
+			fileCache.close();
+			cacheFile.delete();
+			fileCache = null;
+		}
+	}
+
+	/**
+	 * Does nothing, same as FileCacheRandomAccessOutputStream which this stream replaces
+	 */
+	@Override
+	public void reset() { }
+
+	public void seek(long pos) throws IOException {
+		ensureOpen();
+		if (pos < 0L)
+			throw new IOException("Negative seek position.");
+
+		pointer = pos;
+	}
+
+	/**
+	 * Moves the cached blocks which haven't been disposed to a temporary file
+	 */
+	private void spill() throws IOException {
+		cacheFile = File.createTempFile("cafe-HCRAOS-", ".tmp");
+		cacheFile.deleteOnExit();
+		fileCache = new RandomAccessFile(cacheFile, "rw");
+		long pos = cacheStart << BUFFER_SHIFT;
+		fileCache.seek(pos);
+		for(byte[] buf : cache) {
+			int nbytes = (int)Math.min(BUFFER_SIZE, length - pos);
+			if(nbytes <= 0) break;
+			fileCache.write(buf, 0, nbytes);
+			pos += nbytes;
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Copies from the channel directly into the cache file if we have already
+	 * spilled over or are about to, otherwise lets the caller copy into memory.
+	 */
+	@Override
+	protected boolean transferFrom(FileChannel src, long position, long count) throws IOException {
+		ensureOpen();
+		if (pointer < 0 || count < 0)
+			throw new IndexOutOfBoundsException();
+		if (fileCache == null) {
+			if (!exceedsMemory(pointer + count - 1))
+				return false;
+			spill();
+		}
+		fileCache.seek(pointer);
+		transfer(src, position, count, fileCache.getChannel());
+		pointer += count;
+		if (pointer > length) {
+			length = pointer;
+		}
+		return true;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (b == null) {
+			throw new NullPointerException("b == null!");
+		}
+
+		if ((off < 0) || (len < 0) || (pointer < 0) ||
+				(off + len > b.length) || (off + len < 0)) {
+			throw new IndexOutOfBoundsException();
+		}
+		long lastPos = pointer + len - 1;
+		if (fileCache == null && exceedsMemory(lastPos)) {
+			spill();
+		}
+		if (lastPos >= length) {
+			if (fileCache == null) {
+				expandCache(lastPos);
+			}
+			length = lastPos + 1;
+		}
+		if (fileCache != null) {
+			fileCache.seek(pointer);
+			fileCache.write(b, off, len);
+			pointer += len;
+			return;
+		}
+		// Copy the data into the cache, block by block
+		int offset = (int)(pointer & BUFFER_MASK);
+		while (len > 0) {
+			byte[] buf = getCacheBlock(pointer >> BUFFER_SHIFT);
+			int nbytes = Math.min(len, BUFFER_SIZE - offset);
+			System.arraycopy(b, off, buf, offset, nbytes);
+
+			pointer += nbytes;
+			off += nbytes;
+			len -= nbytes;
+			offset = 0; // Always after the first time
+		}
+	}
+
+	@Override
+	public void write(int value) throws IOException {
+		ensureOpen();
+		if (pointer < 0)
+			throw new ArrayIndexOutOfBoundsException("pointer < 0");
+		if (fileCache == null && exceedsMemory(pointer)) {
+			spill();
+		}
+		if (pointer >= length) {
+			if (fileCache == null) {
+				expandCache(pointer);
+			}
+			length = pointer + 1;
+		}
+		if (fileCache != null) {
+			fileCache.seek(pointer++);
+			fileCache.write(value);
+			return;
+		}
+		byte[] buf = getCacheBlock(pointer >> BUFFER_SHIFT);
+		int offset = (int)(pointer++ & BUFFER_MASK);
+		buf[offset] = (byte)value;
+	}
+
+	public void writeToStream(long len) throws IOException {
+		ensureOpen();
+		if (len == 0) {
+			return;
+		}
+
+		if (pointer + len > length) {
+			throw new IndexOutOfBoundsException("Argument out of cache");
+		}
+
+		if ((pointer < 0) || (len < 0)) {
+			throw new IndexOutOfBoundsException("Negative pointer or len");
+		}
+
+		long bufIndex = pointer >> BUFFER_SHIFT;
+
+		if (bufIndex < cacheStart) {
+			throw new IndexOutOfBoundsException("pointer already disposed");
+		}
+
+		int offset = (int)(pointer & BUFFER_MASK);
+
+		if (fileCache != null) {
+			byte[] buf = new byte[BUFFER_SIZE];
+			fileCache.seek(pointer);
+			while (len > 0) {
+				int nbytes = (int)Math.min(len, BUFFER_SIZE);
+				fileCache.readFully(buf, 0, nbytes);
+				dist.write(buf, 0, nbytes);
+				len -= nbytes;
+				flushPos += nbytes;
+			}
+			return;
+		}
+
+		while (len > 0) {
+			byte[] buf = getCacheBlock(bufIndex++);
+			int nbytes = (int)Math.min(len, (BUFFER_SIZE - offset));
+			dist.write(buf, offset, nbytes);
+			len -= nbytes;
+			flushPos += nbytes;
+			offset = 0;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+/**
+ * Immutable snapshot of the I/O statistics gathered by an IOStatsCollector.
+ * <p>
+ * Latencies are kept as histograms with power of 2 buckets: bucket i counts the
+ * operations which took between 2^i and 2^(i+1) - 1 nanoseconds, bucket 0 also
+ * counts operations which took no measurable time.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class IOStats {
+
+	public enum Operation {
+		READ,
+		WRITE,
+		SEEK
+	}
+
+	public static final int NUM_OF_BUCKETS = 40;
+
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final long seeks;
+	private final long backwardSeeks;
+	private final long backwardSeekDistance;
+	private final long[] counts;
+	private final long[] nanos;
+	private final long[][] histograms;
+
+	IOStats(long bytesRead, long bytesWritten, long seeks, long backwardSeeks, long backwardSeekDistance,
+			long[] counts, long[] nanos, long[][] histograms) {
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.seeks = seeks;
+		this.backwardSeeks = backwardSeeks;
+		this.backwardSeekDistance = backwardSeekDistance;
+		this.counts = counts;
+		this.nanos = nanos;
+		this.histograms = histograms;
+	}
+
+	/**
+	 * Returns the histogram bucket for the given latency
+	 */
+	static int bucket(long nanos) {
+		if(nanos <= 0) return 0;
+		return Math.min(NUM_OF_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * Returns the total distance in bytes of all the seeks which moved the
+	 * stream pointer backwards
+	 */
+	public long getBackwardSeekDistance() {
+		return backwardSeekDistance;
+	}
+
+	public long getBackwardSeeks() {
+		return backwardSeeks;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Returns the number of calls for the given operation
+	 */
+	public long getCount(Operation op) {
+		return counts[op.ordinal()];
+	}
+
+	/**
+	 * Returns a copy of the latency histogram for the given operation
+	 */
+	public long[] getLatencyHistogram(Operation op) {
+		return histograms[op.ordinal()].clone();
+	}
+
+	/**
+	 * Returns the approximate latency in nanoseconds below which the given
+	 * fraction of the operations completed, or 0 if there was no operation
+	 *
+	 * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+	 */
+	public long getLatencyPercentile(Operation op, double fraction) {
+		if(fraction < 0 || fraction > 1)
+			throw new IllegalArgumentException("Fraction out of range: " + fraction);
+		long count = counts[op.ordinal()];
+		if(count == 0) return 0;
+		long[] histogram = histograms[op.ordinal()];
+		long target = (long)Math.ceil(fraction*count);
+		long seen = 0;
+		for(int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if(seen >= target && seen > 0)
+				return (1L<<(i + 1)) - 1;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	public long getReadCalls() {
+		return counts[Operation.READ.ordinal()];
+	}
+
+	public long getSeeks() {
+		return seeks;
+	}
+
+	/**
+	 * Returns the total time in nanoseconds spent in the given operation
+	 */
+	public long getTotalNanos(Operation op) {
+		return nanos[op.ordinal()];
+	}
+
+	public long getWriteCalls() {
+		return counts[Operation.WRITE.ordinal()];
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("bytes read: ").append(bytesRead);
+		sb.append(", bytes written: ").append(bytesWritten);
+		sb.append(", seeks: ").append(seeks);
+		sb.append(", backward seeks: ").append(backwardSeeks);
+		sb.append(" (").append(backwardSeekDistance).append(" bytes)");
+		for(Operation op : Operation.values()) {
+			sb.append(", ").append(op).append(": ").append(getCount(op)).append(" calls ");
+			sb.append(getTotalNanos(op)/1000).append("us total ");
+			sb.append("p99<=").append(getLatencyPercentile(op, 0.99)).append("ns");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import com.icafe4j.io.IOStats.Operation;
+
+/**
+ * Thread-safe accumulator of I/O statistics. A single collector may be shared
+ * by several instrumented streams to get the totals of an operation which
+ * involves more than one stream, e.g. TIFFTweaker.insertExif().
+ *
+ * @see InstrumentedRandomAccessInputStream
+ * @see InstrumentedRandomAccessOutputStream
+ * @see InstrumentedSeekableStream
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class IOStatsCollector {
+	private static final int NUM_OF_OPERATIONS = Operation.values().length;
+
+	private long bytesRead;
+	private long bytesWritten;
+	private long seeks;
+	private long backwardSeeks;
+	private long backwardSeekDistance;
+	private long[] counts = new long[NUM_OF_OPERATIONS];
+	private long[] nanos = new long[NUM_OF_OPERATIONS];
+	private long[][] histograms = new long[NUM_OF_OPERATIONS][IOStats.NUM_OF_BUCKETS];
+	private volatile IOStatsListener listener;
+
+	public IOStatsListener getListener() {
+		return listener;
+	}
+
+	private void record(Operation op, long nanos) {
+		int index = op.ordinal();
+		counts[index]++;
+		this.nanos[index] += nanos;
+		histograms[index][IOStats.bucket(nanos)]++;
+	}
+
+	/**
+	 * Records a read of bytes starting at position. A read which hits the end
+	 * of the stream should be recorded with 0 bytes.
+	 */
+	public void recordRead(long position, long bytes, long nanos) {
+		synchronized(this) {
+			record(Operation.READ, nanos);
+			bytesRead += bytes;
+		}
+		IOStatsListener l = listener;
+		if(l != null)
+			l.operationPerformed(Operation.READ, position, bytes, nanos);
+	}
+
+	/**
+	 * Records a seek from position from to position to
+	 */
+	public void recordSeek(long from, long to, long nanos) {
+		synchronized(this) {
+			record(Operation.SEEK, nanos);
+			seeks++;
+			if(to < from) {
+				backwardSeeks++;
+				backwardSeekDistance += from - to;
+			}
+		}
+		IOStatsListener l = listener;
+		if(l != null)
+			l.operationPerformed(Operation.SEEK, to, 0L, nanos);
+	}
+
+	public void recordWrite(long position, long bytes, long nanos) {
+		synchronized(this) {
+			record(Operation.WRITE, nanos);
+			bytesWritten += bytes;
+		}
+		IOStatsListener l = listener;
+		if(l != null)
+			l.operationPerformed(Operation.WRITE, position, bytes, nanos);
+	}
+
+	/**
+	 * Clears all the statistics gathered so far
+	 */
+	public synchronized void reset() {
+		bytesRead = bytesWritten = 0L;
+		seeks = backwardSeeks = backwardSeekDistance = 0L;
+		counts = new long[NUM_OF_OPERATIONS];
+		nanos = new long[NUM_OF_OPERATIONS];
+		histograms = new long[NUM_OF_OPERATIONS][IOStats.NUM_OF_BUCKETS];
+	}
+
+	public void setListener(IOStatsListener listener) {
+		this.listener = listener;
+	}
+
+	public synchronized IOStats snapshot() {
+		long[][] copy = new long[NUM_OF_OPERATIONS][];
+		for(int i = 0; i < NUM_OF_OPERATIONS; i++)
+			copy[i] = histograms[i].clone();
+
+		return new IOStats(bytesRead, bytesWritten, seeks, backwardSeeks, backwardSeekDistance,
+				counts.clone(), nanos.clone(), copy);
+	}
+
+	/**
+	 * Notifies the listener, if any, that an instrumented stream was closed
+	 */
+	void streamClosed() {
+		IOStatsListener l = listener;
+		if(l != null)
+			l.streamClosed(snapshot());
+	}
+}
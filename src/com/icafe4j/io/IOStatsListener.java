@@ -0,0 +1,36 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+/**
+ * Receives the individual operations recorded by an IOStatsCollector.
+ * Called on the thread doing the I/O, so implementations should be cheap.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public interface IOStatsListener {
+	/**
+	 * @param op the operation
+	 * @param position the stream position the operation started at, for a seek
+	 *        the position sought to
+	 * @param bytes number of bytes read or written, 0 for a seek
+	 * @param nanos time taken by the operation
+	 */
+	public void operationPerformed(IOStats.Operation op, long position, long bytes, long nanos);
+	/**
+	 * Called when an instrumented stream is closed
+	 *
+	 * @param stats statistics at the time the stream was closed
+	 */
+	public void streamClosed(IOStats stats);
+}
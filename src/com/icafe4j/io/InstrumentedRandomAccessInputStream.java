@@ -0,0 +1,133 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.IOException;
+
+/**
+ * Decorates a RandomAccessInputStream to record the bytes read, the number of
+ * read calls, the seeks and the latency of each operation into an IOStatsCollector.
+ * <p>
+ * The byte order is taken from this stream, so callers should set the read
+ * strategy on the decorator rather than on the wrapped stream.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class InstrumentedRandomAccessInputStream extends RandomAccessInputStream {
+	private RandomAccessInputStream rin;
+	private IOStatsCollector collector;
+
+	public InstrumentedRandomAccessInputStream(RandomAccessInputStream rin) {
+		this(rin, new IOStatsCollector());
+	}
+
+	/**
+	 * @param rin the RandomAccessInputStream to instrument
+	 * @param collector the IOStatsCollector to record into, may be shared with other streams
+	 */
+	public InstrumentedRandomAccessInputStream(RandomAccessInputStream rin, IOStatsCollector collector) {
+		super(null);
+		if(rin == null || collector == null)
+			throw new NullPointerException("Input stream or collector is null");
+		this.rin = rin;
+		this.collector = collector;
+	}
+
+	public int available() throws IOException {
+		ensureOpen();
+		return rin.available();
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		rin.close();
+		closed = true;
+		collector.streamClosed();
+	}
+
+	public IOStatsCollector getCollector() {
+		return collector;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded so far
+	 */
+	public IOStats getStats() {
+		return collector.snapshot();
+	}
+
+	public long getStreamPointer() {
+		return rin.getStreamPointer();
+	}
+
+	public int read() throws IOException {
+		ensureOpen();
+		long pos = rin.getStreamPointer();
+		long start = System.nanoTime();
+		int value = rin.read();
+		collector.recordRead(pos, (value < 0) ? 0 : 1, System.nanoTime() - start);
+
+		return value;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		long pos = rin.getStreamPointer();
+		long start = System.nanoTime();
+		int nbytes = rin.read(b, off, len);
+		collector.recordRead(pos, (nbytes < 0) ? 0 : nbytes, System.nanoTime() - start);
+
+		return nbytes;
+	}
+
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		long start = System.nanoTime();
+		rin.readFully(pos, b, off, len);
+		collector.recordRead(pos, len, System.nanoTime() - start);
+	}
+
+	public void seek(long loc) throws IOException {
+		ensureOpen();
+		long pos = rin.getStreamPointer();
+		long start = System.nanoTime();
+		rin.seek(loc);
+		collector.recordSeek(pos, loc, System.nanoTime() - start);
+	}
+
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		rin.shallowClose();
+		closed = true;
+		collector.streamClosed();
+	}
+
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		long pos = rin.getStreamPointer();
+		long start = System.nanoTime();
+		long skipped = rin.skip(n);
+		collector.recordSeek(pos, pos + skipped, System.nanoTime() - start);
+
+		return skipped;
+	}
+
+	public long transferTo(long srcPos, long len, RandomAccessOutputStream dst) throws IOException {
+		ensureOpen();
+		long start = System.nanoTime();
+		long nbytes = rin.transferTo(srcPos, len, dst);
+		collector.recordRead(srcPos, nbytes, System.nanoTime() - start);
+
+		return nbytes;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decorates a RandomAccessOutputStream to record the bytes written, the number
+ * of write calls, the seeks and the latency of each operation into an
+ * IOStatsCollector. Writes to the final destination done by writeToStream()
+ * are not recorded.
+ * <p>
+ * The byte order is taken from this stream, so callers should set the write
+ * strategy on the decorator rather than on the wrapped stream.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class InstrumentedRandomAccessOutputStream extends RandomAccessOutputStream {
+	private RandomAccessOutputStream rout;
+	private IOStatsCollector collector;
+
+	public InstrumentedRandomAccessOutputStream(RandomAccessOutputStream rout) {
+		this(rout, new IOStatsCollector());
+	}
+
+	/**
+	 * @param rout the RandomAccessOutputStream to instrument
+	 * @param collector the IOStatsCollector to record into, may be shared with other streams
+	 */
+	public InstrumentedRandomAccessOutputStream(RandomAccessOutputStream rout, IOStatsCollector collector) {
+		super(null);
+		if(rout == null || collector == null)
+			throw new NullPointerException("Output stream or collector is null");
+		this.rout = rout;
+		this.collector = collector;
+	}
+
+	public void close() throws IOException {
+		if(closed) return;
+		rout.close();
+		closed = true;
+		collector.streamClosed();
+	}
+
+	public void disposeBefore(long pos) throws IOException {
+		ensureOpen();
+		rout.disposeBefore(pos);
+	}
+
+	public IOStatsCollector getCollector() {
+		return collector;
+	}
+
+	public long getFlushPos() {
+		return rout.getFlushPos();
+	}
+
+	public long getLength() {
+		return rout.getLength();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded so far
+	 */
+	public IOStats getStats() {
+		return collector.snapshot();
+	}
+
+	public long getStreamPointer() {
+		return rout.getStreamPointer();
+	}
+
+	public void reset() {
+		rout.reset();
+	}
+
+	public void seek(long pos) throws IOException {
+		ensureOpen();
+		long from = rout.getStreamPointer();
+		long start = System.nanoTime();
+		rout.seek(pos);
+		collector.recordSeek(from, pos, System.nanoTime() - start);
+	}
+
+	public void shallowClose() throws IOException {
+		if(closed) return;
+		rout.shallowClose();
+		closed = true;
+		collector.streamClosed();
+	}
+
+	@Override
+	protected boolean transferFrom(FileChannel src, long position, long count) throws IOException {
+		ensureOpen();
+		long pos = rout.getStreamPointer();
+		long start = System.nanoTime();
+		boolean done = rout.transferFrom(src, position, count);
+		if(done)
+			collector.recordWrite(pos, count, System.nanoTime() - start);
+
+		return done;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		long pos = rout.getStreamPointer();
+		long start = System.nanoTime();
+		rout.write(b, off, len);
+		collector.recordWrite(pos, len, System.nanoTime() - start);
+	}
+
+	public void write(int value) throws IOException {
+		ensureOpen();
+		long pos = rout.getStreamPointer();
+		long start = System.nanoTime();
+		rout.write(value);
+		collector.recordWrite(pos, 1, System.nanoTime() - start);
+	}
+
+	public void writeToStream(long len) throws IOException {
+		ensureOpen();
+		rout.writeToStream(len);
+	}
+}
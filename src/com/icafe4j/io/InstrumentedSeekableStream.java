@@ -0,0 +1,118 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.IOException;
+
+/**
+ * Decorates a SeekableStream to record the bytes read, the number of read
+ * calls, the seeks and the latency of each operation into an IOStatsCollector.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class InstrumentedSeekableStream extends SeekableStream {
+	private SeekableStream src;
+	private IOStatsCollector collector;
+
+	public InstrumentedSeekableStream(SeekableStream src) {
+		this(src, new IOStatsCollector());
+	}
+
+	/**
+	 * @param src the SeekableStream to instrument
+	 * @param collector the IOStatsCollector to record into, may be shared with other streams
+	 */
+	public InstrumentedSeekableStream(SeekableStream src, IOStatsCollector collector) {
+		if(src == null || collector == null)
+			throw new NullPointerException("Input stream or collector is null");
+		this.src = src;
+		this.collector = collector;
+	}
+
+	public int available() throws IOException {
+		return src.available();
+	}
+
+	public boolean canSeekBackwards() {
+		return src.canSeekBackwards();
+	}
+
+	public void close() throws IOException {
+		src.close();
+		collector.streamClosed();
+	}
+
+	public IOStatsCollector getCollector() {
+		return collector;
+	}
+
+	public long getFilePointer() throws IOException {
+		return src.getFilePointer();
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded so far
+	 */
+	public IOStats getStats() {
+		return collector.snapshot();
+	}
+
+	public synchronized void mark(int readLimit) {
+		src.mark(readLimit);
+	}
+
+	public boolean markSupported() {
+		return src.markSupported();
+	}
+
+	public int read() throws IOException {
+		long pos = src.getFilePointer();
+		long start = System.nanoTime();
+		int value = src.read();
+		collector.recordRead(pos, (value < 0) ? 0 : 1, System.nanoTime() - start);
+
+		return value;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		long pos = src.getFilePointer();
+		long start = System.nanoTime();
+		int nbytes = src.read(b, off, len);
+		collector.recordRead(pos, (nbytes < 0) ? 0 : nbytes, System.nanoTime() - start);
+
+		return nbytes;
+	}
+
+	public synchronized void reset() throws IOException {
+		long pos = src.getFilePointer();
+		long start = System.nanoTime();
+		src.reset();
+		collector.recordSeek(pos, src.getFilePointer(), System.nanoTime() - start);
+	}
+
+	public void seek(long loc) throws IOException {
+		long pos = src.getFilePointer();
+		long start = System.nanoTime();
+		src.seek(loc);
+		collector.recordSeek(pos, loc, System.nanoTime() - start);
+	}
+
+	public long skip(long n) throws IOException {
+		long pos = src.getFilePointer();
+		long start = System.nanoTime();
+		long skipped = src.skip(n);
+		collector.recordSeek(pos, pos + skipped, System.nanoTime() - start);
+
+		return skipped;
+	}
+}
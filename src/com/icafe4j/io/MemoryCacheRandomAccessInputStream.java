@@ -11,6 +11,7 @@
 
 package com.icafe4j.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -27,23 +28,39 @@ import java.util.List;
  * of the length of the stream, it is supposed to move forward
  * even though it is possible to put the pointer at anywhere
  * before the end of the stream. 
+ * <p>
+ * Cache pages are borrowed from a shared PagePool and returned to it when
+ * the stream is closed.
+ * <p>
+ * Positional reads through readFully(long, ...) are synchronized on the
+ * stream but don't use or change the stream pointer, so they are safe
+ * to be called from multiple threads sharing the same stream.
  *
  * @author Wen Yu, yuwen_66@yahoo.com
  * @version 1.0 02/09/2014 
  */ 
 public class MemoryCacheRandomAccessInputStream extends RandomAccessInputStream {
-	//
-	private static final int BUFFER_SHIFT = 12;
-    private static final int BUFFER_SIZE = 1 << BUFFER_SHIFT;
-    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+	// Cache pages are borrowed from and returned to this pool
+	private PagePool pool;
+	private int bufferShift;
+	private int bufferSize;
+	private int bufferMask;
 
     private long pointer;
     private List<byte[]> cache;
-    private int length;
+    private volatile int length;
     private boolean foundEOS;
 	    
 	public MemoryCacheRandomAccessInputStream(InputStream src) {
+		this(src, PagePool.getDefault());
+	}
+	
+	public MemoryCacheRandomAccessInputStream(InputStream src, PagePool pool) {
 		super(src);
+		this.pool = pool;
+		bufferShift = pool.getPageShift();
+		bufferSize = pool.getPageSize();
+		bufferMask = bufferSize - 1;
 		pointer = 0L;
 		cache = new ArrayList<byte[]>(10);
 		length = 0;
@@ -52,8 +69,7 @@ public class MemoryCacheRandomAccessInputStream extends RandomAccessInputStream
 		
 	public void close() throws IOException {
 		if(closed) return;
-		cache.clear();
-		cache = null;
+		releaseCache();
 		src.close();
 		src = null;
 		closed = true;
@@ -61,12 +77,18 @@ public class MemoryCacheRandomAccessInputStream extends RandomAccessInputStream
 	
 	public void shallowClose() {
 		if(closed) return;
-		cache.clear();
-		cache = null;
+		releaseCache();
 		src = null;
 		closed = true;
 	}
 		
+	private synchronized void releaseCache() {
+		for(byte[] buf : cache)
+			pool.releasePage(buf);
+		cache.clear();
+		cache = null;
+	}
+		
 	public long getStreamPointer() {
 		return pointer;
 	}
@@ -76,8 +98,8 @@ public class MemoryCacheRandomAccessInputStream extends RandomAccessInputStream
 		long l = pointer + 1L;
 		long pos = readUntil(l);
 		if(pos >= l) {
-			byte[] buf = cache.get((int)(pointer>>BUFFER_SHIFT));
-			return buf[(int)(pointer++ & BUFFER_MASK)] & 0xff;
+			byte[] buf = cache.get((int)(pointer>>bufferShift));
+			return buf[(int)(pointer++ & bufferMask)] & 0xff;
 		}
 	        
 		return -1;
@@ -95,28 +117,52 @@ public class MemoryCacheRandomAccessInputStream extends RandomAccessInputStream
 		if (l <= pointer)
 			return -1;
 	        
-		byte[] buf = cache.get((int)(pointer >> BUFFER_SHIFT));
-		int k = Math.min(len, BUFFER_SIZE - (int)(pointer & BUFFER_MASK));
-		System.arraycopy(buf, (int)(pointer & BUFFER_MASK), bytes, off, k);
+		byte[] buf = cache.get((int)(pointer >> bufferShift));
+		// Don't go past the end of the page or the data
+		int k = (int)Math.min(l - pointer, bufferSize - (int)(pointer & bufferMask));
+		System.arraycopy(buf, (int)(pointer & bufferMask), bytes, off, k);
 	        
 		pointer += k;
 	        
 		return k;
 	}
 
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		checkPositionalRead(pos, b, off, len);
+		synchronized(this) {
+			if(readUntil(pos + len) < pos + len)
+				throw new EOFException();
+			while(len > 0) {
+				byte[] buf = cache.get((int)(pos >> bufferShift));
+				int offset = (int)(pos & bufferMask);
+				int nbytes = Math.min(len, bufferSize - offset);
+				System.arraycopy(buf, offset, b, off, nbytes);
+				pos += nbytes;
+				off += nbytes;
+				len -= nbytes;
+			}
+		}
+	}
+
 	private long readUntil(long pos) throws IOException {		
+		if(pos < length)
+			return pos;
+		return fillCache(pos);
+	}
+
+	private synchronized long fillCache(long pos) throws IOException {
 		if(pos < length)
 			return pos;
 		if(foundEOS)
 			return length;
-		int slot = (int)(pos >> BUFFER_SHIFT);
-		int startSlot = length >> BUFFER_SHIFT;
+		int slot = (int)(pos >> bufferShift);
+		int startSlot = length >> bufferShift;
 	        
 		for(int k = startSlot; k <= slot; k++) 
 		{
-			byte[] buf = new byte[BUFFER_SIZE];
+			byte[] buf = pool.borrowPage();
 			cache.add(buf);
-			int len = BUFFER_SIZE;
+			int len = bufferSize;
 			int off = 0;
 	            
 			while(len > 0) {
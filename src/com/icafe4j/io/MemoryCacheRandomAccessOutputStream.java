@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Borrow cache blocks from a shared PagePool
  * WY    07Apr2015  Removed flush() along with super flush()
  * WY    06Apr2015  Added empty flush() to control flush timing
  */
@@ -23,12 +24,19 @@ package com.icafe4j.io;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Cache blocks are borrowed from a shared PagePool and returned to it
+ * when they are disposed of or the stream is closed.
+ */
 public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStream {
-	private static final int BUFFER_SHIFT = 12;
-	private static final int BUFFER_SIZE = 1 << BUFFER_SHIFT;
-	private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+	// Cache blocks are borrowed from and returned to this pool
+	private PagePool pool;
+	private int bufferShift;
+	private int bufferSize;
+	private int bufferMask;
 	
 	private long pointer = 0L;
 	// The largest position ever written to the cache.
@@ -38,14 +46,22 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
 	private long flushPos = 0L;
 	
 	public MemoryCacheRandomAccessOutputStream(OutputStream dist) {
+		this(dist, PagePool.getDefault());
+	}
+	
+	public MemoryCacheRandomAccessOutputStream(OutputStream dist, PagePool pool) {
 		super(dist);
+		this.pool = pool;
+		bufferShift = pool.getPageShift();
+		bufferSize = pool.getPageSize();
+		bufferMask = bufferSize - 1;
 		cache = new ArrayList<byte[]>(10);
 	}
 	
 	public void close() throws IOException {
 		if(closed) return;
 		super.close();
- 		cache.clear();
+ 		releaseCache();
  		dist.close();
  		dist = null;
  		closed = true;
@@ -54,14 +70,14 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
 	public void shallowClose() throws IOException {
 		if(closed) return;
 		super.close();
- 		cache.clear();
+ 		releaseCache();
  		dist = null;
  		closed = true;
 	}
 
 	public void disposeBefore(long pos) throws IOException {
 		ensureOpen();
-	    long index = pos >> BUFFER_SHIFT;
+	    long index = pos >> bufferShift;
 	    
 	    if (index < cacheStart) {
 	         throw new IndexOutOfBoundsException("pos already disposed");
@@ -70,7 +86,7 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
 	    long numBlocks = Math.min(index - cacheStart, cache.size());
 	    
 	    for (long i = 0; i < numBlocks; i++) {
-	         cache.remove(0);
+	         pool.releasePage(cache.remove(0));
 	    }
 	    
 	    this.cacheStart = index;
@@ -78,12 +94,15 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
 	
 	private void expandCache(long pos) throws IOException {
         long currIndex = cacheStart + cache.size() - 1;
-        long toIndex = pos >> BUFFER_SHIFT;
+        long toIndex = pos >> bufferShift;
         long numNewBuffers = toIndex - currIndex;
         // Fill the cache with blocks to the position required for writing.
         for (long i = 0; i < numNewBuffers; i++) {
             try {
-                cache.add(new byte[BUFFER_SIZE]);
+            	// Pooled blocks may contain stale data
+            	byte[] buf = pool.borrowPage();
+            	Arrays.fill(buf, (byte)0);
+                cache.add(buf);
             } catch (OutOfMemoryError e) {
                 throw new IOException("No memory left for cache!");
             }
@@ -98,6 +117,12 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
         return cache.get((int)blockOffset);
     }
 	
+	private void releaseCache() {
+		for(byte[] buf : cache)
+			pool.releasePage(buf);
+		cache.clear();
+	}
+	
 	public long getFlushPos() {
 		return flushPos;
 	}
@@ -145,10 +170,10 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
             length = lastPos + 1;
         }
         // Copy the data into the cache, block by block
-        int offset = (int)(pointer & BUFFER_MASK);
+        int offset = (int)(pointer & bufferMask);
         while (len > 0) {
-            byte[] buf = getCacheBlock(pointer >> BUFFER_SHIFT);
-            int nbytes = Math.min(len, BUFFER_SIZE - offset);
+            byte[] buf = getCacheBlock(pointer >> bufferShift);
+            int nbytes = Math.min(len, bufferSize - offset);
             System.arraycopy(b, off, buf, offset, nbytes);
 
             pointer += nbytes;
@@ -169,8 +194,8 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
             length = pointer + 1;
         }
         // Insert the data.
-        byte[] buf = getCacheBlock(pointer >> BUFFER_SHIFT);
-        int offset = (int)(pointer++ & BUFFER_MASK);
+        byte[] buf = getCacheBlock(pointer >> bufferShift);
+        int offset = (int)(pointer++ & bufferMask);
         buf[offset] = (byte)value;
 	}
 
@@ -188,13 +213,13 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
             throw new IndexOutOfBoundsException("Negative pointer or len");
         }      
 
-        long bufIndex = pointer >> BUFFER_SHIFT;
+        long bufIndex = pointer >> bufferShift;
 
         if (bufIndex < cacheStart) {
             throw new IndexOutOfBoundsException("pointer already disposed");
         }
         
-        int offset = (int)(pointer & BUFFER_MASK);
+        int offset = (int)(pointer & bufferMask);
         byte[] buf = getCacheBlock(bufIndex++);
         	
         while (len > 0) {
@@ -202,7 +227,7 @@ public class MemoryCacheRandomAccessOutputStream extends RandomAccessOutputStrea
                 buf = getCacheBlock(bufIndex++);
                 offset = 0;
             }
-            int nbytes = (int)Math.min(len, (BUFFER_SIZE - offset));
+            int nbytes = (int)Math.min(len, (bufferSize - offset));
             dist.write(buf, offset, nbytes);
             buf = null;
             len -= nbytes;
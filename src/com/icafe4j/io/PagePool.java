@@ -0,0 +1,98 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A thread-safe pool of fixed-size byte array pages shared by the memory cached
+ * random access streams.
+ * <p>
+ * Pages are borrowed when a stream's cache grows and returned when the stream
+ * disposes of them or is closed. At most maxRetainedBytes worth of idle pages
+ * are kept by the pool, any page returned beyond that is left to the garbage
+ * collector.
+ * <p>
+ * The content of a borrowed page is undefined. Callers which rely on zero
+ * filled pages have to clear them.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class PagePool {
+	// 4K pages and at most 16M idle pages by default
+	private static final PagePool defaultPool = new PagePool(4096, 16*1024*1024L);
+
+	private final int pageSize;
+	private final int pageShift;
+	private final int maxPages;
+	private final Deque<byte[]> pages = new ArrayDeque<byte[]>();
+
+	public static PagePool getDefault() {
+		return defaultPool;
+	}
+
+	/**
+	 * @param pageSize size of a page in bytes, must be a power of 2
+	 * @param maxRetainedBytes maximum number of bytes held by idle pages in the pool
+	 */
+	public PagePool(int pageSize, long maxRetainedBytes) {
+		if(pageSize <= 0 || (pageSize & (pageSize - 1)) != 0)
+			throw new IllegalArgumentException("Page size must be a power of 2: " + pageSize);
+		if(maxRetainedBytes < 0)
+			throw new IllegalArgumentException("Negative maximum retained bytes: " + maxRetainedBytes);
+		this.pageSize = pageSize;
+		this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+		this.maxPages = (int)Math.min(Integer.MAX_VALUE, maxRetainedBytes/pageSize);
+	}
+
+	/**
+	 * Returns an idle page from the pool or a newly allocated one if the pool is empty
+	 */
+	public byte[] borrowPage() {
+		byte[] page = null;
+		synchronized(pages) {
+			page = pages.pollFirst();
+		}
+		return (page != null) ? page : new byte[pageSize];
+	}
+
+	/**
+	 * Returns the number of idle pages currently held by the pool
+	 */
+	public int getIdlePages() {
+		synchronized(pages) {
+			return pages.size();
+		}
+	}
+
+	public int getPageShift() {
+		return pageShift;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Returns a page to the pool. The caller must not use the page afterwards.
+	 * Pages of a different size are ignored.
+	 */
+	public void releasePage(byte[] page) {
+		if(page == null || page.length != pageSize) return;
+		synchronized(pages) {
+			if(pages.size() < maxPages)
+				pages.addFirst(page);
+		}
+	}
+}
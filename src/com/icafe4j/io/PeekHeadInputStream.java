@@ -14,6 +14,7 @@
  *
  * Who   Date       Description
  * ====  =========  ==============================================================
+ * WY    18Oct2026  Added skip() to skip the source without reading through it
  * WY    26Sep2015  Initial creation
  */
 
@@ -113,4 +114,17 @@ public class PeekHeadInputStream extends InputStream {
 			return len;
 		}
 	}
-}
\ No newline at end of file
+	
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if(n <= 0) return 0;
+		if(position >= buffer.length)
+			return src.skip(n);
+		int bytesAvailable = (int)Math.min(buffer.length - position, n);
+		position += bytesAvailable;
+		if(n == bytesAvailable) return n;
+		
+		return bytesAvailable + Math.max(src.skip(n - bytesAvailable), 0);
+	}
+}
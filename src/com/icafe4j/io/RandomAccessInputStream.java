@@ -16,6 +16,8 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Implements a random access input stream
@@ -35,8 +37,13 @@ import java.io.InputStream;
  * @version 1.0 01/24/2013 
  */ 
 public abstract class RandomAccessInputStream extends InputStream implements DataInput {	
+    // Size of the buffer used by transferTo() when no channel transfer is possible
+    private static final int TRANSFER_BUFFER_SIZE = 64*1024;
+    // Maximum number of bytes read at a time by the bulk primitive reads
+    private static final int BULK_BUFFER_SIZE = 8*1024;
     
     private ReadStrategy strategy = ReadStrategyMM.getInstance();
+    private byte[] transferBuffer;
 
 	 /** The source stream. */
     protected InputStream src;
@@ -115,12 +122,175 @@ public abstract class RandomAccessInputStream extends InputStream implements Dat
 		} while (n < len);
 	}
 
+	/**
+	 * Reads exactly len bytes starting from absolute stream position pos into b.
+	 * <p>
+	 * Unlike the other read methods, this method doesn't use or change the stream
+	 * pointer. Sub-classes override it with an implementation which is safe to be
+	 * called from multiple threads sharing the same stream. This default version
+	 * simply synchronizes on the stream and restores the stream pointer afterwards,
+	 * so it must not be mixed with pointer based reads from other threads.
+	 * 
+	 * @param pos absolute stream position to start reading from
+	 * @param b the buffer into which the data is read
+	 * @param off the start offset in b
+	 * @param len the number of bytes to read
+	 * @throws EOFException if the stream ends before len bytes are read
+	 * @throws IOException if any other I/O error occurs
+	 */
+	public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+		checkPositionalRead(pos, b, off, len);
+		synchronized(this) {
+			long pointer = getStreamPointer();
+			try {
+				seek(pos);
+				readFully(b, off, len);
+			} finally {
+				seek(pointer);
+			}
+		}
+	}
+	
+	/**
+	 * Reads dst.remaining() bytes starting from absolute stream position pos
+	 * into dst. The stream pointer is not used or changed.
+	 * 
+	 * @see #readFully(long, byte[], int, int)
+	 */
+	public void readFully(long pos, ByteBuffer dst) throws IOException {
+		int len = dst.remaining();
+		if(dst.hasArray()) {
+			readFully(pos, dst.array(), dst.arrayOffset() + dst.position(), len);
+			dst.position(dst.limit());
+		} else {
+			byte[] buf = new byte[len];
+			readFully(pos, buf, 0, len);
+			dst.put(buf);
+		}
+	}
+	
+	/**
+	 * Validates the arguments of a positional read
+	 */
+	protected void checkPositionalRead(long pos, byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(b == null)
+			throw new NullPointerException();
+		if(off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if(pos < 0L)
+			throw new IOException("Negative read position.");
+	}
+
+	/**
+	 * Returns the FileChannel which holds the bytes of this stream, or null if there
+	 * is no such channel. Stream position pos maps to channel position
+	 * getChannelPosition(pos).
+	 */
+	FileChannel getChannel() {
+		return null;
+	}
+	
+	long getChannelPosition(long pos) {
+		return pos;
+	}
+	
+	/**
+	 * Copies len bytes starting from absolute stream position srcPos to dst at
+	 * the current stream pointer of dst. The stream pointer of this stream is
+	 * not used or changed.
+	 * <p>
+	 * If both streams are backed by files, the bytes are moved from one channel to
+	 * the other without passing through the Java heap. Otherwise a buffer owned by
+	 * this stream is reused for the copy.
+	 * 
+	 * @param srcPos absolute position of the first byte to copy
+	 * @param len the number of bytes to copy
+	 * @param dst the RandomAccessOutputStream to copy to
+	 * @return the number of bytes copied which is always len
+	 * @throws EOFException if this stream ends before len bytes are copied
+	 * @throws IOException if any other I/O error occurs
+	 */
+	public long transferTo(long srcPos, long len, RandomAccessOutputStream dst) throws IOException {
+		ensureOpen();
+		if(srcPos < 0L || len < 0L)
+			throw new IndexOutOfBoundsException();
+		if(len == 0L)
+			return 0L;
+		FileChannel channel = getChannel();
+		if(channel != null) {
+			long position = getChannelPosition(srcPos);
+			if(position + len > channel.size())
+				throw new EOFException();
+			if(dst.transferFrom(channel, position, len))
+				return len;
+		}
+		synchronized(this) {
+			if(transferBuffer == null)
+				transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+			long remaining = len;
+			while(remaining > 0) {
+				int nbytes = (int)Math.min(remaining, TRANSFER_BUFFER_SIZE);
+				readFully(srcPos, transferBuffer, 0, nbytes);
+				dst.write(transferBuffer, 0, nbytes);
+				srcPos += nbytes;
+				remaining -= nbytes;
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Reads len doubles into dst starting at off using the current read strategy
+	 */
+	public final void readDoubles(double[] dst, int off, int len) throws IOException {
+		checkBulkRead(dst.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>3)<<3];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>3);
+			readFully(buf, 0, n<<3);
+			strategy.readDoubles(buf, 0, dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Reads len floats into dst starting at off using the current read strategy
+	 */
+	public final void readFloats(float[] dst, int off, int len) throws IOException {
+		checkBulkRead(dst.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>2)<<2];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>2);
+			readFully(buf, 0, n<<2);
+			strategy.readFloats(buf, 0, dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	
 	public final int readInt() throws IOException {
 		byte[] buf = new byte[4];
         readFully(buf);
     	return strategy.readInt(buf, 0);
 	}
 
+	/**
+	 * Reads len ints into dst starting at off using the current read strategy
+	 */
+	public final void readInts(int[] dst, int off, int len) throws IOException {
+		checkBulkRead(dst.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>2)<<2];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>2);
+			readFully(buf, 0, n<<2);
+			strategy.readInts(buf, 0, dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	
 	@Deprecated
 	public final String readLine() throws IOException {
 		throw new UnsupportedOperationException(
@@ -146,6 +316,26 @@ public abstract class RandomAccessInputStream extends InputStream implements Dat
     	return strategy.readShort(buf, 0);
 	}
 
+	/**
+	 * Reads len shorts into dst starting at off using the current read strategy
+	 */
+	public final void readShorts(short[] dst, int off, int len) throws IOException {
+		checkBulkRead(dst.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>1)<<1];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>1);
+			readFully(buf, 0, n<<1);
+			strategy.readShorts(buf, 0, dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private void checkBulkRead(int length, int off, int len) {
+		if(off < 0 || len < 0 || off + len > length)
+			throw new IndexOutOfBoundsException();
+	}
+
 	public final float readU16Fixed16Number() throws IOException {
 		byte[] buf = new byte[4];
         readFully(buf);
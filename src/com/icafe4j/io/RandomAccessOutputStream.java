@@ -14,6 +14,8 @@
  *
  * Who   Date       Description
  * ====  =======    =================================================
+ * WY    18Oct2026  Added bulk primitive array writes
+ * WY    18Oct2026  Added transferFrom() for channel to channel copy
  * WY    07Apr2015  Removed flush(), move it's function to close()
  */
 
@@ -23,6 +25,7 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Based on javax.imageio.stream.MemoryCache.java.
@@ -37,6 +40,9 @@ import java.io.OutputStream;
  */
 public abstract class RandomAccessOutputStream extends OutputStream implements DataOutput {
 
+	// Maximum number of bytes written at a time by the bulk primitive writes
+	private static final int BULK_BUFFER_SIZE = 8*1024;
+	
 	private WriteStrategy strategy = WriteStrategyMM.getInstance();
 	
 	/** The destination stream. */
@@ -98,6 +104,32 @@ public abstract class RandomAccessOutputStream extends OutputStream implements D
 	 */
 	public abstract long getStreamPointer();	
 	
+	/**
+	 * Writes count bytes of src starting from position at the current stream
+	 * pointer without copying them into the Java heap. Used by
+	 * RandomAccessInputStream.transferTo().
+	 * 
+	 * @return false if this stream can't take the bytes directly from a
+	 *         FileChannel, in which case nothing is written
+	 */
+	protected boolean transferFrom(FileChannel src, long position, long count) throws IOException {
+		return false;
+	}
+	
+	/**
+	 * Transfers count bytes from src starting from position to the current position
+	 * of the target channel. FileChannel.transferTo() may copy less than requested.
+	 */
+	static void transfer(FileChannel src, long position, long count, FileChannel target) throws IOException {
+		while(count > 0) {
+			long nbytes = src.transferTo(position, count, target);
+			if(nbytes <= 0)
+				throw new IOException("Failed to transfer channel data");
+			position += nbytes;
+			count -= nbytes;
+		}
+	}
+	
 	/** Reset this stream to be used again */
 	public abstract void reset();
 	
@@ -141,9 +173,39 @@ public abstract class RandomAccessOutputStream extends OutputStream implements D
 		 writeLong(Double.doubleToLongBits(value));
 	}
 
+	/**
+	 * Writes len doubles from src starting at off using the current write strategy
+	 */
+	public final void writeDoubles(double[] src, int off, int len) throws IOException {
+		checkBulkWrite(src.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>3)<<3];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>3);
+			strategy.writeDoubles(buf, 0, src, off, n);
+			this.write(buf, 0, n<<3);
+			off += n;
+			len -= n;
+		}
+	}
+	
 	public final void writeFloat(float value) throws IOException {
 		 writeInt(Float.floatToIntBits(value));
 	}
+	
+	/**
+	 * Writes len floats from src starting at off using the current write strategy
+	 */
+	public final void writeFloats(float[] src, int off, int len) throws IOException {
+		checkBulkWrite(src.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>2)<<2];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>2);
+			strategy.writeFloats(buf, 0, src, off, n);
+			this.write(buf, 0, n<<2);
+			off += n;
+			len -= n;
+		}
+	}
 
 	public final void writeInt(int value) throws IOException {
 		byte[] buf = new byte[4];
@@ -151,6 +213,21 @@ public abstract class RandomAccessOutputStream extends OutputStream implements D
 		this.write(buf, 0, 4);
 	}
 	
+	/**
+	 * Writes len ints from src starting at off using the current write strategy
+	 */
+	public final void writeInts(int[] src, int off, int len) throws IOException {
+		checkBulkWrite(src.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>2)<<2];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>2);
+			strategy.writeInts(buf, 0, src, off, n);
+			this.write(buf, 0, n<<2);
+			off += n;
+			len -= n;
+		}
+	}
+	
 	public final void writeLong(long value) throws IOException {
 		byte[] buf = new byte[8];
 		strategy.writeLong(buf, 0, value);
@@ -169,6 +246,26 @@ public abstract class RandomAccessOutputStream extends OutputStream implements D
 		this.write(buf, 0, 2);
 	} 
 		
+	/**
+	 * Writes len shorts from src starting at off using the current write strategy
+	 */
+	public final void writeShorts(short[] src, int off, int len) throws IOException {
+		checkBulkWrite(src.length, off, len);
+		byte[] buf = new byte[Math.min(len, BULK_BUFFER_SIZE>>1)<<1];
+		while(len > 0) {
+			int n = Math.min(len, buf.length>>1);
+			strategy.writeShorts(buf, 0, src, off, n);
+			this.write(buf, 0, n<<1);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	private void checkBulkWrite(int length, int off, int len) {
+		if(off < 0 || len < 0 || off + len > length)
+			throw new IndexOutOfBoundsException();
+	}
+	
 	public abstract void writeToStream(long len) throws IOException;
 
 	public final void writeU16Fixed16Number(float value) throws IOException {
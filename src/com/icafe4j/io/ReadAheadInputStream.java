@@ -0,0 +1,222 @@
+/**
+ * COPYRIGHT (C) 2014-2017 WEN YU (YUWEN_66@YAHOO.COM) ALL RIGHTS RESERVED.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.icafe4j.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads ahead of the consumer on a background thread so that decoding overlaps
+ * with slow sources such as pipes, sockets or network downloads.
+ * <p>
+ * Up to numBlocks blocks of the source are fetched into a bounded ring of buffers
+ * which are recycled once consumed. The worker is a virtual thread when the
+ * running JVM supports them, otherwise a daemon platform thread. It is only
+ * started on the first read.
+ * <p>
+ * NOTE: bytes which have been read ahead are lost to the source stream once this
+ * stream is stopped, so the source can't be used for anything else afterwards.
+ *
+ * @author Wen Yu, yuwen_66@yahoo.com
+ * @version 1.0 10/18/2026
+ */
+public class ReadAheadInputStream extends InputStream {
+	private static final int DEFAULT_BLOCK_SIZE = 64*1024;
+	private static final int DEFAULT_NUM_BLOCKS = 4;
+	// End of stream or error marker
+	private static final Block EOS = new Block(0);
+	// Tells a worker waiting for a free block to quit
+	private static final Block STOP = new Block(0);
+
+	private static Method ofVirtual;
+	private static Method unstarted;
+
+	static {
+		try { // Thread.ofVirtual().unstarted(Runnable), Java 21 and later
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch (Exception ex) {
+			ofVirtual = null;
+			unstarted = null;
+		}
+	}
+
+	private static class Block {
+		byte[] buf;
+		int length;
+		int pos;
+
+		Block(int size) {
+			buf = new byte[size];
+		}
+	}
+
+	private InputStream src;
+	private BlockingQueue<Block> free;
+	private BlockingQueue<Block> filled;
+	private Block current;
+	private Thread worker;
+	private volatile boolean stopped;
+	private volatile IOException error;
+
+	public ReadAheadInputStream(InputStream src) {
+		this(src, DEFAULT_BLOCK_SIZE, DEFAULT_NUM_BLOCKS);
+	}
+
+	/**
+	 * @param src the source InputStream
+	 * @param blockSize size of a single read ahead block
+	 * @param numBlocks maximum number of blocks to read ahead
+	 */
+	public ReadAheadInputStream(InputStream src, int blockSize, int numBlocks) {
+		if(blockSize <= 0 || numBlocks <= 0)
+			throw new IllegalArgumentException("Invalid block size or number of blocks");
+		this.src = src;
+		// One more slot for the end of stream marker
+		this.free = new ArrayBlockingQueue<Block>(numBlocks);
+		this.filled = new ArrayBlockingQueue<Block>(numBlocks + 1);
+		for(int i = 0; i < numBlocks; i++)
+			free.add(new Block(blockSize));
+	}
+
+	public int available() throws IOException {
+		ensureOpen();
+		int available = 0;
+		if(current != null && current != EOS)
+			available = current.length - current.pos;
+		return available;
+	}
+
+	/**
+	 * Stops reading ahead and closes the source stream
+	 */
+	public void close() throws IOException {
+		if(src == null) return;
+		stop();
+		src.close();
+		src = null;
+	}
+
+	private void ensureOpen() throws IOException {
+		if(stopped)
+			throw new IOException("Stream closed");
+	}
+
+	/**
+	 * Returns the current block, waiting for the worker if necessary.
+	 * Returns null on end of stream.
+	 */
+	private Block nextBlock() throws IOException {
+		while(current == null || current.pos >= current.length) {
+			if(current == EOS)
+				return null;
+			if(current != null)
+				free.offer(current);
+			if(worker == null)
+				startWorker();
+			try {
+				current = filled.take();
+			} catch (InterruptedException e) {
+				current = null;
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for read ahead");
+			}
+			if(current == EOS && error != null)
+				throw error;
+		}
+		return current;
+	}
+
+	public int read() throws IOException {
+		ensureOpen();
+		Block block = nextBlock();
+		if(block == null)
+			return -1;
+		return block.buf[block.pos++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(b == null)
+			throw new NullPointerException();
+		if(off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException();
+		if(len == 0)
+			return 0;
+		Block block = nextBlock();
+		if(block == null)
+			return -1;
+		int nbytes = Math.min(len, block.length - block.pos);
+		System.arraycopy(block.buf, block.pos, b, off, nbytes);
+		block.pos += nbytes;
+
+		return nbytes;
+	}
+
+	private void startWorker() {
+		final InputStream source = src;
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					while(!stopped) {
+						Block block = free.take();
+						if(block == STOP)
+							break;
+						int nbytes = source.read(block.buf, 0, block.buf.length);
+						if(nbytes < 0 || stopped)
+							break;
+						block.length = nbytes;
+						block.pos = 0;
+						filled.put(block);
+					}
+				} catch (InterruptedException e) {
+					// Treat as end of stream
+				} catch (IOException e) {
+					error = e;
+				} finally {
+					filled.offer(EOS);
+				}
+			}
+		};
+		worker = null;
+		if(ofVirtual != null) {
+			try {
+				worker = (Thread)unstarted.invoke(ofVirtual.invoke(null), task);
+			} catch (Exception ex) {
+				worker = null;
+			}
+		}
+		if(worker == null) {
+			worker = new Thread(task, "icafe-read-ahead");
+			worker.setDaemon(true);
+		}
+		worker.start();
+	}
+
+	/**
+	 * Stops reading ahead but leaves the source stream open. A worker blocked
+	 * in a read of the source quits once that read returns. The worker is not
+	 * interrupted since that would close interruptible channel based sources.
+	 */
+	public void stop() {
+		if(stopped) return;
+		stopped = true;
+		free.clear();
+		free.offer(STOP);
+		filled.clear();
+		current = null;
+	}
+}
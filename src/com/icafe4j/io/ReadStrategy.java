@@ -36,4 +36,25 @@ public interface ReadStrategy {
     public long readUnsignedInt(InputStream is) throws IOException;
     public int readUnsignedShort(byte[] buf, int start_idx);
     public int readUnsignedShort(InputStream is) throws IOException;
+    // Bulk reads, len is the number of values to read from buf into dst.
+    // The default versions read one value at a time, implementations may override them with faster ones.
+    public default void readDoubles(byte[] buf, int start_idx, double[] dst, int off, int len) {
+    	for(int i = 0; i < len; i++, start_idx += 8)
+    		dst[off + i] = Double.longBitsToDouble(readLong(buf, start_idx));
+    }
+    
+    public default void readFloats(byte[] buf, int start_idx, float[] dst, int off, int len) {
+    	for(int i = 0; i < len; i++, start_idx += 4)
+    		dst[off + i] = Float.intBitsToFloat(readInt(buf, start_idx));
+    }
+    
+    public default void readInts(byte[] buf, int start_idx, int[] dst, int off, int len) {
+    	for(int i = 0; i < len; i++, start_idx += 4)
+    		dst[off + i] = readInt(buf, start_idx);
+    }
+    
+    public default void readShorts(byte[] buf, int start_idx, short[] dst, int off, int len) {
+    	for(int i = 0; i < len; i++, start_idx += 2)
+    		dst[off + i] = readShort(buf, start_idx);
+    }
 }
\ No newline at end of file
@@ -13,6 +13,7 @@ package com.icafe4j.io;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Read strategy for Intel byte order LITTLE-ENDIAN stream.
@@ -141,5 +142,25 @@ public class ReadStrategyII implements ReadStrategy {
 		 IOUtils.readFully(is, buf);
 		
 		 return (((buf[1]&0xff)<<8)|(buf[0]&0xff));
-	 }    	 
+	 }
+
+	 private static ByteBuffer wrap(byte[] buf, int start_idx, int len) {
+		 return ByteBuffer.wrap(buf, start_idx, len).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+	 }
+
+	 public void readDoubles(byte[] buf, int start_idx, double[] dst, int off, int len) {
+		 wrap(buf, start_idx, len<<3).asDoubleBuffer().get(dst, off, len);
+	 }
+
+	 public void readFloats(byte[] buf, int start_idx, float[] dst, int off, int len) {
+		 wrap(buf, start_idx, len<<2).asFloatBuffer().get(dst, off, len);
+	 }
+
+	 public void readInts(byte[] buf, int start_idx, int[] dst, int off, int len) {
+		 wrap(buf, start_idx, len<<2).asIntBuffer().get(dst, off, len);
+	 }
+
+	 public void readShorts(byte[] buf, int start_idx, short[] dst, int off, int len) {
+		 wrap(buf, start_idx, len<<1).asShortBuffer().get(dst, off, len);
+	 }
 }
\ No newline at end of file
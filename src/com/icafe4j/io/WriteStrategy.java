@@ -32,4 +32,25 @@ public interface WriteStrategy {
 	public void writeU16Fixed16Number(OutputStream os, float value) throws IOException;
 	public void writeU8Fixed8Number(byte[] buf, int start_idx, float value) throws IOException;
     public void writeU8Fixed8Number(OutputStream is, float value) throws IOException;
+	// Bulk writes, len is the number of values to write from src into buf.
+	// The default versions write one value at a time, implementations may override them with faster ones.
+	public default void writeDoubles(byte[] buf, int start_idx, double[] src, int off, int len) throws IOException {
+		for(int i = 0; i < len; i++, start_idx += 8)
+			writeLong(buf, start_idx, Double.doubleToLongBits(src[off + i]));
+	}
+	
+	public default void writeFloats(byte[] buf, int start_idx, float[] src, int off, int len) throws IOException {
+		for(int i = 0; i < len; i++, start_idx += 4)
+			writeInt(buf, start_idx, Float.floatToIntBits(src[off + i]));
+	}
+	
+	public default void writeInts(byte[] buf, int start_idx, int[] src, int off, int len) throws IOException {
+		for(int i = 0; i < len; i++, start_idx += 4)
+			writeInt(buf, start_idx, src[off + i]);
+	}
+	
+	public default void writeShorts(byte[] buf, int start_idx, short[] src, int off, int len) throws IOException {
+		for(int i = 0; i < len; i++, start_idx += 2)
+			writeShort(buf, start_idx, src[off + i]);
+	}
 }
\ No newline at end of file
@@ -13,6 +13,7 @@ package com.icafe4j.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * @author Wen Yu, yuwen_66@yahoo.com
@@ -199,4 +200,24 @@ public class WriteStrategyMM implements WriteStrategy {
 				  });
 		}
 	}
+
+	private static ByteBuffer wrap(byte[] buf, int start_idx, int len) {
+		return ByteBuffer.wrap(buf, start_idx, len).order(java.nio.ByteOrder.BIG_ENDIAN);
+	}
+
+	public void writeDoubles(byte[] buf, int start_idx, double[] src, int off, int len) {
+		wrap(buf, start_idx, len<<3).asDoubleBuffer().put(src, off, len);
+	}
+
+	public void writeFloats(byte[] buf, int start_idx, float[] src, int off, int len) {
+		wrap(buf, start_idx, len<<2).asFloatBuffer().put(src, off, len);
+	}
+
+	public void writeInts(byte[] buf, int start_idx, int[] src, int off, int len) {
+		wrap(buf, start_idx, len<<2).asIntBuffer().put(src, off, len);
+	}
+
+	public void writeShorts(byte[] buf, int start_idx, short[] src, int off, int len) {
+		wrap(buf, start_idx, len<<1).asShortBuffer().put(src, off, len);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.icafe4j.image.ImageIO;
+import com.icafe4j.image.ImageParam;
+import com.icafe4j.image.ImageType;
+
+/**
+ * Checks that the BMP, PNG and TIFF readers decode into the destination image
+ * of the ImageParam when it fits, and leave a destination of the wrong size or
+ * type alone and return a new image instead. Also reads through a FileInputStream,
+ * which ImageIO.read rewinds instead of wrapping.
+ */
+public class TestDestination extends TestBase {
+	private static final int WIDTH = 45;
+	private static final int HEIGHT = 29;
+	// Marks destination pixels which haven't been written
+	private static final int UNTOUCHED = 0x12345678;
+
+	public static void main(String[] args) throws Exception {
+		new TestDestination().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(19);
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+				image.setRGB(x, y, random.nextInt());
+
+		ImageType[] types = {ImageType.BMP, ImageType.PNG, ImageType.TIFF};
+		for(ImageType type : types) {
+			byte[] data = write(image, type);
+			BufferedImage expected = ImageIO.read(new ByteArrayInputStream(data));
+			String name = type.toString();
+
+			checkUsed(name + " INT_RGB", data, expected, BufferedImage.TYPE_INT_RGB, 1);
+			checkUsed(name + " INT_ARGB", data, expected, BufferedImage.TYPE_INT_ARGB, 1);
+			checkUsed(name + " subsampled", data, expected, BufferedImage.TYPE_INT_RGB, 2);
+			checkUnused(name + " wrong width", data, new BufferedImage(WIDTH + 1, HEIGHT, BufferedImage.TYPE_INT_RGB));
+			checkUnused(name + " wrong height", data, new BufferedImage(WIDTH, HEIGHT - 1, BufferedImage.TYPE_INT_RGB));
+			checkUnused(name + " wrong type", data, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR));
+			// Sub images don't start at the beginning of the data buffer
+			checkUnused(name + " sub image", data, new BufferedImage(WIDTH + 2, HEIGHT + 2, BufferedImage.TYPE_INT_RGB).getSubimage(1, 1, WIDTH, HEIGHT));
+			checkFile(name, data, expected);
+		}
+
+		// An image with alpha can't go into an INT_RGB destination
+		BufferedImage argb = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+				argb.setRGB(x, y, ((x*5)<<24)|image.getRGB(x, y)&0xffffff);
+		// PNGWriter drops the alpha channel unless asked otherwise, the JDK writer keeps it
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		javax.imageio.ImageIO.write(argb, "png", bout);
+		byte[] png = bout.toByteArray();
+		checkUnused("PNG with alpha into INT_RGB", png, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB));
+		checkUsed("PNG with alpha into INT_ARGB", png, ImageIO.read(new ByteArrayInputStream(png)), BufferedImage.TYPE_INT_ARGB, 1);
+
+		logger.info("All checks passed");
+	}
+
+	private void checkUsed(String name, byte[] data, BufferedImage expected, int type, int step) throws Exception {
+		BufferedImage destination = new BufferedImage((WIDTH + step - 1)/step, (HEIGHT + step - 1)/step, type);
+		fill(destination);
+		ImageParam param = ImageParam.getBuilder().destination(destination).sourceSubsampling(step, step).build();
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data), param);
+		if(image != destination)
+			throw new IllegalStateException("Check failed: " + name + " destination not used");
+		compare(name, image, expected, step);
+	}
+
+	private void checkUnused(String name, byte[] data, BufferedImage destination) throws Exception {
+		fill(destination);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data), ImageParam.getBuilder().destination(destination).build());
+		if(image == destination)
+			throw new IllegalStateException("Check failed: " + name + " destination used");
+		for(int y = 0; y < destination.getHeight(); y++) {
+			for(int x = 0; x < destination.getWidth(); x++) {
+				if(destination.getRGB(x, y) != (UNTOUCHED|0xff000000) && destination.getRGB(x, y) != UNTOUCHED)
+					throw new IllegalStateException("Check failed: " + name + " destination written at " + x + "," + y);
+			}
+		}
+		if(image.getWidth() != WIDTH || image.getHeight() != HEIGHT)
+			throw new IllegalStateException("Check failed: " + name + " read as " + image.getWidth() + "x" + image.getHeight());
+	}
+
+	// ImageIO.read rewinds a FileInputStream after checking the magic number
+	private void checkFile(String name, byte[] data, BufferedImage expected) throws Exception {
+		File file = File.createTempFile("cafe-TestDestination-", ".img");
+		file.deleteOnExit();
+		FileOutputStream fout = new FileOutputStream(file);
+		fout.write(data);
+		fout.close();
+		BufferedImage destination = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		fill(destination);
+		FileInputStream fin = new FileInputStream(file);
+		try {
+			BufferedImage image = ImageIO.read(fin, ImageParam.getBuilder().destination(destination).build());
+			if(image != destination)
+				throw new IllegalStateException("Check failed: " + name + " destination not used reading from a file");
+			compare(name + " from a file", image, expected, 1);
+		} finally {
+			fin.close();
+		}
+		file.delete();
+	}
+
+	private static void compare(String name, BufferedImage image, BufferedImage expected, int step) {
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				if(image.getRGB(x, y) != expected.getRGB(x*step, y*step))
+					throw new IllegalStateException("Check failed: " + name + " mismatch at " + x + "," + y);
+			}
+		}
+	}
+
+	private static void fill(BufferedImage image) {
+		int[] row = new int[image.getWidth()];
+		Arrays.fill(row, UNTOUCHED);
+		for(int y = 0; y < image.getHeight(); y++)
+			image.setRGB(0, y, row.length, 1, row, 0, row.length);
+	}
+
+	private static byte[] write(BufferedImage image, ImageType imageType) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ImageIO.write(image, bout, imageType);
+		return bout.toByteArray();
+	}
+}
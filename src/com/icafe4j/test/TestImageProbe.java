@@ -0,0 +1,85 @@
+package com.icafe4j.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.icafe4j.image.ImageIO;
+import com.icafe4j.image.ImageInfo;
+
+/**
+ * Measures header probing throughput in files per second against full decoding.
+ * Usage: TestImageProbe directory [rounds]
+ */
+public class TestImageProbe extends TestBase {
+
+	public static void main(String[] args) throws Exception {
+		new TestImageProbe().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		File[] entries = new File(args[0]).listFiles();
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		List<File> files = new ArrayList<File>();
+
+		for(File entry : entries) {
+			if(!entry.isFile()) continue;
+			FileInputStream fin = new FileInputStream(entry);
+			try {
+				ImageInfo info = ImageIO.probe(fin);
+				// The file position must be left alone so that probing again gives the same result
+				if(fin.getChannel().position() != 0)
+					throw new IllegalStateException("Check failed: probe moved the file position of " + entry.getName());
+				if(info == null) continue;
+				ImageInfo again = ImageIO.probe(fin);
+				if(!info.toString().equals(String.valueOf(again)))
+					throw new IllegalStateException("Check failed: probing " + entry.getName() + " twice gave different results");
+				logger.info("{}: {}", entry.getName(), info);
+				files.add(entry);
+			} catch(IllegalStateException ex) {
+				if(ex.getMessage() != null && ex.getMessage().startsWith("Check failed"))
+					throw ex;
+				logger.warn("{}: {}", entry.getName(), ex.getMessage());
+			} catch(Exception ex) {
+				logger.warn("{}: {}", entry.getName(), ex.getMessage());
+			} finally {
+				fin.close();
+			}
+		}
+
+		if(files.isEmpty()) {
+			logger.error("No image found in {}", args[0]);
+			return;
+		}
+
+		long t1 = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			for(File file : files) {
+				FileInputStream fin = new FileInputStream(file);
+				ImageIO.probe(fin);
+				fin.close();
+			}
+		}
+		long t2 = System.nanoTime();
+
+		logger.info("Probing: {} files/s", (long)(files.size()*rounds*1.0e9/(t2 - t1)));
+
+		int decoded = 0;
+		t1 = System.nanoTime();
+		for(File file : files) {
+			FileInputStream fin = new FileInputStream(file);
+			try {
+				ImageIO.read(fin);
+				decoded++;
+			} catch(Exception ex) {
+				// Skip images the readers don't support
+			} finally {
+				fin.close();
+			}
+		}
+		t2 = System.nanoTime();
+
+		logger.info("Decoding: {} files/s", (long)(decoded*1.0e9/(t2 - t1)));
+	}
+}
@@ -0,0 +1,115 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.icafe4j.image.reader.JPGReader;
+
+/**
+ * Benchmarks JPGReader against the JDK JPEG decoder and compares the pixels decoded.
+ * Usage: TestJPEGDecoder directory [rounds]
+ * <p>
+ * The images in the directory named by ICC_IMAGES carry an embedded RGB profile
+ * and must decode close to the JDK, images/sea.jpg for example.
+ */
+public class TestJPEGDecoder extends TestBase {
+	// Images with an embedded non-sRGB profile and the largest mean difference allowed
+	private static final List<String> ICC_IMAGES = Arrays.asList("sea.jpg", "darwin-station-wheelie.jpg");
+	private static final double MAX_ICC_MEAN_DIFFERENCE = 1.5;
+
+	public static void main(String[] args) throws Exception {
+		new TestJPEGDecoder().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		File[] entries = new File(args[0]).listFiles();
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		List<File> files = new ArrayList<File>();
+		List<String> failed = new ArrayList<String>();
+		JPGReader reader = new JPGReader();
+
+		for(File entry : entries) {
+			String name = entry.getName().toLowerCase();
+			if(!entry.isFile() || !(name.endsWith(".jpg") || name.endsWith(".jpeg"))) continue;
+			BufferedImage image = null;
+			BufferedImage reference = null;
+			try {
+				image = decode(reader, entry);
+				reference = javax.imageio.ImageIO.read(entry);
+			} catch(Exception ex) {
+				logger.warn("{}: {}", entry.getName(), ex.getMessage());
+				continue;
+			}
+			if(reference == null) continue;
+			files.add(entry);
+			if(image.getWidth() != reference.getWidth() || image.getHeight() != reference.getHeight()) {
+				logger.error("{}: size {}x{} differs from the JDK's {}x{}", entry.getName(), image.getWidth(), image.getHeight(),
+						reference.getWidth(), reference.getHeight());
+				continue;
+			}
+			int w = image.getWidth();
+			int h = image.getHeight();
+			int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+			int[] expected = reference.getRGB(0, 0, w, h, null, 0, w);
+			int maxDiff = 0;
+			long sumDiff = 0;
+			for(int i = 0; i < pixels.length; i++) {
+				for(int shift = 0; shift < 24; shift += 8) {
+					int diff = Math.abs(((pixels[i]>>shift)&0xff) - ((expected[i]>>shift)&0xff));
+					maxDiff = Math.max(maxDiff, diff);
+					sumDiff += diff;
+				}
+			}
+			double meanDiff = sumDiff/(3.0*pixels.length);
+			logger.info("{}: {}x{} max difference {}, mean difference {}", entry.getName(), w, h, maxDiff,
+					String.format("%.3f", meanDiff));
+			if(ICC_IMAGES.contains(entry.getName()) && meanDiff > MAX_ICC_MEAN_DIFFERENCE)
+				failed.add(entry.getName());
+		}
+
+		if(!failed.isEmpty())
+			throw new IllegalStateException("Embedded ICC profile not applied: " + failed);
+
+		if(files.isEmpty()) {
+			logger.error("No JPEG image decoded in {}", args[0]);
+			return;
+		}
+
+		// Warm up both decoders before timing
+		for(File file : files) {
+			decode(reader, file);
+			javax.imageio.ImageIO.read(file);
+		}
+
+		long t1 = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			for(File file : files)
+				decode(reader, file);
+		}
+		long t2 = System.nanoTime();
+
+		logger.info("JPGReader: {} ms per round", (t2 - t1)/1000000/rounds);
+
+		t1 = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			for(File file : files)
+				javax.imageio.ImageIO.read(file);
+		}
+		t2 = System.nanoTime();
+
+		logger.info("JDK decoder: {} ms per round", (t2 - t1)/1000000/rounds);
+	}
+
+	private static BufferedImage decode(JPGReader reader, File file) throws Exception {
+		FileInputStream fin = new FileInputStream(file);
+		try {
+			return reader.read(fin);
+		} finally {
+			fin.close();
+		}
+	}
+}
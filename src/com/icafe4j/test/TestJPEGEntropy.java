@@ -0,0 +1,149 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.icafe4j.image.ImageColorType;
+import com.icafe4j.image.ImageParam;
+import com.icafe4j.image.jpeg.ProgressiveScan;
+import com.icafe4j.image.options.JPEGOptions;
+import com.icafe4j.image.reader.JPGReader;
+import com.icafe4j.image.writer.JPEGWriter;
+
+/**
+ * Round trips images through JPEGWriter with optimized Huffman tables and as
+ * progressive JPEG, with the default and a spectral selection only scan script.
+ * The entropy coding is lossless, so JPGReader and the JDK decoder have to give
+ * the same pixels as for the baseline image with the default tables. The images
+ * include 1x1 images and mid gray images whose optimized tables have a single
+ * symbol each: all the DC differences are 0 and all the blocks end right away.
+ */
+public class TestJPEGEntropy extends TestBase {
+
+	public static void main(String[] args) throws Exception {
+		new TestJPEGEntropy().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		Random random = new Random(24);
+		BufferedImage pixel = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+		pixel.setRGB(0, 0, 0x3c8fd2);
+		BufferedImage noise = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < noise.getHeight(); y++)
+			for(int x = 0; x < noise.getWidth(); x++)
+				noise.setRGB(x, y, ((x*7)<<16)|((y*11)<<8)|random.nextInt(256));
+
+		check("1x1", pixel, false);
+		check("1x1 gray", pixel, true);
+		check("1x1 mid gray", fill(1, 1, 0x808080), false);
+		check("24x16 mid gray", fill(24, 16, 0x808080), false);
+		check("24x16 mid gray grayscale", fill(24, 16, 0x808080), true);
+		check("37x23", noise, false);
+		check("37x23 gray", noise, true);
+
+		// Mid gray is level shifted to all zero coefficients
+		byte[] jpeg = write(fill(24, 16, 0x808080), false, new int[] {1, 1}, true, false, null);
+		if(maxSymbols(jpeg) != 1)
+			throw new IllegalStateException("Check failed: mid gray optimized Huffman table with " + maxSymbols(jpeg) + " symbols");
+		jpeg = write(fill(24, 16, 0x808080), false, new int[] {1, 1}, false, true, null);
+		if(maxSymbols(jpeg) != 1)
+			throw new IllegalStateException("Check failed: mid gray progressive Huffman table with " + maxSymbols(jpeg) + " symbols");
+
+		logger.info("All checks passed");
+	}
+
+	private void check(String name, BufferedImage image, boolean gray) throws Exception {
+		int numOfComponents = gray ? 1 : 3;
+		// Spectral selection only, each component in its own AC scans
+		List<ProgressiveScan> script = new ArrayList<ProgressiveScan>();
+		int[] all = new int[numOfComponents];
+		for(int i = 0; i < numOfComponents; i++)
+			all[i] = i;
+		script.add(new ProgressiveScan(all, 0, 0, 0, 0));
+		for(int i = 0; i < numOfComponents; i++) {
+			script.add(new ProgressiveScan(new int[] {i}, 1, 9, 0, 0));
+			script.add(new ProgressiveScan(new int[] {i}, 10, 63, 0, 0));
+		}
+
+		int[][] samplingFactors = gray ? new int[][] {{1, 1}} : new int[][] {{1, 1}, {2, 2}};
+		for(int[] factors : samplingFactors) {
+			String what = name + " sampled " + factors[0] + "x" + factors[1];
+			byte[] baseline = write(image, gray, factors, false, false, null);
+			BufferedImage expected = new JPGReader().read(new ByteArrayInputStream(baseline));
+			BufferedImage jdkExpected = javax.imageio.ImageIO.read(new ByteArrayInputStream(baseline));
+
+			byte[] optimized = write(image, gray, factors, true, false, null);
+			byte[] progressive = write(image, gray, factors, false, true, null);
+			byte[] spectral = write(image, gray, factors, false, true, script);
+			logger.info("{}: baseline {} bytes, optimized {}, progressive {}, spectral selection {}", what,
+				baseline.length, optimized.length, progressive.length, spectral.length);
+			if(optimized.length > baseline.length)
+				throw new IllegalStateException("Check failed: " + what + " optimized Huffman tables made the image larger");
+
+			check(what + " optimized", optimized, expected, jdkExpected);
+			check(what + " progressive", progressive, expected, jdkExpected);
+			check(what + " spectral selection", spectral, expected, jdkExpected);
+		}
+	}
+
+	private static void check(String name, byte[] jpeg, BufferedImage expected, BufferedImage jdkExpected) throws Exception {
+		compare(name, new JPGReader().read(new ByteArrayInputStream(jpeg)), expected, "read by JPGReader");
+		compare(name, javax.imageio.ImageIO.read(new ByteArrayInputStream(jpeg)), jdkExpected, "read by the JDK");
+	}
+
+	private static byte[] write(BufferedImage image, boolean gray, int[] factors, boolean optimizeHuffman, boolean progressive, List<ProgressiveScan> script) throws Exception {
+		JPEGOptions options = new JPEGOptions();
+		options.setQuality(85);
+		options.setColorSpace(JPEGOptions.COLOR_SPACE_YCbCr);
+		options.setSamplingFactors(factors[0], factors[1]);
+		options.setOptimizeHuffman(optimizeHuffman);
+		options.setProgressive(progressive);
+		options.setScanScript(script);
+		JPEGWriter writer = new JPEGWriter();
+		writer.setImageParam(ImageParam.getBuilder().colorType(gray ? ImageColorType.GRAY_SCALE : ImageColorType.FULL_COLOR).imageOptions(options).build());
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		writer.write(image, bout);
+		return bout.toByteArray();
+	}
+
+	// Largest number of symbols in the Huffman tables of all the DHT segments. Stuffing
+	// keeps 0xFFC4 out of the entropy coded data, so the whole image can be searched.
+	private static int maxSymbols(byte[] jpeg) {
+		int max = 0;
+		for(int i = 0; i + 4 <= jpeg.length; i++) {
+			if((jpeg[i]&0xff) != 0xff || (jpeg[i + 1]&0xff) != 0xc4) continue;
+			int length = ((jpeg[i + 2]&0xff)<<8)|(jpeg[i + 3]&0xff);
+			for(int offset = i + 4; offset < i + 2 + length; ) {
+				int symbols = 0;
+				for(int j = 1; j <= 16; j++)
+					symbols += jpeg[offset + j]&0xff;
+				max = Math.max(max, symbols);
+				offset += 17 + symbols;
+			}
+		}
+		return max;
+	}
+
+	private static BufferedImage fill(int width, int height, int rgb) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)
+				image.setRGB(x, y, rgb);
+		return image;
+	}
+
+	private static void compare(String name, BufferedImage image, BufferedImage expected, String how) {
+		if(image.getWidth() != expected.getWidth() || image.getHeight() != expected.getHeight())
+			throw new IllegalStateException("Check failed: " + name + " " + how + " as " + image.getWidth() + "x" + image.getHeight());
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				if(image.getRGB(x, y) != expected.getRGB(x, y))
+					throw new IllegalStateException("Check failed: " + name + " " + how + " mismatch at " + x + "," + y);
+			}
+		}
+	}
+}
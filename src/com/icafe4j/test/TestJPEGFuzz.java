@@ -0,0 +1,141 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.icafe4j.image.ImageParam;
+import com.icafe4j.image.compression.UnsupportedCompressionException;
+import com.icafe4j.image.options.JPEGOptions;
+import com.icafe4j.image.reader.JPGReader;
+import com.icafe4j.image.writer.JPEGWriter;
+
+/**
+ * Feeds truncated and byte-flipped JPEG images to JPGReader. Corrupt input must
+ * either decode or fail with an IOException, or with one of the exceptions used
+ * for unsupported JPEG flavors, never with any other exception.
+ * <p>
+ * The variants are generated with a fixed seed from images written by JPEGWriter
+ * in several modes plus the JPEG images in the optional directory argument.
+ * Usage: TestJPEGFuzz [directory]
+ */
+public class TestJPEGFuzz extends TestBase {
+	private static final int VARIANTS = 30;
+
+	public static void main(String[] args) throws Exception {
+		new TestJPEGFuzz().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		List<byte[]> samples = new ArrayList<byte[]>();
+		List<String> names = new ArrayList<String>();
+		BufferedImage image = createImage(97, 61);
+		// Color space, horizontal and vertical sampling, progressive, optimized Huffman tables
+		int[][] modes = {
+			{JPEGOptions.COLOR_SPACE_YCbCr, 1, 1, 0, 0},
+			{JPEGOptions.COLOR_SPACE_YCbCr, 2, 2, 0, 1},
+			{JPEGOptions.COLOR_SPACE_YCbCr, 1, 1, 1, 0},
+			{JPEGOptions.COLOR_SPACE_YCbCr, 2, 1, 1, 0},
+			{JPEGOptions.COLOR_SPACE_RGB, 1, 1, 0, 1},
+			{JPEGOptions.COLOR_SPACE_CMYK, 1, 1, 1, 0},
+			{JPEGOptions.COLOR_SPACE_YCCK, 1, 1, 0, 0}
+		};
+		for(int[] mode : modes) {
+			samples.add(write(image, mode));
+			names.add("mode " + Arrays.toString(mode));
+		}
+		if(args.length > 0) {
+			File[] entries = new File(args[0]).listFiles();
+			for(File entry : entries) {
+				String name = entry.getName().toLowerCase();
+				if(entry.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg")) && entry.length() < 1000000) {
+					samples.add(Files.readAllBytes(entry.toPath()));
+					names.add(entry.getName());
+				}
+			}
+		}
+
+		JPGReader reader = new JPGReader();
+		Random random = new Random(20261018L);
+		int decoded = 0, rejected = 0, unsupported = 0;
+		List<String> failures = new ArrayList<String>();
+
+		for(int s = 0; s < samples.size(); s++) {
+			byte[] sample = samples.get(s);
+			for(int v = 0; v < VARIANTS; v++) {
+				byte[] data = mutate(sample, v, random);
+				try {
+					reader.read(new ByteArrayInputStream(data));
+					decoded++;
+				} catch(IOException ex) {
+					rejected++;
+				} catch(UnsupportedCompressionException ex) {
+					unsupported++;
+				} catch(UnsupportedOperationException ex) {
+					unsupported++;
+				} catch(Exception ex) {
+					StackTraceElement[] trace = ex.getStackTrace();
+					failures.add(names.get(s) + " variant " + v + ": " + ex + ((trace.length > 0) ? " at " + trace[0] : ""));
+				}
+				reader.reset();
+			}
+		}
+
+		logger.info("{} variants decoded, {} rejected with IOException, {} unsupported", decoded, rejected, unsupported);
+
+		if(!failures.isEmpty()) {
+			for(String failure : failures)
+				logger.error(failure);
+			throw new IllegalStateException("Check failed: " + failures.size() + " corrupt images threw unexpected exceptions");
+		}
+	}
+
+	// Truncates the first third of the variants, flips a few bytes in the rest, mostly in the headers
+	private static byte[] mutate(byte[] sample, int variant, Random random) {
+		if(variant < VARIANTS/3)
+			return Arrays.copyOf(sample, 2 + random.nextInt(sample.length - 2));
+		byte[] data = sample.clone();
+		int flips = 1 + random.nextInt(4);
+		int range = (variant%2 == 0) ? Math.min(data.length, 1024) : data.length;
+		for(int i = 0; i < flips; i++) {
+			int pos = 2 + random.nextInt(range - 2);
+			data[pos] = (byte)random.nextInt(256);
+		}
+		return data;
+	}
+
+	private static byte[] write(BufferedImage image, int[] mode) throws Exception {
+		JPEGOptions options = new JPEGOptions();
+		options.setQuality(80);
+		options.setColorSpace(mode[0]);
+		options.setSamplingFactors(mode[1], mode[2]);
+		options.setProgressive(mode[3] == 1);
+		options.setOptimizeHuffman(mode[4] == 1);
+		JPEGWriter writer = new JPEGWriter();
+		writer.setImageParam(ImageParam.getBuilder().imageOptions(options).build());
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		writer.write(image, bout);
+		return bout.toByteArray();
+	}
+
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(1);
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				int r = x*255/width;
+				int g = y*255/height;
+				int b = (x*y + random.nextInt(32))&0xff;
+				image.setRGB(x, y, (r<<16)|(g<<8)|b);
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,103 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.icafe4j.image.ImageParam;
+import com.icafe4j.image.options.JPEGOptions;
+import com.icafe4j.image.reader.JPGReader;
+import com.icafe4j.image.writer.JPEGWriter;
+
+/**
+ * Round trips smooth color gradients through JPEGWriter with 1x1, 2x1, 1x2 and
+ * 2x2 chroma sampling and checks the mean error read back by JPGReader and by the
+ * JDK decoder. Odd image sizes leave partial chroma blocks at the right and bottom
+ * edges and have to stay close to the error of a large image.
+ */
+public class TestJPEGSampling extends TestBase {
+	private static final int[][] SAMPLING_FACTORS = {{1, 1}, {2, 1}, {1, 2}, {2, 2}};
+
+	public static void main(String[] args) throws Exception {
+		new TestJPEGSampling().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		// Width, height and mean error bound
+		double[][] sizes = {{1, 1, 0.5}, {17, 9, 3.5}, {9, 17, 3.5}, {33, 17, 2.5}, {641, 479, 1.0}};
+		for(double[] size : sizes) {
+			BufferedImage image = createImage((int)size[0], (int)size[1]);
+			for(int[] factors : SAMPLING_FACTORS)
+				check(image, factors[0], factors[1], size[2]);
+		}
+
+		// Subsampled reads interpolate chroma at every xStep-th pixel
+		BufferedImage image = createImage(101, 67);
+		byte[] jpeg = write(image, 2, 2);
+		BufferedImage full = new JPGReader().read(new ByteArrayInputStream(jpeg));
+		JPGReader reader = new JPGReader();
+		reader.setImageParam(ImageParam.getBuilder().sourceSubsampling(3, 3).build());
+		BufferedImage subsampled = reader.read(new ByteArrayInputStream(jpeg));
+		for(int y = 0; y < subsampled.getHeight(); y++) {
+			for(int x = 0; x < subsampled.getWidth(); x++) {
+				if(subsampled.getRGB(x, y) != full.getRGB(x*3, y*3))
+					throw new IllegalStateException("Check failed: 2x2 subsampled read mismatch at " + x + "," + y);
+			}
+		}
+
+		logger.info("All checks passed");
+	}
+
+	private void check(BufferedImage image, int h, int v, double bound) throws Exception {
+		byte[] jpeg = write(image, h, v);
+		String name = image.getWidth() + "x" + image.getHeight() + " sampled " + h + "x" + v;
+		double error = meanError(image, new JPGReader().read(new ByteArrayInputStream(jpeg)));
+		double jdkError = meanError(image, javax.imageio.ImageIO.read(new ByteArrayInputStream(jpeg)));
+		logger.info("{}: {} bytes, mean error {} JPGReader, {} JDK", name, jpeg.length, String.format("%.2f", error), String.format("%.2f", jdkError));
+		if(error > bound)
+			throw new IllegalStateException("Check failed: " + name + " mean error " + error + " read by JPGReader");
+		// The JDK decoder repeats chroma subsampled vertically only instead of interpolating it
+		if(jdkError > ((h == 1 && v == 2) ? 2*bound : bound))
+			throw new IllegalStateException("Check failed: " + name + " mean error " + jdkError + " read by the JDK decoder");
+	}
+
+	private static byte[] write(BufferedImage image, int h, int v) throws Exception {
+		JPEGOptions options = new JPEGOptions();
+		options.setQuality(90);
+		options.setColorSpace(JPEGOptions.COLOR_SPACE_YCbCr);
+		options.setSamplingFactors(h, v);
+		JPEGWriter writer = new JPEGWriter();
+		writer.setImageParam(ImageParam.getBuilder().imageOptions(options).build());
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		writer.write(image, bout);
+		return bout.toByteArray();
+	}
+
+	// Red across, green down and blue along the diagonal, each from 0 to 255
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				int r = x*255/Math.max(1, width - 1);
+				int g = y*255/Math.max(1, height - 1);
+				int b = (x + y)*255/Math.max(1, width + height - 2);
+				image.setRGB(x, y, (r<<16)|(g<<8)|b);
+			}
+		}
+		return image;
+	}
+
+	private static double meanError(BufferedImage expected, BufferedImage image) {
+		if(image.getWidth() != expected.getWidth() || image.getHeight() != expected.getHeight())
+			throw new IllegalStateException("Check failed: read as " + image.getWidth() + "x" + image.getHeight());
+		long sum = 0;
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				int p = expected.getRGB(x, y), q = image.getRGB(x, y);
+				for(int shift = 0; shift < 24; shift += 8)
+					sum += Math.abs(((p>>shift)&0xff) - ((q>>shift)&0xff));
+			}
+		}
+		return (double)sum/(3L*image.getWidth()*image.getHeight());
+	}
+}
@@ -1,10 +1,30 @@
 package com.icafe4j.test;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
 
+import com.icafe4j.image.meta.Metadata;
+import com.icafe4j.image.meta.MetadataType;
+import com.icafe4j.image.writer.JPEGWriter;
+import com.icafe4j.io.ByteRangeRandomAccessInputStream;
+import com.icafe4j.io.FileByteRangeSource;
 import com.icafe4j.io.FileCacheRandomAccessInputStream;
+import com.icafe4j.io.FileMapRandomAccessInputStream;
+import com.icafe4j.io.IOUtils;
+import com.icafe4j.io.MemoryCacheRandomAccessInputStream;
 import com.icafe4j.io.MemoryCacheRandomAccessOutputStream;
+import com.icafe4j.io.PagePool;
 import com.icafe4j.io.RandomAccessInputStream;
 import com.icafe4j.io.RandomAccessOutputStream;
 import com.icafe4j.io.ReadStrategyII;
@@ -56,5 +76,164 @@ public class TestRandomStream extends TestBase {
 		logger.info("{}", randin.readU16Fixed16Number());
 		logger.info("{}", randin.readU8Fixed8Number());
 		randin.close();
+		// Read the same data again directly from the file through memory mapping
+		randin = new FileMapRandomAccessInputStream(new FileInputStream("test.txt"));
+		logger.info(randin.readUTF());
+		randin.setReadStrategy(ReadStrategyII.getInstance());
+		logger.info("{}", randin.readChar());
+		logger.info("{}", randin.readInt());
+		randin.seek(0);
+		logger.info(randin.readUTF());
+		randin.close();
+		
+		testRandomAccess();
+	}
+	
+	// Exercise page and block boundaries, seeks in both directions, positional reads and EOF
+	// on the different RandomAccessInputStream implementations over the same data
+	private void testRandomAccess() throws Exception {
+		// Page sizes below are chosen not to divide the data length
+		byte[] data = new byte[100003];
+		new Random(7).nextBytes(data);
+		File file = File.createTempFile("cafe-TestRandomStream-", ".tmp");
+		file.deleteOnExit();
+		FileOutputStream fout = new FileOutputStream(file);
+		fout.write(data);
+		fout.close();
+		
+		check(new FileCacheRandomAccessInputStream(new ByteArrayInputStream(data), 1000, 4), data);
+		testSourceReads(data);
+		check(new FileCacheRandomAccessInputStream(new FileInputStream(file), 4096, 2, true), data);
+		check(new MemoryCacheRandomAccessInputStream(new ByteArrayInputStream(data), new PagePool(1024, 64*1024)), data);
+		check(new FileMapRandomAccessInputStream(new FileInputStream(file), 3000), data);
+		
+		FileByteRangeSource source = new FileByteRangeSource(file);
+		// Closing the stream closes the source as well
+		check(new ByteRangeRandomAccessInputStream(source, 1000, 4), data);
+		logger.info("FileByteRangeSource: {} requests, {} bytes fetched", source.getRequests(), source.getBytesFetched());
+		// Ranges past the end of the source are cut short
+		source = new FileByteRangeSource(file);
+		assertTrue(source.length() == data.length, "FileByteRangeSource length");
+		byte[] range = source.read(data.length - 10, 100);
+		assertTrue(Arrays.equals(range, Arrays.copyOfRange(data, data.length - 10, data.length)), "FileByteRangeSource range crossing the end");
+		assertTrue(source.read(data.length + 10, 100).length == 0, "FileByteRangeSource range past the end");
+		source.close();
+		
+		testJPEGMetadataRange();
+		
+		file.delete();
+		logger.info("Random access tests passed");
+	}
+	
+	// Reading JPEG metadata must not fetch the scan data
+	private void testJPEGMetadataRange() throws Exception {
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(3);
+		for(int y = 0; y < image.getHeight(); y++)
+			for(int x = 0; x < image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		File file = File.createTempFile("cafe-TestRandomStream-", ".jpg");
+		file.deleteOnExit();
+		FileOutputStream fout = new FileOutputStream(file);
+		new JPEGWriter().write(image, fout);
+		fout.close();
+		
+		// Find where the first scan starts
+		byte[] jpeg = Files.readAllBytes(file.toPath());
+		int sos = 2;
+		while((jpeg[sos + 1]&0xff) != 0xda)
+			sos += 2 + IOUtils.readUnsignedShortMM(jpeg, sos + 2);
+		
+		int blockSize = 4096;
+		FileByteRangeSource source = new FileByteRangeSource(file);
+		RandomAccessInputStream randin = new ByteRangeRandomAccessInputStream(source, blockSize, 4);
+		Map<MetadataType, Metadata> metadataMap = Metadata.readMetadata(randin);
+		assertTrue(metadataMap.containsKey(MetadataType.IMAGE), "JPEG metadata read");
+		randin.close();
+		// Allow for the buffer of the metadata reader and the blocks around the scan header
+		long limit = sos + 8192 + 2*blockSize;
+		logger.info("JPEG metadata: {} of {} bytes fetched, first scan at {}", source.getBytesFetched(), jpeg.length, sos);
+		assertTrue(source.getBytesFetched() <= limit, "JPEG metadata fetched " + source.getBytesFetched() + " bytes, more than " + limit);
+		file.delete();
+	}
+	
+	// Reading byte by byte must fetch the source in pages, not one byte at a time
+	private void testSourceReads(byte[] data) throws IOException {
+		final int[] reads = new int[1];
+		InputStream src = new FilterInputStream(new ByteArrayInputStream(data)) {
+			public int read() throws IOException {
+				reads[0]++;
+				return super.read();
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				reads[0]++;
+				return super.read(b, off, len);
+			}
+		};
+		int pageSize = 1000;
+		RandomAccessInputStream randin = new FileCacheRandomAccessInputStream(src, pageSize, 4);
+		for(int i = 0; i < data.length; i++)
+			assertTrue(randin.read() == (data[i]&0xff), "byte by byte read at " + i);
+		assertTrue(randin.read() == -1, "read() at the end of the source");
+		randin.close();
+		int pages = (data.length + pageSize - 1)/pageSize;
+		// One read per page plus the one which finds the end of the source
+		assertTrue(reads[0] <= pages + 1, reads[0] + " source reads for " + pages + " pages");
+		logger.info("FileCacheRandomAccessInputStream: {} source reads for {} pages", reads[0], pages);
+	}
+
+	private void check(RandomAccessInputStream randin, byte[] data) throws IOException {
+		String name = randin.getClass().getSimpleName();
+		// Sequential single byte reads through several pages
+		for(int i = 0; i < 5000; i++)
+			assertTrue(randin.read() == (data[i]&0xff), name + " sequential read at " + i);
+		// Seek forth and back, reading across page boundaries
+		long[] positions = {97000, 999, 50123, 1, 0, 4095, 70000, 2999};
+		byte[] buf = new byte[2500];
+		for(long pos : positions) {
+			randin.seek(pos);
+			randin.readFully(buf);
+			assertTrue(Arrays.equals(buf, Arrays.copyOfRange(data, (int)pos, (int)pos + buf.length)), name + " read after seek to " + pos);
+			assertTrue(randin.getStreamPointer() == pos + buf.length, name + " stream pointer after read");
+		}
+		// Positional reads leave the stream pointer alone
+		randin.seek(12345);
+		for(long pos : positions) {
+			randin.readFully(pos, buf, 0, buf.length);
+			assertTrue(Arrays.equals(buf, Arrays.copyOfRange(data, (int)pos, (int)pos + buf.length)), name + " positional read at " + pos);
+		}
+		assertTrue(randin.getStreamPointer() == 12345, name + " stream pointer after positional reads");
+		assertTrue(randin.read() == (data[12345]&0xff), name + " read after positional reads");
+		// A positional read ending exactly at the end of the stream
+		randin.readFully(data.length - buf.length, buf, 0, buf.length);
+		assertTrue(Arrays.equals(buf, Arrays.copyOfRange(data, data.length - buf.length, data.length)), name + " positional read up to the end");
+		// Positional reads past the end
+		try {
+			randin.readFully(data.length - 10, buf, 0, 20);
+			throw new IllegalStateException(name + " positional read past the end didn't throw EOFException");
+		} catch(EOFException ex) {}
+		// Reads at and past the end
+		randin.seek(data.length - 10);
+		assertTrue(randin.read(buf, 0, buf.length) == 10, name + " short read at the end");
+		assertTrue(randin.read() == -1, name + " read() at the end");
+		assertTrue(randin.read(buf, 0, buf.length) == -1, name + " read(byte[]) at the end");
+		randin.seek(data.length + 100);
+		assertTrue(randin.read() == -1, name + " read() past the end");
+		try {
+			randin.seek(data.length - 1);
+			randin.readFully(buf, 0, 2);
+			throw new IllegalStateException(name + " readFully past the end didn't throw EOFException");
+		} catch(EOFException ex) {}
+		// Seeking back after EOF works
+		randin.seek(0);
+		assertTrue(randin.read() == (data[0]&0xff), name + " read after seeking back from the end");
+		randin.close();
+		logger.info("{} passed", name);
+	}
+	
+	private static void assertTrue(boolean condition, String message) {
+		if(!condition)
+			throw new IllegalStateException("Check failed: " + message);
 	}
-}
+}
\ No newline at end of file
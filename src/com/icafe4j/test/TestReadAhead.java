@@ -0,0 +1,176 @@
+package com.icafe4j.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.icafe4j.io.FileCacheRandomAccessInputStream;
+import com.icafe4j.io.ForwardSeekableStream;
+import com.icafe4j.io.RandomAccessInputStream;
+
+/**
+ * Checks the read ahead constructors of FileCacheRandomAccessInputStream and
+ * ForwardSeekableStream: the data read is the same as the source, the read ahead
+ * worker quits once the stream is shallow closed or closed, and an exception
+ * thrown by the source reaches the consumer.
+ */
+public class TestReadAhead extends TestBase {
+
+	public static void main(String[] args) throws Exception {
+		new TestReadAhead().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		byte[] data = new byte[300007];
+		new Random(7).nextBytes(data);
+
+		testData(data);
+		testWorkerExit();
+		testSourceError(data);
+
+		logger.info("All checks passed");
+	}
+
+	private void testData(byte[] data) throws IOException {
+		// The source returns short reads of varying length
+		RandomAccessInputStream randin = new FileCacheRandomAccessInputStream(new TestSource(data, -1), 4096, 4, true);
+		byte[] buf = new byte[data.length];
+		randin.readFully(buf);
+		assertTrue(Arrays.equals(buf, data), "FileCacheRandomAccessInputStream data read ahead");
+		assertTrue(randin.read() == -1, "FileCacheRandomAccessInputStream end of stream");
+		long[] positions = {250000, 17, 131072, 0};
+		for(long pos : positions) {
+			randin.seek(pos);
+			assertTrue(randin.read() == (data[(int)pos]&0xff), "FileCacheRandomAccessInputStream read after seek to " + pos);
+		}
+		randin.close();
+
+		ForwardSeekableStream fin = new ForwardSeekableStream(new TestSource(data, -1), true);
+		int pos = 0;
+		for(; pos < 1000; pos++)
+			assertTrue(fin.read() == (data[pos]&0xff), "ForwardSeekableStream read at " + pos);
+		fin.seek(5000);
+		pos = 5000;
+		while(pos < data.length) {
+			int nbytes = fin.read(buf, 0, 3333);
+			assertTrue(nbytes > 0, "ForwardSeekableStream read at " + pos);
+			assertTrue(Arrays.equals(Arrays.copyOf(buf, nbytes), Arrays.copyOfRange(data, pos, pos + nbytes)), "ForwardSeekableStream data at " + pos);
+			pos += nbytes;
+		}
+		assertTrue(fin.read() == -1, "ForwardSeekableStream end of stream");
+		fin.close();
+		logger.info("Data read ahead matches the source");
+	}
+
+	// An endless source keeps the worker busy until the stream is closed
+	private void testWorkerExit() throws Exception {
+		TestSource source = new TestSource(null, -1);
+		RandomAccessInputStream randin = new FileCacheRandomAccessInputStream(source, 4096, 4, true);
+		randin.read();
+		randin.shallowClose();
+		assertWorkerExits(source, "FileCacheRandomAccessInputStream.shallowClose()");
+		assertTrue(!source.closed, "source closed by shallowClose()");
+
+		source = new TestSource(null, -1);
+		randin = new FileCacheRandomAccessInputStream(source, 4096, 4, true);
+		randin.read();
+		randin.close();
+		assertWorkerExits(source, "FileCacheRandomAccessInputStream.close()");
+		assertTrue(source.closed, "source not closed by close()");
+
+		source = new TestSource(null, -1);
+		ForwardSeekableStream fin = new ForwardSeekableStream(source, true);
+		fin.read();
+		fin.close();
+		assertWorkerExits(source, "ForwardSeekableStream.close()");
+		assertTrue(source.closed, "source not closed by ForwardSeekableStream.close()");
+		logger.info("Read ahead worker quits on close");
+	}
+
+	private void assertWorkerExits(TestSource source, String name) throws InterruptedException {
+		Thread worker = source.reader;
+		assertTrue(worker != null && worker != Thread.currentThread(), name + " source not read by a worker");
+		worker.join(5000);
+		assertTrue(!worker.isAlive(), name + " worker still running");
+	}
+
+	private void testSourceError(byte[] data) throws IOException {
+		int failAt = 100000;
+		RandomAccessInputStream randin = new FileCacheRandomAccessInputStream(new TestSource(data, failAt), 4096, 4, true);
+		byte[] buf = new byte[failAt];
+		randin.readFully(buf);
+		assertTrue(Arrays.equals(buf, Arrays.copyOf(data, failAt)), "FileCacheRandomAccessInputStream data before the error");
+		try {
+			randin.read();
+			throw new IllegalStateException("Check failed: FileCacheRandomAccessInputStream source error lost");
+		} catch(IOException ex) {
+			assertTrue(TestSource.ERROR.equals(ex.getMessage()), "FileCacheRandomAccessInputStream source error " + ex);
+		}
+		randin.close();
+
+		ForwardSeekableStream fin = new ForwardSeekableStream(new TestSource(data, failAt), true);
+		try {
+			while(fin.read(buf, 0, buf.length) != -1);
+			throw new IllegalStateException("Check failed: ForwardSeekableStream source error lost");
+		} catch(IOException ex) {
+			assertTrue(TestSource.ERROR.equals(ex.getMessage()), "ForwardSeekableStream source error " + ex);
+			assertTrue(fin.getFilePointer() == failAt, "ForwardSeekableStream read " + fin.getFilePointer() + " bytes before the error");
+		}
+		fin.close();
+		logger.info("Source errors reach the consumer");
+	}
+
+	private static void assertTrue(boolean condition, String message) {
+		if(!condition)
+			throw new IllegalStateException("Check failed: " + message);
+	}
+
+	/**
+	 * Serves data in short reads of varying length, endless pseudo random data if
+	 * data is null, and fails with an IOException at failAt if it is not negative.
+	 * Remembers the thread reading it.
+	 */
+	private static class TestSource extends InputStream {
+		static final String ERROR = "Source failed";
+		private final byte[] data;
+		private final int failAt;
+		private final Random random = new Random(1);
+		private int pos;
+		volatile Thread reader;
+		volatile boolean closed;
+
+		TestSource(byte[] data, int failAt) {
+			this.data = data;
+			this.failAt = failAt;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : b[0]&0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			reader = Thread.currentThread();
+			if(failAt >= 0 && pos >= failAt)
+				throw new IOException(ERROR);
+			len = Math.min(len, 1 + random.nextInt(5000));
+			if(failAt >= 0)
+				len = Math.min(len, failAt - pos);
+			if(data == null) {
+				for(int i = 0; i < len; i++)
+					b[off + i] = (byte)random.nextInt();
+			} else {
+				if(pos >= data.length) return -1;
+				len = Math.min(len, data.length - pos);
+				System.arraycopy(data, pos, b, off, len);
+			}
+			pos += len;
+			return len;
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import com.icafe4j.image.reader.BMPReader;
+import com.icafe4j.image.reader.ImageReader;
+import com.icafe4j.image.reader.ImageRowReader;
+import com.icafe4j.image.reader.PNGReader;
+
+/**
+ * Checks that PNGReader and BMPReader give the same pixels when read band by
+ * band with nextRows() as when read as a whole. The PNG images use all five
+ * filter types and split the image data over several IDAT chunks. The BMP
+ * images are stored both bottom-up and top-down.
+ */
+public class TestRowReaders extends TestBase {
+	private static final int WIDTH = 37;
+	private static final int HEIGHT = 23;
+
+	public static void main(String[] args) throws Exception {
+		new TestRowReaders().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		int[] pixels = new int[WIDTH*HEIGHT];
+		Random random = new Random(13);
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				// Gradients make the filters do some real work
+				int noise = random.nextInt(24);
+				pixels[y*WIDTH + x] = ((x*7 + noise)&0xff)<<16|((y*11 + noise)&0xff)<<8|((x*y + noise)&0xff);
+			}
+		}
+		int[] alphaPixels = new int[pixels.length];
+		for(int i = 0; i < pixels.length; i++)
+			alphaPixels[i] = ((i*3)&0xff)<<24|pixels[i];
+
+		check("PNG RGB", new PNGReader(), createPNG(pixels, false), pixels, false);
+		check("PNG RGBA", new PNGReader(), createPNG(alphaPixels, true), alphaPixels, true);
+		check("BMP bottom-up", new BMPReader(), createBMP(pixels, false), pixels, false);
+		check("BMP top-down", new BMPReader(), createBMP(pixels, true), pixels, false);
+
+		logger.info("All checks passed");
+	}
+
+	private void check(String name, ImageReader reader, byte[] data, int[] pixels, boolean alpha) throws Exception {
+		BufferedImage image = reader.read(new ByteArrayInputStream(data));
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				int expected = alpha ? pixels[y*WIDTH + x] : 0xff000000|pixels[y*WIDTH + x];
+				if(image.getRGB(x, y) != expected)
+					throw new IllegalStateException("Check failed: " + name + " full decode mismatch at " + x + "," + y);
+			}
+		}
+		reader.reset();
+
+		// Bands of one scan line, of a few scan lines and of more than the image
+		int[] bands = {1, 5, HEIGHT + 10};
+		for(int band : bands) {
+			ImageRowReader rowReader = (ImageRowReader)reader;
+			rowReader.readHeader(new ByteArrayInputStream(data));
+			if(rowReader.getWidth() != WIDTH || rowReader.getHeight() != HEIGHT)
+				throw new IllegalStateException("Check failed: " + name + " header size " + rowReader.getWidth() + "x" + rowReader.getHeight());
+			int[] rows = new int[WIDTH*band];
+			int y = 0;
+			for(int count; (count = rowReader.nextRows(rows, band)) != -1; y += count) {
+				if(count == 0 || y + count > HEIGHT)
+					throw new IllegalStateException("Check failed: " + name + " returned " + count + " scan lines at row " + y);
+				for(int i = 0; i < count*WIDTH; i++) {
+					if(rows[i] != image.getRGB(i%WIDTH, y + i/WIDTH))
+						throw new IllegalStateException("Check failed: " + name + " band of " + band + " mismatch at " + (i%WIDTH) + "," + (y + i/WIDTH));
+				}
+			}
+			if(y != HEIGHT)
+				throw new IllegalStateException("Check failed: " + name + " read " + y + " of " + HEIGHT + " scan lines");
+			reader.reset();
+		}
+		logger.info("{}: scan lines match the full decode", name);
+	}
+
+	/**
+	 * Writes an 8 bit RGB or RGBA PNG with the filter type of each scan line
+	 * cycling through None, Sub, Up, Average and Paeth, and the compressed data
+	 * split into IDAT chunks of at most 100 bytes.
+	 */
+	private static byte[] createPNG(int[] pixels, boolean alpha) throws IOException {
+		int bpp = alpha ? 4 : 3;
+		int stride = WIDTH*bpp;
+		byte[] raw = new byte[HEIGHT*stride];
+		for(int i = 0, j = 0; i < pixels.length; i++) {
+			raw[j++] = (byte)(pixels[i]>>16);
+			raw[j++] = (byte)(pixels[i]>>8);
+			raw[j++] = (byte)pixels[i];
+			if(alpha) raw[j++] = (byte)(pixels[i]>>>24);
+		}
+		ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+		DeflaterOutputStream deflater = new DeflaterOutputStream(filtered);
+		for(int y = 0; y < HEIGHT; y++) {
+			int filter = y%5;
+			deflater.write(filter);
+			for(int i = 0; i < stride; i++) {
+				int x = raw[y*stride + i]&0xff;
+				int a = (i >= bpp) ? raw[y*stride + i - bpp]&0xff : 0;
+				int b = (y > 0) ? raw[(y - 1)*stride + i]&0xff : 0;
+				int c = (i >= bpp && y > 0) ? raw[(y - 1)*stride + i - bpp]&0xff : 0;
+				int predictor = 0;
+				switch(filter) {
+					case 1: predictor = a; break;
+					case 2: predictor = b; break;
+					case 3: predictor = (a + b)>>1; break;
+					case 4: predictor = paeth(a, b, c); break;
+				}
+				deflater.write(x - predictor);
+			}
+		}
+		deflater.close();
+		byte[] compressed = filtered.toByteArray();
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bout);
+		out.write(new byte[] {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+		ByteBuffer ihdr = ByteBuffer.allocate(13);
+		ihdr.putInt(WIDTH).putInt(HEIGHT).put((byte)8).put((byte)(alpha ? 6 : 2)).put((byte)0).put((byte)0).put((byte)0);
+		writeChunk(out, "IHDR", ihdr.array(), 0, 13);
+		int chunks = 0;
+		for(int offset = 0; offset < compressed.length; offset += 100, chunks++)
+			writeChunk(out, "IDAT", compressed, offset, Math.min(100, compressed.length - offset));
+		if(chunks < 2)
+			throw new IllegalStateException("Check failed: test image fits in a single IDAT chunk");
+		writeChunk(out, "IEND", new byte[0], 0, 0);
+
+		return bout.toByteArray();
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+		if(pa <= pb && pa <= pc) return a;
+		if(pb <= pc) return b;
+		return c;
+	}
+
+	private static void writeChunk(DataOutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type.getBytes("US-ASCII"));
+		crc.update(data, offset, length);
+		out.writeInt(length);
+		out.writeBytes(type);
+		out.write(data, offset, length);
+		out.writeInt((int)crc.getValue());
+	}
+
+	// Writes a 24 bit BMP, a negative height in the header marks top-down scan lines
+	private static byte[] createBMP(int[] pixels, boolean topDown) {
+		int stride = (WIDTH*3 + 3)&~3;
+		int size = 54 + stride*HEIGHT;
+		ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte)'B').put((byte)'M').putInt(size).putInt(0).putInt(54);
+		buf.putInt(40).putInt(WIDTH).putInt(topDown ? -HEIGHT : HEIGHT).putShort((short)1).putShort((short)24);
+		buf.putInt(0).putInt(stride*HEIGHT).putInt(2835).putInt(2835).putInt(0).putInt(0);
+		for(int row = 0; row < HEIGHT; row++) {
+			int y = topDown ? row : HEIGHT - 1 - row;
+			for(int x = 0; x < WIDTH; x++) {
+				int pixel = pixels[y*WIDTH + x];
+				buf.put((byte)pixel).put((byte)(pixel>>8)).put((byte)(pixel>>16));
+			}
+			for(int i = WIDTH*3; i < stride; i++)
+				buf.put((byte)0);
+		}
+
+		return buf.array();
+	}
+}
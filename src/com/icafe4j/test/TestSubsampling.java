@@ -0,0 +1,117 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.icafe4j.image.ImageIO;
+import com.icafe4j.image.ImageParam;
+import com.icafe4j.image.ImageType;
+
+/**
+ * Checks that the images read with source subsampling hold every xStep-th pixel
+ * of every yStep-th scan line of the full image for PNG, interlaced PNG, BMP,
+ * TIFF, GIF and interlaced GIF, and that maxDimension picks the smallest step
+ * which keeps the image within the limit.
+ */
+public class TestSubsampling extends TestBase {
+	private static final int WIDTH = 101;
+	private static final int HEIGHT = 67;
+
+	public static void main(String[] args) throws Exception {
+		new TestSubsampling().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(15);
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				// Smooth gradient plus noise so that GIF keeps plenty of different colors
+				int r = (x*255/WIDTH + random.nextInt(16))&0xff;
+				int g = (y*255/HEIGHT + random.nextInt(16))&0xff;
+				image.setRGB(x, y, (r<<16)|(g<<8)|random.nextInt(256));
+			}
+		}
+
+		check("PNG", write(image, ImageType.PNG));
+		check("interlaced PNG", writeProgressive(image, "png"));
+		check("BMP", write(image, ImageType.BMP));
+		check("TIFF", write(image, ImageType.TIFF));
+		check("GIF", write(image, ImageType.GIF));
+		check("interlaced GIF", writeProgressive(image, "gif"));
+
+		logger.info("All checks passed");
+	}
+
+	private void check(String name, byte[] data) throws Exception {
+		BufferedImage full = ImageIO.read(new ByteArrayInputStream(data));
+		if(full.getWidth() != WIDTH || full.getHeight() != HEIGHT)
+			throw new IllegalStateException("Check failed: " + name + " decoded as " + full.getWidth() + "x" + full.getHeight());
+
+		int[][] steps = {{2, 2}, {3, 1}, {1, 4}, {5, 3}, {WIDTH, HEIGHT}, {200, 200}};
+		for(int[] step : steps)
+			compare(name, full, read(data, ImageParam.getBuilder().sourceSubsampling(step[0], step[1]).build()), step[0], step[1]);
+
+		// maxDimension picks the smallest step which fits the larger dimension
+		int[][] limits = {{50, 3}, {51, 2}, {WIDTH, 1}, {1000, 1}, {1, WIDTH}};
+		for(int[] limit : limits) {
+			BufferedImage image = read(data, ImageParam.getBuilder().maxDimension(limit[0]).build());
+			if(Math.max(image.getWidth(), image.getHeight()) > limit[0])
+				throw new IllegalStateException("Check failed: " + name + " maxDimension " + limit[0] + " read as " + image.getWidth() + "x" + image.getHeight());
+			compare(name, full, image, limit[1], limit[1]);
+		}
+		logger.info("{}: subsampled images match the full image", name);
+	}
+
+	private static BufferedImage read(byte[] data, ImageParam param) throws Exception {
+		return ImageIO.read(new ByteArrayInputStream(data), param);
+	}
+
+	private static void compare(String name, BufferedImage full, BufferedImage image, int xStep, int yStep) {
+		int width = (WIDTH + xStep - 1)/xStep;
+		int height = (HEIGHT + yStep - 1)/yStep;
+		String what = name + " subsampled " + xStep + "x" + yStep;
+		if(image.getWidth() != width || image.getHeight() != height)
+			throw new IllegalStateException("Check failed: " + what + " read as " + image.getWidth() + "x" + image.getHeight() + ", expected " + width + "x" + height);
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				if(image.getRGB(x, y) != full.getRGB(x*xStep, y*yStep))
+					throw new IllegalStateException("Check failed: " + what + " mismatch at " + x + "," + y);
+			}
+		}
+	}
+
+	private static byte[] write(BufferedImage image, ImageType imageType) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ImageIO.write(image, bout, imageType);
+		return bout.toByteArray();
+	}
+
+	// The JDK writers write Adam7 interlaced PNG and interlaced GIF in progressive mode
+	private static byte[] writeProgressive(BufferedImage image, String format) throws Exception {
+		Iterator<javax.imageio.ImageWriter> writers = javax.imageio.ImageIO.getImageWritersByFormatName(format);
+		javax.imageio.ImageWriter writer = writers.next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ImageOutputStream out = javax.imageio.ImageIO.createImageOutputStream(bout);
+		writer.setOutput(out);
+		// GIF needs an indexed image
+		BufferedImage source = image;
+		if(format.equals("gif")) {
+			source = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED);
+			source.getGraphics().drawImage(image, 0, 0, null);
+		}
+		writer.write(null, new IIOImage(source, null, null), param);
+		out.close();
+		writer.dispose();
+		return bout.toByteArray();
+	}
+}
@@ -0,0 +1,130 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+
+import com.icafe4j.image.reader.TIFFReader;
+import com.icafe4j.image.tiff.TIFFTweaker;
+import com.icafe4j.io.MemoryCacheRandomAccessOutputStream;
+import com.icafe4j.io.RandomAccessOutputStream;
+
+/**
+ * Checks reading TIFF pages on demand with TIFFReader.open(), readPage(), getPages()
+ * and getPageCount(): random page order, the LRU page cache and use after close().
+ */
+public class TestTIFFPages extends TestBase {
+	private static final int PAGES = 4;
+
+	public static void main(String[] args) throws Exception {
+		new TestTIFFPages().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		BufferedImage[] images = new BufferedImage[PAGES];
+		for(int i = 0; i < PAGES; i++)
+			images[i] = createPage(i);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		RandomAccessOutputStream rout = new MemoryCacheRandomAccessOutputStream(bout);
+		TIFFTweaker.writeMultipageTIFF(rout, images);
+		rout.close();
+		byte[] tiff = bout.toByteArray();
+
+		TIFFReader reader = new TIFFReader();
+		if(reader.open(new ByteArrayInputStream(new byte[] {'G', 'I', 'F', '8', '9', 'a'})))
+			throw new IllegalStateException("Check failed: non-TIFF input opened");
+
+		if(!reader.open(new ByteArrayInputStream(tiff)))
+			throw new IllegalStateException("Check failed: TIFF not opened");
+		// Pages read out of order before the page count is known
+		int[] order = {2, 0, 3, 1, 2};
+		for(int index : order)
+			compare(reader.readPage(index), images[index], "page " + index);
+		if(reader.getPageCount() != PAGES)
+			throw new IllegalStateException("Check failed: page count " + reader.getPageCount());
+		try {
+			reader.readPage(PAGES);
+			throw new IllegalStateException("Check failed: page index past the end accepted");
+		} catch(IllegalArgumentException ex) {}
+		// No page cache by default
+		if(reader.readPage(1) == reader.readPage(1))
+			throw new IllegalStateException("Check failed: page kept without a page cache");
+
+		int count = 0;
+		Iterator<BufferedImage> iterator = reader.getPages().iterator();
+		while(iterator.hasNext()) {
+			compare(iterator.next(), images[count], "iterated page " + count);
+			count++;
+		}
+		if(count != PAGES)
+			throw new IllegalStateException("Check failed: iterated over " + count + " pages");
+		try {
+			iterator.remove();
+			throw new IllegalStateException("Check failed: page removed through the iterator");
+		} catch(UnsupportedOperationException ex) {}
+
+		// With a single cached page the least recently used page is dropped
+		reader.setPageCacheSize(1);
+		reader.open(new ByteArrayInputStream(tiff));
+		BufferedImage page0 = reader.readPage(0);
+		if(reader.readPage(0) != page0)
+			throw new IllegalStateException("Check failed: cached page decoded again");
+		BufferedImage page1 = reader.readPage(1);
+		compare(page1, images[1], "page 1");
+		if(reader.readPage(1) != page1)
+			throw new IllegalStateException("Check failed: cached page 1 decoded again");
+		BufferedImage again = reader.readPage(0);
+		if(again == page0)
+			throw new IllegalStateException("Check failed: page 0 not dropped from the cache");
+		compare(again, images[0], "page 0 after eviction");
+
+		reader.close();
+		try {
+			reader.readPage(0);
+			throw new IllegalStateException("Check failed: readPage after close");
+		} catch(IllegalStateException ex) {
+			if(ex.getMessage().startsWith("Check failed")) throw ex;
+		}
+		try {
+			reader.getPageCount();
+			throw new IllegalStateException("Check failed: getPageCount after close");
+		} catch(IllegalStateException ex) {
+			if(ex.getMessage().startsWith("Check failed")) throw ex;
+		}
+		try {
+			reader.getPages();
+			throw new IllegalStateException("Check failed: getPages after close");
+		} catch(IllegalStateException ex) {
+			if(ex.getMessage().startsWith("Check failed")) throw ex;
+		}
+		// The reader can be opened again after close
+		reader.open(new ByteArrayInputStream(tiff));
+		compare(reader.readPage(3), images[3], "page 3 after reopening");
+		reader.close();
+
+		logger.info("All checks passed");
+	}
+
+	// Pages of different sizes and colors
+	private static BufferedImage createPage(int index) {
+		int width = 31 + index*7;
+		int height = 19 + index*5;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++)
+				image.setRGB(x, y, ((x*8)<<16)|((y*12)<<8)|(index*60));
+		return image;
+	}
+
+	private static void compare(BufferedImage image, BufferedImage expected, String name) {
+		if(image.getWidth() != expected.getWidth() || image.getHeight() != expected.getHeight())
+			throw new IllegalStateException("Check failed: " + name + " size " + image.getWidth() + "x" + image.getHeight());
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				if(image.getRGB(x, y) != expected.getRGB(x, y))
+					throw new IllegalStateException("Check failed: " + name + " mismatch at " + x + "," + y);
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.icafe4j.test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import com.icafe4j.image.reader.TIFFReader;
+import com.icafe4j.image.writer.TIFFWriter;
+
+/**
+ * Checks that region of interest decoding with TIFFReader.read(InputStream, int, Rectangle)
+ * gives the same pixels as cropping the whole decoded page, for stripped and tiled
+ * images, regions on strip and tile boundaries, regions extending past the image
+ * and images with an inconsistent strip layout.
+ */
+public class TestTIFFRegion extends TestBase {
+	private static final int WIDTH = 53;
+	private static final int HEIGHT = 37;
+
+	public static void main(String[] args) throws Exception {
+		new TestTIFFRegion().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		int[] pixels = new int[WIDTH*HEIGHT];
+		Random random = new Random(14);
+		for(int i = 0; i < pixels.length; i++)
+			pixels[i] = 0xff000000|random.nextInt(0x1000000);
+
+		// Strips of 8 rows, the last one short
+		check("stripped", createTIFF(pixels, 0, 8, 8), pixels);
+		// 16x16 tiles, the last column and row partly outside of the image
+		check("tiled", createTIFF(pixels, 16, 16, 16), pixels);
+		// RowsPerStrip says 4 but the whole image is in a single strip
+		check("inconsistent", createTIFF(pixels, 0, 4, HEIGHT), pixels);
+		// LZW strips from TIFFWriter
+		TIFFWriter writer = new TIFFWriter();
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		writer.begin(WIDTH, HEIGHT, null, bout);
+		writer.writeRows(pixels, HEIGHT);
+		writer.end();
+		check("TIFFWriter", bout.toByteArray(), pixels);
+
+		try {
+			new TIFFReader().read(new ByteArrayInputStream(createTIFF(pixels, 0, 8, 8)), 0, new Rectangle(WIDTH, 0, 10, 10));
+			throw new IllegalStateException("Check failed: region outside of the image accepted");
+		} catch(IllegalArgumentException ex) {
+			logger.info("Region outside of the image rejected: {}", ex.getMessage());
+		}
+
+		logger.info("All checks passed");
+	}
+
+	private void check(String name, byte[] tiff, int[] pixels) throws Exception {
+		TIFFReader reader = new TIFFReader();
+		BufferedImage full = reader.read(new ByteArrayInputStream(tiff));
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				if(full.getRGB(x, y) != pixels[y*WIDTH + x])
+					throw new IllegalStateException("Check failed: " + name + " full decode mismatch at " + x + "," + y);
+			}
+		}
+
+		Rectangle[] regions = {
+			new Rectangle(0, 0, WIDTH, HEIGHT), // Whole image
+			new Rectangle(0, 0, 1, 1),
+			new Rectangle(WIDTH - 1, HEIGHT - 1, 1, 1),
+			new Rectangle(0, 8, WIDTH, 8), // Exactly one strip
+			new Rectangle(3, 7, 10, 2), // Across a strip boundary
+			new Rectangle(16, 16, 16, 16), // Exactly one tile
+			new Rectangle(15, 15, 2, 2), // Corner of four tiles
+			new Rectangle(48, 32, 5, 5), // Partial tile at the bottom right
+			new Rectangle(40, 30, 100, 100), // Extends past the image
+			new Rectangle(-5, -3, 12, 9) // Starts before the image
+		};
+		for(Rectangle roi : regions) {
+			BufferedImage image = reader.read(new ByteArrayInputStream(tiff), 0, roi);
+			Rectangle region = roi.intersection(new Rectangle(0, 0, WIDTH, HEIGHT));
+			if(image.getWidth() != region.width || image.getHeight() != region.height)
+				throw new IllegalStateException("Check failed: " + name + " region " + roi + " decoded as " + image.getWidth() + "x" + image.getHeight());
+			for(int y = 0; y < region.height; y++) {
+				for(int x = 0; x < region.width; x++) {
+					if(image.getRGB(x, y) != full.getRGB(region.x + x, region.y + y))
+						throw new IllegalStateException("Check failed: " + name + " region " + roi + " mismatch at " + x + "," + y);
+				}
+			}
+		}
+		logger.info("{}: {} regions match the full decode", name, regions.length);
+	}
+
+	/**
+	 * Writes an uncompressed 8 bit RGB TIFF. If tileSize is 0, the image is written
+	 * in strips of stripRows rows and the RowsPerStrip field is set to rowsPerStrip,
+	 * otherwise in square tiles of tileSize.
+	 */
+	private static byte[] createTIFF(int[] pixels, int tileSize, int rowsPerStrip, int stripRows) {
+		boolean tiled = tileSize > 0;
+		int unitWidth = tiled ? tileSize : WIDTH;
+		int unitLength = tiled ? tileSize : stripRows;
+		int across = (WIDTH + unitWidth - 1)/unitWidth;
+		int down = (HEIGHT + unitLength - 1)/unitLength;
+		int units = across*down;
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int[] offsets = new int[units];
+		int[] byteCounts = new int[units];
+		int start = 8;
+		for(int row = 0, unit = 0; row < down; row++) {
+			for(int column = 0; column < across; column++, unit++) {
+				// Tiles are always full size, strips end with the image
+				int rows = tiled ? unitLength : Math.min(unitLength, HEIGHT - row*unitLength);
+				for(int y = row*unitLength; y < row*unitLength + rows; y++) {
+					for(int x = column*unitWidth; x < column*unitWidth + unitWidth; x++) {
+						int pixel = (x < WIDTH && y < HEIGHT) ? pixels[y*WIDTH + x] : 0;
+						data.write(pixel>>16);
+						data.write(pixel>>8);
+						data.write(pixel);
+					}
+				}
+				offsets[unit] = start + data.size() - rows*unitWidth*3;
+				byteCounts[unit] = rows*unitWidth*3;
+			}
+		}
+
+		int entries = tiled ? 11 : 10;
+		int ifdOffset = 8 + data.size();
+		int extra = ifdOffset + 2 + entries*12 + 4;
+		ByteBuffer buf = ByteBuffer.allocate(extra + 6 + units*8).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte)'I').put((byte)'I').putShort((short)42).putInt(ifdOffset);
+		buf.put(data.toByteArray());
+		buf.putShort((short)entries);
+		putEntry(buf, 256, 4, 1, WIDTH);
+		putEntry(buf, 257, 4, 1, HEIGHT);
+		putEntry(buf, 258, 3, 3, extra); // BitsPerSample 8,8,8
+		putEntry(buf, 259, 3, 1, 1);
+		putEntry(buf, 262, 3, 1, 2);
+		if(!tiled) putEntry(buf, 273, 4, units, (units == 1) ? offsets[0] : extra + 6);
+		putEntry(buf, 277, 3, 1, 3);
+		if(!tiled) putEntry(buf, 278, 4, 1, rowsPerStrip);
+		if(!tiled) putEntry(buf, 279, 4, units, (units == 1) ? byteCounts[0] : extra + 6 + units*4);
+		putEntry(buf, 284, 3, 1, 1);
+		if(tiled) {
+			putEntry(buf, 322, 4, 1, tileSize);
+			putEntry(buf, 323, 4, 1, tileSize);
+			putEntry(buf, 324, 4, units, extra + 6);
+			putEntry(buf, 325, 4, units, extra + 6 + units*4);
+		}
+		buf.putInt(0);
+		buf.putShort((short)8).putShort((short)8).putShort((short)8);
+		for(int offset : offsets) buf.putInt(offset);
+		for(int byteCount : byteCounts) buf.putInt(byteCount);
+
+		return buf.array();
+	}
+
+	private static void putEntry(ByteBuffer buf, int tag, int type, int count, int value) {
+		buf.putShort((short)tag).putShort((short)type).putInt(count);
+		if(type == 3 && count == 1)
+			buf.putShort((short)value).putShort((short)0);
+		else
+			buf.putInt(value);
+	}
+}
@@ -0,0 +1,91 @@
+package com.icafe4j.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.icafe4j.image.ImageIO;
+import com.icafe4j.image.reader.TIFFReader;
+import com.icafe4j.image.writer.TIFFWriter;
+
+public class TestTIFFRowWriter extends TestBase {
+	// Test writing TIFF images strip by strip
+	public static void main(String[] args) throws Exception {
+		new TestTIFFRowWriter().test(args);
+	}
+
+	public void test(String ... args) throws Exception {
+		testStripOffsets();
+		testWriteRows();
+		logger.info("All checks passed");
+	}
+
+	// Strip offsets past 2GB must be rejected before they wrap around
+	private void testStripOffsets() {
+		TIFFWriter writer = new TIFFWriter();
+		writer.update(0x40000000);
+		writer.update(0x3fffffff); // Strip data now ends at Integer.MAX_VALUE
+		try {
+			writer.update(1);
+			throw new IllegalStateException("Check failed: strip past 2GB accepted");
+		} catch(IllegalStateException ex) {
+			if(ex.getMessage().startsWith("Check failed"))
+				throw ex;
+			logger.info("Strip past 2GB rejected: {}", ex.getMessage());
+		}
+	}
+
+	private void testWriteRows() throws Exception {
+		int width = 300;
+		int height = 517; // Not a multiple of the rows per strip
+		int[] pixels = new int[width*height];
+		for(int i = 0; i < pixels.length; i++)
+			pixels[i] = 0xff000000|(i*0x9e3779b1);
+
+		TIFFWriter writer = new TIFFWriter();
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		writer.begin(width, height, null, bout);
+		int[] rows = new int[width*7];
+		for(int y = 0; y < height; y += 7) {
+			int count = Math.min(7, height - y);
+			System.arraycopy(pixels, y*width, rows, 0, count*width);
+			writer.writeRows(rows, count);
+		}
+		writer.end();
+
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(bout.toByteArray()));
+		if(image.getWidth() != width || image.getHeight() != height)
+			throw new IllegalStateException("Check failed: wrong image size " + image.getWidth() + "x" + image.getHeight());
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				if(image.getRGB(x, y) != pixels[y*width + x])
+					throw new IllegalStateException("Check failed: pixel mismatch at " + x + "," + y);
+			}
+		}
+		logger.info("Wrote and read back {} bytes", bout.size());
+		
+		testNextRows(bout.toByteArray(), pixels, width, height);
+	}
+	
+	// Read the image back by scan lines
+	private void testNextRows(byte[] tiff, int[] pixels, int width, int height) throws Exception {
+		TIFFReader reader = new TIFFReader();
+		reader.readHeader(new ByteArrayInputStream(tiff));
+		try {
+			reader.nextRows(new int[width - 1], 1);
+			throw new IllegalStateException("Check failed: buffer shorter than a scan line accepted");
+		} catch(IllegalArgumentException ex) {
+			logger.info("Short buffer rejected: {}", ex.getMessage());
+		}
+		int[] rows = new int[width*10];
+		int y = 0;
+		for(int count; (count = reader.nextRows(rows, 10)) != -1; y += count) {
+			for(int i = 0; i < count*width; i++) {
+				if(rows[i] != pixels[y*width + i])
+					throw new IllegalStateException("Check failed: scan line mismatch at row " + (y + i/width));
+			}
+		}
+		if(y != height)
+			throw new IllegalStateException("Check failed: read " + y + " of " + height + " scan lines");
+	}
+}